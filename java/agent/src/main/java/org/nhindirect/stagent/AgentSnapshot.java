@@ -0,0 +1,357 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.nhindirect.policy.PolicyFilter;
+import org.nhindirect.stagent.cert.CertificateResolver;
+import org.nhindirect.stagent.cryptography.Cryptographer;
+import org.nhindirect.stagent.policy.PolicyResolver;
+import org.nhindirect.stagent.trust.TrustAnchorResolver;
+import org.nhindirect.stagent.trust.TrustEnforcementStatus;
+import org.nhindirect.stagent.trust.TrustModel;
+
+/**
+ * Immutable snapshot of the configurable state of an agent.  Agents publish their state as a single snapshot so that messages can be
+ * processed against a consistent set of resolvers, policies, and trust settings without taking any locks.  Modifications create a new snapshot
+ * through the <i>with</i> methods; an existing snapshot never changes.
+ * @since 2.1
+ */
+public final class AgentSnapshot 
+{
+	private final Collection<String> domains;
+	private final Cryptographer cryptographer;
+	private final CertificateResolver privateCertResolver;
+	private final Collection<CertificateResolver> publicCertResolvers;
+	private final TrustAnchorResolver trustAnchors;
+	private final TrustModel trustModel;
+	private final TrustEnforcementStatus minTrustRequirement;
+	private final NHINDAgentEventListener eventListener;
+	private final PolicyResolver publicPolicyResolver;
+	private final PolicyResolver privatePolicyResolver;
+	private final PolicyFilter policyFilter;
+	private final boolean encryptionEnabled;
+	private final boolean wrappingEnabled;
+	
+	/**
+	 * Creates a snapshot with the required attributes of an agent.  Policy resolvers and the event listener are not set, 
+	 * messages are encrypted and wrapped, and the minimum trust requirement is {@link TrustEnforcementStatus#Success_Offline}.
+	 * @param domains The domains that the agent is serving.
+	 * @param privateCertResolver The certificate store used to decrypt and sign messages.
+	 * @param publicCertResolvers The certificate stores used to encrypt messages and validate signatures.
+	 * @param trustAnchors The trust anchor store.
+	 * @param trustModel The trust model that asserts if a message is trusted.
+	 * @param cryptographer The cryptography implementation used to sign, encrypt, and decrypt messages.
+	 * @param policyFilter The policy filter engine.
+	 */
+	public AgentSnapshot(Collection<String> domains, CertificateResolver privateCertResolver, Collection<CertificateResolver> publicCertResolvers, 
+			TrustAnchorResolver trustAnchors, TrustModel trustModel, Cryptographer cryptographer, PolicyFilter policyFilter)
+	{
+		this(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, TrustEnforcementStatus.Success_Offline,
+				null, null, null, policyFilter, true, true);
+	}
+	
+	private AgentSnapshot(Collection<String> domains, Cryptographer cryptographer, CertificateResolver privateCertResolver, 
+			Collection<CertificateResolver> publicCertResolvers, TrustAnchorResolver trustAnchors, TrustModel trustModel, 
+			TrustEnforcementStatus minTrustRequirement, NHINDAgentEventListener eventListener, PolicyResolver publicPolicyResolver, 
+			PolicyResolver privatePolicyResolver, PolicyFilter policyFilter, boolean encryptionEnabled, boolean wrappingEnabled)
+	{
+		this.domains = copyOf(domains);
+		this.cryptographer = cryptographer;
+		this.privateCertResolver = privateCertResolver;
+		this.publicCertResolvers = copyOf(publicCertResolvers);
+		this.trustAnchors = trustAnchors;
+		this.trustModel = trustModel;
+		this.minTrustRequirement = minTrustRequirement;
+		this.eventListener = eventListener;
+		this.publicPolicyResolver = publicPolicyResolver;
+		this.privatePolicyResolver = privatePolicyResolver;
+		this.policyFilter = policyFilter;
+		this.encryptionEnabled = encryptionEnabled;
+		this.wrappingEnabled = wrappingEnabled;
+	}
+	
+	private static <T> Collection<T> copyOf(Collection<T> collection)
+	{
+		return (collection == null) ? null : Collections.unmodifiableCollection(new ArrayList<T>(collection));
+	}
+	
+	/**
+	 * Gets the domains that the agent is serving.
+	 * @return An unmodifiable collection of the domains that the agent is serving.
+	 */
+	public Collection<String> getDomains()
+	{
+		return domains;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new list of domains.
+	 * @param domains The domains that the agent is serving.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withDomains(Collection<String> domains)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the cryptography implementation used to sign, encrypt, and decrypt messages.
+	 * @return The cryptography implementation used to sign, encrypt, and decrypt messages.
+	 */
+	public Cryptographer getCryptographer()
+	{
+		return cryptographer;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new cryptographer.
+	 * @param cryptographer The cryptography implementation used to sign, encrypt, and decrypt messages.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withCryptographer(Cryptographer cryptographer)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the certificate store used to decrypt and sign messages.
+	 * @return The certificate store used to decrypt and sign messages.
+	 */
+	public CertificateResolver getPrivateCertResolver()
+	{
+		return privateCertResolver;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new private certificate store.
+	 * @param privateCertResolver The certificate store used to decrypt and sign messages.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withPrivateCertResolver(CertificateResolver privateCertResolver)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the certificate stores used to encrypt messages and validate signatures.
+	 * @return An unmodifiable collection of the certificate stores used to encrypt messages and validate signatures.
+	 */
+	public Collection<CertificateResolver> getPublicCertResolvers()
+	{
+		return publicCertResolvers;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with new public certificate stores.
+	 * @param publicCertResolvers The certificate stores used to encrypt messages and validate signatures.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withPublicCertResolvers(Collection<CertificateResolver> publicCertResolvers)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the trust anchor store.
+	 * @return The trust anchor store.
+	 */
+	public TrustAnchorResolver getTrustAnchors()
+	{
+		return trustAnchors;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new trust anchor store.
+	 * @param trustAnchors The trust anchor store.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withTrustAnchors(TrustAnchorResolver trustAnchors)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the trust model that asserts if a message is trusted.
+	 * @return The trust model that asserts if a message is trusted.
+	 */
+	public TrustModel getTrustModel()
+	{
+		return trustModel;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new trust model.
+	 * @param trustModel The trust model that asserts if a message is trusted.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withTrustModel(TrustModel trustModel)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the minimum trust status applied to messages.
+	 * @return The minimum trust status applied to messages.
+	 */
+	public TrustEnforcementStatus getMinTrustRequirement()
+	{
+		return minTrustRequirement;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new minimum trust status.
+	 * @param minTrustRequirement The minimum trust status applied to messages.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withMinTrustRequirement(TrustEnforcementStatus minTrustRequirement)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the event listener that receives notifications at different stages of message processing.
+	 * @return The event listener.  May be null.
+	 */
+	public NHINDAgentEventListener getEventListener()
+	{
+		return eventListener;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new event listener.
+	 * @param eventListener The event listener that receives notifications at different stages of message processing.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withEventListener(NHINDAgentEventListener eventListener)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the policy resolver for publicly discovered certificates.
+	 * @return The policy resolver for publicly discovered certificates.  May be null.
+	 */
+	public PolicyResolver getPublicPolicyResolver()
+	{
+		return publicPolicyResolver;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new public policy resolver.
+	 * @param publicPolicyResolver The policy resolver for publicly discovered certificates.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withPublicPolicyResolver(PolicyResolver publicPolicyResolver)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the policy resolver for privately discovered certificates.
+	 * @return The policy resolver for privately discovered certificates.  May be null.
+	 */
+	public PolicyResolver getPrivatePolicyResolver()
+	{
+		return privatePolicyResolver;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new private policy resolver.
+	 * @param privatePolicyResolver The policy resolver for privately discovered certificates.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withPrivatePolicyResolver(PolicyResolver privatePolicyResolver)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Gets the policy filter engine.
+	 * @return The policy filter engine.
+	 */
+	public PolicyFilter getPolicyFilter()
+	{
+		return policyFilter;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new policy filter engine.
+	 * @param policyFilter The policy filter engine.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withPolicyFilter(PolicyFilter policyFilter)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Indicates if messages are required to be encrypted.
+	 * @return True if messages are required to be encrypted.  False otherwise.
+	 */
+	public boolean isEncryptionEnabled()
+	{
+		return encryptionEnabled;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new encryption requirement.
+	 * @param encryptionEnabled True if messages are required to be encrypted.  False otherwise.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withEncryptionEnabled(boolean encryptionEnabled)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+	
+	/**
+	 * Indicates if messages are automatically wrapped into RFC822 envelopes.
+	 * @return True if messages are automatically wrapped.  False otherwise.
+	 */
+	public boolean isWrappingEnabled()
+	{
+		return wrappingEnabled;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with a new wrapping setting.
+	 * @param wrappingEnabled True if messages are automatically wrapped.  False otherwise.
+	 * @return A new snapshot.
+	 */
+	public AgentSnapshot withWrappingEnabled(boolean wrappingEnabled)
+	{
+		return new AgentSnapshot(domains, cryptographer, privateCertResolver, publicCertResolvers, trustAnchors, trustModel, minTrustRequirement, 
+				eventListener, publicPolicyResolver, privatePolicyResolver, policyFilter, encryptionEnabled, wrappingEnabled);
+	}
+}
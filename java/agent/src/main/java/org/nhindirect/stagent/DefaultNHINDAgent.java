@@ -28,11 +28,24 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.activation.DataSource;
 import javax.mail.Header;
 import javax.mail.MessagingException;
 import javax.mail.internet.ContentType;
@@ -49,7 +62,6 @@ import org.nhindirect.common.tx.TxUtil;
 import org.nhindirect.common.tx.model.TxMessageType;
 import org.nhindirect.policy.PolicyExpression;
 import org.nhindirect.policy.PolicyFilter;
-import org.nhindirect.policy.PolicyFilterFactory;
 import org.nhindirect.policy.PolicyParseException;
 import org.nhindirect.policy.PolicyProcessException;
 import org.nhindirect.policy.PolicyRequiredException;
@@ -59,8 +71,10 @@ import org.nhindirect.stagent.annotation.PrivateCerts;
 import org.nhindirect.stagent.annotation.PrivatePolicyResolver;
 import org.nhindirect.stagent.annotation.PublicCerts;
 import org.nhindirect.stagent.annotation.PublicPolicyResolver;
+import org.nhindirect.stagent.cert.CertResolutionMetrics;
 import org.nhindirect.stagent.cert.CertificateResolver;
 import org.nhindirect.stagent.cert.X509CertificateEx;
+import org.nhindirect.stagent.cert.impl.DNSCertificateStore;
 import org.nhindirect.stagent.cryptography.Cryptographer;
 import org.nhindirect.stagent.cryptography.SMIMECryptographerImpl;
 import org.nhindirect.stagent.cryptography.SMIMEStandard;
@@ -70,10 +84,13 @@ import org.nhindirect.stagent.mail.MimeEntity;
 import org.nhindirect.stagent.mail.MimeError;
 import org.nhindirect.stagent.mail.MimeException;
 import org.nhindirect.stagent.mail.MimeStandard;
+import org.nhindirect.stagent.mail.RawContentDataSource;
+import org.nhindirect.stagent.mail.SharedStreamBuffer;
 import org.nhindirect.stagent.mail.WrappedMessage;
 import org.nhindirect.stagent.options.OptionsManager;
 import org.nhindirect.stagent.options.OptionsParameter;
 import org.nhindirect.stagent.parser.EntitySerializer;
+import org.nhindirect.stagent.policy.CachingPolicyFilterFactory;
 import org.nhindirect.stagent.policy.PolicyResolver;
 import org.nhindirect.stagent.trust.TrustAnchorResolver;
 import org.nhindirect.stagent.trust.TrustEnforcementStatus;
@@ -97,29 +114,41 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	
 	static MimeMultipart lastMMPart = null;
 
-    protected final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-	
-    protected Cryptographer cryptographer;
-    protected CertificateResolver privateCertResolver;
-    protected Collection<CertificateResolver> publicCertResolver;
-    protected TrustAnchorResolver trustAnchors;
-
-    protected TrustModel trustModel;
-    protected TrustEnforcementStatus minTrustRequirement;
-    protected Collection<String> domains;
-    protected NHINDAgentEventListener m_listener = null;
+    /**
+     * The current state of the agent.  Modifications publish a new immutable snapshot; messages are processed against
+     * the snapshot that was current when processing of the message started.
+     */
+    protected final AtomicReference<AgentSnapshot> snapshot = new AtomicReference<AgentSnapshot>();
+    
+    /**
+     * The snapshot bound to the message that the current thread is processing.
+     */
+    protected final ThreadLocal<AgentSnapshot> processingSnapshot = new ThreadLocal<AgentSnapshot>();
+    
+    protected static final int DEFAULT_PUBLIC_CERT_RESOLUTION_THREADS = 16;
     
-    protected PolicyResolver publicPolicyResolver;
-    protected PolicyResolver privatePolicyResolver;
+    protected static final int DEFAULT_PUBLIC_CERT_RESOLUTION_TIMEOUT = 30000; // 30 seconds
     
-    protected PolicyFilter policyFilter;
+    protected static final int MAX_QUEUED_CERT_RESOLUTIONS = 1000;
     
-    private boolean encryptionEnabled = true;
-    private boolean wrappingEnabled = true;
+    private static final ThreadPoolExecutor certResolutionExecutor;
     
     static
     {
     	CryptoExtensions.registerJCEProviders();
+    	
+		certResolutionExecutor = new ThreadPoolExecutor(DEFAULT_PUBLIC_CERT_RESOLUTION_THREADS, DEFAULT_PUBLIC_CERT_RESOLUTION_THREADS, 
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(MAX_QUEUED_CERT_RESOLUTIONS), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				final Thread thread = new Thread(r, "DefaultNHINDAgent-certResolution");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		certResolutionExecutor.allowCoreThreadTimeOut(true);
     }
     
     /**
@@ -197,28 +226,23 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	
     	
     	
-        this.domains = domains;
-        this.privateCertResolver = privateCerts;
-        this.publicCertResolver = publicCerts;
-        this.cryptographer = cryptographer;
-        this.trustAnchors = anchors;
-        this.trustModel = trustModel;
-        this.minTrustRequirement = TrustEnforcementStatus.Success_Offline;
-        
-        if (this.trustModel.getCertChainValidator() != null && 
-        		!this.trustModel.getCertChainValidator().isCertificateResolver())
+        if (trustModel.getCertChainValidator() != null && 
+        		!trustModel.getCertChainValidator().isCertificateResolver())
         {
-        	this.trustModel.getCertChainValidator().setCertificateResolver(this.publicCertResolver);
+        	trustModel.getCertChainValidator().setCertificateResolver(publicCerts);
         }
         
+        final PolicyFilter policyFilter;
         try
         {
-        	this.policyFilter = PolicyFilterFactory.getInstance();
+        	policyFilter = CachingPolicyFilterFactory.getInstance(CachingPolicyFilterFactory.AGENT_FILTER_NAME);
         }
         catch (PolicyParseException e)
         {
         	throw new AgentException(AgentError.Unexpected, "Failed to create policy filter object.", e);
         }
+        
+        this.snapshot.set(new AgentSnapshot(domains, privateCerts, publicCerts, anchors, trustModel, cryptographer, policyFilter));
     }          
     
     /**
@@ -242,64 +266,88 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     /**
      * {@inheritDoc}
      */
-	public void setDomains(Collection<String> domains)
-	{
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-
-    	this.domains = domains;
+    public AgentSnapshot getSnapshot()
+    {
+    	return snapshot.get();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void setSnapshot(AgentSnapshot snapshot)
+    {
+    	if (snapshot == null)
+    		throw new IllegalArgumentException("Snapshot cannot be null.");
     	
-    	lock.unlock();
-	}
+    	this.snapshot.set(snapshot);
+    }
+    
+    /**
+     * Gets the snapshot used by the current thread.  While a message is being processed this is the snapshot that was current when processing
+     * of the message started; otherwise it is the current snapshot of the agent.
+     * @return The snapshot used by the current thread.
+     */
+    protected AgentSnapshot getProcessingSnapshot()
+    {
+    	final AgentSnapshot retVal = processingSnapshot.get();
+    	
+    	return (retVal == null) ? snapshot.get() : retVal;
+    }
+    
+    /**
+     * Binds the current snapshot to the current thread for the duration of processing a message.  Nested processing calls reuse the 
+     * snapshot bound by the outermost call.
+     * @return True if this call bound the snapshot and must release it with {@link #releaseProcessingSnapshot(boolean)}.
+     */
+    protected boolean bindProcessingSnapshot()
+    {
+    	if (processingSnapshot.get() != null)
+    		return false;
+    	
+    	processingSnapshot.set(snapshot.get());
+    	return true;
+    }
     
+    /**
+     * Releases a snapshot bound by {@link #bindProcessingSnapshot()}.
+     * @param bound The value returned by {@link #bindProcessingSnapshot()}.
+     */
+    protected void releaseProcessingSnapshot(boolean bound)
+    {
+    	if (bound)
+    		processingSnapshot.remove();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+	public synchronized void setDomains(Collection<String> domains)
+	{
+    	snapshot.set(snapshot.get().withDomains(domains));
+	}
     
     /**
      * {@inheritDoc}
      */
     public Collection<String> getDomains()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return Collections.unmodifiableCollection(domains);
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}
+    	return getProcessingSnapshot().getDomains();
     }
 
-    
     /**
      * {@inheritDoc}
      */
     public Cryptographer getCryptographer()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return this.cryptographer;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}
+    	return getProcessingSnapshot().getCryptographer();
     }
 
     /**
      * {@inheritDoc}
      */
-	public void setCryptographer(Cryptographer cryptographer)
+	public synchronized void setCryptographer(Cryptographer cryptographer)
 	{
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-
-    	this.cryptographer = cryptographer;
- 
-    	lock.unlock();
-
+    	snapshot.set(snapshot.get().withCryptographer(cryptographer));
 	}
     
     /**
@@ -308,31 +356,16 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public boolean isEncryptMessages()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return this.encryptionEnabled;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}
+    	return getProcessingSnapshot().isEncryptionEnabled();
     } 
     
     /**
      * Sets if messages are required to be encrypted in the agen
      * @param value True if messages are required to be encrypted in the agent.  False otherwise.
      */
-    public void setEncryptMessages(boolean value)
+    public synchronized void setEncryptMessages(boolean value)
     {
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-  	
-    	this.encryptionEnabled = value;
-
-    	lock.unlock();
-
+    	snapshot.set(snapshot.get().withEncryptionEnabled(value));
     }
 
     /**
@@ -340,31 +373,15 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public boolean isWrappingEnabled() 
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{       	
-    		return wrappingEnabled;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}
-    		
+    	return getProcessingSnapshot().isWrappingEnabled();
 	}
 
     /**
      * {@inheritDoc}
      */
-	public void setWrappingEnabled(boolean wrappingEnabled) 
+	public synchronized void setWrappingEnabled(boolean wrappingEnabled) 
 	{
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
- 
-    	this.wrappingEnabled = wrappingEnabled;
-
-    	lock.unlock();
-
+    	snapshot.set(snapshot.get().withWrappingEnabled(wrappingEnabled));
 	}
 
 
@@ -375,19 +392,11 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public CertificateResolver getPublicCertResolver()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{   
-	    	if (publicCertResolver != null && publicCertResolver.size() > 0)
-	    		return this.publicCertResolver.iterator().next();
+    	final Collection<CertificateResolver> publicCertResolvers = getProcessingSnapshot().getPublicCertResolvers();
+    	if (publicCertResolvers != null && publicCertResolvers.size() > 0)
+    		return publicCertResolvers.iterator().next();
 	    	
-	    	return null;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+    	return null;
     }
 
     /**
@@ -395,30 +404,15 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public Collection<CertificateResolver> getPublicCertResolvers()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{   
-    		return this.publicCertResolver;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+    	return getProcessingSnapshot().getPublicCertResolvers();
     }    
     
     /**
      * {@inheritDoc}
      */
-	public void setPublicCertResolvers(Collection<CertificateResolver> resolvers)
+	public synchronized void setPublicCertResolvers(Collection<CertificateResolver> resolvers)
 	{
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
- 
-    	this.publicCertResolver = resolvers;
-
-    	lock.unlock();
-
+    	snapshot.set(snapshot.get().withPublicCertResolvers(resolvers));
 	}
     
     /**
@@ -426,30 +420,15 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public CertificateResolver getPrivateCertResolver()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{     	
-    		return this.privateCertResolver;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+    	return getProcessingSnapshot().getPrivateCertResolver();
     }
 
     /**
      * {@inheritDoc}
      */
-    public void setPrivateCertResolver(CertificateResolver resolver)
+    public synchronized void setPrivateCertResolver(CertificateResolver resolver)
     {
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-
-    	this.privateCertResolver = resolver;
-
-    	lock.unlock();
-	
+    	snapshot.set(snapshot.get().withPrivateCertResolver(resolver));
     }
     
     /**
@@ -457,30 +436,15 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public TrustAnchorResolver getTrustAnchors()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{        
-    		return this.trustAnchors;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}		
+    	return getProcessingSnapshot().getTrustAnchors();
     }
 
     /**
      * {@inheritDoc}
      */
-    public void setTrustAnchorResolver(TrustAnchorResolver resolver)
+    public synchronized void setTrustAnchorResolver(TrustAnchorResolver resolver)
     {
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-
-    	this.trustAnchors = resolver;
-
-    	lock.unlock();
-	
+    	snapshot.set(snapshot.get().withTrustAnchors(resolver));
     }
     
     /**
@@ -489,52 +453,29 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public TrustEnforcementStatus getMinTrustRequirement()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{     	
-    		return this.minTrustRequirement;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+    	return getProcessingSnapshot().getMinTrustRequirement();
     }
         
     /**
      * Sets the minimum trust status applied to messages by the agent.
      * @param value The minimum trust status applied to messages by the agent.
      */
-    public void setMinTrustRequirement(TrustEnforcementStatus value)
+    public synchronized void setMinTrustRequirement(TrustEnforcementStatus value)
     {
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-    	try
-    	{ 
-	        if (value.compareTo(TrustEnforcementStatus.Success_Offline) < 0)
-	        {
-	            throw new IllegalArgumentException();
-	        }
-	        this.minTrustRequirement = value;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+        if (value.compareTo(TrustEnforcementStatus.Success_Offline) < 0)
+        {
+            throw new IllegalArgumentException();
+        }
+        
+    	snapshot.set(snapshot.get().withMinTrustRequirement(value));
     }
 
     /**
      * {@inheritDoc}
      */
-    public void setEventListener(NHINDAgentEventListener listener)
+    public synchronized void setEventListener(NHINDAgentEventListener listener)
     {
-    	Lock lock = readWriteLock.writeLock();
-    	lock.lock();
-	
-    	m_listener = listener;
-
-    	lock.unlock();
-
+    	snapshot.set(snapshot.get().withEventListener(listener));
     }
       
     /**
@@ -542,16 +483,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     public NHINDAgentEventListener getEventListener()
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{ 
-    		return m_listener;
-      	}
-    	finally
-    	{
-    		lock.unlock();
-    	}		
+    	return getProcessingSnapshot().getEventListener();
     }
     
     /**
@@ -559,14 +491,9 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     @Inject(optional=true)
 	@Override
-	public void setPublicPolicyResolver(@PublicPolicyResolver PolicyResolver publicPolicyResolver) 
+	public synchronized void setPublicPolicyResolver(@PublicPolicyResolver PolicyResolver publicPolicyResolver) 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-
-    	this.publicPolicyResolver = publicPolicyResolver;
-
-    	lock.unlock();
+    	snapshot.set(snapshot.get().withPublicPolicyResolver(publicPolicyResolver));
 	}
 
     /**
@@ -575,16 +502,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	@Override
 	public PolicyResolver getPublicPolicyResolver() 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return this.publicPolicyResolver;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+		return getProcessingSnapshot().getPublicPolicyResolver();
 	}
 
     /**
@@ -592,14 +510,9 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     @Inject(optional=true)
 	@Override
-	public void setPrivatePolicyResolver(@PrivatePolicyResolver PolicyResolver privatePolicyResolver) 
+	public synchronized void setPrivatePolicyResolver(@PrivatePolicyResolver PolicyResolver privatePolicyResolver) 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-
-    	this.privatePolicyResolver = privatePolicyResolver;
-
-    	lock.unlock();
+    	snapshot.set(snapshot.get().withPrivatePolicyResolver(privatePolicyResolver));
 	}
 
     /**
@@ -608,16 +521,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	@Override
 	public PolicyResolver getPrivatePolicyResolver() 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return privatePolicyResolver;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+		return getProcessingSnapshot().getPrivatePolicyResolver();
 	}
 
     /**
@@ -625,14 +529,9 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     @Inject(optional=true)
 	@Override
-	public void setPolicyFilter(@AgentPolicyFilter PolicyFilter filter) 
+	public synchronized void setPolicyFilter(@AgentPolicyFilter PolicyFilter filter) 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-
-    	this.policyFilter = filter;
-
-    	lock.unlock();
+    	snapshot.set(snapshot.get().withPolicyFilter(filter));
 	}
 
     /**
@@ -641,30 +540,16 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	@Override
 	public PolicyFilter getPolicyFilter() 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return policyFilter;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+		return getProcessingSnapshot().getPolicyFilter();
 	}
 
     /**
      * {@inheritDoc}
      */
 	@Override
-	public void setTrustModel(TrustModel trustModel) 
+	public synchronized void setTrustModel(TrustModel trustModel) 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-
-    	this.trustModel = trustModel;
-
-    	lock.unlock();		
+    	snapshot.set(snapshot.get().withTrustModel(trustModel));
 	}
 
     /**
@@ -673,16 +558,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	@Override
 	public TrustModel getTrustModel() 
 	{
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
-    	try
-    	{
-    		return this.trustModel;
-    	}
-    	finally
-    	{
-    		lock.unlock();
-    	}	
+		return getProcessingSnapshot().getTrustModel();
 	}
 
 	/**
@@ -767,8 +643,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	 */  
     public IncomingMessage processIncoming(IncomingMessage message)
     {          
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
+    	final boolean boundSnapshot = bindProcessingSnapshot();
     	try
     	{ 
 	    	if (message == null)
@@ -779,18 +654,19 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	    	if (LOGGER.isDebugEnabled())
 	    		LOGGER.debug("Processing incoming message:\r\n" + message.toString() + "\r\n");    	
 	    	    	
+	    	final NHINDAgentEventListener listener = getEventListener();
 	        try
 	        {
 	            message.setAgent(this);
 	            message.validate();
 	            
-	            if (m_listener != null)
-	            	m_listener.preProcessIncoming(message);            
+	            if (listener != null)
+	            	listener.preProcessIncoming(message);            
 	
 	            processMessage(message);
 	
-	            if (m_listener != null)
-	            	m_listener.postProcessIncoming(message);                
+	            if (listener != null)
+	            	listener.postProcessIncoming(message);                
 	            
 	        	if (LOGGER.isDebugEnabled())
 	        		LOGGER.debug("Completed processing incoming message.  Result message:\r\n" + EntitySerializer.Default.serialize(message.getMessage()) + "\r\n");              
@@ -803,14 +679,14 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	        	
 	        	NHINDException throwError = new NHINDException(error);
 	        	
-	            if (m_listener != null)
-	            	m_listener.errorIncoming(message, error);  
+	            if (listener != null)
+	            	listener.errorIncoming(message, error);  
 	            throw throwError;  // rethrow error
 	        }
     	}
     	finally
     	{
-    		lock.unlock();
+    		releaseProcessingSnapshot(boundSnapshot);
     	}	
     }
 
@@ -863,8 +739,8 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
                 {
                     try
                     {
-                    	final Collection<X509Certificate> anchors = new ArrayList<X509Certificate>(trustAnchors.getIncomingAnchors().getCertificates(recipient));
-                    	anchors.addAll(trustAnchors.getOutgoingAnchors().getCertificates(recipient));
+                    	final Collection<X509Certificate> anchors = new ArrayList<X509Certificate>(getTrustAnchors().getIncomingAnchors().getCertificates(recipient));
+                    	anchors.addAll(getTrustAnchors().getOutgoingAnchors().getCertificates(recipient));
                     	recipient.setTrustAnchors(anchors);
                     }
                     catch (Exception e)
@@ -877,14 +753,14 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         
         
         
-        this.trustModel.enforce(message);        
+        getTrustModel().enforce(message);        
         
         //
         // Remove any untrusted recipients...
         //
         if (message.hasDomainRecipients())
         {
-            message.categorizeRecipients(this.minTrustRequirement);
+            message.categorizeRecipients(getMinTrustRequirement());
         }
         if (!message.hasDomainRecipients())
         {
@@ -908,7 +784,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	 * 
     	Collection<X509Certificate> resolvedPublicCerts = this.resolvePublicCerts(message.getSender(), false, true);
     	if (message.getDomainRecipients().size() > 0)
-    		resolvedPublicCerts = filterCertificatesByPolicy(message.getDomainRecipients().get(0), publicPolicyResolver, resolvedPublicCerts, true);
+    		resolvedPublicCerts = filterCertificatesByPolicy(message.getDomainRecipients().get(0), getPublicPolicyResolver(), resolvedPublicCerts, true);
     		
    		message.getSender().setCertificates(resolvedPublicCerts);
     	*/
@@ -924,7 +800,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         	Collection<X509Certificate> privateCerts = this.resolvePrivateCerts(recipient, false, true);
         	
         	// filter private certs based on policy
-        	privateCerts = filterCertificatesByPolicy(recipient, privatePolicyResolver, privateCerts, true);
+        	privateCerts = filterCertificatesByPolicy(recipient, getPrivatePolicyResolver(), privateCerts, true);
         	
         	if (privateCerts == null || privateCerts.size() == 0)
         		LOGGER.warn("bindAddresses(IncomingMessage message) - Could not resolve a private certificate for recipient " + recipient.getAddress());
@@ -934,7 +810,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
             Collection<X509Certificate> anchors = null;
             try
             {
-            	anchors = new ArrayList<X509Certificate>(trustAnchors.getIncomingAnchors().getCertificates(recipient));
+            	anchors = new ArrayList<X509Certificate>(getTrustAnchors().getIncomingAnchors().getCertificates(recipient));
 
             }
             catch (Exception e)
@@ -955,13 +831,14 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     {
         
         MimeEntity decryptedEntity = this.decryptMessage(message);
+        final boolean streamContent = getCryptographer().isStreamingEnabled();
         CMSSignedData signatures;
         MimeEntity payload;
         try
         {
 	        if (SMIMEStandard.isContentEnvelopedSignature(new ContentType(decryptedEntity.getContentType())))
 	        {
-	            signatures = cryptographer.deserializeEnvelopedSignature(decryptedEntity);                
+	            signatures = getCryptographer().deserializeEnvelopedSignature(decryptedEntity);                
 	            payload = new MimeEntity(new ByteArrayInputStream(signatures.getContentInfo().getEncoded()));
 	        }                        
 	        else if (SMIMEStandard.isContentMultipartSignature(new ContentType(decryptedEntity.getContentType())))
@@ -969,12 +846,14 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	            //
 	            // Extract the signature envelope. That contains both the signature and the actual message content
 	            //
-				ByteArrayDataSource dataSource = new ByteArrayDataSource(decryptedEntity.getRawInputStream(), decryptedEntity.getContentType());
+	        	// when streaming, parse the multipart directly from the shared content instead of copying it
+				DataSource dataSource = (streamContent) ? new RawContentDataSource(decryptedEntity, decryptedEntity.getContentType()) :
+					new ByteArrayDataSource(decryptedEntity.getRawInputStream(), decryptedEntity.getContentType());
 				
 				MimeMultipart verifyMM = new MimeMultipart(dataSource);	    	                 	
 	        	
-	            SignedEntity signedEntity = SignedEntity.load(verifyMM);                  
-	            signatures = cryptographer.deserializeSignatureEnvelope(signedEntity);
+	            SignedEntity signedEntity = SignedEntity.load(verifyMM, streamContent);                  
+	            signatures = getCryptographer().deserializeSignatureEnvelope(signedEntity);
 	            payload = signedEntity.getContent(); 
 	        }
 	        else
@@ -1008,7 +887,8 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         		headers.setHeader(hdr.getName(), hdr.getValue());
         	}   
 			
-        	Message msg = new Message(headers, payload.getContentAsBytes());
+        	Message msg = (streamContent) ? new Message(headers, payload) : 
+        		new Message(headers, payload.getContentAsBytes());
         	message.setMessage(msg);
         }
         catch (MessagingException e)
@@ -1027,31 +907,30 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     protected MimeEntity decryptMessage(IncomingMessage message)
     {
         MimeEntity decryptedEntity = null;
-        if (this.encryptionEnabled)
+        if (isEncryptMessages())
         {
             //
-            // Yes, this can be optimized heavily for multiple certs. 
-            // But we will start with the easy to understand simple version
-            //            
             // Decrypt and parse message body into a signature entity - the envelope that contains our data + signature
-            // We can use the cert of any ONE of the recipients to decrypts
-            // So basically, we'll try until we find one, or we just run out...
+            // We can use the cert of any ONE of the recipients to decrypt.  The cryptographer matches the message's
+            // recipient infos against all of the private certs in a single pass over the envelope.
             //
+            Collection<X509CertificateEx> privCerts = new LinkedHashSet<X509CertificateEx>();
             for (X509Certificate cert : message.getDomainRecipients().getCertificates())
             {
-                try
-                {
-                	if (cert instanceof X509CertificateEx)
-                	{
-                		X509CertificateEx privCert = (X509CertificateEx)cert;
-                		decryptedEntity = this.cryptographer.decrypt(message.getMessage(), privCert);
-                		break;
-                	}
-                }
-                catch (Exception e)
-                {
-                	LOGGER.info("Could not decrypt with message private cert subject " + cert.getSubjectDN().getName(), e);
-                }
+            	if (cert instanceof X509CertificateEx)
+            		privCerts.add((X509CertificateEx)cert);
+            }
+            
+            if (!privCerts.isEmpty())
+            {
+	            try
+	            {
+	            	decryptedEntity = getCryptographer().decrypt(message.getMessage(), privCerts);
+	            }
+	            catch (Exception e)
+	            {
+	            	LOGGER.info("Could not decrypt message with any of the recipients' private certs", e);
+	            }
             }
         }
         else
@@ -1081,8 +960,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	 */      
     public OutgoingMessage processOutgoing(String messageText)
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
+    	final boolean boundSnapshot = bindProcessingSnapshot();
     	try
     	{ 
 	    	if (messageText == null || messageText.length() == 0)
@@ -1094,7 +972,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	}
     	finally
     	{
-    		lock.unlock();
+    		releaseProcessingSnapshot(boundSnapshot);
     	}
     }
     
@@ -1107,8 +985,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	 */        
     public OutgoingMessage processOutgoing(String messageText, NHINDAddressCollection recipients, NHINDAddress sender)
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
+    	final boolean boundSnapshot = bindProcessingSnapshot();
     	try
     	{ 
 	        this.checkEnvelopeAddresses(recipients, sender);
@@ -1118,7 +995,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	}
     	finally
     	{
-    		lock.unlock();
+    		releaseProcessingSnapshot(boundSnapshot);
     	}
     }    
     
@@ -1129,8 +1006,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	 */    
     public OutgoingMessage processOutgoing(MessageEnvelope envelope)
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
+    	final boolean boundSnapshot = bindProcessingSnapshot();
     	try
     	{ 
 	        if (envelope == null)
@@ -1143,7 +1019,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	}
     	finally
     	{
-    		lock.unlock();
+    		releaseProcessingSnapshot(boundSnapshot);
     	}
     }    
     
@@ -1154,8 +1030,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	 */ 
     public OutgoingMessage processOutgoing(OutgoingMessage message)
     {
-    	Lock lock = readWriteLock.readLock();
-    	lock.lock();
+    	final boolean boundSnapshot = bindProcessingSnapshot();
     	try
     	{ 
 	        if (message == null)
@@ -1167,16 +1042,17 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	                
 	        message.validate();
 	
+	        final NHINDAgentEventListener listener = getEventListener();
 	        try
 	        {
 	
-	            if (m_listener != null)
-	            	m_listener.preProcessOutgoing(message);                
+	            if (listener != null)
+	            	listener.preProcessOutgoing(message);                
 	
 	            processMessage(message);
 	
-	            if (m_listener != null)
-	            	m_listener.postProcessOutgoing(message);      
+	            if (listener != null)
+	            	listener.postProcessOutgoing(message);      
 	            
 	        	//if (LOGGER.isDebugEnabled())
 	        	//	LOGGER.debug("Completed processing outing message.  Result message:\r\n" + EntitySerializer.Default.serialize(message) + "\r\n");             
@@ -1187,8 +1063,8 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	        	
 	        	NHINDException throwError = new NHINDException(error);
 	        	
-	            if (m_listener != null)
-	            	m_listener.errorOutgoing(message, error);  
+	            if (listener != null)
+	            	listener.errorOutgoing(message, error);  
 	            throw throwError;  // rethrow error
 	        }
 	        
@@ -1196,7 +1072,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	}
     	finally
     	{
-    		lock.unlock();
+    		releaseProcessingSnapshot(boundSnapshot);
     	}
     }
 
@@ -1231,10 +1107,10 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         //
         // Enforce the trust model.
         //
-        this.trustModel.enforce(message);        
+        getTrustModel().enforce(message);        
         
         
-        message.categorizeRecipients(this.minTrustRequirement);
+        message.categorizeRecipients(getMinTrustRequirement());
         if (!message.hasRecipients())
         {
             throw new AgentException(AgentError.NoTrustedRecipients);
@@ -1263,7 +1139,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	Collection<X509Certificate> privateCerts = this.resolvePrivateCerts(message.getSender(), true, false);
     	
     	// filter private certs based on policy if one exists
-    	privateCerts = filterCertificatesByPolicy(message.getSender(), privatePolicyResolver, privateCerts, false);
+    	privateCerts = filterCertificatesByPolicy(message.getSender(), getPrivatePolicyResolver(), privateCerts, false);
     	
     	if (privateCerts == null || privateCerts.size() == 0)
     		LOGGER.warn("bindAddresses(OutgoingMessage message) - Could not resolve a private certificate for sender " + message.getSender().getAddress());
@@ -1272,7 +1148,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	Collection<X509Certificate> anchors = null;
     	try
     	{
-    		anchors = this.trustAnchors.getOutgoingAnchors().getCertificates(message.getSender());
+    		anchors = getTrustAnchors().getOutgoingAnchors().getCertificates(message.getSender());
     	}
     	catch (Exception e)
     	{
@@ -1286,17 +1162,295 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         //
         // Bind each recipient's certs
         //
-        for(NHINDAddress recipient : message.getRecipients())
-        {
-        	Collection<X509Certificate> publicCerts = this.resolvePublicCerts(recipient, false, false);
-        	
-        	// filter public certs based on policy if one exists
-        	publicCerts = filterCertificatesByPolicy(message.getSender(), this.publicPolicyResolver, publicCerts, false);
-        	
-        	if (publicCerts == null || publicCerts.size() == 0)
-        		LOGGER.warn("bindAddresses(OutgoingMessage message) - Could not resolve a public certificate for recipient " + recipient.getAddress());
+        bindRecipientCertificates(message);
+    }
+    
+    /*
+     * Resolves, filters, and binds the public certificates of each recipient of an outgoing message.  Distinct recipient addresses are
+     * grouped by domain and each domain is resolved on the shared resolution pool, so lookups against different domains overlap while lookups
+     * within a domain run one after another and are served from the resolver caches after the first one.  The deadline applies to every 
+     * message: recipients that are not resolved within it are bound without certificates.  The reason a recipient has no certificates is 
+     * recorded on the address.
+     */
+    protected void bindRecipientCertificates(OutgoingMessage message)
+    {
+    	// the worker threads do not have the processing snapshot bound, so hand them the resolvers explicitly
+    	final Collection<CertificateResolver> resolvers = getPublicCertResolvers();
+    	
+    	final Map<String, Collection<NHINDAddress>> recipientsByDomain = new LinkedHashMap<String, Collection<NHINDAddress>>();
+    	final Map<String, NHINDAddress> distinctRecipients = new LinkedHashMap<String, NHINDAddress>();
+    	for (NHINDAddress recipient : message.getRecipients())
+    	{
+    		final String addressKey = getAddressKey(recipient);
+    		if (distinctRecipients.containsKey(addressKey))
+    			continue;
+    		
+    		distinctRecipients.put(addressKey, recipient);
+    		
+    		final String domain = (recipient.getHost() == null) ? "" : recipient.getHost().toLowerCase(Locale.ENGLISH);
+    		Collection<NHINDAddress> domainRecipients = recipientsByDomain.get(domain);
+    		if (domainRecipients == null)
+    		{
+    			domainRecipients = new ArrayList<NHINDAddress>();
+    			recipientsByDomain.put(domain, domainRecipients);
+    		}
+    		domainRecipients.add(recipient);
+    	}
+    	
+    	final int timeout = OptionsParameter.getParamValueAsInteger(
+    			OptionsManager.getInstance().getParameter(OptionsParameter.PUBLIC_CERT_RESOLUTION_TIMEOUT), DEFAULT_PUBLIC_CERT_RESOLUTION_TIMEOUT);
+    	final long deadline = System.currentTimeMillis() + timeout;
+    	
+    	final PublicCertResolutions resolutions = new PublicCertResolutions();
+    	final ExecutorService executor = getCertResolutionExecutor();
+    	final Collection<Future<?>> pending = new ArrayList<Future<?>>();
+    	for (final Collection<NHINDAddress> domainRecipients : recipientsByDomain.values())
+    	{
+    		try
+    		{
+	    		pending.add(executor.submit(new Runnable()
+	    		{
+	    			public void run()
+	    			{
+	    				resolveRecipientCertificates(domainRecipients, resolvers, deadline, resolutions);
+	    			}
+	    		}));
+    		}
+    		catch (RejectedExecutionException e)
+    		{
+    			for (NHINDAddress recipient : domainRecipients)
+    				resolutions.put(getAddressKey(recipient), new PublicCertResolution(null, 
+    						"Certificate resolution could not be scheduled because too many lookups are pending"));
+    		}
+    	}
+    	
+		try
+		{
+    		for (Future<?> future : pending)
+    		{
+    			try
+    			{
+    				future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    			}
+    			catch (TimeoutException e)
+    			{
+    				// cancelled below once the results are closed
+    			}
+    			catch (ExecutionException e)
+    			{
+    				LOGGER.warn("bindRecipientCertificates(OutgoingMessage message) - Unexpected error resolving recipient certificates", e.getCause());
+    			}
+    		}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+    	
+		// close the results before cancelling so resolutions that finish after the deadline are ignored
+		final Map<String, PublicCertResolution> completed = resolutions.close();
+		for (Future<?> future : pending)
+			future.cancel(true);
+		
+    	// policy filtering is local work against the sender's policy... do it here once per distinct address
+    	final Map<String, Collection<X509Certificate>> filteredCerts = new HashMap<String, Collection<X509Certificate>>();
+    	for (NHINDAddress recipient : message.getRecipients())
+    	{
+    		final String addressKey = getAddressKey(recipient);
+    		final PublicCertResolution resolution = completed.get(addressKey);
+    		
+    		String failure;
+    		Collection<X509Certificate> publicCerts;
+    		if (resolution == null)
+    		{
+    			failure = "Certificate resolution did not complete within " + timeout + " milliseconds";
+    			publicCerts = null;
+    		}
+    		else
+    		{
+    			failure = resolution.failure;
+    			
+    			// filter public certs based on policy if one exists
+        		publicCerts = filteredCerts.get(addressKey);
+        		if (publicCerts == null)
+        		{
+        			publicCerts = filterCertificatesByPolicy(message.getSender(), getPublicPolicyResolver(), resolution.certs, false);
+        			if (publicCerts != null)
+        				filteredCerts.put(addressKey, publicCerts);
+        		}
+        		
+        		if (failure == null && (publicCerts == null || publicCerts.size() == 0))
+        			failure = "None of the public certificates found for the address comply with the sender's outgoing policy";
+    		}
+    		
+        	if (failure != null)
+        		LOGGER.warn("bindAddresses(OutgoingMessage message) - Could not resolve a public certificate for recipient " + recipient.getAddress() 
+        				+ ": " + failure);
             recipient.setCertificates(publicCerts);
-        }
+            recipient.setCertificateResolutionFailure(failure);
+    	}
+    }
+    
+    /*
+     * Resolves the public certificates of a group of recipients one after another and records the outcome of each.
+     */
+    protected void resolveRecipientCertificates(Collection<NHINDAddress> recipients, Collection<CertificateResolver> resolvers, 
+    		long deadline, PublicCertResolutions resolutions)
+    {
+    	for (NHINDAddress recipient : recipients)
+    	{
+    		// stop if the message deadline has passed
+    		if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() >= deadline)
+    			return;
+    		
+    		final String addressKey = getAddressKey(recipient);
+    		
+    		PublicCertResolution resolution;
+    		try
+    		{
+    			final Collection<X509Certificate> certs = lookupPublicCerts(recipient, resolvers, deadline);
+    			resolution = new PublicCertResolution(certs, 
+    					(certs == null || certs.isEmpty()) ? "No public certificates were found for the address" : null);
+    		}
+    		catch (TimeoutException e)
+    		{
+    			// leave the recipient unresolved
+    			return;
+    		}
+    		catch (NHINDException e)
+    		{
+    			if (e.getError() != null && e.getError().equals(AgentError.AllCertsInResolverInvalid))
+    				resolution = new PublicCertResolution(null, "All public certificates found for the address are invalid");
+    			else
+    			{
+    				LOGGER.warn("Exception thrown resolving public certs for address " + recipient.getAddress(), e);
+    				resolution = new PublicCertResolution(null, "Error resolving public certificates: " + e.getMessage());
+    			}
+    		}
+    		catch (Exception e)
+    		{
+    			LOGGER.warn("Exception thrown resolving public certs for address " + recipient.getAddress(), e);
+    			resolution = new PublicCertResolution(null, "Error resolving public certificates: " + e.getMessage());
+    		}
+    		resolutions.put(addressKey, resolution);
+    	}
+    }
+    
+    /*
+     * Tries each resolver until one returns certificates for the address and records the time spent in each resolver.  A resolver
+     * that found certificates which are all invalid throws an exception with AgentError.AllCertsInResolverInvalid; the remaining
+     * resolvers must not be consulted in that case.
+     * <p>
+     * If a deadline is given, a DNS certificate store is only queried once the chain reaches it, through its asynchronous lookup API, and
+     * is waited on until the deadline.  A TimeoutException is thrown if the lookup does not complete in time.  The lookup itself is not
+     * cancelled because concurrent requests for the same address share it; its result still populates the store's cache.  A deadline of 0
+     * or less queries every resolver on the calling thread.
+     */
+    protected Collection<X509Certificate> lookupPublicCerts(InternetAddress address, Collection<CertificateResolver> resolvers, 
+    		long deadline) throws Exception
+    {
+    	for (CertificateResolver publicResolver : resolvers)
+    	{
+    		final long start = System.nanoTime();
+    		boolean failed = true;
+    		try
+    		{
+    			final Collection<X509Certificate> certs;
+    			if (deadline <= 0 || !(publicResolver instanceof DNSCertificateStore))
+    				certs = publicResolver.getCertificates(address);
+    			else
+    			{
+    				try
+    				{
+    					certs = ((DNSCertificateStore)publicResolver).getCertificatesAsync(address)
+    							.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    				}
+    				catch (ExecutionException e)
+    				{
+    					throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+    				}
+    			}
+    			failed = false;
+    			if (certs != null)
+    				return certs;
+    		}
+    		finally
+    		{
+    			CertResolutionMetrics.getInstance().record(publicResolver, System.nanoTime() - start, failed);
+    		}
+    	}
+    	
+    	return null;
+    }
+    
+    private static String getAddressKey(InternetAddress address)
+    {
+    	return address.getAddress().toLowerCase(Locale.ENGLISH);
+    }
+    
+    /*
+     * Gets the shared pool used to resolve recipient certificates.  The pool is resized when the PUBLIC_CERT_RESOLUTION_THREADS option
+     * changes, and at most MAX_QUEUED_CERT_RESOLUTIONS resolutions wait for a thread.
+     */
+    protected static ExecutorService getCertResolutionExecutor()
+    {
+    	final int threads = Math.max(1, OptionsParameter.getParamValueAsInteger(
+    			OptionsManager.getInstance().getParameter(OptionsParameter.PUBLIC_CERT_RESOLUTION_THREADS), DEFAULT_PUBLIC_CERT_RESOLUTION_THREADS));
+    	
+    	synchronized (certResolutionExecutor)
+    	{
+	    	if (threads > certResolutionExecutor.getMaximumPoolSize())
+	    	{
+	    		certResolutionExecutor.setMaximumPoolSize(threads);
+	    		certResolutionExecutor.setCorePoolSize(threads);
+	    	}
+	    	else if (threads < certResolutionExecutor.getMaximumPoolSize())
+	    	{
+	    		certResolutionExecutor.setCorePoolSize(threads);
+	    		certResolutionExecutor.setMaximumPoolSize(threads);
+	    	}
+    	}
+    	
+    	return certResolutionExecutor;
+    }
+    
+    /*
+     * Collects the outcomes of a message's recipient resolutions until the message's deadline passes.
+     */
+    protected static class PublicCertResolutions
+    {
+    	private final Map<String, PublicCertResolution> resolutions = new HashMap<String, PublicCertResolution>();
+    	private boolean closed;
+    	
+    	protected synchronized void put(String addressKey, PublicCertResolution resolution)
+    	{
+    		if (!closed)
+    			resolutions.put(addressKey, resolution);
+    	}
+    	
+    	/*
+    	 * Stops accepting outcomes and returns the outcomes collected so far.
+    	 */
+    	protected synchronized Map<String, PublicCertResolution> close()
+    	{
+    		closed = true;
+    		return new HashMap<String, PublicCertResolution>(resolutions);
+    	}
+    }
+    
+    /*
+     * Outcome of resolving the public certificates of a single address.
+     */
+    protected static class PublicCertResolution
+    {
+    	protected final Collection<X509Certificate> certs;
+    	protected final String failure;
+    	
+    	protected PublicCertResolution(Collection<X509Certificate> certs, String failure)
+    	{
+    		this.certs = certs;
+    		this.failure = failure;
+    	}
     }
 
     /*
@@ -1307,7 +1461,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	Message retVal = null;
     	try
     	{
-    		if (!wrappingEnabled)
+    		if (!isWrappingEnabled())
     		{
     			return new Message(EntitySerializer.Default.deserialize(messageText));
     		}
@@ -1331,7 +1485,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	Message retVal = null;
     	try
     	{
-	        if (!wrappingEnabled)
+	        if (!isWrappingEnabled())
 	        {
 	            return message;
 	        }
@@ -1356,7 +1510,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
      */
     protected Message unwrapMessage(Message message)
     {
-        if (!wrappingEnabled)
+        if (!isWrappingEnabled())
         {
             return message;
         }
@@ -1386,13 +1540,13 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     @SuppressWarnings("unchecked")
     protected void signAndEncryptMessage(OutgoingMessage message)
     {
-        SignedEntity signedEntity = cryptographer.sign(message.getMessage(), message.getSender().getCertificates());
+        SignedEntity signedEntity = getCryptographer().sign(message.getMessage(), message.getSender().getCertificates());
                
         try
         {
-	        if (encryptionEnabled)
+	        if (isEncryptMessages())
 	        {	        	
-	            MimeEntity encryptedEntity = cryptographer.encrypt(signedEntity.getMimeMultipart(), message.getRecipients().getCertificates());
+	            MimeEntity encryptedEntity = getCryptographer().encrypt(signedEntity.getMimeMultipart(), message.getRecipients().getCertificates());
 	            //
 	            // Alter message content to contain encrypted data
 	            //
@@ -1412,7 +1566,8 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	            	headers.setHeader(hdr.getName(), hdr.getValue());
 	            }    	            
 
-	            Message msg = new Message(headers, encryptedEntity.getContentAsBytes());
+	            Message msg = (getCryptographer().isStreamingEnabled()) ? new Message(headers, encryptedEntity) :
+	            	new Message(headers, encryptedEntity.getContentAsBytes());
 	            
 	            message.setMessage(msg);
 	        }
@@ -1428,7 +1583,25 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	            }    
 	              
 	            headers.setHeader(MimeStandard.ContentTypeHeader, signedEntity.getMimeMultipart().getContentType());
-	            Message msg = new Message(headers, signedEntity.getEntityBodyAsBytes());	  
+	            
+	            Message msg = null;
+	            if (getCryptographer().isStreamingEnabled())
+	            {
+	            	// write the headers and multipart into a single buffer so the signed content is only buffered once
+	            	SharedStreamBuffer buffer = new SharedStreamBuffer();
+	            	try
+	            	{
+	            		buffer.writeHeaders(headers);
+	            		signedEntity.getMimeMultipart().writeTo(buffer);
+	            		msg = buffer.toMessage();
+	            	}
+	            	finally
+	            	{
+	            		buffer.dispose();
+	            	}
+	            }
+	            else
+	            	msg = new Message(headers, signedEntity.getEntityBodyAsBytes());	  
 	            
 	            message.setMessage(msg);
 	         }
@@ -1449,7 +1622,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         {
         	try
         	{
-        		certs = this.privateCertResolver.getCertificates(address);
+        		certs = getPrivateCertResolver().getCertificates(address);
         	}
 			catch (NHINDException e)
 			{
@@ -1491,24 +1664,16 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
     	Collection<X509Certificate> certs = null;
         try
         {
-            // try each resolver until it's found
-        	for (CertificateResolver publicResolver : publicCertResolver)
+        	try
         	{
-        		try
-        		{
-        			certs = publicResolver.getCertificates(address);
-        		}
-        		catch (NHINDException e)
-        		{
-        			// if we found some certs, but they are invalid, we are not
-        			// suppose to move on
-        			if (e.getError().equals(AgentError.AllCertsInResolverInvalid))
-        				break;	
-        			else 
-        				throw e;
-        		}
-        		if (certs != null)
-        			break;
+        		certs = lookupPublicCerts(address, getPublicCertResolvers(), 0);
+        	}
+        	catch (NHINDException e)
+        	{
+        		// if we found some certs, but they are invalid, we are not
+        		// suppose to move on
+        		if (!e.getError().equals(AgentError.AllCertsInResolverInvalid))
+        			throw e;
         	}
         	
             if (certs == null && required)
@@ -1539,7 +1704,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
         return certs;
     }
 
-    
+
     protected void checkEnvelopeAddresses(MessageEnvelope envelope)
     {
         this.checkEnvelopeAddresses(envelope.getRecipients(), envelope.getSender());
@@ -1584,7 +1749,7 @@ public class DefaultNHINDAgent implements NHINDAgent, MutableAgent
 	    			try
 	    			{
 	    				// check for compliance
-		    			if (!policyFilter.isCompliant(cert, expression))
+		    			if (!getPolicyFilter().isCompliant(cert, expression))
 		    			{
 		    				filterCert = true;
 		    				break;
@@ -174,4 +174,19 @@ public interface MutableAgent
      * @return The trust model for enforcing message trust
      */
     public TrustModel getTrustModel();
+    
+    /**
+     * Gets the immutable snapshot of the agent's current state.
+     * @return The immutable snapshot of the agent's current state.
+     * @since 2.1
+     */
+    public AgentSnapshot getSnapshot();
+    
+    /**
+     * Atomically replaces the state of the agent with the provided snapshot.  Messages that are already being processed complete
+     * using the snapshot that was current when their processing started.
+     * @param snapshot The new state of the agent.
+     * @since 2.1
+     */
+    public void setSnapshot(AgentSnapshot snapshot);
 }
@@ -49,6 +49,7 @@ public class NHINDAddress extends InternetAddress
     private Collection<X509Certificate> certificates;
     private TrustEnforcementStatus m_trustStatus;
     private Collection<X509Certificate> m_trustAnchors;
+    private String certificateResolutionFailure;
         
     /**
      * Constructs an address from a string representation.  The address must be parsable into an {@link InternetAddress}.
@@ -205,6 +206,26 @@ public class NHINDAddress extends InternetAddress
         return (certificates != null && certificates.size() > 0);
     }
     
+    /**
+     * Gets the reason no certificates could be associated with the address.
+     * @return A description of why certificate resolution failed.  Returns null if certificates were resolved or resolution was not attempted.
+     * @since 2.1
+     */
+    public String getCertificateResolutionFailure()
+    {
+        return certificateResolutionFailure;
+    }
+    
+    /**
+     * Sets the reason no certificates could be associated with the address.
+     * @param reason A description of why certificate resolution failed.
+     * @since 2.1
+     */
+    public void setCertificateResolutionFailure(String reason)
+    {
+        this.certificateResolutionFailure = reason;
+    }
+    
     /**
      * Gets all certificate anchors that this address trusts.  The returned collection is unmodifiable.
      * @return A collection of certificate anchors that are trusted by this address.
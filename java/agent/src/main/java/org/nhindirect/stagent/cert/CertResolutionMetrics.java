@@ -0,0 +1,167 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.cert;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the time spent resolving certificates by each type of {@link CertificateResolver}.  Resolver types are identified by the 
+ * simple class name of the resolver.  Counters are lock free and may be read while lookups are being recorded.
+ * <br>
+ * The class implements a singleton pattern.
+ * @since 2.1
+ */
+public class CertResolutionMetrics 
+{
+	protected static final CertResolutionMetrics INSTANCE = new CertResolutionMetrics();
+	
+	protected final ConcurrentMap<String, ResolverTimings> timings = new ConcurrentHashMap<String, ResolverTimings>();
+	
+	/**
+	 * Gets the instance of the metrics collector.
+	 * @return The metrics collector.
+	 */
+	public static CertResolutionMetrics getInstance()
+	{
+		return INSTANCE;
+	}
+	
+	/**
+	 * Records a single lookup made by a resolver.
+	 * @param resolver The resolver that performed the lookup.
+	 * @param elapsedNanos The time spent in the lookup in nanoseconds.
+	 * @param failed Indicates if the lookup ended with an error.
+	 */
+	public void record(CertificateResolver resolver, long elapsedNanos, boolean failed)
+	{
+		final String type = getResolverType(resolver);
+		ResolverTimings resolverTimings = timings.get(type);
+		if (resolverTimings == null)
+		{
+			final ResolverTimings newTimings = new ResolverTimings();
+			resolverTimings = timings.putIfAbsent(type, newTimings);
+			if (resolverTimings == null)
+				resolverTimings = newTimings;
+		}
+		resolverTimings.record(elapsedNanos, failed);
+	}
+	
+	/**
+	 * Gets the timings of all resolver types that have performed at least one lookup.
+	 * @return An unmodifiable map of resolver type names to their timings.
+	 */
+	public Map<String, ResolverTimings> getTimings()
+	{
+		return Collections.unmodifiableMap(timings);
+	}
+	
+	/**
+	 * Clears all recorded timings.
+	 */
+	public void reset()
+	{
+		timings.clear();
+	}
+	
+	/**
+	 * Gets the name used to group the timings of a resolver.
+	 * @param resolver The resolver.
+	 * @return The simple class name of the resolver, or the full class name for anonymous classes.
+	 */
+	public static String getResolverType(CertificateResolver resolver)
+	{
+		final String simpleName = resolver.getClass().getSimpleName();
+		return (simpleName.isEmpty()) ? resolver.getClass().getName() : simpleName;
+	}
+	
+	/**
+	 * Lookup counts and cumulative time of a single resolver type.
+	 * @since 2.1
+	 */
+	public static class ResolverTimings
+	{
+		protected final AtomicLong lookups = new AtomicLong();
+		protected final AtomicLong failures = new AtomicLong();
+		protected final AtomicLong totalNanos = new AtomicLong();
+		protected final AtomicLong maxNanos = new AtomicLong();
+		
+		protected void record(long elapsedNanos, boolean failed)
+		{
+			lookups.incrementAndGet();
+			if (failed)
+				failures.incrementAndGet();
+			totalNanos.addAndGet(elapsedNanos);
+			
+			long max = maxNanos.get();
+			while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos))
+				max = maxNanos.get();
+		}
+		
+		/**
+		 * Gets the number of lookups performed.
+		 * @return The number of lookups performed.
+		 */
+		public long getLookupCount()
+		{
+			return lookups.get();
+		}
+		
+		/**
+		 * Gets the number of lookups that ended with an error.
+		 * @return The number of lookups that ended with an error.
+		 */
+		public long getFailureCount()
+		{
+			return failures.get();
+		}
+		
+		/**
+		 * Gets the total time spent in lookups.
+		 * @return The total time spent in lookups in milliseconds.
+		 */
+		public long getTotalTimeMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+		}
+		
+		/**
+		 * Gets the average time of a lookup.
+		 * @return The average time of a lookup in milliseconds.  Returns 0 if no lookups have been performed.
+		 */
+		public double getAverageTimeMillis()
+		{
+			final long count = lookups.get();
+			return (count == 0) ? 0 : (double)totalNanos.get() / count / 1000000d;
+		}
+		
+		/**
+		 * Gets the longest time of a single lookup.
+		 * @return The longest time of a single lookup in milliseconds.
+		 */
+		public long getMaxTimeMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+		}
+	}
+}
@@ -37,6 +37,9 @@ import org.nhindirect.stagent.AgentError;
 import org.nhindirect.stagent.CryptoExtensions;
 import org.nhindirect.stagent.NHINDException;
 import org.nhindirect.stagent.cert.impl.CRLRevocationManager;
+import org.nhindirect.stagent.cert.impl.OCSPRevocationManager;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
 
 /**
  * Abstract base class for a certificate store implementation.  It does not implement any specific certificate storage functions
@@ -239,7 +242,7 @@ public abstract class CertificateStore implements X509Store, CertificateResolver
      */
     protected Collection<X509Certificate> filterUsable(Collection<X509Certificate> certs)
     {
-    	Collection<X509Certificate> filteredCerts = new ArrayList<X509Certificate>();
+    	final Collection<X509Certificate> validCerts = new ArrayList<X509Certificate>();
     	
         for (X509Certificate cert : certs)
         {
@@ -252,10 +255,7 @@ public abstract class CertificateStore implements X509Store, CertificateResolver
                  */
         		cert.checkValidity(new GregorianCalendar().getTime());
         		
-        		// Search CRLs to determine if this certificate has been revoked
-        		final RevocationManager revocationManager = CRLRevocationManager.getInstance();
-        		if (!revocationManager.isRevoked(cert))
-                    filteredCerts.add(cert);
+        		validCerts.add(cert);
         	} 
         	catch (CertificateExpiredException e)
         	{
@@ -277,7 +277,55 @@ public abstract class CertificateStore implements X509Store, CertificateResolver
             }
         }
         
+        if (validCerts.size() == 0)
+        	return null;
+        
+        final RevocationManager revocationManager = getRevocationManager();
+        if (revocationManager instanceof OCSPRevocationManager)
+        {
+        	// check the whole candidate set at once so certificates sharing an OCSP responder are checked with a single request
+        	try
+        	{
+        		validCerts.removeAll(((OCSPRevocationManager)revocationManager).getRevokedCertificates(validCerts));
+        	}
+            catch (Exception e) 
+            {
+            	LOGGER.warn("filterUsable(Collection<X509Certificate> certs) - Failed to check the revocation status of the certificates.", e);
+            	return null;
+            }
+        	
+        	return validCerts.size() == 0 ? null : validCerts;
+        }
+        
+    	final Collection<X509Certificate> filteredCerts = new ArrayList<X509Certificate>();
+    	
+        for (X509Certificate cert : validCerts)
+        {
+        	try
+        	{
+        		// Search CRLs to determine if this certificate has been revoked
+        		if (!revocationManager.isRevoked(cert))
+                    filteredCerts.add(cert);
+        	} 
+            catch (Exception e) 
+            {
+            	LOGGER.warn("filterUsable(Collection<X509Certificate> certs) - Certificate with DN " + cert.getSubjectDN() + " is not valid.", e);
+            }
+        }
+        
         return filteredCerts.size() == 0 ? null : filteredCerts;
     }
     
+    /**
+     * Gets the revocation manager used to filter revoked certificates.  OCSP is used if enabled by the {@link OptionsParameter#OCSP_REVOCATION_ENABLED}
+     * option, otherwise CRLs are used.
+     * @return The revocation manager used to filter revoked certificates.
+     */
+    protected RevocationManager getRevocationManager()
+    {
+    	final boolean useOCSP = OptionsParameter.getParamValueAsBoolean(OptionsManager.getInstance().getParameter(OptionsParameter.OCSP_REVOCATION_ENABLED), false);
+    	
+    	return useOCSP ? OCSPRevocationManager.getInstance() : CRLRevocationManager.getInstance();
+    }
+    
 }
@@ -22,6 +22,8 @@ THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.nhindirect.stagent.cert.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -37,12 +39,24 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -67,6 +81,10 @@ import org.nhindirect.stagent.options.OptionsParameter;
  * in a location defined by the {@link OptionsParameter#CRL_CACHE_LOCATION} option (default location is directory name CrlCache
  * in the application's working directory).
  * <br>
+ * The in memory cache is a concurrent map and each distribution point is loaded by a single thread at a time; other threads requesting
+ * the same CRL wait for that load while requests for other CRLs proceed.  Once loaded, a CRL is refreshed in the background shortly before
+ * its next update date so revocation checks are answered from memory.
+ * <br>
  * The manager is implementation as a singleton object.  Instances should be obtained using {@link #getInstance()} 
  * @author beau
  * @author Greg Meyer
@@ -80,32 +98,49 @@ public class CRLRevocationManager implements RevocationManager
     
     private static final String DEFAULT_CRL_CACHE_LOCATION = "CrlCache";
     
-    private static CertificateFactory certificateFactory;
+    private static final long MAX_REFRESH_LEAD_TIME = 3600000L; // 1 hour
+    
+    private static final long REFRESH_RETRY_INTERVAL = 300000L; // 5 minutes
    
     protected static final CRLRevocationManager INSTANCE;
     
     protected final static Map<String, SoftReference<X509CRL>> cache;
     
+    protected final static Map<String, RevokedSerialIndex> indexCache;
+    
+    protected final static ConcurrentMap<String, FutureTask<X509CRL>> pendingLoads;
+    
+    protected final static ConcurrentMap<String, ScheduledFuture<?>> scheduledRefreshes;
+    
+    protected final static ConcurrentMap<String, Boolean> refreshesInFlight;
+    
+    private static final ScheduledExecutorService refreshScheduler;
+    
     protected static File crlCacheLocation;
    
     static 
     {
     	CryptoExtensions.registerJCEProviders();
     	
-        cache = new HashMap<String, SoftReference<X509CRL>>();
+        cache = new ConcurrentHashMap<String, SoftReference<X509CRL>>();
         
-        try 
-        {
-            certificateFactory = CertificateFactory.getInstance("X.509", CryptoExtensions.getJCEProviderName());
-        } 
-        catch (CertificateException e) 
-        {
-        	LOGGER.error("Failed to create certificate factory for CRL management ", e);
-        } 
-        catch (NoSuchProviderException e) 
+        indexCache = new ConcurrentHashMap<String, RevokedSerialIndex>();
+        
+        pendingLoads = new ConcurrentHashMap<String, FutureTask<X509CRL>>();
+        
+        scheduledRefreshes = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+        
+        refreshesInFlight = new ConcurrentHashMap<String, Boolean>();
+        
+        refreshScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
         {
-        	LOGGER.error("Failed to create certificate factory for CRL management ", e);
-		}
+        	public Thread newThread(Runnable r)
+        	{
+        		final Thread thread = new Thread(r, "CRLRevocationManager-refresh");
+        		thread.setDaemon(true);
+        		return thread;
+        	}
+        });
         
         // initialize the cache location
         initCRLCacheLocation();
@@ -137,17 +172,14 @@ public class CRLRevocationManager implements RevocationManager
      */
     public Set<CRL> getCRLCollection() 
     {
-    	synchronized (cache)
-    	{
-    		final Set<CRL> retVal = new HashSet<CRL>();
-    		for (SoftReference<X509CRL> ref : cache.values())
-    		{
-    			final CRL crl = ref.get();
-    			if (crl != null)
-    				retVal.add(crl);
-    		}
-    		return Collections.unmodifiableSet(retVal);
-    	}
+		final Set<CRL> retVal = new HashSet<CRL>();
+		for (SoftReference<X509CRL> ref : cache.values())
+		{
+			final CRL crl = ref.get();
+			if (crl != null)
+				retVal.add(crl);
+		}
+		return Collections.unmodifiableSet(retVal);
     }
 
     /**
@@ -162,10 +194,28 @@ public class CRLRevocationManager implements RevocationManager
      */
     protected X509CRL loadCRLs(X509Certificate certificate)
     {
+    	// iterate through the distribution points and get the first CRL that can be obtained
+    	for (String distPointURL : getDistributionPointURLs(certificate))
+    	{
+            // get the CRL from the distribution point CRL
+            final X509CRL retVal = getCrlFromUri(distPointURL);
+            if (retVal != null) 
+            	return retVal;  // do we need to retrieve the list from each CRL, or is each dist point identical?
+    	}
+        
+        return null;
+    }
+    
+    /**
+     * Gets the CRL distribution point URLs of a certificate.
+     * @param certificate The certificate from which to extract the distribution points.
+     * @return The distribution point URLs of the certificate.  Returns an empty list if the certificate does not have distribution points.
+     */
+    protected List<String> getDistributionPointURLs(X509Certificate certificate)
+    {
+    	final List<String> retVal = new ArrayList<String>();
         if (certificate == null)
-            return null;
-          
-        X509CRL retVal = null;
+            return retVal;
         
         try 
         {	
@@ -176,8 +226,6 @@ public class CRLRevocationManager implements RevocationManager
         	// Add CRL distribution point(s)
             if (distPoints != null) 
             {
-            	
-            	// iterate through the distribution points and get the first CRL that can be obtained
                 for (DistributionPoint distPoint : distPoints.getDistributionPoints())
             	{
                 	String distPointURL = distPoint.getDistributionPoint().getName().toString();
@@ -188,10 +236,7 @@ public class CRLRevocationManager implements RevocationManager
                     	distPointURL = getNameString(distPointURL);
                     }     
 
-                    // get the CRL from the distribution point CRL
-                    retVal = getCrlFromUri(distPointURL);
-                    if (retVal != null) 
-                    	return retVal;  // do we need to retrieve the list from each CRL, or is each dist point identical?
+                    retVal.add(distPointURL);
                 }
             } 
         }
@@ -201,7 +246,7 @@ public class CRLRevocationManager implements RevocationManager
                 LOGGER.warn("Unable to handle CDP CRL(s): " + e.getMessage());
         }
         
-        return null;
+        return retVal;
     }
 
 	/**
@@ -213,8 +258,29 @@ public class CRLRevocationManager implements RevocationManager
     	if (certificate == null)
     		return false;
     	
-    	final CRL crl = loadCRLs(certificate);
-        if(crl == null)
+    	Boolean revoked = null;
+    	
+    	// iterate through the distribution points and use the first CRL that can be obtained
+    	for (String distPointURL : getDistributionPointURLs(certificate))
+    	{
+    		// the serial index answers from memory without needing the parsed CRL
+    		final RevokedSerialIndex index = getRevokedSerialIndex(distPointURL);
+    		if (index != null && index.isIssuedBy(certificate.getIssuerX500Principal()))
+    		{
+    			revoked = index.contains(certificate.getSerialNumber());
+    			break;
+    		}
+    		
+    		// the index can't be used for this certificate... fall back to the CRL itself
+    		final X509CRL crl = getCrlFromUri(distPointURL);
+    		if (crl != null)
+    		{
+    			revoked = crl.isRevoked(certificate);
+    			break;
+    		}
+    	}
+    	
+        if(revoked == null)
         {
     		final StringBuilder builder = new StringBuilder("Cannot find a CRL for certificate.").append("\r\n\tDN: ").append(certificate.getSubjectDN());
     		builder.append("\r\n\tSerial Number: ").append(certificate.getSerialNumber().toString(16));        
@@ -222,7 +288,7 @@ public class CRLRevocationManager implements RevocationManager
             return false;
         }
         
-        if(crl.isRevoked(certificate))
+        if(revoked)
         {
         	final StringBuilder builder = new StringBuilder("Certificate is revoked by CRL ").append("\r\n\tDN: ").append(certificate.getSubjectDN());
      		builder.append("\r\n\tSerial Number: ").append(certificate.getSerialNumber().toString(16));  
@@ -233,169 +299,516 @@ public class CRLRevocationManager implements RevocationManager
     }
           
     /**
-     * Create an X509CRLImpl object from a URL pointing to a valid CRL.
+     * Create an X509CRLImpl object from a URL pointing to a valid CRL.  The CRL is returned from the in memory cache if available.  Otherwise
+     * it is loaded from the file cache or the URL.  Concurrent requests for the same URL share a single load, and loads of different URLs
+     * do not block each other.
      * 
      * @param crlUrlString
      *            The URL of a valid CRL.
      * @return an X509CRLImpl object representing the CRL.
      * @throws Exception
      */
-    protected X509CRL getCrlFromUri(String crlUrlString)
+    protected X509CRL getCrlFromUri(final String crlUrlString)
     {
         if (crlUrlString == null || crlUrlString.trim().length() == 0)
             return null;
         
-        X509CRL crlImpl = null;
-        
         // check to see if the CRL is in the CRL cache
         // cached CRL objects are held as soft references, so they may be deleted from the cache
         // if memory resources are low
-        synchronized(cache) 
-        { 
-        	final SoftReference<X509CRL> crlRef = cache.get(crlUrlString);
-        	if (crlRef != null)
-        	{
-        		// make sure the reference is still valid
-        		crlImpl = crlRef.get();
-	            if ((crlImpl != null && crlImpl.getNextUpdate().before(new Date()))  || (crlImpl == null)) 
-	            {
-	            	// the CRL either is no longer valid, or the SoftReference has been removed
-	            	// either way, remove the SoftReference object from the in memory cache
-	                cache.remove(crlUrlString);
-	                
-	                // only removed the file from the cache if the CRL has expired
-	                // don't removed if the only the SoftReference was removed
-	                if (crlImpl != null)
-	                {
-	                	// the CRL is expired
-	                	removeCrlCacheFile(crlUrlString);
-	                	crlImpl = null;
-	                }
-	            }
-        	}
-        }
+        final X509CRL crlImpl = getCachedCrl(crlUrlString);
+        if (crlImpl != null)
+        	return crlImpl;
         
-        // try to load the CRL from a cache file.... file names are a SHA-1 hash of the 
-        // CRLs distribution point URI
-        if (crlImpl == null)
+        // could not get the CRL from memory... load it from the file cache or the URL
+        return loadSingleFlight(crlUrlString, new Callable<X509CRL>()
         {
-        	// get the file name
-    		final String uriFileName = getCacheFileName(crlUrlString);
-    		if (!uriFileName.isEmpty())
+        	public X509CRL call()
+        	{
+        		return loadCrl(crlUrlString);
+        	}
+        });
+    }
+    
+    /**
+     * Gets a CRL from the in memory cache.  CRLs that have expired are removed from the in memory cache and the file cache.
+     * @param crlUrlString The URL of the CRL.
+     * @return The cached CRL or null if the CRL is not cached or has expired.
+     */
+    protected X509CRL getCachedCrl(String crlUrlString)
+    {
+    	final SoftReference<X509CRL> crlRef = cache.get(crlUrlString);
+    	if (crlRef == null)
+    		return null;
+    	
+		// make sure the reference is still valid
+    	final X509CRL crlImpl = crlRef.get();
+    	if (crlImpl == null)
+    	{
+    		// the SoftReference has been removed... leave the file in place
+    		cache.remove(crlUrlString, crlRef);
+    		return null;
+    	}
+    	
+    	if (isExpired(crlImpl))
+    	{
+    		// only remove the file from the cache if another thread has not already replaced the CRL
+    		if (cache.remove(crlUrlString, crlRef))
     		{
-    			// create a file to load from
-    			final File cacheFile = new File(uriFileName);
-    			InputStream fileInStream = null;
-    			try
-    			{
-    				// make sure the file exists before attempting to load
-    				if (cacheFile.exists())
-    				{
-    			        synchronized(cache) 
-    			        { 
-        					// load the CRL from an input stream
-        					fileInStream = FileUtils.openInputStream(cacheFile);
-
-        					crlImpl = (X509CRL)certificateFactory.generateCRL(fileInStream);
-        					
-        					if (crlImpl == null)
-        					{
-        						throw new CRLException("CRL load from cache resulted in null CLR implementation instance.");
-        					}
-        					
-        					// close the stream now because we can't delete it on windows
-        					// if the stream is open
-        					IOUtils.closeQuietly(fileInStream);
-        					
-        					fileInStream = null;
-        					
-	    					// make sure the CRL isn't expired
-	    		            if (crlImpl != null && crlImpl.getNextUpdate().before(new Date())) 
-	    		            {
-	    		            	// the CRL has expired, so removed it from the cache and 
-	    		            	// delete the file
-	    		                cache.remove(crlUrlString);
-	    		                removeCrlCacheFile(crlUrlString);
-	    		                crlImpl = null;
-	    		            }
-	    		            else
-	    		            {
-	    		            	// file load successful... add it the cache
-	    	                	cache.put(crlUrlString, new SoftReference<X509CRL>(crlImpl));
-	    		            }
-    			        }
-    				}
-    			}
-    			catch (CRLException e)
-    			{
-			        synchronized(cache) 
-			        { 
-			        	LOGGER.warn("CRL cache file " + uriFileName + " appears to be corrupt.  Deleting file.", e);
-	    				// have to close the file stream or else we can't delete file on windows
-	    				IOUtils.closeQuietly(fileInStream);
-			        	
-			        	removeCrlCacheFile(crlUrlString);
-			        }
-    			}
-    			catch (Throwable t)
-    			{
-    				LOGGER.warn("Failed to load CRL from cache file " + uriFileName, t);
-    			}
-    			finally
-    			{
-    				if (fileInStream != null)
-    				{
-    					IOUtils.closeQuietly(fileInStream);
-    				}
-    			}
+    			indexCache.remove(crlUrlString);
+    			removeCrlCacheFile(crlUrlString);
     		}
-        }
+    		
+    		return null;
+    	}
+    	
+    	return crlImpl;
+    }
+    
+    /*
+     * Runs a load of a CRL unless a load of the same URL is already in progress, in which case the result of that
+     * load is returned.
+     */
+    private X509CRL loadSingleFlight(String crlUrlString, Callable<X509CRL> loader)
+    {
+    	final FutureTask<X509CRL> task = new FutureTask<X509CRL>(loader);
+    	
+    	FutureTask<X509CRL> pending = pendingLoads.putIfAbsent(crlUrlString, task);
+    	if (pending == null)
+    	{
+    		try
+    		{
+    			task.run();
+    		}
+    		finally
+    		{
+    			// the result is already in the in memory cache, so new requests will find it there
+    			pendingLoads.remove(crlUrlString, task);
+    		}
+    		pending = task;
+    	}
+    	
+    	try
+    	{
+    		return pending.get();
+    	}
+    	catch (InterruptedException e)
+    	{
+    		Thread.currentThread().interrupt();
+    		LOGGER.warn("Interrupted waiting for CRL load from URI " + crlUrlString);
+    	}
+    	catch (ExecutionException e)
+    	{
+    		LOGGER.warn("Unable to retrieve or parse CRL from URI " + crlUrlString, e.getCause());
+    	}
+    	
+    	return null;
+    }
+    
+    /*
+     * Loads a CRL from the file cache, or from the URL if it is not in the file cache, and adds it to the in memory cache.
+     */
+    private X509CRL loadCrl(String crlUrlString)
+    {
+    	X509CRL crlImpl = loadCRLCacheFile(crlUrlString);
+    	boolean downloaded = false;
+    	
+    	if (crlImpl == null)
+    	{
+    		crlImpl = downloadCrl(crlUrlString);
+    		downloaded = (crlImpl != null);
+    	}
+    	
+    	if (crlImpl != null)
+    		cacheCrl(crlUrlString, crlImpl, downloaded);
+    	
+    	return crlImpl;
+    }
+    
+    /*
+     * Adds a CRL and its revoked serial index to the in memory cache and schedules its refresh.  A newly downloaded CRL is also
+     * written to the file cache.  The index file is written whenever it does not match the cached CRL.
+     */
+    private void cacheCrl(String crlUrlString, X509CRL crlImpl, boolean downloaded)
+    {
+    	// the CRL load was successful.... write it a file
+    	if (downloaded)
+    		writeCRLCacheFile(crlUrlString, crlImpl);
+    	
+    	cache.put(crlUrlString, new SoftReference<X509CRL>(crlImpl));
+    	
+    	try
+    	{
+    		final RevokedSerialIndex index = RevokedSerialIndex.fromCRL(crlImpl);
+    		indexCache.put(crlUrlString, index);
+    		
+    		if (downloaded || !new File(getIndexFileName(crlUrlString)).exists())
+    			writeRevokedSerialIndexFile(crlUrlString, index);
+    	}
+    	catch (Exception e)
+    	{
+    		// revocation checks for this CRL will use the CRL itself
+    		indexCache.remove(crlUrlString);
+    		LOGGER.warn("Failed to build revoked serial index for CRL " + crlUrlString, e);
+    	}
+    	
+    	// a running refresh schedules the next refresh itself once it knows whether the CRL changed
+    	if (!refreshesInFlight.containsKey(crlUrlString))
+    		scheduleRefresh(crlUrlString, crlImpl);
+    }
+    
+    /**
+     * Gets the index of revoked serial numbers for a CRL.  The index is returned from memory if available.  Otherwise it is read from
+     * the index file written next to the CRL cache file, which avoids parsing the CRL after a restart.  If neither is available, the CRL
+     * is loaded and indexed.
+     * @param crlUrlString The URL of the CRL.
+     * @return The index of revoked serial numbers or null if the CRL cannot be loaded or indexed.
+     */
+    protected RevokedSerialIndex getRevokedSerialIndex(String crlUrlString)
+    {
+        if (crlUrlString == null || crlUrlString.trim().length() == 0)
+            return null;
         
-        // could not get file from memory or file cache... load from URL
-        if (crlImpl == null)
+    	RevokedSerialIndex index = indexCache.get(crlUrlString);
+    	if (index != null)
+    	{
+    		if (!index.isExpired())
+    			return index;
+    		
+    		// let the CRL path clean up the expired CRL and its files
+    		indexCache.remove(crlUrlString, index);
+    	}
+    	
+    	index = loadRevokedSerialIndexFile(crlUrlString);
+    	if (index != null)
+    	{
+    		indexCache.put(crlUrlString, index);
+    		if (index.getNextUpdate() != null)
+    		{
+    			// the CRL itself is not loaded, so make sure the index is still refreshed before it expires
+    			final long remaining = index.getNextUpdate().getTime() - System.currentTimeMillis();
+    			if (!scheduledRefreshes.containsKey(crlUrlString) && !refreshesInFlight.containsKey(crlUrlString))
+    				scheduleRefresh(crlUrlString, remaining - Math.min(MAX_REFRESH_LEAD_TIME, remaining / 10));
+    		}
+    		return index;
+    	}
+    	
+    	final X509CRL crlImpl = getCrlFromUri(crlUrlString);
+    	if (crlImpl == null)
+    		return null;
+    	
+    	return indexCache.get(crlUrlString);
+    }
+    
+    /**
+     * Loads a revoked serial index from the index file.  The file is removed if it is corrupt or the indexed CRL has expired.
+     * @param crlUrlString The URL of the CRL.
+     * @return The index read from the index file or null if the file does not exist.
+     */
+    protected RevokedSerialIndex loadRevokedSerialIndexFile(String crlUrlString)
+    {
+    	final String indexFileName = getIndexFileName(crlUrlString);
+    	if (indexFileName.isEmpty())
+    		return null;
+    	
+    	final File indexFile = new File(indexFileName);
+    	// the index is only valid alongside its CRL cache file
+    	if (!indexFile.exists() || !new File(getCacheFileName(crlUrlString)).exists())
+    		return null;
+    	
+    	InputStream inStream = null;
+    	try
+    	{
+    		inStream = new BufferedInputStream(FileUtils.openInputStream(indexFile));
+    		final RevokedSerialIndex index = RevokedSerialIndex.read(inStream);
+    		
+    		if (!index.isExpired())
+    			return index;
+    		
+    		IOUtils.closeQuietly(inStream);
+    		inStream = null;
+    		removeCrlCacheFile(crlUrlString);
+    	}
+    	catch (Exception e)
+    	{
+    		LOGGER.warn("Revoked serial index file " + indexFileName + " appears to be corrupt.  Deleting file.", e);
+    		IOUtils.closeQuietly(inStream);
+    		inStream = null;
+    		indexFile.delete();
+    	}
+    	finally
+    	{
+    		IOUtils.closeQuietly(inStream);
+    	}
+    	
+    	return null;
+    }
+    
+    /**
+     * Writes a revoked serial index to the index file next to the CRL cache file.
+     * @param crlUrlString The URL of the CRL.
+     * @param index The index to write.
+     */
+    protected void writeRevokedSerialIndexFile(String crlUrlString, RevokedSerialIndex index)
+    {
+    	final String indexFileName = getIndexFileName(crlUrlString);
+    	if (indexFileName.isEmpty())
+    		return;
+    	
+    	final File indexFile = new File(indexFileName);
+    	final File tempFile = new File(indexFileName + ".tmp");
+    	OutputStream outStream = null;
+    	try
+    	{
+    		outStream = new BufferedOutputStream(FileUtils.openOutputStream(tempFile));
+    		index.write(outStream);
+    		IOUtils.closeQuietly(outStream);
+    		outStream = null;
+    		
+    		if (indexFile.exists() && !indexFile.delete())
+    		{
+    			LOGGER.warn("Could not delete old revoked serial index file for URI " + crlUrlString);
+    			tempFile.delete();
+    			return;
+    		}
+    		
+    		if (!tempFile.renameTo(indexFile))
+    		{
+    			LOGGER.warn("Could not move revoked serial index file into place for URI " + crlUrlString);
+    			tempFile.delete();
+    		}
+    	}
+    	catch (Throwable t)
+    	{
+    		LOGGER.warn("Failed to write revoked serial index to file " + indexFileName, t);
+    		IOUtils.closeQuietly(outStream);
+    		tempFile.delete();
+    	}
+    }
+    
+    /**
+     * Loads a CRL from the file cache.  The file is removed if it is corrupt or the CRL has expired.
+     * @param crlUrlString The URL of the CRL.
+     * @return The CRL from the file cache or null if the CRL is not in the file cache.
+     */
+    protected X509CRL loadCRLCacheFile(String crlUrlString)
+    {
+        // file names are a SHA-1 hash of the CRLs distribution point URI
+		final String uriFileName = getCacheFileName(crlUrlString);
+		if (uriFileName.isEmpty())
+			return null;
+		
+		// create a file to load from
+		final File cacheFile = new File(uriFileName);
+		
+		// make sure the file exists before attempting to load
+		if (!cacheFile.exists())
+			return null;
+		
+		X509CRL crlImpl = null;
+		InputStream fileInStream = null;
+		try
+		{
+			// load the CRL from an input stream
+			fileInStream = FileUtils.openInputStream(cacheFile);
+
+			crlImpl = generateCRL(fileInStream);
+			
+			if (crlImpl == null)
+			{
+				throw new CRLException("CRL load from cache resulted in null CLR implementation instance.");
+			}
+			
+			// close the stream now because we can't delete it on windows
+			// if the stream is open
+			IOUtils.closeQuietly(fileInStream);
+			fileInStream = null;
+			
+			// make sure the CRL isn't expired
+            if (isExpired(crlImpl)) 
+            {
+            	// the CRL has expired, so delete the file
+                removeCrlCacheFile(crlUrlString);
+                crlImpl = null;
+            }
+		}
+		catch (CRLException e)
+		{
+        	LOGGER.warn("CRL cache file " + uriFileName + " appears to be corrupt.  Deleting file.", e);
+			// have to close the file stream or else we can't delete file on windows
+			IOUtils.closeQuietly(fileInStream);
+			fileInStream = null;
+        	
+        	removeCrlCacheFile(crlUrlString);
+		}
+		catch (Throwable t)
+		{
+			LOGGER.warn("Failed to load CRL from cache file " + uriFileName, t);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileInStream);
+		}
+		
+		return crlImpl;
+    }
+    
+    /**
+     * Downloads a CRL from its distribution point URL.
+     * @param crlUrlString The URL of the CRL.
+     * @return The downloaded CRL or null if the CRL could not be downloaded or parsed.
+     */
+    protected X509CRL downloadCrl(String crlUrlString)
+    {
+    	X509CRL crlImpl = null;
+        try 
         {
+        	// create a URL connection object from the distribution point
+            URLConnection urlConnection = new URL(crlUrlString).openConnection();
+            urlConnection.setConnectTimeout(CRL_FETCH_TIMEOUT);
+            
+            // get the input stream
+            InputStream crlInputStream = urlConnection.getInputStream();
+            
             try 
             {
-            	// create a URL connection object from the distribution point
-                URLConnection urlConnection = new URL(crlUrlString).openConnection();
-                urlConnection.setConnectTimeout(CRL_FETCH_TIMEOUT);
-                
-                // get the input stream
-                InputStream crlInputStream = urlConnection.getInputStream();
-                
-                try 
-                {
-                	// load from URI
-                   crlImpl = (X509CRL)certificateFactory.generateCRL(crlInputStream);
-                } 
-                catch (Throwable t)
-                {
-                	LOGGER.warn("Failed to load CRL from URL " + crlUrlString, t);
-                }
-                finally 
-                {
-                	IOUtils.closeQuietly(crlInputStream);
-                }
-                
-                if (crlImpl != null)
-                {
-                	// the CRL load was successful.... add it to the cache
-                	// and write it a file
-                	synchronized(cache)
-                	{
-                		cache.put(crlUrlString, new SoftReference<X509CRL>(crlImpl));
-                		writeCRLCacheFile(crlUrlString, crlImpl);
-                	}
-                }
+            	// load from URI
+               crlImpl = generateCRL(crlInputStream);
+            } 
+            catch (Throwable t)
+            {
+            	LOGGER.warn("Failed to load CRL from URL " + crlUrlString, t);
             }
-            catch (Exception e)
+            finally 
             {
-                LOGGER.warn("Unable to retrieve or parse CRL from URI " + crlUrlString);
+            	IOUtils.closeQuietly(crlInputStream);
             }
         }
+        catch (Exception e)
+        {
+            LOGGER.warn("Unable to retrieve or parse CRL from URI " + crlUrlString);
+        }
         
         return crlImpl;
     }
+    
+    /**
+     * Schedules a background refresh of a CRL shortly before its next update date so callers are not blocked
+     * downloading the new CRL when the current one expires.
+     * @param crlUrlString The URL of the CRL.
+     * @param crl The currently cached CRL.
+     */
+    protected void scheduleRefresh(final String crlUrlString, X509CRL crl)
+    {
+    	final Date nextUpdate = crl.getNextUpdate();
+    	if (nextUpdate == null)
+    		return;
+    	
+    	final long remaining = nextUpdate.getTime() - System.currentTimeMillis();
+    	if (remaining <= 0)
+    		return;
+    	
+    	scheduleRefresh(crlUrlString, remaining - Math.min(MAX_REFRESH_LEAD_TIME, remaining / 10));
+    }
+    
+    private void scheduleRefresh(final String crlUrlString, long delay)
+    {
+    	try
+    	{
+	    	final ScheduledFuture<?> refresh = refreshScheduler.schedule(new Runnable()
+	    	{
+	    		public void run()
+	    		{
+	    			refreshCrl(crlUrlString);
+	    		}
+	    	}, delay, TimeUnit.MILLISECONDS);
+	    	
+	    	final ScheduledFuture<?> replaced = scheduledRefreshes.put(crlUrlString, refresh);
+	    	if (replaced != null && replaced != refresh)
+	    		replaced.cancel(false);
+    	}
+    	///CLOVER:OFF
+    	catch (RejectedExecutionException e)
+    	{
+    		LOGGER.warn("Failed to schedule refresh of CRL " + crlUrlString, e);
+    	}
+    	///CLOVER:ON
+    }
+    
+    /*
+     * Downloads a new copy of a cached CRL.  Only one refresh of a CRL runs at a time.  If the download fails or returns a CRL that is
+     * no newer than the current one, the current CRL remains in the cache and the refresh is retried after REFRESH_RETRY_INTERVAL
+     * if the current CRL is still valid by then.  Otherwise the CRL is loaded on demand once it expires.
+     */
+    private void refreshCrl(final String crlUrlString)
+    {
+    	if (refreshesInFlight.putIfAbsent(crlUrlString, Boolean.TRUE) != null)
+    		return;
+    	
+    	try
+    	{
+	    	scheduledRefreshes.remove(crlUrlString);
+	    	
+	    	// the index outlives the soft referenced CRL, so use it to determine when the current CRL expires
+	    	final RevokedSerialIndex current = indexCache.get(crlUrlString);
+	    	final Date currentNextUpdate = (current == null) ? null : current.getNextUpdate();
+	    	
+	    	final X509CRL crlImpl = loadSingleFlight(crlUrlString, new Callable<X509CRL>()
+	    	{
+	    		public X509CRL call()
+	    		{
+	    			final X509CRL retVal = downloadCrl(crlUrlString);
+	    			if (retVal != null)
+	    				cacheCrl(crlUrlString, retVal, true);
+	
+	    			return retVal;
+	    		}
+	    	});
+	    	
+	    	if (crlImpl != null && crlImpl.getNextUpdate() != null && 
+	    			(currentNextUpdate == null || crlImpl.getNextUpdate().after(currentNextUpdate)))
+	    	{
+	    		scheduleRefresh(crlUrlString, crlImpl);
+	    		return;
+	    	}
+	    	
+	    	final Date nextUpdate = (crlImpl != null) ? crlImpl.getNextUpdate() : currentNextUpdate;
+	    	if (nextUpdate != null && nextUpdate.getTime() - System.currentTimeMillis() > REFRESH_RETRY_INTERVAL)
+	    		scheduleRefresh(crlUrlString, REFRESH_RETRY_INTERVAL);
+    	}
+    	finally
+    	{
+    		refreshesInFlight.remove(crlUrlString);
+    	}
+    }
+    
+    /*
+     * Certificate factories are not guaranteed to be thread safe, so each parse uses its own factory.  This allows
+     * CRLs from different distribution points to be parsed concurrently.
+     */
+    private static X509CRL generateCRL(InputStream inStream) throws CRLException
+    {
+    	try
+    	{
+    		return (X509CRL)CertificateFactory.getInstance("X.509", CryptoExtensions.getJCEProviderName()).generateCRL(inStream);
+    	}
+    	catch (CertificateException e)
+    	{
+    		throw new CRLException("Failed to create certificate factory for CRL management", e);
+    	}
+    	catch (NoSuchProviderException e)
+    	{
+    		throw new CRLException("Failed to create certificate factory for CRL management", e);
+    	}
+    }
+    
+    /*
+     * Determines if a CRL is past its next update date.
+     */
+    private static boolean isExpired(X509CRL crl)
+    {
+    	return crl.getNextUpdate() != null && crl.getNextUpdate().before(new Date());
+    }
        
     /**
      * Get the URI from the standardized generalNameString.
@@ -450,29 +863,32 @@ public class CRLRevocationManager implements RevocationManager
 		{
 			// build a file descriptor
 			final File cacheFile = new File(uriFileName);
-			OutputStream outStream = null;
+			final File tempFile = new File(uriFileName + ".tmp");
 			try
 			{
+				// write the CRL to a temp file by using the encoded bytes of the CRL
+				// so a reader never sees a partially written file
+				FileUtils.writeByteArrayToFile(tempFile, crl.getEncoded());
+				
 				// if the file already exists, try to delete it
 				if (cacheFile.exists())
 					if (!cacheFile.delete())
 					{
 						LOGGER.warn("Could not delete old CRL cache file for URI " + cacheURI + "  File may become stale");
+						tempFile.delete();
 						return;
 					}
 
-				// write the CRL to a file by using the encoded bytes of the CRL
-				//outStream = FileUtils.openOutputStream(cacheFile);
-				//outStream.write(crl.getEncoded());
-				FileUtils.writeByteArrayToFile(cacheFile, crl.getEncoded());
+				if (!tempFile.renameTo(cacheFile))
+				{
+					LOGGER.warn("Could not move CRL cache file into place for URI " + cacheURI);
+					tempFile.delete();
+				}
 			}
 			catch (Throwable t)
 			{
 				LOGGER.warn("Failed to write CRL to cache file " + uriFileName, t);
-			}
-			finally
-			{
-				IOUtils.closeQuietly(outStream);
+				tempFile.delete();
 			}
 		}
 
@@ -502,6 +918,11 @@ public class CRLRevocationManager implements RevocationManager
 			{
 				LOGGER.warn("Could not delete CRL cache file " + cacheFile.getAbsolutePath(), t);
 			}
+			
+			// the index file is only valid with its CRL cache file
+			final File indexFile = new File(getIndexFileName(cacheURI));
+			if (indexFile.exists() && !indexFile.delete())
+				LOGGER.warn("Could not delete revoked serial index file " + indexFile.getAbsolutePath());
 		}
 
     }
@@ -537,6 +958,20 @@ public class CRLRevocationManager implements RevocationManager
     	return retVal;
     }
     
+    /**
+     * Builds the file name of the revoked serial index for a CRL.  The index is written next to the CRL cache file with the suffix .idx.
+     * @param cacheURI The CRL distribution point URI.
+     * @return A full path file name of the index file.  If the CRL cache location is not available, an empty string is returned.
+     */
+    protected static String getIndexFileName(String cacheURI)
+    {
+    	final String cacheFileName = getCacheFileName(cacheURI);
+    	if (cacheFileName.isEmpty())
+    		return "";
+    	
+    	return cacheFileName.substring(0, cacheFileName.length() - ".cache".length()) + ".idx";
+    }
+    
     /**
      * Creates a string representation from a digest byte array.
      * @param digest The digest as bytes
@@ -564,27 +999,30 @@ public class CRLRevocationManager implements RevocationManager
      */
     public void flush()
     {
-    	synchronized(cache)
-    	{
-    		// clean the in memory cache
-    		cache.clear();
-    		
-    		// clean out the file cache
-    		// make sure the location is defined first
-    		if (crlCacheLocation != null)
-    		{
-    			try
-    			{
-    				// blow away every file in the cache location
-    				FileUtils.cleanDirectory(crlCacheLocation);
-    			}
-    			catch (IOException e)
-    			{
-    				LOGGER.warn("Failed to clean CRL cache directory " + crlCacheLocation.getAbsolutePath() 
-    						+ " during flush operation.", e);
-    			}
-    		}
-    	}
+    	// stop refreshing CRLs that are no longer cached
+    	for (ScheduledFuture<?> refresh : scheduledRefreshes.values())
+    		refresh.cancel(false);
+    	scheduledRefreshes.clear();
+    	
+		// clean the in memory cache
+		cache.clear();
+		indexCache.clear();
+		
+		// clean out the file cache
+		// make sure the location is defined first
+		if (crlCacheLocation != null)
+		{
+			try
+			{
+				// blow away every file in the cache location
+				FileUtils.cleanDirectory(crlCacheLocation);
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn("Failed to clean CRL cache directory " + crlCacheLocation.getAbsolutePath() 
+						+ " during flush operation.", e);
+			}
+		}
     }
     
     /**
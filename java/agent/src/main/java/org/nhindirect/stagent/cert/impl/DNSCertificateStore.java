@@ -36,9 +36,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.mail.internet.InternetAddress;
 
 
 import org.apache.commons.io.IOUtils;
@@ -103,8 +121,18 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 	protected static final int DEFAULT_URL_CONNECTION_TIMEOUT = 10000; // 10 seconds	
 	protected static final int DEFAULT_URL_READ_TIMEOUT = 10000; // 10 hour seconds	
 	
+	protected static final int DEFAULT_LOOKUP_THREADS = 8;
+	
+	// lookups beyond this many waiting for a thread fail immediately rather than queuing without bound
+	protected static final int MAX_QUEUED_LOOKUPS = 1000;
+	
+	// resolvers are kept for the configured servers and the most recently used remote name servers
+	private static final int MAX_POOLED_RESOLVERS = 256;
+	
+	private static final ThreadPoolExecutor lookupExecutor;
+	
 	protected CertificateStore localStoreDelegate;
-	protected List<String> servers = new ArrayList<String>();
+	protected List<String> servers = new CopyOnWriteArrayList<String>();
 	protected JCS cache;
 	protected CertStoreCachePolicy cachePolicy;
 
@@ -112,11 +140,29 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 	protected int retries;
 	protected boolean useTCP;
 	
+	private final ConcurrentMap<String, ExtendedResolver> resolverPool = new ConcurrentHashMap<String, ExtendedResolver>();
+	private final ConcurrentMap<String, LookupTask> pendingLookups = new ConcurrentHashMap<String, LookupTask>();
+	
 	private static final Log LOGGER = LogFactory.getFactory().getInstance(DNSCertificateStore.class);
 	static 
 	{
 		Cache ch = Lookup.getDefaultCache(DClass.IN);
 		ch.clearCache();
+		
+		final int lookupThreads = getConfiguredLookupThreads();
+		
+		lookupExecutor = new ThreadPoolExecutor(lookupThreads, lookupThreads, 60, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED_LOOKUPS), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				final Thread thread = new Thread(r, "DNSCertificateStore-lookup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		lookupExecutor.allowCoreThreadTimeOut(true);
 	}
 	
 	/**
@@ -324,6 +370,143 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
     	return retVal;
     }     
     
+    /**
+     * Starts an asynchronous lookup of the certificates for an address.  Lookups run on a shared pool of threads sized by the
+     * {@link OptionsParameter#DNS_CERT_RESOLVER_LOOKUP_THREADS} option, so the certificates of several addresses can be resolved in parallel.  
+     * The pool is resized when the option changes.  Concurrent requests for the same address share a single lookup.
+     * @param address The address to look up.
+     * @return A future holding the result of {@link #getCertificates(InternetAddress)}.  If the lookup fails, or cannot be queued because
+     * too many lookups are waiting for a thread, the future's get method throws an ExecutionException caused by the failure.
+     * 
+     * @since 2.1
+     */
+    public Future<Collection<X509Certificate>> getCertificatesAsync(final InternetAddress address)
+    {
+    	final String key = address.getAddress().toLowerCase(Locale.ENGLISH);
+    	
+    	final LookupTask task = new LookupTask(new Callable<Collection<X509Certificate>>()
+    	{
+    		@Override
+    		public Collection<X509Certificate> call() throws Exception
+    		{
+    			try
+    			{
+    				return getCertificates(address);
+    			}
+    			finally
+    			{
+    				// only a task that won the pending slot for the address is ever run
+    				pendingLookups.remove(key);
+    			}
+    		}
+    	});
+    	
+    	final LookupTask existing = pendingLookups.putIfAbsent(key, task);
+    	if (existing != null)
+    		return existing;
+    	
+    	try
+    	{
+    		getLookupExecutor().execute(task);
+    	}
+    	catch (RejectedExecutionException e)
+    	{
+    		// the caller must not block on a lookup it asked to run asynchronously
+    		pendingLookups.remove(key);
+    		task.reject(e);
+    	}
+    	
+    	return task;
+    }
+    
+    /*
+     * Gets the shared lookup pool, resizing it if the configured number of threads has changed
+     */
+    private static ThreadPoolExecutor getLookupExecutor()
+    {
+    	final int lookupThreads = getConfiguredLookupThreads();
+    	
+    	synchronized (lookupExecutor)
+    	{
+	    	if (lookupThreads > lookupExecutor.getMaximumPoolSize())
+	    	{
+	    		lookupExecutor.setMaximumPoolSize(lookupThreads);
+	    		lookupExecutor.setCorePoolSize(lookupThreads);
+	    	}
+	    	else if (lookupThreads < lookupExecutor.getMaximumPoolSize())
+	    	{
+	    		lookupExecutor.setCorePoolSize(lookupThreads);
+	    		lookupExecutor.setMaximumPoolSize(lookupThreads);
+	    	}
+    	}
+    	
+    	return lookupExecutor;
+    }
+    
+    private static int getConfiguredLookupThreads()
+    {
+		final OptionsParameter param = OptionsManager.getInstance().getParameter(OptionsParameter.DNS_CERT_RESOLVER_LOOKUP_THREADS);
+		
+		return Math.max(1, OptionsParameter.getParamValueAsInteger(param, DEFAULT_LOOKUP_THREADS));
+    }
+    
+    /*
+     * Future of a lookup that can be failed without running when the lookup pool rejects it
+     */
+    private static class LookupTask extends FutureTask<Collection<X509Certificate>>
+    {
+    	public LookupTask(Callable<Collection<X509Certificate>> callable)
+    	{
+    		super(callable);
+    	}
+    	
+    	public void reject(Throwable t)
+    	{
+    		setException(t);
+    	}
+    }
+    
+    /**
+     * Looks up the certificates of multiple addresses in parallel and waits for the lookups to complete up to an overall deadline.
+     * @param addresses The addresses to look up.
+     * @param timeout The maximum time in milliseconds to wait for all lookups to complete.
+     * @return A map of addresses to their certificates.  Addresses whose lookup failed or did not complete before the deadline are not included
+     * in the map.  Lookups that miss the deadline continue in the background and populate the cache when they complete.
+     * 
+     * @since 2.1
+     */
+    public Map<InternetAddress, Collection<X509Certificate>> getCertificates(Collection<InternetAddress> addresses, long timeout)
+    {
+    	final Map<InternetAddress, Future<Collection<X509Certificate>>> lookups = new LinkedHashMap<InternetAddress, Future<Collection<X509Certificate>>>();
+    	for (InternetAddress address : addresses)
+    		lookups.put(address, getCertificatesAsync(address));
+    	
+    	final long deadline = System.currentTimeMillis() + timeout;
+    	final Map<InternetAddress, Collection<X509Certificate>> retVal = new LinkedHashMap<InternetAddress, Collection<X509Certificate>>();
+    	for (Entry<InternetAddress, Future<Collection<X509Certificate>>> lookup : lookups.entrySet())
+    	{
+    		try
+    		{
+    			retVal.put(lookup.getKey(), lookup.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+    		}
+    		catch (TimeoutException e)
+    		{
+    			LOGGER.warn("DNS certificate lookup for " + lookup.getKey().getAddress() + " did not complete within " + timeout + "ms");
+    		}
+    		catch (ExecutionException e)
+    		{
+    			LOGGER.warn("DNS certificate lookup for " + lookup.getKey().getAddress() + " failed.", e.getCause());
+    		}
+    		catch (InterruptedException e)
+    		{
+    			Thread.currentThread().interrupt();
+    			break;
+    		}
+    	}
+    	
+    	return retVal;
+    }
+    
 	/**
 	 * {@inheritDoc}
 	 */
@@ -350,7 +533,7 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 		{
 			// try the configured servers first
 			Lookup lu = new Lookup(new Name(lookupName), Type.CERT);
-			lu.setResolver(createExResolver(servers.toArray(new String[servers.size()]), retries, timeout)); // default retries is 3, limite to 2
+			lu.setResolver(getResolver(servers.toArray(new String[servers.size()]), retries, timeout)); // default retries is 3, limite to 2
 			
 			Record[] retRecords = lu.run();
 			
@@ -361,7 +544,7 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 				// try to find the resource's name server records
 				// the address may be an alias so check if there is a CNAME record
 				lu = new Lookup(new Name(lookupName), Type.CNAME);
-				lu.setResolver(createExResolver(servers.toArray(new String[servers.size()]), retries, timeout));
+				lu.setResolver(getResolver(servers.toArray(new String[servers.size()]), retries, timeout));
 				
 				retRecords = lu.run();	
 				if (retRecords != null && retRecords.length > 0)
@@ -376,7 +559,7 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 				while (tempDomain.labels() > 1)
 				{
 					lu = new Lookup(tempDomain, Type.NS);
-					lu.setResolver(createExResolver(servers.toArray(new String[servers.size()]), retries, timeout));
+					lu.setResolver(getResolver(servers.toArray(new String[servers.size()]), retries, timeout));
 					retRecords = lu.run();
 					
 					if (retRecords != null && retRecords.length > 0)
@@ -396,7 +579,7 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 				
 				// search the name servers for the cert
 				lu = new Lookup(new Name(lookupName), Type.CERT);
-				lu.setResolver(createExResolver(remoteServers, 2, 3));
+				lu.setResolver(getResolver(remoteServers, 2, 3));
 				
 				retRecords = lu.run();
 			}
@@ -607,6 +790,52 @@ public class DNSCertificateStore extends CertificateStore implements CacheableCe
 		
 	}
 	
+	/**
+	 * Gets a resolver for a set of DNS servers from the resolver pool, creating one if the pool does not hold a resolver for the servers.  
+	 * Resolvers hold no per query state, so a single resolver is shared by all concurrent lookups against the same servers.
+	 * @param servers The DNS servers.
+	 * @param retries The number of times a query is retried.
+	 * @param timeout The query timeout in seconds.
+	 * @return A resolver for the servers or null if the resolver could not be created.
+	 * 
+	 * @since 2.1
+	 */
+	protected ExtendedResolver getResolver(String[] servers, int retries, int timeout)
+	{
+		final String key = Arrays.toString(servers) + ":" + retries + ":" + timeout;
+		
+		ExtendedResolver retVal = resolverPool.get(key);
+		if (retVal == null)
+		{
+			// resolvers are created outside of any lock because creating one may resolve the server host names
+			retVal = createExResolver(servers, retries, timeout);
+			if (retVal != null)
+			{
+				if (resolverPool.size() >= MAX_POOLED_RESOLVERS)
+					evictResolvers();
+				
+				final ExtendedResolver existing = resolverPool.putIfAbsent(key, retVal);
+				if (existing != null)
+					retVal = existing;
+			}
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Removes a quarter of the pooled resolvers.  Evicted resolvers are simply created again when they are next needed.
+	 */
+	private void evictResolvers()
+	{
+		int toRemove = MAX_POOLED_RESOLVERS / 4;
+		for (Iterator<String> iter = resolverPool.keySet().iterator(); iter.hasNext() && toRemove > 0; --toRemove)
+		{
+			iter.next();
+			iter.remove();
+		}
+	}
+	
 	protected ExtendedResolver createExResolver(String[] servers, int retries, int timeout)
 	{
 		ExtendedResolver retVal = null;
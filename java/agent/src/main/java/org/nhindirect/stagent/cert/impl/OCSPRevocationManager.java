@@ -0,0 +1,793 @@
+/*
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org).
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.cert.impl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.X509Extension;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.ocsp.BasicOCSPResp;
+import org.bouncycastle.ocsp.CertificateID;
+import org.bouncycastle.ocsp.OCSPReqGenerator;
+import org.bouncycastle.ocsp.OCSPResp;
+import org.bouncycastle.ocsp.OCSPRespStatus;
+import org.bouncycastle.ocsp.RevokedStatus;
+import org.bouncycastle.ocsp.SingleResp;
+import org.nhindirect.policy.x509.AuthorityInfoAccessExtentionField;
+import org.nhindirect.policy.x509.AuthorityInfoAccessMethodIdentifier;
+import org.nhindirect.policy.x509.AuthorityInfoAccessOCSPLocExtentionField;
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.NHINDException;
+import org.nhindirect.stagent.cert.RevocationManager;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
+import org.nhindirect.stagent.trust.AIACertificateCache;
+
+/**
+ * Revocation manager that checks certificate status using the online certificate status protocol (OCSP).  The responder location is taken
+ * from the OCSP access method of the certificate's authority info access (AIA) extension, and the issuer certificate is resolved from the
+ * caIssuers access method.
+ * <p>
+ * Signed responses are cached until their next update date, and the encoded response can be retrieved for reuse with {@link #getCachedResponse(X509Certificate, X509Certificate)}.
+ * Status checks for multiple certificates that share a responder are sent in a single request.  If a certificate does not have an OCSP location,
+ * its issuer cannot be resolved, the responder cannot be reached, or the responder does not know the certificate, the check falls back to
+ * another revocation manager which by default is the {@link CRLRevocationManager}.
+ * <p>
+ * Responses are only accepted if they are current.  A response is rejected if its this update time is in the future, its next update time has passed, or
+ * it is older than {@link OptionsParameter#OCSP_MAX_RESPONSE_AGE}, allowing for the clock skew set by {@link OptionsParameter#OCSP_CLOCK_SKEW}.  Requests
+ * include a nonce unless disabled with {@link OptionsParameter#OCSP_NONCE_ENABLED}, and responses that return a different nonce are rejected.
+ * @since 2.1
+ */
+public class OCSPRevocationManager implements RevocationManager
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(OCSPRevocationManager.class);
+
+	protected static final int OCSP_CONNECT_TIMEOUT = 3000;
+
+	protected static final int OCSP_READ_TIMEOUT = 5000;
+
+	// time a response without a next update date is cached
+	protected static final long DEFAULT_RESPONSE_TTL = 3600000L; // 1 hour
+
+	protected static final int DEFAULT_CLOCK_SKEW = 300000; // 5 minutes
+
+	protected static final int DEFAULT_MAX_RESPONSE_AGE = 604800000; // 7 days
+
+	private static final int MAX_CACHE_SIZE = 10000;
+
+	private static final int NONCE_SIZE = 16;
+
+	private static final SecureRandom NONCE_GENERATOR = new SecureRandom();
+
+	private static final String CA_ISSUER_CHECK_STRING = AuthorityInfoAccessMethodIdentifier.CA_ISSUERS.getName() + ":";
+
+	private static final String OCSP_SIGNING_EKU = "1.3.6.1.5.5.7.3.9";
+
+	protected static final OCSPRevocationManager INSTANCE = new OCSPRevocationManager();
+
+	/**
+	 * Status of a certificate as reported by an OCSP responder.
+	 */
+	protected static enum OCSPStatus
+	{
+		GOOD,
+		REVOKED,
+		UNKNOWN
+	}
+
+	/**
+	 * Cached status of a certificate along with the signed response that reported the status.
+	 */
+	protected static class CachedResponse
+	{
+		final OCSPStatus status;
+		final long expiration;
+		final byte[] encodedResponse;
+
+		CachedResponse(OCSPStatus status, long expiration, byte[] encodedResponse)
+		{
+			this.status = status;
+			this.expiration = expiration;
+			this.encodedResponse = encodedResponse;
+		}
+
+		boolean isExpired()
+		{
+			return System.currentTimeMillis() >= expiration;
+		}
+	}
+
+	/*
+	 * A certificate waiting for a response from its responder
+	 */
+	private static class PendingCheck
+	{
+		final X509Certificate cert;
+		final X509Certificate issuer;
+		final CertificateID certId;
+		final String cacheKey;
+
+		PendingCheck(X509Certificate cert, X509Certificate issuer, CertificateID certId, String cacheKey)
+		{
+			this.cert = cert;
+			this.issuer = issuer;
+			this.certId = certId;
+			this.cacheKey = cacheKey;
+		}
+	}
+
+	protected final Map<String, CachedResponse> responseCache;
+
+	private final RevocationManager fallbackManager;
+
+	private final AIACertificateCache issuerCache;
+
+    /**
+     * Gets the instance of the OCSP revocation manager.  The instance falls back to the {@link CRLRevocationManager}.
+     * @return The OCSP revocation manager.
+     */
+    public static OCSPRevocationManager getInstance()
+    {
+    	return INSTANCE;
+    }
+
+	/**
+	 * Default constructor.  Falls back to the {@link CRLRevocationManager} when OCSP status is not available.
+	 */
+	public OCSPRevocationManager()
+	{
+		this(CRLRevocationManager.getInstance());
+	}
+
+	/**
+	 * Constructor
+	 * @param fallbackManager The revocation manager used when OCSP status is not available.  If null, certificates without OCSP status
+	 * are considered not revoked.
+	 */
+	public OCSPRevocationManager(RevocationManager fallbackManager)
+	{
+		this.fallbackManager = fallbackManager;
+		this.responseCache = new ConcurrentHashMap<String, CachedResponse>();
+		this.issuerCache = AIACertificateCache.getInstance();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isRevoked(X509Certificate certificate)
+	{
+		if (certificate == null)
+			return false;
+
+		return !getRevokedCertificates(Collections.singletonList(certificate)).isEmpty();
+	}
+
+	/**
+	 * Determine whether or not a certificate has been revoked using a known issuer certificate.
+	 * @param certificate The certificate to inspect.
+	 * @param issuer The issuer of the certificate.
+	 * @return true if the certificate has been revoked, false otherwise.
+	 */
+	public boolean isRevoked(X509Certificate certificate, X509Certificate issuer)
+	{
+		if (certificate == null)
+			return false;
+
+		final Map<X509Certificate, X509Certificate> certs = new HashMap<X509Certificate, X509Certificate>();
+		certs.put(certificate, issuer);
+
+		return !getRevokedCertificates(certs).isEmpty();
+	}
+
+	/**
+	 * Determines which certificates in a collection have been revoked.  Certificates that share an OCSP responder are checked with a single request.
+	 * @param certificates The certificates to inspect.
+	 * @return The certificates that have been revoked.  Returns an empty collection if none of the certificates are revoked.
+	 */
+	public Collection<X509Certificate> getRevokedCertificates(Collection<X509Certificate> certificates)
+	{
+		final Map<X509Certificate, X509Certificate> certs = new LinkedHashMap<X509Certificate, X509Certificate>();
+		for (X509Certificate cert : certificates)
+			certs.put(cert, resolveIssuer(cert));
+
+		return getRevokedCertificates(certs);
+	}
+
+	/*
+	 * Checks the status of certificates with known issuers.  The issuer may be null if it could not be resolved.
+	 */
+	protected Collection<X509Certificate> getRevokedCertificates(Map<X509Certificate, X509Certificate> certsToIssuers)
+	{
+		final Set<X509Certificate> revoked = new HashSet<X509Certificate>();
+		final List<X509Certificate> fallback = new ArrayList<X509Certificate>();
+		final Map<String, List<PendingCheck>> responderChecks = new LinkedHashMap<String, List<PendingCheck>>();
+
+		for (Map.Entry<X509Certificate, X509Certificate> entry : certsToIssuers.entrySet())
+		{
+			final X509Certificate cert = entry.getKey();
+			final X509Certificate issuer = entry.getValue();
+
+			final List<String> locations = getOCSPLocations(cert);
+			if (issuer == null || locations.isEmpty())
+			{
+				fallback.add(cert);
+				continue;
+			}
+
+			final CertificateID certId;
+			try
+			{
+				certId = new CertificateID(CertificateID.HASH_SHA1, issuer, cert.getSerialNumber());
+			}
+			catch (Exception e)
+			{
+				LOGGER.warn("Failed to create OCSP certificate id for certificate " + cert.getSubjectX500Principal().getName(), e);
+				fallback.add(cert);
+				continue;
+			}
+
+			final String cacheKey = createCacheKey(certId);
+			final CachedResponse cached = getCachedResponse(cacheKey);
+			if (cached != null)
+			{
+				if (cached.status == OCSPStatus.REVOKED)
+					revoked.add(cert);
+				else if (cached.status == OCSPStatus.UNKNOWN)
+					fallback.add(cert);
+
+				continue;
+			}
+
+			// the first OCSP location is used
+			List<PendingCheck> checks = responderChecks.get(locations.get(0));
+			if (checks == null)
+			{
+				checks = new ArrayList<PendingCheck>();
+				responderChecks.put(locations.get(0), checks);
+			}
+			checks.add(new PendingCheck(cert, issuer, certId, cacheKey));
+		}
+
+		// one request per responder
+		for (Map.Entry<String, List<PendingCheck>> entry : responderChecks.entrySet())
+		{
+			final Map<String, CachedResponse> responses = queryResponder(entry.getKey(), entry.getValue());
+			for (PendingCheck check : entry.getValue())
+			{
+				final CachedResponse response = responses.get(check.cacheKey);
+				if (response == null || response.status == OCSPStatus.UNKNOWN)
+					fallback.add(check.cert);
+				else if (response.status == OCSPStatus.REVOKED)
+					revoked.add(check.cert);
+			}
+		}
+
+		if (fallbackManager != null)
+		{
+			for (X509Certificate cert : fallback)
+				if (fallbackManager.isRevoked(cert))
+					revoked.add(cert);
+		}
+
+		for (X509Certificate cert : revoked)
+		{
+    		final StringBuilder builder = new StringBuilder("Certificate is revoked ").append("\r\n\tDN: ").append(cert.getSubjectDN());
+    		builder.append("\r\n\tSerial Number: ").append(cert.getSerialNumber().toString(16));
+    		LOGGER.warn(builder.toString());
+		}
+
+		return revoked;
+	}
+
+	/**
+	 * Gets the cached, encoded OCSP response that reported the status of a certificate.  The response can be passed along to other
+	 * parties so they do not need to query the responder again.
+	 * @param certificate The certificate.
+	 * @param issuer The issuer of the certificate.
+	 * @return The DER encoded OCSP response or null if an unexpired response is not cached.
+	 */
+	public byte[] getCachedResponse(X509Certificate certificate, X509Certificate issuer)
+	{
+		try
+		{
+			final CachedResponse cached = getCachedResponse(createCacheKey(new CertificateID(CertificateID.HASH_SHA1, issuer, certificate.getSerialNumber())));
+
+			return (cached == null) ? null : cached.encodedResponse.clone();
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to create OCSP certificate id for certificate " + certificate.getSubjectX500Principal().getName(), e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public void flush()
+	{
+		responseCache.clear();
+	}
+
+	/*
+	 * Sends a single request for all of the checks to the responder and caches the verified responses.
+	 */
+	private Map<String, CachedResponse> queryResponder(String responderURL, List<PendingCheck> checks)
+	{
+		final Map<String, CachedResponse> retVal = new HashMap<String, CachedResponse>();
+
+		try
+		{
+			final int clockSkew = OptionsParameter.getParamValueAsInteger(
+					OptionsManager.getInstance().getParameter(OptionsParameter.OCSP_CLOCK_SKEW), DEFAULT_CLOCK_SKEW);
+			final int maxResponseAge = OptionsParameter.getParamValueAsInteger(
+					OptionsManager.getInstance().getParameter(OptionsParameter.OCSP_MAX_RESPONSE_AGE), DEFAULT_MAX_RESPONSE_AGE);
+			final boolean useNonce = OptionsParameter.getParamValueAsBoolean(
+					OptionsManager.getInstance().getParameter(OptionsParameter.OCSP_NONCE_ENABLED), true);
+
+			final OCSPReqGenerator generator = new OCSPReqGenerator();
+			for (PendingCheck check : checks)
+				generator.addRequest(check.certId);
+
+			byte[] nonce = null;
+			if (useNonce)
+			{
+				nonce = createNonce();
+				generator.setRequestExtensions(createNonceExtensions(nonce));
+			}
+
+			final byte[] encodedResponse = postRequest(responderURL, generator.generate().getEncoded());
+
+			final OCSPResp ocspResponse = new OCSPResp(encodedResponse);
+			if (ocspResponse.getStatus() != OCSPRespStatus.SUCCESSFUL)
+			{
+				LOGGER.warn("OCSP responder " + responderURL + " returned unsuccessful status " + ocspResponse.getStatus());
+				return retVal;
+			}
+
+			final BasicOCSPResp basicResponse = (BasicOCSPResp)ocspResponse.getResponseObject();
+
+			// responders may ignore the nonce, but a responder that returns one must return ours
+			if (nonce != null && !isNonceValid(basicResponse, nonce))
+			{
+				LOGGER.warn("OCSP response from " + responderURL + " does not contain the request nonce.");
+				return retVal;
+			}
+
+			final long now = System.currentTimeMillis();
+
+			// the signature is checked once for each issuer in the request
+			final Map<X509Certificate, Boolean> verifiedIssuers = new HashMap<X509Certificate, Boolean>();
+
+			for (SingleResp singleResponse : basicResponse.getResponses())
+			{
+				final PendingCheck check = findCheck(checks, singleResponse.getCertID());
+				if (check == null)
+					continue;
+
+				Boolean verified = verifiedIssuers.get(check.issuer);
+				if (verified == null)
+				{
+					verified = isResponseSignatureValid(basicResponse, check.issuer);
+					verifiedIssuers.put(check.issuer, verified);
+				}
+
+				if (!verified)
+				{
+					LOGGER.warn("OCSP response from " + responderURL + " could not be verified for issuer " + check.issuer.getSubjectX500Principal().getName());
+					continue;
+				}
+
+				if (!isResponseCurrent(singleResponse, now, clockSkew, maxResponseAge))
+				{
+					LOGGER.warn("OCSP response from " + responderURL + " for certificate " + check.cert.getSubjectX500Principal().getName() + 
+							" is not current.  This update: " + singleResponse.getThisUpdate() + ", next update: " + singleResponse.getNextUpdate());
+					continue;
+				}
+
+				final Object certStatus = singleResponse.getCertStatus();
+				final OCSPStatus status = (certStatus == null) ? OCSPStatus.GOOD :
+					(certStatus instanceof RevokedStatus) ? OCSPStatus.REVOKED : OCSPStatus.UNKNOWN;
+
+				// never cache a response past the maximum age
+				final long expiration = Math.min(singleResponse.getThisUpdate().getTime() + maxResponseAge, 
+						(singleResponse.getNextUpdate() != null) ? singleResponse.getNextUpdate().getTime() : now + DEFAULT_RESPONSE_TTL);
+
+				final CachedResponse response = new CachedResponse(status, expiration, encodedResponse);
+				putCachedResponse(check.cacheKey, response);
+				retVal.put(check.cacheKey, response);
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to retrieve certificate status from OCSP responder " + responderURL, e);
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Determines if a single response is current.  The this update time must not be in the future, the next update time must not have passed, and 
+	 * the response must not be older than the maximum response age.  Each check allows for the clock skew.
+	 * @param response The single response.
+	 * @param now The current time.
+	 * @param clockSkew The tolerated clock skew in milliseconds.
+	 * @param maxResponseAge The maximum age of the response in milliseconds.
+	 * @return true if the response is current, false otherwise.
+	 */
+	protected boolean isResponseCurrent(SingleResp response, long now, long clockSkew, long maxResponseAge)
+	{
+		final Date thisUpdate = response.getThisUpdate();
+		if (thisUpdate == null)
+			return false;
+
+		if (thisUpdate.getTime() > now + clockSkew)
+			return false;
+
+		if (thisUpdate.getTime() + maxResponseAge < now - clockSkew)
+			return false;
+
+		final Date nextUpdate = response.getNextUpdate();
+
+		return (nextUpdate == null || nextUpdate.getTime() >= now - clockSkew);
+	}
+
+	/*
+	 * Creates a random nonce for a request
+	 */
+	private static byte[] createNonce()
+	{
+		final byte[] nonce = new byte[NONCE_SIZE];
+		NONCE_GENERATOR.nextBytes(nonce);
+
+		return nonce;
+	}
+
+	/*
+	 * Creates the request extensions that carry the nonce.  The extension value is the DER encoded nonce octet string.
+	 */
+	private static X509Extensions createNonceExtensions(byte[] nonce)
+	{
+		final Vector<Object> oids = new Vector<Object>();
+		final Vector<Object> values = new Vector<Object>();
+		oids.add(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+		values.add(new X509Extension(false, new DEROctetString(new DEROctetString(nonce).getDEREncoded())));
+
+		return new X509Extensions(oids, values);
+	}
+
+	/*
+	 * A response without a nonce is accepted.  A response with a nonce must echo the request nonce.
+	 */
+	private static boolean isNonceValid(BasicOCSPResp response, byte[] nonce)
+	{
+		final X509Extensions extensions = response.getResponseExtensions();
+		if (extensions == null)
+			return true;
+
+		final X509Extension nonceExtension = extensions.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+		if (nonceExtension == null)
+			return true;
+
+		return Arrays.equals(new DEROctetString(nonce).getDEREncoded(), nonceExtension.getValue().getOctets());
+	}
+
+	/**
+	 * Posts an encoded OCSP request to a responder.
+	 * @param responderURL The URL of the responder.
+	 * @param encodedRequest The DER encoded OCSP request.
+	 * @return The DER encoded OCSP response.
+	 * @throws Exception
+	 */
+	protected byte[] postRequest(String responderURL, byte[] encodedRequest) throws Exception
+	{
+		final HttpURLConnection connection = (HttpURLConnection)new URL(responderURL).openConnection();
+		connection.setConnectTimeout(OCSP_CONNECT_TIMEOUT);
+		connection.setReadTimeout(OCSP_READ_TIMEOUT);
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/ocsp-request");
+		connection.setRequestProperty("Accept", "application/ocsp-response");
+
+		OutputStream outStream = null;
+		InputStream inStream = null;
+		try
+		{
+			outStream = connection.getOutputStream();
+			outStream.write(encodedRequest);
+			outStream.flush();
+
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+				throw new NHINDException("OCSP responder returned HTTP status " + connection.getResponseCode());
+
+			inStream = connection.getInputStream();
+			return IOUtils.toByteArray(inStream);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(outStream);
+			IOUtils.closeQuietly(inStream);
+			connection.disconnect();
+		}
+	}
+
+	/*
+	 * Responses must be signed by the issuer or by a responder certificate issued by the issuer for OCSP signing.
+	 */
+	private boolean isResponseSignatureValid(BasicOCSPResp response, X509Certificate issuer)
+	{
+		try
+		{
+			if (response.verify(issuer.getPublicKey(), CryptoExtensions.getJCEProviderName()))
+				return true;
+		}
+		catch (Exception e)
+		{
+			/* no-op... try a delegated responder */
+		}
+
+		try
+		{
+			final X509Certificate[] responderCerts = response.getCerts(CryptoExtensions.getJCEProviderName());
+			if (responderCerts == null)
+				return false;
+
+			for (X509Certificate responderCert : responderCerts)
+			{
+				try
+				{
+					if (!responderCert.getIssuerX500Principal().equals(issuer.getSubjectX500Principal()))
+						continue;
+
+					final List<String> extendedKeyUsage = responderCert.getExtendedKeyUsage();
+					if (extendedKeyUsage == null || !extendedKeyUsage.contains(OCSP_SIGNING_EKU))
+						continue;
+
+					responderCert.checkValidity();
+					responderCert.verify(issuer.getPublicKey(), CryptoExtensions.getJCEProviderName());
+
+					if (response.verify(responderCert.getPublicKey(), CryptoExtensions.getJCEProviderName()))
+						return true;
+				}
+				catch (Exception e)
+				{
+					/* no-op... try the next responder cert */
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to get responder certificates from OCSP response.", e);
+		}
+
+		return false;
+	}
+
+	private static PendingCheck findCheck(List<PendingCheck> checks, CertificateID certId)
+	{
+		for (PendingCheck check : checks)
+			if (check.certId.equals(certId))
+				return check;
+
+		return null;
+	}
+
+	private CachedResponse getCachedResponse(String cacheKey)
+	{
+		final CachedResponse cached = responseCache.get(cacheKey);
+		if (cached == null)
+			return null;
+
+		if (cached.isExpired())
+		{
+			responseCache.remove(cacheKey);
+			return null;
+		}
+
+		return cached;
+	}
+
+	private void putCachedResponse(String cacheKey, CachedResponse response)
+	{
+		if (!responseCache.containsKey(cacheKey) && responseCache.size() >= MAX_CACHE_SIZE)
+		{
+			// make room by evicting an expired response or, if none are expired, the response that expires first
+			String evictKey = null;
+			long evictExpiration = Long.MAX_VALUE;
+			for (Map.Entry<String, CachedResponse> entry : responseCache.entrySet())
+			{
+				if (entry.getValue().isExpired())
+				{
+					evictKey = entry.getKey();
+					break;
+				}
+
+				if (entry.getValue().expiration < evictExpiration)
+				{
+					evictKey = entry.getKey();
+					evictExpiration = entry.getValue().expiration;
+				}
+			}
+
+			if (evictKey != null)
+				responseCache.remove(evictKey);
+		}
+
+		responseCache.put(cacheKey, response);
+	}
+
+	private static String createCacheKey(CertificateID certId)
+	{
+		return new String(Hex.encodeHex(certId.getIssuerNameHash())) + ":" + new String(Hex.encodeHex(certId.getIssuerKeyHash())) + ":" +
+			certId.getSerialNumber().toString(16);
+	}
+
+	/**
+	 * Gets the OCSP responder locations from the certificate's authority info access extension.
+	 * @param certificate The certificate.
+	 * @return The OCSP responder URLs.  Returns an empty list if the certificate does not specify an OCSP responder.
+	 */
+	protected List<String> getOCSPLocations(X509Certificate certificate)
+	{
+		final List<String> retVal = new ArrayList<String>();
+
+		final AuthorityInfoAccessOCSPLocExtentionField ocspField = new AuthorityInfoAccessOCSPLocExtentionField(false);
+		try
+		{
+			ocspField.injectReferenceValue(certificate);
+
+			for (String location : ocspField.getPolicyValue().getPolicyValue())
+				if (location.startsWith("http"))
+					retVal.add(location);
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to get OCSP locations from certificate " + certificate.getSubjectX500Principal().getName(), e);
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Resolves the issuer of a certificate using the caIssuers access method of the certificate's authority info access extension.
+	 * @param certificate The certificate.
+	 * @return The issuer of the certificate or null if the issuer cannot be resolved.
+	 */
+	protected X509Certificate resolveIssuer(X509Certificate certificate)
+	{
+		// self signed certificates are not checked
+		if (certificate.getIssuerX500Principal().equals(certificate.getSubjectX500Principal()))
+			return null;
+
+		final AuthorityInfoAccessExtentionField aiaField = new AuthorityInfoAccessExtentionField(false);
+		try
+		{
+			aiaField.injectReferenceValue(certificate);
+
+			for (String urlPair : aiaField.getPolicyValue().getPolicyValue())
+			{
+				if (!urlPair.startsWith(CA_ISSUER_CHECK_STRING))
+					continue;
+
+				try
+				{
+					final X509Certificate issuer = issuerCache.getCertificate(urlPair.substring(CA_ISSUER_CHECK_STRING.length()),
+							new AIACertificateCache.CertificateLoader()
+					{
+						@Override
+						public X509Certificate load(String url) throws NHINDException
+						{
+							return downloadIssuer(url);
+						}
+					});
+
+					if (issuer.getSubjectX500Principal().equals(certificate.getIssuerX500Principal()))
+					{
+						certificate.verify(issuer.getPublicKey(), CryptoExtensions.getJCEProviderName());
+						return issuer;
+					}
+				}
+				catch (Exception e)
+				{
+					LOGGER.warn("Issuer certificate cannot be resolved from AIA extension.", e);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Issuer certificate cannot be resolved from AIA extension.", e);
+		}
+
+		return null;
+	}
+
+	/*
+	 * Downloads an issuer certificate from an AIA caIssuers URL.
+	 */
+	private X509Certificate downloadIssuer(String url) throws NHINDException
+	{
+		InputStream inputStream = null;
+		try
+		{
+			final URLConnection connection = new URL(url).openConnection();
+			connection.setConnectTimeout(OCSP_CONNECT_TIMEOUT);
+			connection.setReadTimeout(OCSP_READ_TIMEOUT);
+
+			inputStream = connection.getInputStream();
+
+			return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+		}
+		catch (Exception e)
+		{
+			throw new NHINDException("Failed to download certificate from AIA extension.", e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(inputStream);
+		}
+	}
+
+	/**
+	 * Gets the time an unexpired response for a certificate will be cached.  Used for diagnostics.
+	 * @param certificate The certificate.
+	 * @param issuer The issuer of the certificate.
+	 * @return The date the cached response expires or null if an unexpired response is not cached.
+	 */
+	public Date getCachedResponseExpiration(X509Certificate certificate, X509Certificate issuer)
+	{
+		try
+		{
+			final CachedResponse cached = getCachedResponse(createCacheKey(new CertificateID(CertificateID.HASH_SHA1, issuer, certificate.getSerialNumber())));
+
+			return (cached == null) ? null : new Date(cached.expiration);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+}
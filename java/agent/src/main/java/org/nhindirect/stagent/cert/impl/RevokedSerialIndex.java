@@ -0,0 +1,269 @@
+/*
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org).
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.cert.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Compact, immutable index of the serial numbers revoked by a CRL.  Serial numbers are stored as length prefixed byte arrays packed
+ * into a single sorted buffer, so lookups are a binary search and the index uses a fraction of the memory of a parsed CRL.
+ * <p>
+ * The index only answers revocation questions for certificates issued by the CRL issuer.  Certificates from other issuers
+ * (indirect CRLs) should be checked against the CRL itself.
+ * @since 2.1
+ */
+public class RevokedSerialIndex
+{
+	private static final int FILE_MAGIC = 0x4E494458; // NIDX
+
+	private static final int FILE_VERSION = 1;
+
+	private static final Comparator<byte[]> SERIAL_COMPARATOR = new Comparator<byte[]>()
+	{
+		public int compare(byte[] o1, byte[] o2)
+		{
+			return compareSerials(o1, 0, o1.length, o2);
+		}
+	};
+
+	private final X500Principal issuer;
+	private final Date nextUpdate;
+
+	// packed serial numbers: a one byte length followed by the two's complement bytes of the serial
+	private final byte[] serials;
+	private final int[] offsets;
+
+	/**
+	 * Builds an index from a CRL.
+	 * @param crl The CRL to index.
+	 * @return An index of the serial numbers revoked by the CRL.
+	 */
+	public static RevokedSerialIndex fromCRL(X509CRL crl)
+	{
+		if (crl == null)
+			throw new IllegalArgumentException("CRL cannot be null");
+
+		final Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+
+		final List<byte[]> sorted = new ArrayList<byte[]>((entries == null) ? 0 : entries.size());
+		if (entries != null)
+		{
+			for (X509CRLEntry entry : entries)
+				sorted.add(entry.getSerialNumber().toByteArray());
+		}
+
+		Collections.sort(sorted, SERIAL_COMPARATOR);
+
+		int length = 0;
+		for (byte[] serial : sorted)
+		{
+			if (serial.length > 0xFF)
+				throw new IllegalArgumentException("CRL contains a serial number longer than 255 bytes.");
+
+			length += serial.length + 1;
+		}
+
+		final byte[] packed = new byte[length];
+		int pos = 0;
+		for (byte[] serial : sorted)
+		{
+			packed[pos++] = (byte)serial.length;
+			System.arraycopy(serial, 0, packed, pos, serial.length);
+			pos += serial.length;
+		}
+
+		return new RevokedSerialIndex(crl.getIssuerX500Principal(), crl.getNextUpdate(), packed);
+	}
+
+	/**
+	 * Reads an index previously written with {@link #write(OutputStream)}.
+	 * @param inStream The stream to read the index from.
+	 * @return The index read from the stream.
+	 * @throws IOException Thrown if the stream does not contain a valid index.
+	 */
+	public static RevokedSerialIndex read(InputStream inStream) throws IOException
+	{
+		final DataInputStream dataStream = new DataInputStream(inStream);
+
+		if (dataStream.readInt() != FILE_MAGIC || dataStream.readInt() != FILE_VERSION)
+			throw new IOException("Stream does not contain a revoked serial index.");
+
+		final long nextUpdate = dataStream.readLong();
+
+		final byte[] issuer = new byte[dataStream.readInt()];
+		dataStream.readFully(issuer);
+
+		final byte[] packed = new byte[dataStream.readInt()];
+		dataStream.readFully(packed);
+
+		try
+		{
+			return new RevokedSerialIndex(new X500Principal(issuer), (nextUpdate < 0) ? null : new Date(nextUpdate), packed);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Revoked serial index is corrupt: " + e.getMessage());
+		}
+	}
+
+	private RevokedSerialIndex(X500Principal issuer, Date nextUpdate, byte[] serials)
+	{
+		this.issuer = issuer;
+		this.nextUpdate = nextUpdate;
+		this.serials = serials;
+
+		int count = 0;
+		for (int pos = 0; pos < serials.length; pos += (serials[pos] & 0xFF) + 1)
+			++count;
+
+		this.offsets = new int[count];
+		int pos = 0;
+		for (int i = 0; i < count; ++i)
+		{
+			offsets[i] = pos;
+			pos += (serials[pos] & 0xFF) + 1;
+		}
+
+		if (pos != serials.length)
+			throw new IllegalArgumentException("Serial number buffer is truncated.");
+	}
+
+	/**
+	 * Writes the index to a stream.
+	 * @param outStream The stream to write the index to.
+	 * @throws IOException
+	 */
+	public void write(OutputStream outStream) throws IOException
+	{
+		final DataOutputStream dataStream = new DataOutputStream(outStream);
+
+		dataStream.writeInt(FILE_MAGIC);
+		dataStream.writeInt(FILE_VERSION);
+		dataStream.writeLong((nextUpdate == null) ? -1 : nextUpdate.getTime());
+
+		final byte[] encodedIssuer = issuer.getEncoded();
+		dataStream.writeInt(encodedIssuer.length);
+		dataStream.write(encodedIssuer);
+
+		dataStream.writeInt(serials.length);
+		dataStream.write(serials);
+
+		dataStream.flush();
+	}
+
+	/**
+	 * Indicates if the index can answer revocation questions for a certificate issuer.
+	 * @param certIssuer The issuer of the certificate being checked.
+	 * @return True if the certificate issuer is the issuer of the indexed CRL.
+	 */
+	public boolean isIssuedBy(X500Principal certIssuer)
+	{
+		return issuer.equals(certIssuer);
+	}
+
+	/**
+	 * Indicates if a serial number is revoked by the indexed CRL.
+	 * @param serialNumber The serial number to check.
+	 * @return True if the serial number is in the CRL.  False otherwise.
+	 */
+	public boolean contains(BigInteger serialNumber)
+	{
+		final byte[] key = serialNumber.toByteArray();
+
+		int low = 0;
+		int high = offsets.length - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int offset = offsets[mid];
+
+			final int cmp = compareSerials(serials, offset + 1, serials[offset] & 0xFF, key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the next update date of the indexed CRL.
+	 * @return The next update date of the indexed CRL.  May be null if the CRL does not specify a next update.
+	 */
+	public Date getNextUpdate()
+	{
+		return nextUpdate;
+	}
+
+	/**
+	 * Indicates if the indexed CRL is past its next update date.
+	 * @return True if the indexed CRL has expired.
+	 */
+	public boolean isExpired()
+	{
+		return nextUpdate != null && nextUpdate.before(new Date());
+	}
+
+	/**
+	 * Gets the number of revoked serial numbers in the index.
+	 * @return The number of revoked serial numbers in the index.
+	 */
+	public int size()
+	{
+		return offsets.length;
+	}
+
+	/*
+	 * Orders serials by length then by unsigned byte value.  Serial numbers are minimal two's complement encodings, so equal
+	 * serials have identical bytes.
+	 */
+	private static int compareSerials(byte[] buf, int offset, int length, byte[] key)
+	{
+		if (length != key.length)
+			return (length < key.length) ? -1 : 1;
+
+		for (int i = 0; i < length; ++i)
+		{
+			final int a = buf[offset + i] & 0xFF;
+			final int b = key[i] & 0xFF;
+			if (a != b)
+				return (a < b) ? -1 : 1;
+		}
+
+		return 0;
+	}
+}
@@ -85,6 +85,15 @@ public interface Cryptographer {
      */    
     public MimeEntity decrypt(Message message, X509CertificateEx decryptingCertificate);
     
+    /**
+     * Decrypts a message with the private key of the provided certificate that matches one of the message's recipients.
+     * @param message The message that will be decrypted.
+     * @param decryptingCertificates The certificates whose private keys may be used to decrypt the message.
+     * @return A MimeEntity containing the decrypted part.
+     * @since 2.1
+     */    
+    public MimeEntity decrypt(Message message, Collection<X509CertificateEx> decryptingCertificates);
+    
     /**
      * Decrypts an entity with the provided certificate's private key.
      * @param encryptedEntity The entity that will be decrypted.
@@ -146,5 +155,13 @@ public interface Cryptographer {
     public CMSSignedData deserializeEnvelopedSignature(MimeEntity envelopeEntity);
     
     public CMSSignedData deserializeEnvelopedSignature(byte[] messageBytes);
+    
+    /**
+     * Indicates if the cryptographer reads and writes CMS enveloped and signed data as streams.  When streaming is enabled, entities returned by
+     * the cryptographer are backed by a {@link org.nhindirect.stagent.mail.SharedStreamBuffer} and callers should avoid copying their content into byte arrays.
+     * @return True if streaming is enabled.  False otherwise.
+     * @since 2.1
+     */
+    public boolean isStreamingEnabled();
 
 }
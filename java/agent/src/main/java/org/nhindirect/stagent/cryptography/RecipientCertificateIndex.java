@@ -0,0 +1,160 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.stagent.cryptography;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.cms.RecipientId;
+import org.bouncycastle.x509.extension.X509ExtensionUtil;
+import org.nhindirect.stagent.cert.X509CertificateEx;
+
+/**
+ * Index of decryption certificates keyed by issuer/serial number and subject key identifier.  The index is used to select the private key
+ * that matches a recipient info structure of a CMS enveloped message directly instead of trying each decryption certificate in turn.
+ * @since 2.1
+ */
+public class RecipientCertificateIndex 
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(RecipientCertificateIndex.class);
+	
+	protected static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+	
+	protected final Map<BigInteger, List<X509CertificateEx>> serialIndex;
+	protected final Map<String, X509CertificateEx> keyIdIndex;
+	protected final int size;
+	
+	/**
+	 * Constructor
+	 * @param decryptingCertificates The certificates that will be indexed.  Certificates without a private key are ignored.
+	 */
+	public RecipientCertificateIndex(Collection<X509CertificateEx> decryptingCertificates)
+	{
+		serialIndex = new HashMap<BigInteger, List<X509CertificateEx>>();
+		keyIdIndex = new HashMap<String, X509CertificateEx>();
+		
+		int count = 0;
+		for (X509CertificateEx cert : decryptingCertificates)
+		{
+			if (cert == null || !cert.hasPrivateKey())
+				continue;
+			
+			List<X509CertificateEx> certs = serialIndex.get(cert.getSerialNumber());
+			if (certs == null)
+			{
+				certs = new ArrayList<X509CertificateEx>();
+				serialIndex.put(cert.getSerialNumber(), certs);
+			}
+			if (certs.contains(cert))
+				continue;
+			
+			certs.add(cert);
+			++count;
+			
+			final byte[] keyId = getSubjectKeyIdentifier(cert);
+			if (keyId != null)
+				keyIdIndex.put(new String(Hex.encodeHex(keyId)), cert);
+		}
+		
+		size = count;
+	}
+	
+	/**
+	 * Gets the number of distinct certificates in the index.
+	 * @return The number of distinct certificates in the index.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Gets the certificates that match a recipient identifier.  Recipients identified by issuer and serial number must match both values.  Recipients
+	 * identified by subject key identifier must match the certificate's subject key identifier extension.
+	 * @param rid The recipient identifier of a recipient info structure.
+	 * @return The certificates matching the recipient identifier.  Returns an empty collection if no certificates match.
+	 */
+	public Collection<X509CertificateEx> getMatchingCertificates(RecipientId rid)
+	{
+		if (rid == null)
+			return Collections.emptyList();
+		
+		// subject key identifier
+		final byte[] ridKeyId = rid.getSubjectKeyIdentifier();
+		if (ridKeyId != null)
+		{
+			final X509CertificateEx cert = keyIdIndex.get(new String(Hex.encodeHex(ridKeyId)));
+			if (cert != null)
+				return Collections.singletonList(cert);
+		}
+		
+		// issuer and serial number
+		final BigInteger serial = rid.getSerialNumber();
+		if (serial == null)
+			return Collections.emptyList();
+		
+		final List<X509CertificateEx> certs = serialIndex.get(serial);
+		if (certs == null)
+			return Collections.emptyList();
+		
+		final X500Principal issuer = rid.getIssuer();
+		if (issuer == null)
+			return certs;
+		
+		final List<X509CertificateEx> retVal = new ArrayList<X509CertificateEx>(1);
+		for (X509CertificateEx cert : certs)
+			if (issuer.equals(cert.getIssuerX500Principal()))
+				retVal.add(cert);
+		
+		return retVal;
+	}
+	
+	/*
+	 * Gets the raw key identifier from the subject key identifier extension
+	 */
+	protected static byte[] getSubjectKeyIdentifier(X509Certificate cert)
+	{
+		final byte[] extValue = cert.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+		if (extValue == null)
+			return null;
+		
+		try
+		{
+			return ASN1OctetString.getInstance(X509ExtensionUtil.fromExtensionValue(extValue)).getOctets();
+		}
+		catch (Exception e)
+		{
+			LOGGER.debug("Could not read the subject key identifier of certificate " + cert.getSubjectX500Principal(), e);
+			return null;
+		}
+	}
+}
@@ -31,10 +31,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.security.cert.CertStore;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.mail.MessagingException;
 import javax.mail.internet.ContentType;
@@ -50,15 +53,17 @@ import org.bouncycastle.asn1.cms.AttributeTable;
 import org.bouncycastle.asn1.smime.SMIMECapabilitiesAttribute;
 import org.bouncycastle.asn1.smime.SMIMECapability;
 import org.bouncycastle.asn1.smime.SMIMECapabilityVector;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
-import org.bouncycastle.cms.RecipientId;
+import org.bouncycastle.cms.CMSSignedDataStreamGenerator;
+import org.bouncycastle.cms.CMSTypedStream;
 import org.bouncycastle.cms.RecipientInformation;
-import org.bouncycastle.cms.RecipientInformationStore;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.mail.smime.CMSProcessableBodyPart;
 import org.bouncycastle.mail.smime.SMIMEEnveloped;
 import org.bouncycastle.mail.smime.SMIMEEnvelopedGenerator;
+import org.bouncycastle.mail.smime.SMIMEEnvelopedParser;
 import org.nhindirect.stagent.CryptoExtensions;
 import org.nhindirect.stagent.NHINDException;
 import org.nhindirect.stagent.SignatureValidationException;
@@ -69,11 +74,13 @@ import org.nhindirect.stagent.mail.MimeEntity;
 import org.nhindirect.stagent.mail.MimeError;
 import org.nhindirect.stagent.mail.MimeException;
 import org.nhindirect.stagent.mail.MimeStandard;
+import org.nhindirect.stagent.mail.SharedStreamBuffer;
 import org.nhindirect.stagent.options.OptionsManager;
 import org.nhindirect.stagent.options.OptionsParameter;
 import org.nhindirect.stagent.parser.EntitySerializer;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -100,6 +107,10 @@ public class SMIMECryptographerImpl implements Cryptographer
     private EncryptionAlgorithm m_encryptionAlgorithm;
     private DigestAlgorithm m_digestAlgorithm;
     private boolean m_includeEpilogue = true;
+    private boolean m_streamingEnabled = false;
+    
+    private final AtomicLong decryptAttempts = new AtomicLong();
+    private final AtomicLong decryptHits = new AtomicLong();
 
     /**
      * Constructs a Cryptographer with a default EncryptionAlgorithm and DigestAlgorithm.
@@ -111,6 +122,9 @@ public class SMIMECryptographerImpl implements Cryptographer
         
         param = OptionsManager.getInstance().getParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_DIGEST_ALGORITHM);
         this.m_digestAlgorithm = (param == null) ? DigestAlgorithm.SHA1 : DigestAlgorithm.fromString(param.getParamValue(), DigestAlgorithm.SHA1);
+        
+        param = OptionsManager.getInstance().getParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_STREAMING_ENABLED);
+        this.m_streamingEnabled = OptionsParameter.getParamValueAsBoolean(param, false);
     }
 
     /**
@@ -181,6 +195,46 @@ public class SMIMECryptographerImpl implements Cryptographer
         this.m_includeEpilogue = value;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isStreamingEnabled()
+    {
+    	return this.m_streamingEnabled;
+    }
+    
+    /**
+     * Sets if CMS enveloped and signed data is read and written as streams.  When enabled, message content above the 
+     * {@link OptionsParameter#CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD spill threshold} is buffered on disk instead of on the heap.
+     * @param value True if streaming is enabled.  False otherwise.
+     * @since 2.1
+     */
+    public void setStreamingEnabled(boolean value)
+    {
+    	this.m_streamingEnabled = value;
+    }
+    
+    /**
+     * Gets the number of private key decryption operations attempted since this cryptographer was created.  Only certificates that match
+     * a recipient info structure of the message are attempted.
+     * @return The number of private key decryption attempts.
+     * @since 2.1
+     */
+    public long getDecryptionAttemptCount()
+    {
+    	return decryptAttempts.get();
+    }
+    
+    /**
+     * Gets the number of private key decryption operations that successfully decrypted a message since this cryptographer was created.
+     * @return The number of successful private key decryption attempts.
+     * @since 2.1
+     */
+    public long getDecryptionHitCount()
+    {
+    	return decryptHits.get();
+    }
+    
     /*
      * Encryption
      */
@@ -208,6 +262,9 @@ public class SMIMECryptographerImpl implements Cryptographer
      */
     public MimeEntity encrypt(MimeMultipart mmEntity, Collection<X509Certificate> encryptingCertificates)
     {
+    	if (this.m_streamingEnabled)
+    		return this.encrypt(toStreamedEntity(mmEntity), encryptingCertificates);
+    	
     	MimeEntity entToEncrypt = null;
     	
     	ByteArrayOutputStream oStream = new ByteArrayOutputStream();
@@ -256,6 +313,9 @@ public class SMIMECryptographerImpl implements Cryptographer
         {
             throw new IllegalArgumentException();
         }
+        
+        if (this.m_streamingEnabled)
+        	return this.createEncryptedEnvelopeStreamed(entity, encryptingCertificates);
         	
         MimeBodyPart partToEncrypt = entity;                
         MimeBodyPart encryptedPart =  this.encrypt(partToEncrypt, encryptingCertificates);
@@ -320,6 +380,82 @@ public class SMIMECryptographerImpl implements Cryptographer
         
         return retVal;
     }
+    
+    /*
+     * Writes the multipart entity and its content type header into a shared buffer
+     */
+    private MimeEntity toStreamedEntity(MimeMultipart mmEntity)
+    {
+    	final SharedStreamBuffer buffer = new SharedStreamBuffer();
+    	try
+    	{
+	    	InternetHeaders headers = new InternetHeaders();
+	    	headers.addHeader(MimeStandard.ContentTypeHeader, mmEntity.getContentType());
+	    	
+	    	buffer.writeHeaders(headers);
+	    	mmEntity.writeTo(buffer);
+	    	
+	    	return buffer.toMimeEntity();
+    	}
+    	catch (Exception e)
+    	{
+    		throw new MimeException(MimeError.InvalidMimeEntity, e);
+    	}
+    	finally
+    	{
+    		buffer.dispose();
+    	}
+    }
+    
+    /*
+     * Streams the body part through the CMS enveloped data generator.  The DER output is base64 encoded directly
+     * into a shared buffer so neither the clear text nor the cipher text is held on the heap as a whole.
+     */
+    private MimeEntity createEncryptedEnvelopeStreamed(MimeBodyPart bodyPart, Collection<X509Certificate> encryptingCertificates)
+    {
+        if (bodyPart == null || encryptingCertificates == null || encryptingCertificates.size() == 0)
+        {
+            throw new IllegalArgumentException();
+        }
+        
+        CMSEnvelopedDataStreamGenerator gen = new CMSEnvelopedDataStreamGenerator();
+
+        for(X509Certificate cert : encryptingCertificates)
+        	gen.addKeyTransRecipient(cert);
+        
+        final SharedStreamBuffer buffer = new SharedStreamBuffer();
+        
+        try
+        {
+        	InternetHeaders headers = new InternetHeaders();
+        	headers.addHeader(MimeStandard.ContentTypeHeader, SMIMEStandard.EncryptedContentTypeHeaderValue);
+        	headers.addHeader(MimeStandard.ContentDispositionHeader, "attachment; filename=\"" + SMIMEStandard.DefaultFileName + "\"");
+        	headers.addHeader(MimeStandard.ContentDescriptionHeader, "S/MIME Encrypted Message");
+        	headers.addHeader(MimeStandard.ContentTransferEncodingHeader, MimeStandard.TransferEncodingBase64);
+        	buffer.writeHeaders(headers);
+        	
+        	final String encryAlgOID = toEncyAlgorithmOid(this.m_encryptionAlgorithm);
+        	
+        	OutputStream encodedStream = new Base64OutputStream(buffer, true, 76, MimeStandard.CRLF.getBytes("ASCII"));
+        	OutputStream encryptStream = gen.open(encodedStream, encryAlgOID, 
+        			CryptoExtensions.getJCEProviderNameForTypeAndAlgorithm("KeyGenerator", encryAlgOID));
+        	
+        	bodyPart.writeTo(encryptStream);
+        	
+        	encryptStream.close();
+        	encodedStream.close();
+        	
+        	return buffer.toMimeEntity();
+        }
+        catch (Exception e)
+        {
+        	throw new MimeException(MimeError.Unexpected, e);
+        }
+        finally
+        {
+        	buffer.dispose();
+        }
+    }
 
     //-----------------------------------------------------
     //
@@ -335,7 +471,23 @@ public class SMIMECryptographerImpl implements Cryptographer
      */    
     public MimeEntity decrypt(Message message, X509CertificateEx decryptingCertificate)
     {
-        return this.decrypt(message.extractMimeEntity(), decryptingCertificate);
+        return this.decrypt(message.extractMimeEntity(this.m_streamingEnabled), decryptingCertificate);
+    }
+    
+    /**
+     * Decrypts a message with the private key of the provided certificate that matches one of the message's recipients.
+     * @param message The message that will be decrypted.
+     * @param decryptingCertificates The certificates whose private keys may be used to decrypt the message.
+     * @return A MimeEntity containing the decrypted part.
+     */    
+    public MimeEntity decrypt(Message message, Collection<X509CertificateEx> decryptingCertificates)
+    {
+    	MimeEntity encryptedEntity = message.extractMimeEntity(this.m_streamingEnabled);
+    	
+        encryptedEntity.verifyContentType(SMIMEStandard.EncryptedContentTypeHeaderValue);
+        encryptedEntity.verifyTransferEncoding(MimeStandard.TransferEncodingBase64);
+        
+        return this.decrypt(encryptedEntity, decryptingCertificates);
     }
     
     /**
@@ -383,6 +535,9 @@ public class SMIMECryptographerImpl implements Cryptographer
             throw new IllegalArgumentException();
         }
 
+        if (this.m_streamingEnabled)
+        	return this.decryptStreamed(encryptedEntity, decryptingCertificates);
+        
         MimeEntity retEntity = null;
         try
         {        	                	
@@ -394,16 +549,29 @@ public class SMIMECryptographerImpl implements Cryptographer
             
             SMIMEEnveloped m = new SMIMEEnveloped(encryptedEntity);            
             
-            for (X509CertificateEx decryptCert : decryptingCertificates)
+            // the envelope is parsed once... match each recipient info directly against the indexed decryption certs
+            RecipientCertificateIndex index = new RecipientCertificateIndex(decryptingCertificates);
+            
+            for (RecipientInformation recipient : (Collection<RecipientInformation>)m.getRecipientInfos().getRecipients())
             {   
-	            RecipientId recId = generateRecipientSelector(decryptCert);
-		
-		        RecipientInformationStore recipients = m.getRecipientInfos();
-		        RecipientInformation recipient = recipients.get(recId);	
-		        if (recipient == null)
+            	byte[] decryptedPayload = null;
+            	for (X509CertificateEx decryptCert : index.getMatchingCertificates(recipient.getRID()))
+            	{
+            		decryptAttempts.incrementAndGet();
+            		try
+            		{
+            			decryptedPayload = recipient.getContent(decryptCert.getPrivateKey(), CryptoExtensions.getJCEProviderName());
+            			decryptHits.incrementAndGet();
+            			break;
+            		}
+            		catch (Exception e)
+            		{
+            			LOGGER.warn("Could not decrypt message with private cert subject " + decryptCert.getSubjectX500Principal().getName(), e);
+            		}
+            	}
+            	
+		        if (decryptedPayload == null)
 		        	continue;
-	
-		        byte[] decryptedPayload = recipient.getContent(decryptCert.getPrivateKey(), CryptoExtensions.getJCEProviderName());
 		        
 	            if (LOGGER.isDebugEnabled())
 	            {	
@@ -434,51 +602,76 @@ public class SMIMECryptographerImpl implements Cryptographer
     }
 
     /*
-     * Construct an RecipientId.  Added private function to support multiple versions of BC libraries.
+     * Decrypts the entity using the streaming enveloped data parser.  The envelope is parsed once and the decrypted content 
+     * is written to a shared buffer.
      */
-    private RecipientId generateRecipientSelector(X509Certificate decryptCert)
+    private MimeEntity decryptStreamed(MimeEntity encryptedEntity, Collection<X509CertificateEx> decryptingCertificates)
     {
-    	RecipientId retVal = null;
-    	Class<RecipientId> loadClass = null;
-    	
-    	try
-    	{
-    		// support for bcmail-jdk15-146
-    		loadClass = (Class<RecipientId>)getClass().getClassLoader().loadClass("org.bouncycastle.cms.jcajce.JceKeyTransRecipientId");
-    		
-    		Constructor<RecipientId> constructor = loadClass.getConstructor(X509Certificate.class);
-    		retVal = constructor.newInstance(decryptCert);
-    	}
-    	catch (Throwable e)
-    	{
-    		if (LOGGER.isDebugEnabled())
-    		{
-    			StringBuilder builder = new StringBuilder("bcmail-jdk15-146 org.bouncycastle.cms.jcajce.JceKeyTransRecipientId class not found.");
-    			builder.append("\r\n\tAttempt to fall back to bcmail-jdk15-140 org.bouncycastle.cms.RecipientId");
-    			LOGGER.debug(builder.toString());
-    		}
-    	}
-    	
-    	if (retVal == null)
-    	{
-    		try
-    		{
-	    		// fall back to bcmail-jdk15-140 interfaces
-	    		loadClass = (Class<RecipientId>)getClass().getClassLoader().loadClass("org.bouncycastle.cms.RecipientId");
-
-	    		retVal = loadClass.newInstance();
-	    		
-	    		retVal.setSerialNumber(decryptCert.getSerialNumber());
-	    		retVal.setIssuer(decryptCert.getIssuerX500Principal().getEncoded());
-    		}
-        	catch (Throwable e)
+    	SMIMEEnvelopedParser parser = null;
+    	final SharedStreamBuffer buffer = new SharedStreamBuffer();
+        try
+        {        	                	
+            parser = new SMIMEEnvelopedParser(encryptedEntity);            
+            
+            RecipientCertificateIndex index = new RecipientCertificateIndex(decryptingCertificates);
+            
+            for (RecipientInformation recipient : (Collection<RecipientInformation>)parser.getRecipientInfos().getRecipients())
+            {   
+            	CMSTypedStream decryptedStream = null;
+            	for (X509CertificateEx decryptCert : index.getMatchingCertificates(recipient.getRID()))
+            	{
+            		decryptAttempts.incrementAndGet();
+            		try
+            		{
+            			decryptedStream = recipient.getContentStream(decryptCert.getPrivateKey(), CryptoExtensions.getJCEProviderName());
+            			decryptHits.incrementAndGet();
+            			break;
+            		}
+            		catch (Exception e)
+            		{
+            			LOGGER.warn("Could not decrypt message with private cert subject " + decryptCert.getSubjectX500Principal().getName(), e);
+            		}
+            	}
+            	
+		        if (decryptedStream == null)
+		        	continue;
+	
+		        InputStream contentStream = decryptedStream.getContentStream();
+		        try
+		        {
+		        	IOUtils.copy(contentStream, buffer);
+		        }
+		        finally
+		        {
+		        	IOUtils.closeQuietly(contentStream);
+		        }
+		        
+		        return buffer.toMimeEntity();
+            }
+        }
+        catch (MessagingException e)
+        {
+        	throw new MimeException(MimeError.InvalidMimeEntity, e);
+        }
+        catch (Exception e)
+        {
+        	throw new MimeException(MimeError.Unexpected, e);
+        }
+        finally
+        {
+        	buffer.dispose();
+        	
+        	if (parser != null)
         	{
-         		LOGGER.error("Attempt to fall back to bcmail-jdk15-140 org.bouncycastle.cms.RecipientId failed.", e);
-        	}    		
-    	}
-    	
-    	return retVal;
+        		try
+        		{
+        			parser.close();
+        		}
+        		catch (IOException e) {/* no-op */}
+        	}
+        }
 
+        throw new NHINDException(MimeError.Unexpected, "None of the the provided decryption certs were found in message's RecipientsInfo set.");
     }
     
     /**
@@ -489,13 +682,13 @@ public class SMIMECryptographerImpl implements Cryptographer
      */    
     public SignedEntity sign(Message message, X509Certificate signingCertificate)
     {
-        return this.sign(message.extractEntityForSignature(this.m_includeEpilogue), signingCertificate);
+        return this.sign(message.extractEntityForSignature(this.m_includeEpilogue, this.m_streamingEnabled), signingCertificate);
     }
     
       
     public SignedEntity sign(Message message, Collection<X509Certificate> signingCertificates)
     {
-        return this.sign(message.extractEntityForSignature(this.m_includeEpilogue), signingCertificates);
+        return this.sign(message.extractEntityForSignature(this.m_includeEpilogue, this.m_streamingEnabled), signingCertificates);
     }    
     
     /**
@@ -525,15 +718,22 @@ public class SMIMECryptographerImpl implements Cryptographer
             throw new IllegalArgumentException();
         }
 
-        byte[] messageBytes = EntitySerializer.Default.serializeToBytes(entity);     // Serialize message out as ASCII encoded...
-     
-        MimeMultipart mm = this.createSignatureEntity(messageBytes, signingCertificates);
+        MimeMultipart mm = null;
+        if (this.m_streamingEnabled)
+        {
+        	mm = this.createSignatureEntityStreamed(entity, signingCertificates);
+        }
+        else
+        {
+        	byte[] messageBytes = EntitySerializer.Default.serializeToBytes(entity);     // Serialize message out as ASCII encoded...
+        	mm = this.createSignatureEntity(messageBytes, signingCertificates);
+        }
         SignedEntity retVal = null;
         
         try
         {
         
-        	retVal = new SignedEntity(new ContentType(mm.getContentType()), mm);
+        	retVal = new SignedEntity(new ContentType(mm.getContentType()), mm, m_streamingEnabled);
         }
         catch (ParseException e)
         {
@@ -550,15 +750,7 @@ public class SMIMECryptographerImpl implements Cryptographer
     	{
 	        MimeBodyPart signedContent = new MimeBodyPart(new ByteArrayInputStream(entity));
 	    		        
-	    	ASN1EncodableVector signedAttrs = new ASN1EncodableVector();
-	    	SMIMECapabilityVector caps = new SMIMECapabilityVector();
-	
-	    	caps.addCapability(SMIMECapability.dES_EDE3_CBC);
-	    	caps.addCapability(SMIMECapability.rC2_CBC, 128);
-	    	caps.addCapability(SMIMECapability.dES_CBC);
-	    	caps.addCapability(new DERObjectIdentifier("1.2.840.113549.1.7.1"));	    	
-	    	caps.addCapability(x509CertificateObjectsIdent);
-	    	signedAttrs.add(new SMIMECapabilitiesAttribute(caps));  
+	    	ASN1EncodableVector signedAttrs = createSignedAttributes();
 	    	
 	    	List<X509Certificate>  certList = new ArrayList<X509Certificate>();
 	    	CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
@@ -579,21 +771,7 @@ public class SMIMECryptographerImpl implements Cryptographer
 	    	
 	    	CMSSignedData signedData = generator.generate(content, false, CryptoExtensions.getJCEProviderName());
 	    	  	    	
-	        String  header = "signed; protocol=\"application/pkcs7-signature\"; micalg=" + toDigestAlgorithmMicalg(this.m_digestAlgorithm);           
-	        
-	        String encodedSig = Base64.encodeBase64String(signedData.getEncoded());
-	        
-	        retVal = new MimeMultipart(header.toString());
-	        
-	        MimeBodyPart sig = new MimeBodyPart(new InternetHeaders(), encodedSig.getBytes("ASCII"));
-            sig.addHeader("Content-Type", "application/pkcs7-signature; name=smime.p7s; smime-type=signed-data");
-            sig.addHeader("Content-Disposition", "attachment; filename=\"smime.p7s\"");
-            sig.addHeader("Content-Description", "S/MIME Cryptographic Signature");
-            sig.addHeader("Content-Transfer-Encoding", "base64");
-	                    
-            retVal.addBodyPart(signedContent);
-            retVal.addBodyPart(sig);
-
+	    	retVal = createMultipartSigned(signedContent, signedData.getEncoded());
     	}   
     	catch (MessagingException e)
     	{
@@ -611,6 +789,108 @@ public class SMIMECryptographerImpl implements Cryptographer
   	
     }
     
+    /*
+     * Signs the entity using the streaming signed data generator.  The entity is used as is if its content is already shared, otherwise
+     * it is buffered once in a shared buffer.  The content is streamed through the digest; only the detached signature is held in memory.
+     */
+    private MimeMultipart createSignatureEntityStreamed(MimeEntity entity, Collection<X509Certificate> signingCertificates)
+    {    	
+    	final SharedStreamBuffer buffer = new SharedStreamBuffer();
+    	try
+    	{
+    		MimeBodyPart signedContent = entity;
+    		if (!entity.isContentShared())
+    		{
+    			entity.writeTo(buffer);
+    			signedContent = buffer.toMimeEntity();
+    		}
+	    		        
+	    	ASN1EncodableVector signedAttrs = createSignedAttributes();
+	    	
+	    	List<X509Certificate>  certList = new ArrayList<X509Certificate>();
+	    	CMSSignedDataStreamGenerator generator = new CMSSignedDataStreamGenerator();
+	    	for (X509Certificate signer : signingCertificates)
+	    	{
+	    		if (signer instanceof X509CertificateEx)
+	    		{	    			
+	    			generator.addSigner(((X509CertificateEx)signer).getPrivateKey(), signer,
+	    					toDigestAlgorithmOid(this.m_digestAlgorithm), createAttributeTable(signedAttrs), null, 
+	    					CryptoExtensions.getJCEProviderName());
+	    			certList.add(signer);
+	    		}
+	    	}    	  	    		    	
+	    	
+	    	CertStore certsAndcrls = CertStore.getInstance("Collection", new CollectionCertStoreParameters(certList), 
+	    			CryptoExtensions.getJCEProviderNameForTypeAndAlgorithm("CertStore", "Collection"));   
+	    	generator.addCertificatesAndCRLs(certsAndcrls);
+	    	
+	    	// detached signature... content written to the stream is only digested
+	    	ByteArrayOutputStream signatureStream = new ByteArrayOutputStream();
+	    	OutputStream digestStream = generator.open(signatureStream, false);
+	    	signedContent.writeTo(digestStream);
+	    	digestStream.close();
+	    	
+	    	return createMultipartSigned(signedContent, signatureStream.toByteArray());
+    	}   
+    	catch (MessagingException e)
+    	{
+    		throw new MimeException(MimeError.InvalidMimeEntity, e);  		
+    	}    	
+    	catch (IOException e)
+    	{
+    		throw new SignatureException(SignatureError.InvalidMultipartSigned, e);  		
+    	}   
+    	catch (Exception e)
+    	{
+    		throw new NHINDException(MimeError.Unexpected, e);   		
+    	} 	
+    	finally
+    	{
+    		buffer.dispose();
+    	}
+    }
+    
+    /*
+     * Creates the SMIME capabilities signed attributes
+     */
+    private ASN1EncodableVector createSignedAttributes()
+    {
+    	ASN1EncodableVector signedAttrs = new ASN1EncodableVector();
+    	SMIMECapabilityVector caps = new SMIMECapabilityVector();
+
+    	caps.addCapability(SMIMECapability.dES_EDE3_CBC);
+    	caps.addCapability(SMIMECapability.rC2_CBC, 128);
+    	caps.addCapability(SMIMECapability.dES_CBC);
+    	caps.addCapability(new DERObjectIdentifier("1.2.840.113549.1.7.1"));	    	
+    	caps.addCapability(x509CertificateObjectsIdent);
+    	signedAttrs.add(new SMIMECapabilitiesAttribute(caps));  
+    	
+    	return signedAttrs;
+    }
+    
+    /*
+     * Creates the multipart/signed entity from the signed content and the DER encoded signature
+     */
+    private MimeMultipart createMultipartSigned(MimeBodyPart signedContent, byte[] encodedSignedData) throws MessagingException, IOException
+    {
+        String  header = "signed; protocol=\"application/pkcs7-signature\"; micalg=" + toDigestAlgorithmMicalg(this.m_digestAlgorithm);           
+        
+        String encodedSig = Base64.encodeBase64String(encodedSignedData);
+        
+        MimeMultipart retVal = new MimeMultipart(header.toString());
+        
+        MimeBodyPart sig = new MimeBodyPart(new InternetHeaders(), encodedSig.getBytes("ASCII"));
+        sig.addHeader("Content-Type", "application/pkcs7-signature; name=smime.p7s; smime-type=signed-data");
+        sig.addHeader("Content-Disposition", "attachment; filename=\"smime.p7s\"");
+        sig.addHeader("Content-Description", "S/MIME Cryptographic Signature");
+        sig.addHeader("Content-Transfer-Encoding", "base64");
+                
+        retVal.addBodyPart(signedContent);
+        retVal.addBodyPart(sig);
+        
+        return retVal;
+    }
+    
     /*
      * Construct an attribute table.  Added private function to support multiple versions of BC libraries.
      */
@@ -713,10 +993,31 @@ public class SMIMECryptographerImpl implements Cryptographer
     	try
     	{
     		//signed = new SMIMESigned(entity.getMimeMultipart());
-    		byte[] messageBytes = EntitySerializer.Default.serializeToBytes(entity.getContent());
             MimeBodyPart signedContent = null;
             
-           	signedContent = new MimeBodyPart(new ByteArrayInputStream(messageBytes));
+            if (this.m_streamingEnabled)
+            {
+            	// the content only needs to be buffered if it is not already shared
+            	signedContent = entity.getContent();
+            	if (!entity.getContent().isContentShared())
+            	{
+	            	SharedStreamBuffer buffer = new SharedStreamBuffer();
+	            	try
+	            	{
+	            		entity.getContent().writeTo(buffer);
+	            		signedContent = buffer.toMimeEntity();
+	            	}
+	            	finally
+	            	{
+	            		buffer.dispose();
+	            	}
+            	}
+            }
+            else
+            {
+            	byte[] messageBytes = EntitySerializer.Default.serializeToBytes(entity.getContent());
+            	signedContent = new MimeBodyPart(new ByteArrayInputStream(messageBytes));
+            }
 
             //signed = new CMSSignedData(new CMSProcessableBodyPartInbound(signedContent), entity.getMimeMultipart().getBodyPart(1).getInputStream());                        
            	signed = new CMSSignedData(new CMSProcessableBodyPart(signedContent), entity.getMimeMultipart().getBodyPart(1).getInputStream());
@@ -27,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.mail.BodyPart;
 import javax.mail.MessagingException;
 import javax.mail.internet.ContentType;
 import javax.mail.internet.MimeMultipart;
@@ -36,6 +37,7 @@ import org.apache.commons.io.IOUtils;
 import org.nhindirect.stagent.mail.MimeEntity;
 import org.nhindirect.stagent.mail.MimeError;
 import org.nhindirect.stagent.mail.MimeException;
+import org.nhindirect.stagent.mail.SharedStreamBuffer;
 
 /**
  * A specific type of MultipartEntity that has been signed.
@@ -56,6 +58,19 @@ public class SignedEntity
      * @param mm The MimeMultipart that contains the parts that were used to sign the message and the message signature part.
      */
     public SignedEntity(ContentType mmContentType, MimeMultipart mm) throws MimeException
+    {
+    	this(mmContentType, mm, false);
+    }
+    
+    /**
+     * Constructs a signed entity from a JavaMail MimeMultipart.  The MimeMultipart object contains a part consisting of the message signature.
+     * @param mmContentType The content type of the entity.
+     * @param mm The MimeMultipart that contains the parts that were used to sign the message and the message signature part.
+     * @param streamContent Indicates if parts should be buffered in a {@link SharedStreamBuffer} rather than copied onto the heap.  Parts
+     * that already reference shared content are used as is.
+     * @since 2.1
+     */
+    public SignedEntity(ContentType mmContentType, MimeMultipart mm, boolean streamContent) throws MimeException
     {
     	originalMMPart = mm;        
         
@@ -66,16 +81,8 @@ public class SignedEntity
 	        	
 	        	String contentType = mm.getBodyPart(i).getContentType();
 	        	
-        		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        	    mm.getBodyPart(i).writeTo(bos);
-        	    bos.flush(); 	    
-
-                InputStream stream = new ByteArrayInputStream(bos.toByteArray());
+	        	MimeEntity ent = (streamContent) ? toStreamedEntity(mm.getBodyPart(i)) : toEntity(mm.getBodyPart(i));
 
-                MimeEntity ent = new MimeEntity(stream);
-        	            	
-                IOUtils.closeQuietly(bos);	
-                
 	        	if (contentType.contains("application/pkcs7-signature") 
 	        			|| contentType.contains("application/x-pkcs7-signature"))
 	        	{	        		
@@ -196,6 +203,18 @@ public class SignedEntity
 	 * @return A signed entity containing the content that was signed and the message signature.
 	 */
     public static SignedEntity load(MimeMultipart source)
+    {
+    	return load(source, false);
+    }
+    
+	/**
+	 * Generates a signed entity from a MimeMultipart entity.  The MIME entity should contain an entity part consisting of the message signature.
+	 * @param source The MimeMultipart that will be parsed into a signed entity.
+	 * @param streamContent Indicates if parts should be buffered in a {@link SharedStreamBuffer} rather than copied onto the heap.
+	 * @return A signed entity containing the content that was signed and the message signature.
+	 * @since 2.1
+	 */
+    public static SignedEntity load(MimeMultipart source, boolean streamContent)
     {
         if (source == null)
         {
@@ -206,7 +225,7 @@ public class SignedEntity
         SignedEntity retVal = null;
         try
         {
-        	retVal = new SignedEntity(new ContentType(source.getContentType()), source);
+        	retVal = new SignedEntity(new ContentType(source.getContentType()), source, streamContent);
         }
     	catch (ParseException e)
     	{
@@ -216,6 +235,44 @@ public class SignedEntity
         return retVal;
     }
        
+    /*
+     * Copies a part onto the heap.
+     */
+    private static MimeEntity toEntity(BodyPart part) throws IOException, MessagingException
+    {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	    part.writeTo(bos);
+	    bos.flush(); 	    
+
+        InputStream stream = new ByteArrayInputStream(bos.toByteArray());
+
+        MimeEntity ent = new MimeEntity(stream);
+    	            	
+        IOUtils.closeQuietly(bos);
+        
+        return ent;
+    }
+    
+    /*
+     * Buffers a part in a shared stream buffer unless it already references shared content.
+     */
+    private static MimeEntity toStreamedEntity(BodyPart part) throws IOException, MessagingException
+    {
+    	if (part instanceof MimeEntity && ((MimeEntity)part).isContentShared())
+    		return (MimeEntity)part;
+    	
+    	SharedStreamBuffer buffer = new SharedStreamBuffer();
+    	try
+    	{
+    		part.writeTo(buffer);
+    		return buffer.toMimeEntity();
+    	}
+    	finally
+    	{
+    		buffer.dispose();
+    	}
+    }
+    
     /**
      * Creates a MIME content type based on the digest algorithm.
      * @param digestAlgorithm The digest algorithm used to generate the message signature.
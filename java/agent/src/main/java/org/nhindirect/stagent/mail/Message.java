@@ -63,6 +63,47 @@ public class Message extends MimeMessage
     	super(null, toInputStream(headers, content));
     }    
     
+    /**
+     * Constructs a message with the provided headers and a stream containing the raw message body.  The body is buffered in a 
+     * {@link SharedStreamBuffer} and is not copied onto the heap if it exceeds the configured spill threshold.
+     * @param headers Collection of headers to apply to the message.
+     * @param content Stream containing the raw (transfer encoded) body.
+     * @throws MessagingException
+     * @since 2.1
+     */
+    public Message(InternetHeaders headers, InputStream content) throws MessagingException 
+    {
+    	this(SharedStreamBuffer.createEntityStream(headers, content), true);
+    }  
+    
+    /**
+     * Constructs a message with the provided headers and the body of an existing entity.  If the entity's content is 
+     * read from a shared stream, the message references the same content instead of copying it.
+     * @param headers Collection of headers to apply to the message.
+     * @param entity The entity that contains the message's body.
+     * @throws MessagingException
+     * @since 2.1
+     */
+    public Message(InternetHeaders headers, MimeEntity entity) throws MessagingException 
+    {
+    	this(SharedStreamBuffer.createEntityStream(headers, entity.isContentShared() ? 
+    			new ByteArrayInputStream(new byte[0]) : entity.getRawInputStream()), true);
+    	
+    	if (entity.isContentShared())
+    		this.contentStream = entity.getRawInputStream();
+    }  
+    
+    /*
+     * The message keeps its own sub stream of a shared stream, so a stream created only for this message can be closed once it is parsed.
+     */
+    private Message(InputStream inStream, boolean closeStream) throws MessagingException 
+    {
+    	super(null, inStream);
+    	
+    	if (closeStream)
+    		IOUtils.closeQuietly(inStream);
+    }
+    
     private static InputStream toInputStream(InternetHeaders headers, byte[] content) throws MessagingException 
     {
     	MimeBodyPart prt = new MimeBodyPart(headers, content);
@@ -175,8 +216,20 @@ public class Message extends MimeMessage
 	 * Gets a copy of this message without any non-mime headers.
 	 * @returns A copy of this message without any non-mime headers.
 	 */
-    @SuppressWarnings("unchecked")
     public MimeEntity extractMimeEntity()
+    {
+    	return extractMimeEntity(false);
+    }
+    
+	/**
+	 * Gets a copy of this message without any non-mime headers.
+	 * @param streamContent Indicates if the content should be streamed into the new entity through a {@link SharedStreamBuffer} 
+	 * instead of being copied into a byte array.
+	 * @returns A copy of this message without any non-mime headers.
+	 * @since 2.1
+	 */
+    @SuppressWarnings("unchecked")
+    public MimeEntity extractMimeEntity(boolean streamContent)
     {
     	MimeEntity retVal = null;
     	
@@ -199,7 +252,7 @@ public class Message extends MimeMessage
 	                throw new MimeException(MimeError.InvalidMimeEntity);
 	            }
 	            
-	            retVal = new MimeEntity(headers, getContentAsBytes());
+	            retVal = (streamContent) ? new MimeEntity(headers, getRawInputStream()) : new MimeEntity(headers, getContentAsBytes());
 	            
 	        }
     	}
@@ -217,10 +270,23 @@ public class Message extends MimeMessage
      * @return MimeEntity object that will be used for creating a message signature. 
      */
     public MimeEntity extractEntityForSignature(boolean includeEpilogue)
+    {
+    	return extractEntityForSignature(includeEpilogue, false);
+    }
+    
+    /**
+     * Creates a MimeEntity object from this message that will be used for creating a message signature.  
+     * @param includeEpilogue Indicates if the message's epilogue part (if one exists) should be used in generating the message signature digest. 
+     * @param streamContent Indicates if the content should be streamed into the new entity instead of being copied into a byte array.
+     * @return MimeEntity object that will be used for creating a message signature. 
+     * @since 2.1
+     */
+    public MimeEntity extractEntityForSignature(boolean includeEpilogue, boolean streamContent)
     {
         if (includeEpilogue || !isMultiPart())
         {
-            return this.extractMimeEntity();
+            // subclasses may override the buffered variant, so only use the streaming variant when it was asked for
+            return (streamContent) ? this.extractMimeEntity(true) : this.extractMimeEntity();
         }
         
         /*
@@ -30,6 +30,7 @@ import javax.mail.internet.ContentType;
 import javax.mail.internet.InternetHeaders;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.ParseException;
+import javax.mail.internet.SharedInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.nhindirect.stagent.parser.EntitySerializer;
@@ -60,6 +61,30 @@ public class MimeEntity extends MimeBodyPart
     	super(headers, content);
     }
     
+    /**
+     * Constructs a MimeEntity with the provided headers and a stream containing the raw message body.  The body is buffered in a 
+     * {@link SharedStreamBuffer} and is not copied onto the heap if it exceeds the configured spill threshold.
+     * @param headers Collection of headers to apply to the message.
+     * @param content Stream containing the raw (transfer encoded) body.
+     * @throws MessagingException
+     * @since 2.1
+     */    
+    public MimeEntity(InternetHeaders headers, InputStream content) throws MessagingException
+    {
+    	this(SharedStreamBuffer.createEntityStream(headers, content), true);
+    }
+    
+    /*
+     * The entity keeps its own sub stream of a shared stream, so a stream created only for this entity can be closed once it is parsed.
+     */
+    private MimeEntity(InputStream inStream, boolean closeStream) throws MessagingException
+    {
+    	super(inStream);
+    	
+    	if (closeStream)
+    		IOUtils.closeQuietly(inStream);
+    }
+    
     /**
      * Constructs a message from input stream containing the entire message.
      * @param inStream An input stream containing the entire content (headers and content) of the message.
@@ -69,6 +94,17 @@ public class MimeEntity extends MimeBodyPart
     	super(inStream);
     }
 
+    /**
+     * Indicates if the entity's content references a shared stream, such as a {@link SharedStreamBuffer}, rather than a copy
+     * held on the heap.
+     * @return True if the content of the entity is read from a shared stream.  False otherwise.
+     * @since 2.1
+     */
+    public boolean isContentShared()
+    {
+    	return contentStream instanceof SharedInputStream;
+    }
+    
     /**
      * Indicates if the entity is MIME multipart entity.
      * @return True if the entity is MIME multipart entity.  False otherwise.
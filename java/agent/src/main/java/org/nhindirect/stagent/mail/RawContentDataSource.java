@@ -0,0 +1,100 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.stagent.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * DataSource that exposes the raw (undecoded) content of a MIME part.  When the part was parsed from a {@link SharedInputStream}, the 
+ * stream returned by this data source is also shared which allows a {@link javax.mail.internet.MimeMultipart} to be parsed from the part 
+ * without copying the content.
+ * @since 2.1
+ */
+public class RawContentDataSource implements DataSource
+{
+	protected final MimeBodyPart part;
+	protected final String contentType;
+	
+	/**
+	 * Constructor
+	 * @param part The part whose raw content will be exposed.
+	 * @param contentType The content type reported by the data source.
+	 */
+	public RawContentDataSource(MimeBodyPart part, String contentType)
+	{
+		if (part == null)
+			throw new IllegalArgumentException("Part cannot be null");
+		
+		this.part = part;
+		this.contentType = contentType;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getContentType()
+	{
+		return contentType;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		try
+		{
+			return part.getRawInputStream();
+		}
+		catch (MessagingException e)
+		{
+			final IOException ex = new IOException("Failed to get raw content stream.");
+			ex.initCause(e);
+			throw ex;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName()
+	{
+		return "";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getOutputStream() throws IOException
+	{
+		throw new IOException("Writing to a raw content data source is not supported.");
+	}
+}
@@ -0,0 +1,624 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.stagent.mail;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Enumeration;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
+
+/**
+ * Output buffer for MIME entities that holds content in memory until a configurable size threshold is reached and then spills
+ * the remaining content to a temporary file.  Once writing is complete, the content is read back as a JavaMail {@link SharedInputStream}
+ * so that MIME entities and messages parsed from the buffer reference the underlying content instead of copying it onto the heap.
+ * <p>
+ * The spill threshold and temporary file location are set with the {@link OptionsParameter#CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD} and
+ * {@link OptionsParameter#CRYPTOGRAHPER_SMIME_SPILL_LOCATION} options.
+ * <p>
+ * A spill file is shared by the buffer and every stream read from it, including the sub streams JavaMail creates when parsing entities.  The 
+ * file is closed and deleted when the buffer has been disposed and the last of those streams has been closed or garbage collected.  Callers should
+ * call {@link #dispose()} when they no longer need to read new streams from the buffer.
+ * <p>
+ * This class is not thread safe.
+ * @since 2.1
+ */
+public class SharedStreamBuffer extends OutputStream
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(SharedStreamBuffer.class);
+	
+	/**
+	 * Default number of bytes held in memory before content is spilled to disk.
+	 */
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+	
+	protected static final byte[] CRLF = new byte[] {'\r', '\n'};
+	
+	protected final int threshold;
+	protected final File spillLocation;
+	
+	protected MemoryBuffer memoryBuffer;
+	protected File spillFile;
+	protected OutputStream spillStream;
+	protected SpillFile sharedSpillFile;
+	protected long size;
+	protected boolean closed;
+	protected boolean disposed;
+	
+	/**
+	 * Constructs a buffer using the spill threshold and location configured in the {@link OptionsManager}.
+	 */
+	public SharedStreamBuffer()
+	{
+		this(getConfiguredSpillThreshold(), getConfiguredSpillLocation());
+	}
+	
+	/**
+	 * Constructs a buffer with an explicit spill threshold and location.
+	 * @param threshold The maximum number of bytes held in memory before the content is spilled to disk.
+	 * @param spillLocation The directory where spill files are created.  If null, the system temporary directory is used.
+	 */
+	public SharedStreamBuffer(int threshold, File spillLocation)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("Spill threshold cannot be negative.");
+		
+		this.threshold = threshold;
+		this.spillLocation = spillLocation;
+		this.memoryBuffer = new MemoryBuffer();
+		this.size = 0;
+		this.closed = false;
+		this.disposed = false;
+	}
+	
+	/**
+	 * Gets the spill threshold configured in the {@link OptionsManager}.
+	 * @return The spill threshold in bytes.
+	 */
+	public static int getConfiguredSpillThreshold()
+	{
+		return OptionsParameter.getParamValueAsInteger(OptionsManager.getInstance().getParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD), 
+				DEFAULT_SPILL_THRESHOLD);
+	}
+	
+	/**
+	 * Gets the spill file location configured in the {@link OptionsManager}.
+	 * @return The spill file directory, or null if the system temporary directory should be used.
+	 */
+	public static File getConfiguredSpillLocation()
+	{
+		final OptionsParameter param = OptionsManager.getInstance().getParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_SPILL_LOCATION);
+		if (param == null || param.getParamValue() == null || param.getParamValue().isEmpty())
+			return null;
+		
+		final File location = new File(param.getParamValue());
+		if (!location.exists() && !location.mkdirs())
+		{
+			LOGGER.warn("Could not create spill location " + location.getAbsolutePath() + ".  Using the system temporary directory.");
+			return null;
+		}
+		
+		return location;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException
+	{
+		checkOpen();
+		if (memoryBuffer != null && size + 1 > threshold)
+			spill();
+		
+		if (memoryBuffer != null)
+			memoryBuffer.write(b);
+		else
+			spillStream.write(b);
+		
+		++size;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		checkOpen();
+		if (memoryBuffer != null && size + len > threshold)
+			spill();
+		
+		if (memoryBuffer != null)
+			memoryBuffer.write(b, off, len);
+		else
+			spillStream.write(b, off, len);
+		
+		size += len;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		if (spillStream != null)
+			spillStream.flush();
+	}
+	
+	/**
+	 * Closes the buffer for writing.  The content remains available through {@link #getSharedInputStream()}.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		
+		closed = true;
+		if (spillStream != null)
+		{
+			spillStream.flush();
+			spillStream.close();
+		}
+	}
+	
+	/**
+	 * Writes a MIME header block consisting of the provided headers followed by the blank line that separates the headers from the content.
+	 * @param headers The headers of the entity.
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeHeaders(InternetHeaders headers) throws IOException
+	{
+		final Enumeration<String> lines = headers.getAllHeaderLines();
+		while (lines.hasMoreElements())
+		{
+			write(lines.nextElement().getBytes("ASCII"));
+			write(CRLF);
+		}
+		write(CRLF);
+	}
+	
+	/**
+	 * Writes a complete MIME entity consisting of the provided headers, a blank line, and the raw (still transfer encoded) content.
+	 * @param headers The headers of the entity.
+	 * @param content Stream containing the raw content of the entity.  The stream is read to the end but not closed.
+	 * @throws IOException
+	 */
+	public void writeEntity(InternetHeaders headers, InputStream content) throws IOException
+	{
+		writeHeaders(headers);
+		IOUtils.copy(content, this);
+	}
+	
+	/**
+	 * Buffers a complete MIME entity and returns it as a shared input stream suitable for constructing a {@link MimeEntity} or {@link Message}
+	 * without copying the content onto the heap.
+	 * @param headers The headers of the entity.
+	 * @param content Stream containing the raw content of the entity.
+	 * @return The buffered entity as a {@link SharedInputStream}.
+	 * @throws MessagingException
+	 */
+	public static InputStream createEntityStream(InternetHeaders headers, InputStream content) throws MessagingException
+	{
+		final SharedStreamBuffer buffer = new SharedStreamBuffer();
+		try
+		{
+			buffer.writeEntity(headers, content);
+			return buffer.getSharedInputStream();
+		}
+		catch (IOException e)
+		{
+			throw new MessagingException("Failed to buffer entity content.", e);
+		}
+		finally
+		{
+			// the returned stream keeps the content alive
+			buffer.dispose();
+		}
+	}
+	
+	/**
+	 * Parses the buffered content as a MIME entity and disposes the buffer.  The entity references the buffered content and keeps
+	 * it alive until the entity is no longer used.
+	 * @return The buffered content as a {@link MimeEntity}.
+	 * @throws MessagingException
+	 */
+	public MimeEntity toMimeEntity() throws MessagingException
+	{
+		try
+		{
+			final InputStream stream = getSharedInputStream();
+			try
+			{
+				return new MimeEntity(stream);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(stream);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new MessagingException("Failed to read buffered content.", e);
+		}
+		finally
+		{
+			dispose();
+		}
+	}
+	
+	/**
+	 * Parses the buffered content as a message and disposes the buffer.  The message references the buffered content and keeps
+	 * it alive until the message is no longer used.
+	 * @return The buffered content as a {@link Message}.
+	 * @throws MessagingException
+	 */
+	public Message toMessage() throws MessagingException
+	{
+		try
+		{
+			final InputStream stream = getSharedInputStream();
+			try
+			{
+				return new Message(stream);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(stream);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new MessagingException("Failed to read buffered content.", e);
+		}
+		finally
+		{
+			dispose();
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes written to the buffer.
+	 * @return The number of bytes written to the buffer.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Indicates if the content has been spilled to disk.
+	 * @return True if the content exceeded the threshold and was written to a temporary file.  False otherwise.
+	 */
+	public boolean isSpilled()
+	{
+		return spillFile != null;
+	}
+	
+	/**
+	 * Closes the buffer for writing and returns the content as a shared input stream.  Streams parsed by JavaMail from a 
+	 * SharedInputStream reference sub ranges of the stream rather than copying the content.  Each returned stream should be closed
+	 * when it is no longer needed; a spill file is deleted once the buffer is disposed and all streams that reference it are closed.
+	 * @return The buffered content as a {@link SharedInputStream}.
+	 * @throws IOException
+	 */
+	public InputStream getSharedInputStream() throws IOException
+	{
+		if (disposed)
+			throw new IOException("Buffer has been disposed.");
+		
+		close();
+		
+		if (memoryBuffer != null)
+			return memoryBuffer.toSharedInputStream();
+		
+		if (sharedSpillFile == null)
+		{
+			// the buffer holds a reference until it is disposed so new streams can be created
+			sharedSpillFile = new SpillFile(spillFile);
+			sharedSpillFile.acquire();
+		}
+		
+		return new SpillFileInputStream(sharedSpillFile, 0, sharedSpillFile.length);
+	}
+	
+	/**
+	 * Releases the buffer's hold on its content.  A spill file that was never read is deleted immediately; otherwise it is deleted
+	 * when the last stream obtained from {@link #getSharedInputStream()} is closed.  Streams previously obtained remain valid.
+	 */
+	public void dispose()
+	{
+		if (disposed)
+			return;
+		
+		disposed = true;
+		IOUtils.closeQuietly(this);
+		memoryBuffer = null;
+		
+		if (sharedSpillFile != null)
+			sharedSpillFile.release();
+		else if (spillFile != null)
+			deleteSpillFile(spillFile);
+	}
+	
+	protected void checkOpen() throws IOException
+	{
+		if (closed)
+			throw new IOException("Buffer is closed.");
+	}
+	
+	protected void spill() throws IOException
+	{
+		spillFile = File.createTempFile("nhind", ".spill", spillLocation);
+		
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("Content exceeded " + threshold + " bytes.  Spilling to " + spillFile.getAbsolutePath());
+		
+		spillStream = new BufferedOutputStream(new FileOutputStream(spillFile));
+		memoryBuffer.writeTo(spillStream);
+		memoryBuffer = null;
+	}
+	
+	protected static void deleteSpillFile(File file)
+	{
+		if (file.exists() && !file.delete())
+		{
+			LOGGER.warn("Could not delete spill file " + file.getAbsolutePath() + ".  It will be deleted on exit.");
+			file.deleteOnExit();
+		}
+	}
+	
+	/*
+	 * A spill file shared by all streams that read it.  The file is closed and deleted when the last reference is released.
+	 */
+	protected static class SpillFile
+	{
+		protected final File file;
+		protected final RandomAccessFile randomAccessFile;
+		protected final long length;
+		protected int references;
+		protected boolean released;
+		
+		public SpillFile(File file) throws IOException
+		{
+			this.file = file;
+			this.randomAccessFile = new RandomAccessFile(file, "r");
+			this.length = randomAccessFile.length();
+			this.references = 0;
+			this.released = false;
+		}
+		
+		public synchronized void acquire()
+		{
+			if (released)
+				throw new IllegalStateException("Spill file " + file.getAbsolutePath() + " has been released.");
+			
+			++references;
+		}
+		
+		public synchronized void release()
+		{
+			if (released || --references > 0)
+				return;
+			
+			released = true;
+			try
+			{
+				randomAccessFile.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn("Failed to close spill file " + file.getAbsolutePath(), e);
+			}
+			deleteSpillFile(file);
+		}
+		
+		public synchronized int read(long position, byte[] b, int off, int len) throws IOException
+		{
+			if (released)
+				throw new IOException("Spill file " + file.getAbsolutePath() + " has been released.");
+			
+			randomAccessFile.seek(position);
+			return randomAccessFile.read(b, off, len);
+		}
+	}
+	
+	/*
+	 * Buffered, shared stream over a range of a spill file.  Each stream holds a reference to the file until it is closed.
+	 */
+	protected static class SpillFileInputStream extends InputStream implements SharedInputStream
+	{
+		protected static final int READ_BUFFER_SIZE = 8192;
+		
+		protected final SpillFile spillFile;
+		protected final long start;
+		protected final long end;
+		protected long position;
+		protected long markPosition;
+		protected final byte[] readBuffer;
+		protected long readBufferStart;
+		protected int readBufferLength;
+		protected boolean streamClosed;
+		
+		public SpillFileInputStream(SpillFile spillFile, long start, long end)
+		{
+			spillFile.acquire();
+			
+			this.spillFile = spillFile;
+			this.start = start;
+			this.end = end;
+			this.position = start;
+			this.markPosition = start;
+			this.readBuffer = new byte[(int)Math.max(1, Math.min(READ_BUFFER_SIZE, end - start))];
+			this.readBufferStart = start;
+			this.readBufferLength = 0;
+			this.streamClosed = false;
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			if (!fill())
+				return -1;
+			
+			return readBuffer[(int)(position++ - readBufferStart)] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			
+			if (!fill())
+				return -1;
+			
+			final int count = (int)Math.min(len, readBufferStart + readBufferLength - position);
+			System.arraycopy(readBuffer, (int)(position - readBufferStart), b, off, count);
+			position += count;
+			
+			return count;
+		}
+		
+		@Override
+		public long skip(long n)
+		{
+			final long skipped = Math.max(0, Math.min(n, end - position));
+			position += skipped;
+			
+			return skipped;
+		}
+		
+		@Override
+		public int available()
+		{
+			return (int)Math.min(Integer.MAX_VALUE, end - position);
+		}
+		
+		@Override
+		public boolean markSupported()
+		{
+			return true;
+		}
+		
+		@Override
+		public void mark(int readlimit)
+		{
+			markPosition = position;
+		}
+		
+		@Override
+		public void reset()
+		{
+			position = markPosition;
+		}
+		
+		@Override
+		public long getPosition()
+		{
+			return position - start;
+		}
+		
+		@Override
+		public InputStream newStream(long streamStart, long streamEnd)
+		{
+			if (streamClosed)
+				throw new IllegalStateException("Stream is closed.");
+			
+			return new SpillFileInputStream(spillFile, start + streamStart, (streamEnd < 0) ? end : Math.min(end, start + streamEnd));
+		}
+		
+		@Override
+		public void close()
+		{
+			if (streamClosed)
+				return;
+			
+			streamClosed = true;
+			spillFile.release();
+		}
+		
+		@Override
+		protected void finalize() throws Throwable
+		{
+			try
+			{
+				close();
+			}
+			finally
+			{
+				super.finalize();
+			}
+		}
+		
+		/*
+		 * Makes sure the read buffer contains the current position.  Returns false at the end of the stream.
+		 */
+		protected boolean fill() throws IOException
+		{
+			if (streamClosed)
+				throw new IOException("Stream is closed.");
+			
+			if (position >= end)
+				return false;
+			
+			if (position >= readBufferStart && position < readBufferStart + readBufferLength)
+				return true;
+			
+			final int read = spillFile.read(position, readBuffer, 0, (int)Math.min(readBuffer.length, end - position));
+			if (read <= 0)
+				return false;
+			
+			readBufferStart = position;
+			readBufferLength = read;
+			
+			return true;
+		}
+	}
+	
+	/*
+	 * Exposes the internal buffer so the shared input stream can be created without copying the content.
+	 */
+	protected static class MemoryBuffer extends ByteArrayOutputStream
+	{
+		public InputStream toSharedInputStream()
+		{
+			return new SharedByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
@@ -75,6 +75,12 @@ public class OptionsManager
 		JVM_PARAMS.put(OptionsParameter.JCE_PROVIDER, "org.nhindirect.stagent.cryptography.JCEProviderName");
 		JVM_PARAMS.put(OptionsParameter.JCE_PROVIDER_CLASSES, "org.nhindirect.stagent.cryptography.JCEProviderClassNames");
 		JVM_PARAMS.put(OptionsParameter.CRL_CACHE_LOCATION, "org.nhindirect.stagent.cert.CRLCacheLocation");
+		JVM_PARAMS.put(OptionsParameter.OCSP_REVOCATION_ENABLED, "org.nhindirect.stagent.cert.OCSPRevocationEnabled");
+		JVM_PARAMS.put(OptionsParameter.OCSP_CLOCK_SKEW, "org.nhindirect.stagent.cert.OCSPClockSkew");
+		JVM_PARAMS.put(OptionsParameter.OCSP_MAX_RESPONSE_AGE, "org.nhindirect.stagent.cert.OCSPMaxResponseAge");
+		JVM_PARAMS.put(OptionsParameter.OCSP_NONCE_ENABLED, "org.nhindirect.stagent.cert.OCSPNonceEnabled");
+		JVM_PARAMS.put(OptionsParameter.PUBLIC_CERT_RESOLUTION_THREADS, "org.nhindirect.stagent.cert.PublicCertResolutionThreads");
+		JVM_PARAMS.put(OptionsParameter.PUBLIC_CERT_RESOLUTION_TIMEOUT, "org.nhindirect.stagent.cert.PublicCertResolutionTimeout");
 		
 		/*
 		 * DNS resolver parameters
@@ -84,6 +90,7 @@ public class OptionsManager
 		JVM_PARAMS.put(OptionsParameter.DNS_CERT_RESOLVER_USE_TCP, "org.nhindirect.stagent.cert.dnsresolver.ServerUseTCP");
 		JVM_PARAMS.put(OptionsParameter.DNS_CERT_RESOLVER_MAX_CACHE_SIZE, "org.nhindirect.stagent.cert.dnsresolver.MaxCacheSize");
 		JVM_PARAMS.put(OptionsParameter.DNS_CERT_RESOLVER_CACHE_TTL, "org.nhindirect.stagent.cert.dnsresolver.CacheTTL");
+		JVM_PARAMS.put(OptionsParameter.DNS_CERT_RESOLVER_LOOKUP_THREADS, "org.nhindirect.stagent.cert.dnsresolver.LookupThreads");
 		
 		/*
 		 * LDAP resolver parameters
@@ -96,11 +103,24 @@ public class OptionsManager
 		 */
 		JVM_PARAMS.put(OptionsParameter.CRYPTOGRAHPER_SMIME_ENCRYPTION_ALGORITHM, "org.nhindirect.stagent.cryptographer.smime.EncryptionAlgorithm");
 		JVM_PARAMS.put(OptionsParameter.CRYPTOGRAHPER_SMIME_DIGEST_ALGORITHM, "org.nhindirect.stagent.cryptographer.smime.DigestAlgorithm");
+		JVM_PARAMS.put(OptionsParameter.CRYPTOGRAHPER_SMIME_STREAMING_ENABLED, "org.nhindirect.stagent.cryptographer.smime.StreamingEnabled");
+		JVM_PARAMS.put(OptionsParameter.CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD, "org.nhindirect.stagent.cryptographer.smime.SpillThreshold");
+		JVM_PARAMS.put(OptionsParameter.CRYPTOGRAHPER_SMIME_SPILL_LOCATION, "org.nhindirect.stagent.cryptographer.smime.SpillLocation");
+		
+		/*
+		 * Trust parameters
+		 */
+		JVM_PARAMS.put(OptionsParameter.TRUST_CHAIN_CACHE_MAX_SIZE, "org.nhindirect.stagent.trust.ChainValidationMaxCacheSize");
+		JVM_PARAMS.put(OptionsParameter.TRUST_CHAIN_CACHE_TTL, "org.nhindirect.stagent.trust.ChainValidationCacheTTL");
+		JVM_PARAMS.put(OptionsParameter.AIA_CERT_CACHE_LOCATION, "org.nhindirect.stagent.trust.AIACertCacheLocation");
+		JVM_PARAMS.put(OptionsParameter.AIA_CERT_CACHE_TTL, "org.nhindirect.stagent.trust.AIACertCacheTTL");
+		JVM_PARAMS.put(OptionsParameter.AIA_CERT_NEGATIVE_CACHE_TTL, "org.nhindirect.stagent.trust.AIACertNegativeCacheTTL");
 		
 		/*
 		 * Policy parameters
 		 */
 		JVM_PARAMS.put(OptionsParameter.USE_OUTGOING_POLICY_FOR_INCOMING_NOTIFICATIONS, "org.nhindirect.stagent.cert.ldapresolver.UseOutgoingPolForNoficiations");
+		JVM_PARAMS.put(OptionsParameter.POLICY_VERDICT_CACHE_MAX_SIZE, "org.nhindirect.stagent.policy.VerdictCacheMaxSize");
 		
 	}
 	
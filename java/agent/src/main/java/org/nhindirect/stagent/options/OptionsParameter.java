@@ -48,6 +48,47 @@ public class OptionsParameter
 	 */
 	public final static String CRL_CACHE_LOCATION = "CRL_CACHE_LOCATION";
 	
+	/**
+	 * Boolean value that indicates if certificate revocation is checked using OCSP before falling back to CRLs.  The default is false.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.OCSPRevocationEnabled
+	 */
+	public final static String OCSP_REVOCATION_ENABLED = "OCSP_REVOCATION_ENABLED";
+	
+	/**
+	 * Integer value that specifies the clock skew in milliseconds tolerated when checking the this update and next update times of an OCSP response.  
+	 * Responses produced further in the future or that expired longer ago than the skew are rejected.  The default is 300000 (5 minutes).
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.OCSPClockSkew
+	 */
+	public final static String OCSP_CLOCK_SKEW = "OCSP_CLOCK_SKEW";
+	
+	/**
+	 * Integer value that specifies the maximum age in milliseconds of an OCSP response as measured from its this update time.  Older responses are 
+	 * rejected even if their next update time has not passed.  The default is 604800000 (7 days).
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.OCSPMaxResponseAge
+	 */
+	public final static String OCSP_MAX_RESPONSE_AGE = "OCSP_MAX_RESPONSE_AGE";
+	
+	/**
+	 * Boolean value that indicates if OCSP requests include a nonce.  Responses that return a nonce that does not match the request are rejected.  
+	 * The default is true.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.OCSPNonceEnabled
+	 */
+	public final static String OCSP_NONCE_ENABLED = "OCSP_NONCE_ENABLED";
+	
+	/**
+	 * Integer value that specifies the number of threads used to resolve recipient public certificates of outgoing messages in parallel.  
+	 * The threads are shared by all messages; a value of 1 resolves one recipient domain at a time.  The default is 16.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.PublicCertResolutionThreads
+	 */
+	public final static String PUBLIC_CERT_RESOLUTION_THREADS = "PUBLIC_CERT_RESOLUTION_THREADS";
+	
+	/**
+	 * Integer value that specifies the time in milliseconds allowed to resolve the public certificates of all recipients of 
+	 * an outgoing message.  Recipients that are not resolved within this time are bound without certificates.  The default is 30000.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.PublicCertResolutionTimeout
+	 */
+	public final static String PUBLIC_CERT_RESOLUTION_TIMEOUT = "PUBLIC_CERT_RESOLUTION_TIMEOUT";
+	
 	/**
 	 * Integer value that specifies the number of times the DNS certificate resolvers will retry a query
 	 * to the DNS server.
@@ -79,6 +120,12 @@ public class OptionsParameter
  	 */
     public final static String DNS_CERT_RESOLVER_CACHE_TTL = "DNS_CERT_RESOLVER_CACHE_TTL"; 
     
+ 	/**
+ 	 * Integer value that specifies the number of threads used for asynchronous DNS certificate lookups.  The default is 8.
+ 	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.dnsresolver.LookupThreads
+ 	 */
+    public final static String DNS_CERT_RESOLVER_LOOKUP_THREADS = "DNS_CERT_RESOLVER_LOOKUP_THREADS"; 
+    
  	/**
  	 * Integer value specifies the maximum number of certificates that can be held in the LDAP certificate cache.
  	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cert.ldapresolver.MaxCacheSize
@@ -117,6 +164,62 @@ public class OptionsParameter
 	 */
     public final static String CRYPTOGRAHPER_SMIME_DIGEST_ALGORITHM = "CRYPTOGRAHPER_SMIME_DIGEST_ALGORITHM";
     
+ 	/**
+ 	 * Boolean value that specifies if the SMIME cryptographer reads and writes CMS enveloped and signed data as streams instead
+ 	 * of building complete in memory copies of the message.  Content larger than {@link #CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD} is buffered
+ 	 * on disk.
+ 	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cryptographer.smime.StreamingEnabled
+ 	 */
+    public final static String CRYPTOGRAHPER_SMIME_STREAMING_ENABLED = "CRYPTOGRAHPER_SMIME_STREAMING_ENABLED";
+    
+ 	/**
+ 	 * Integer value that specifies the number of bytes of a message that are held in memory before the content is spilled to
+ 	 * a temporary file when streaming is enabled.
+ 	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cryptographer.smime.SpillThreshold
+ 	 */
+    public final static String CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD = "CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD";
+    
+	/**
+	 * String value that specifies the directory where message content is spilled when it exceeds the spill threshold.  The directory may a full or relative path.
+	 * If not set, the system temporary directory is used.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.cryptographer.smime.SpillLocation
+	 */
+    public final static String CRYPTOGRAHPER_SMIME_SPILL_LOCATION = "CRYPTOGRAHPER_SMIME_SPILL_LOCATION";
+    
+	/**
+	 * Integer value that specifies the maximum number of validated certificate chains held in the trust chain validator's cache.
+	 * A value of 0 disables the cache.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.trust.ChainValidationMaxCacheSize
+	 */
+    public final static String TRUST_CHAIN_CACHE_MAX_SIZE = "TRUST_CHAIN_CACHE_MAX_SIZE";  
+    
+	/**
+	 * Integer value that specifies the time in seconds that a validated certificate chain is held in the trust chain validator's cache.
+	 * Entries also expire when any certificate in the chain expires.  A value of 0 disables the cache.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.trust.ChainValidationCacheTTL
+	 */
+    public final static String TRUST_CHAIN_CACHE_TTL = "TRUST_CHAIN_CACHE_TTL";  
+    
+	/**
+	 * String value that specifies the directory where intermediate certificates downloaded from AIA extensions are cached.  The directory may a full or relative path.
+	 * If not set, downloaded certificates are only cached in memory.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.trust.AIACertCacheLocation
+	 */
+    public final static String AIA_CERT_CACHE_LOCATION = "AIA_CERT_CACHE_LOCATION";
+    
+	/**
+	 * Integer value that specifies the time in seconds that an intermediate certificate downloaded from an AIA extension is cached.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.trust.AIACertCacheTTL
+	 */
+    public final static String AIA_CERT_CACHE_TTL = "AIA_CERT_CACHE_TTL";
+    
+	/**
+	 * Integer value that specifies the time in seconds that a failed download of an intermediate certificate from an AIA extension
+	 * is cached before the download is attempted again.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.trust.AIACertNegativeCacheTTL
+	 */
+    public final static String AIA_CERT_NEGATIVE_CACHE_TTL = "AIA_CERT_NEGATIVE_CACHE_TTL";
+    
  	/**
  	 * Boolean value that determines if the set of outgoing anchors can be used to trust incoming MDN and DSN messages.  This
  	 * is necessary to allow QoS to happen when messages are set to be outgoing only.
@@ -124,6 +227,13 @@ public class OptionsParameter
  	 */
     public final static String USE_OUTGOING_POLICY_FOR_INCOMING_NOTIFICATIONS = "UseOutgoingPolicyForIncomingNotifications"; 
     
+	/**
+	 * Integer value that specifies the maximum number of policy compliance verdicts cached by the agent's default policy filters.  A value of 0
+	 * disables verdict caching.
+	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.stagent.policy.VerdictCacheMaxSize
+	 */
+    public final static String POLICY_VERDICT_CACHE_MAX_SIZE = "POLICY_VERDICT_CACHE_MAX_SIZE";
+    
 	private final String paramName;
 	private final String paramValue;
 	
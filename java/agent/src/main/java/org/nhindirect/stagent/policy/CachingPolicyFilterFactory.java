@@ -0,0 +1,75 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.policy;
+
+import org.nhindirect.policy.PolicyFilter;
+import org.nhindirect.policy.PolicyFilterFactory;
+import org.nhindirect.policy.PolicyParseException;
+import org.nhindirect.policy.impl.CachingPolicyFilter;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
+
+/**
+ * Creates the default policy filters used by the agent and trust model.  Unless disabled with the {@link OptionsParameter#POLICY_VERDICT_CACHE_MAX_SIZE}
+ * option, the default filter is wrapped in a {@link CachingPolicyFilter} that is registered with JMX.
+ * @since 2.1
+ */
+public class CachingPolicyFilterFactory 
+{
+	/**
+	 * JMX name of the agent's policy filter.
+	 */
+	public static final String AGENT_FILTER_NAME = "AgentPolicyFilter";
+	
+	/**
+	 * JMX name of the trust model's policy filter.
+	 */
+	public static final String TRUST_FILTER_NAME = "TrustPolicyFilter";
+	
+	/**
+	 * Creates a default policy filter.
+	 * @param name The name the filter is registered under in JMX.
+	 * @return A policy filter that caches verdicts, or a plain default filter if verdict caching is disabled.
+	 * @throws PolicyParseException
+	 */
+	public static PolicyFilter getInstance(String name) throws PolicyParseException
+	{
+		final int maxCacheSize = OptionsParameter.getParamValueAsInteger(
+				OptionsManager.getInstance().getParameter(OptionsParameter.POLICY_VERDICT_CACHE_MAX_SIZE), CachingPolicyFilter.DEFAULT_MAX_CACHE_SIZE);
+		
+		final PolicyFilter filter = PolicyFilterFactory.getInstance();
+		if (maxCacheSize <= 0)
+			return filter;
+		
+		final CachingPolicyFilter retVal = new CachingPolicyFilter(filter, maxCacheSize);
+		retVal.registerMBean(name);
+		
+		return retVal;
+	}
+	
+	/**
+	 * Removes cached verdicts from a filter.  Has no effect if the filter does not cache verdicts.
+	 * @param filter The filter to clear.
+	 */
+	public static void clear(PolicyFilter filter)
+	{
+		if (filter instanceof CachingPolicyFilter)
+			((CachingPolicyFilter)filter).clear();
+	}
+}
@@ -0,0 +1,476 @@
+/*
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org).
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.trust;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nhindirect.stagent.NHINDException;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
+
+/**
+ * Cache of intermediate certificates downloaded from the caIssuers URLs of authority information access (AIA) extensions.
+ * <p>
+ * Certificates are held in memory and, if the {@link OptionsParameter#AIA_CERT_CACHE_LOCATION} option is set, written to a file cache
+ * in the configured directory so they survive restarts.  Concurrent requests for the same URL share a single download.  Failed downloads
+ * are cached for a short time so a slow or unavailable host is not contacted for every message.  Cached certificates are refreshed in the
+ * background before they expire so callers are not blocked on the network for a URL that has already been resolved.
+ * <p>
+ * Validators use the process wide instance returned by {@link #getInstance()} unless a cache is set explicitly.
+ * @since 2.1
+ */
+public class AIACertificateCache
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(AIACertificateCache.class);
+
+	/**
+	 * Default time to live in seconds of a downloaded certificate.
+	 */
+	public static final int DEFAULT_CACHE_TTL = 86400; // 1 day
+
+	/**
+	 * Default time to live in seconds of a failed download.
+	 */
+	public static final int DEFAULT_NEGATIVE_CACHE_TTL = 300; // 5 minutes
+
+	private static final int MAX_CACHE_SIZE = 1000;
+
+	// entries are refreshed in the background once this fraction of their time to live has elapsed
+	private static final double REFRESH_FACTOR = 0.8;
+
+	private static final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			final Thread thread = new Thread(r, "AIACertificateCache-refresh");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	protected static final AIACertificateCache INSTANCE = new AIACertificateCache();
+
+	/**
+	 * Downloads a certificate from an AIA URL.
+	 * @since 2.1
+	 */
+	public static interface CertificateLoader
+	{
+		/**
+		 * Downloads the certificate located at the URL.
+		 * @param url The caIssuers URL.
+		 * @return The downloaded certificate.
+		 * @throws NHINDException
+		 */
+		public X509Certificate load(String url) throws NHINDException;
+	}
+
+	private final long ttlMillis;
+	private final long negativeTTLMillis;
+	private final File cacheLocation;
+
+	private final Map<String, CacheEntry> cache;
+	private final ConcurrentMap<String, FutureTask<X509Certificate>> inflight;
+
+	/**
+	 * Gets the process wide cache.  Trust chain validators and the OCSP revocation manager share this instance so an intermediate
+	 * certificate is downloaded and held in memory once per process.
+	 * @return The process wide cache.
+	 */
+	public static AIACertificateCache getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Default constructor.  The cache settings are read from the {@link OptionsParameter#AIA_CERT_CACHE_LOCATION},
+	 * {@link OptionsParameter#AIA_CERT_CACHE_TTL}, and {@link OptionsParameter#AIA_CERT_NEGATIVE_CACHE_TTL} options.
+	 */
+	public AIACertificateCache()
+	{
+		this(getConfiguredCacheLocation(),
+			OptionsParameter.getParamValueAsInteger(OptionsManager.getInstance().getParameter(OptionsParameter.AIA_CERT_CACHE_TTL),
+					DEFAULT_CACHE_TTL),
+			OptionsParameter.getParamValueAsInteger(OptionsManager.getInstance().getParameter(OptionsParameter.AIA_CERT_NEGATIVE_CACHE_TTL),
+					DEFAULT_NEGATIVE_CACHE_TTL));
+	}
+
+	/**
+	 * Constructor
+	 * @param cacheLocation The directory where downloaded certificates are written.  If null, certificates are only cached in memory.
+	 * @param ttl The time to live in seconds of a downloaded certificate.
+	 * @param negativeTTL The time to live in seconds of a failed download.  A value of 0 or less disables caching of failed downloads.
+	 */
+	@SuppressWarnings("serial")
+	public AIACertificateCache(File cacheLocation, int ttl, int negativeTTL)
+	{
+		this.ttlMillis = ttl * 1000L;
+		this.negativeTTLMillis = negativeTTL * 1000L;
+		this.cacheLocation = initCacheLocation(cacheLocation);
+
+		this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > MAX_CACHE_SIZE;
+			}
+		};
+
+		this.inflight = new ConcurrentHashMap<String, FutureTask<X509Certificate>>();
+	}
+
+	/**
+	 * Gets the certificate located at an AIA URL.  The certificate is returned from the cache if available; otherwise it is downloaded
+	 * using the provided loader.  If another thread is already downloading the URL, this method waits for that download to complete
+	 * instead of issuing a second request.
+	 * @param url The caIssuers URL.
+	 * @param loader The loader used to download the certificate if it is not cached.
+	 * @return The certificate located at the URL.
+	 * @throws NHINDException Thrown if the certificate could not be downloaded or a recent download of the URL failed.
+	 */
+	public X509Certificate getCertificate(String url, CertificateLoader loader) throws NHINDException
+	{
+		CacheEntry entry = getEntry(url);
+
+		if (entry == null)
+		{
+			entry = loadCacheFile(url);
+			if (entry != null)
+				putEntry(url, entry);
+		}
+
+		if (entry != null)
+		{
+			if (entry.cert == null)
+				throw new NHINDException("Download of certificate from AIA URL " + url + " recently failed.");
+
+			if (entry.isRefreshDue())
+				refresh(url, loader);
+
+			return entry.cert;
+		}
+
+		try
+		{
+			return fetch(url, loader).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new NHINDException("Interrupted waiting for certificate download from AIA URL " + url, e);
+		}
+		catch (ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof NHINDException)
+				throw (NHINDException)cause;
+
+			throw new NHINDException("Failed to download certificate from AIA extension.", (cause instanceof Exception) ? (Exception)cause : e);
+		}
+	}
+
+	/**
+	 * Removes all certificates from the in memory and file caches.
+	 */
+	public void flush()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+
+			if (cacheLocation != null)
+			{
+				try
+				{
+					FileUtils.cleanDirectory(cacheLocation);
+				}
+				catch (Exception e)
+				{
+					LOGGER.warn("Failed to clean AIA certificate cache directory " + cacheLocation.getAbsolutePath(), e);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Starts a download of the URL unless one is already in progress.  The download is run on the calling thread if it was
+	 * not already in progress.
+	 */
+	private FutureTask<X509Certificate> fetch(final String url, final CertificateLoader loader)
+	{
+		final FutureTask<X509Certificate> task = createFetchTask(url, loader, true);
+		final FutureTask<X509Certificate> existing = inflight.putIfAbsent(url, task);
+		if (existing != null)
+			return existing;
+
+		task.run();
+		return task;
+	}
+
+	/*
+	 * Refreshes a cached certificate in the background.  A failed refresh does not replace the cached certificate.
+	 */
+	private void refresh(final String url, final CertificateLoader loader)
+	{
+		final FutureTask<X509Certificate> task = createFetchTask(url, loader, false);
+		if (inflight.putIfAbsent(url, task) == null)
+		{
+			try
+			{
+				refreshExecutor.execute(task);
+			}
+			///CLOVER:OFF
+			catch (Exception e)
+			{
+				inflight.remove(url, task);
+				LOGGER.warn("Failed to schedule refresh of AIA certificate " + url, e);
+			}
+			///CLOVER:ON
+		}
+	}
+
+	private FutureTask<X509Certificate> createFetchTask(final String url, final CertificateLoader loader, final boolean cacheFailure)
+	{
+		return new FutureTask<X509Certificate>(new Callable<X509Certificate>()
+		{
+			@Override
+			public X509Certificate call() throws Exception
+			{
+				try
+				{
+					final X509Certificate cert = loader.load(url);
+
+					putEntry(url, new CacheEntry(cert, getExpiration(cert, System.currentTimeMillis()), ttlMillis));
+					writeCacheFile(url, cert);
+
+					return cert;
+				}
+				catch (NHINDException e)
+				{
+					if (cacheFailure && negativeTTLMillis > 0)
+						putEntry(url, new CacheEntry(null, System.currentTimeMillis() + negativeTTLMillis, negativeTTLMillis));
+					else if (!cacheFailure)
+						LOGGER.warn("Background refresh of AIA certificate " + url + " failed.", e);
+
+					throw e;
+				}
+				finally
+				{
+					// only a task that won the in flight slot for the URL is ever run
+					inflight.remove(url);
+				}
+			}
+		});
+	}
+
+	private long getExpiration(X509Certificate cert, long cachedTime)
+	{
+		return Math.min(cachedTime + ttlMillis, cert.getNotAfter().getTime());
+	}
+
+	private CacheEntry getEntry(String url)
+	{
+		synchronized (cache)
+		{
+			final CacheEntry entry = cache.get(url);
+			if (entry != null && entry.isExpired())
+			{
+				cache.remove(url);
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	private void putEntry(String url, CacheEntry entry)
+	{
+		synchronized (cache)
+		{
+			cache.put(url, entry);
+		}
+	}
+
+	/*
+	 * Loads a certificate from the file cache.  The file's modification time is used as the time the certificate was downloaded.
+	 */
+	private CacheEntry loadCacheFile(String url)
+	{
+		final File cacheFile = getCacheFile(url);
+		if (cacheFile == null || !cacheFile.exists())
+			return null;
+
+		InputStream inStream = null;
+		try
+		{
+			inStream = FileUtils.openInputStream(cacheFile);
+			final X509Certificate cert = (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(inStream);
+			IOUtils.closeQuietly(inStream);
+			inStream = null;
+
+			final CacheEntry entry = new CacheEntry(cert, getExpiration(cert, cacheFile.lastModified()), ttlMillis);
+			if (entry.isExpired())
+			{
+				cacheFile.delete();
+				return null;
+			}
+
+			return entry;
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("AIA certificate cache file " + cacheFile.getAbsolutePath() + " appears to be corrupt.  Deleting file.", e);
+			IOUtils.closeQuietly(inStream);
+			cacheFile.delete();
+		}
+
+		return null;
+	}
+
+	private void writeCacheFile(String url, X509Certificate cert)
+	{
+		final File cacheFile = getCacheFile(url);
+		if (cacheFile == null)
+			return;
+
+		try
+		{
+			// write to a temp file first so readers never see a partial file
+			final File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+			FileUtils.writeByteArrayToFile(tempFile, cert.getEncoded());
+			if (cacheFile.exists())
+				cacheFile.delete();
+			if (!tempFile.renameTo(cacheFile))
+			{
+				tempFile.delete();
+				LOGGER.warn("Could not write AIA certificate cache file " + cacheFile.getAbsolutePath());
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to write AIA certificate to cache file " + cacheFile.getAbsolutePath(), e);
+		}
+	}
+
+	/*
+	 * Cache file names are a SHA-1 hash of the URL.
+	 */
+	private File getCacheFile(String url)
+	{
+		if (cacheLocation == null)
+			return null;
+
+		try
+		{
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(url.getBytes("UTF-8"));
+
+			return new File(cacheLocation, new String(Hex.encodeHex(md.digest())) + ".der");
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to create cache file name for AIA URL " + url, e);
+		}
+
+		return null;
+	}
+
+	private static File getConfiguredCacheLocation()
+	{
+		final OptionsParameter param = OptionsManager.getInstance().getParameter(OptionsParameter.AIA_CERT_CACHE_LOCATION);
+		if (param == null || param.getParamValue() == null || param.getParamValue().isEmpty())
+			return null;
+
+		return new File(param.getParamValue());
+	}
+
+	private static File initCacheLocation(File location)
+	{
+		if (location == null)
+			return null;
+
+		try
+		{
+			if (location.exists())
+			{
+				if (!location.isDirectory())
+				{
+					LOGGER.warn("Configured AIA certificate cache location " + location.getAbsolutePath() + " already exists and is not a directory. " +
+							"AIA certificate file caching will be disabled");
+					return null;
+				}
+			}
+			else
+				FileUtils.forceMkdir(location);
+
+			return location;
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to initialize AIA certificate cache location " + location.getAbsolutePath() +
+					".  AIA certificate file caching will be disabled", e);
+		}
+
+		return null;
+	}
+
+	private static class CacheEntry
+	{
+		final X509Certificate cert;
+		final long expiration;
+		final long refreshTime;
+
+		CacheEntry(X509Certificate cert, long expiration, long ttlMillis)
+		{
+			this.cert = cert;
+			this.expiration = expiration;
+			this.refreshTime = expiration - (long)(ttlMillis * (1 - REFRESH_FACTOR));
+		}
+
+		boolean isExpired()
+		{
+			return System.currentTimeMillis() >= expiration;
+		}
+
+		boolean isRefreshDue()
+		{
+			return cert != null && System.currentTimeMillis() >= refreshTime;
+		}
+	}
+}
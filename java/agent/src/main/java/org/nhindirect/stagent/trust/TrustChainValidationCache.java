@@ -0,0 +1,294 @@
+/*
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org).
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.stagent.trust;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.nhindirect.stagent.cert.Thumbprint;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsParameter;
+
+/**
+ * Bounded cache of successfully validated certificate chains used by the {@link TrustChainValidator}.  Entries are keyed by the thumbprint
+ * of the validated certificate and a fingerprint of the anchor set the certificate was validated against.  An entry expires at the earliest
+ * notAfter date of the certificates in the validated chain or when the configured time to live elapses, whichever comes first.
+ * <p>
+ * The cache also holds the PKIXParameters built for each anchor set so the trust anchor set is not rebuilt for every validation.  Each
+ * validation gets its own copy of the parameters.
+ * @since 2.1
+ */
+public class TrustChainValidationCache
+{
+	/**
+	 * Default number of validated chains held in the cache.
+	 */
+	public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+	/**
+	 * Default time to live of a validated chain in seconds.
+	 */
+	public static final int DEFAULT_CACHE_TTL = 3600; // 1 hour
+
+	private static final int MAX_ANCHOR_SET_PARAMETERS = 64;
+
+	private final int maxCacheSize;
+	private final long ttlMillis;
+
+	private final Map<String, Long> verifiedChains;
+	private final Map<String, PKIXParameters> anchorSetParameters;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Default constructor.  The cache size and time to live are read from the {@link OptionsParameter#TRUST_CHAIN_CACHE_MAX_SIZE} and
+	 * {@link OptionsParameter#TRUST_CHAIN_CACHE_TTL} options.
+	 */
+	public TrustChainValidationCache()
+	{
+		this(OptionsParameter.getParamValueAsInteger(OptionsManager.getInstance().getParameter(OptionsParameter.TRUST_CHAIN_CACHE_MAX_SIZE),
+				DEFAULT_MAX_CACHE_SIZE),
+			OptionsParameter.getParamValueAsInteger(OptionsManager.getInstance().getParameter(OptionsParameter.TRUST_CHAIN_CACHE_TTL),
+				DEFAULT_CACHE_TTL));
+	}
+
+	/**
+	 * Constructor
+	 * @param maxCacheSize The maximum number of validated chains held in the cache.  A value of 0 or less disables caching of validated chains.
+	 * @param ttl The time to live of a validated chain in seconds.  A value of 0 or less disables caching of validated chains.
+	 */
+	@SuppressWarnings("serial")
+	public TrustChainValidationCache(int maxCacheSize, int ttl)
+	{
+		this.maxCacheSize = maxCacheSize;
+		this.ttlMillis = ttl * 1000L;
+
+		verifiedChains = new LinkedHashMap<String, Long>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+			{
+				return size() > TrustChainValidationCache.this.maxCacheSize;
+			}
+		};
+
+		anchorSetParameters = new LinkedHashMap<String, PKIXParameters>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PKIXParameters> eldest)
+			{
+				return size() > MAX_ANCHOR_SET_PARAMETERS;
+			}
+		};
+	}
+
+	/**
+	 * Indicates if validated chains are cached.
+	 * @return True if validated chains are cached.  False otherwise.
+	 */
+	public boolean isEnabled()
+	{
+		return maxCacheSize > 0 && ttlMillis > 0;
+	}
+
+	/**
+	 * Creates a fingerprint of a set of anchors.  The fingerprint does not depend on the order of the anchors in the collection.
+	 * @param anchors The anchors to fingerprint.
+	 * @return A hex encoded fingerprint of the anchor set.
+	 */
+	public String getAnchorSetFingerprint(Collection<X509Certificate> anchors)
+	{
+		final List<String> thumbprints = new ArrayList<String>(anchors.size());
+		for (X509Certificate anchor : anchors)
+			thumbprints.add(Thumbprint.toThumbprint(anchor).toString());
+
+		Collections.sort(thumbprints);
+
+		try
+		{
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (String thumbprint : thumbprints)
+				md.update(thumbprint.getBytes("ASCII"));
+
+			return new String(Hex.encodeHex(md.digest()));
+		}
+		///CLOVER:OFF
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-1 digest is not available.", e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException("ASCII encoding is not available.", e);
+		}
+		///CLOVER:ON
+	}
+
+	/**
+	 * Indicates if a certificate has a cached, unexpired validated chain for an anchor set.  Hit and miss counts are updated by this method.
+	 * @param thumbprint The thumbprint of the certificate.
+	 * @param anchorSetFingerprint The fingerprint of the anchor set.
+	 * @return True if the certificate has been validated against the anchor set and the validation has not expired.  False otherwise.
+	 */
+	public boolean isVerified(String thumbprint, String anchorSetFingerprint)
+	{
+		if (!isEnabled())
+			return false;
+
+		final String key = createKey(thumbprint, anchorSetFingerprint);
+		synchronized (verifiedChains)
+		{
+			final Long expiration = verifiedChains.get(key);
+			if (expiration != null)
+			{
+				if (expiration.longValue() > System.currentTimeMillis())
+				{
+					hits.incrementAndGet();
+					return true;
+				}
+				verifiedChains.remove(key);
+			}
+		}
+
+		misses.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Adds a validated chain to the cache.
+	 * @param thumbprint The thumbprint of the validated certificate.
+	 * @param anchorSetFingerprint The fingerprint of the anchor set that the certificate was validated against.
+	 * @param chain The certificates in the validated chain including the trust anchor.  The entry expires no later than the
+	 * earliest notAfter date in the chain.
+	 */
+	public void putVerified(String thumbprint, String anchorSetFingerprint, Collection<X509Certificate> chain)
+	{
+		if (!isEnabled())
+			return;
+
+		long expiration = System.currentTimeMillis() + ttlMillis;
+		for (X509Certificate cert : chain)
+			expiration = Math.min(expiration, cert.getNotAfter().getTime());
+
+		synchronized (verifiedChains)
+		{
+			verifiedChains.put(createKey(thumbprint, anchorSetFingerprint), expiration);
+		}
+	}
+
+	/**
+	 * Gets the PKIX parameters for an anchor set.  The trust anchor set is built once per anchor set and reused by subsequent validations.
+	 * Each call returns a new copy of the parameters, so callers may modify them and concurrent validations do not share state.
+	 * @param anchorSetFingerprint The fingerprint of the anchor set.
+	 * @param anchors The anchors in the set.
+	 * @return A copy of the PKIX parameters containing the anchor set as trust anchors.
+	 * @throws InvalidAlgorithmParameterException
+	 */
+	public PKIXParameters getParameters(String anchorSetFingerprint, Collection<X509Certificate> anchors) throws InvalidAlgorithmParameterException
+	{
+		synchronized (anchorSetParameters)
+		{
+			PKIXParameters params = anchorSetParameters.get(anchorSetFingerprint);
+			if (params == null)
+			{
+	        	final Set<TrustAnchor> trustAnchorSet = new HashSet<TrustAnchor>();
+
+	        	for (X509Certificate archor : anchors)
+	        		trustAnchorSet.add(new TrustAnchor(archor, null));
+
+	            params = new PKIXParameters(trustAnchorSet);
+
+	        	/*
+	        	 *  Disable CRL checking in cert path validation for now until a better implementation is put together
+	        	 */
+	        	params.setRevocationEnabled(false);
+
+	        	anchorSetParameters.put(anchorSetFingerprint, params);
+			}
+
+			return (PKIXParameters)params.clone();
+		}
+	}
+
+	/**
+	 * Gets the number of validations that were satisfied by the cache.
+	 * @return The number of cache hits.
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of validations that were not satisfied by the cache.
+	 * @return The number of cache misses.
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of validated chains currently held in the cache including entries that have expired but not yet been evicted.
+	 * @return The number of validated chains in the cache.
+	 */
+	public int size()
+	{
+		synchronized (verifiedChains)
+		{
+			return verifiedChains.size();
+		}
+	}
+
+	/**
+	 * Removes all validated chains and anchor set parameters from the cache.  Hit and miss counts are not reset.
+	 */
+	public void clear()
+	{
+		synchronized (verifiedChains)
+		{
+			verifiedChains.clear();
+		}
+		synchronized (anchorSetParameters)
+		{
+			anchorSetParameters.clear();
+		}
+	}
+
+	private static String createKey(String thumbprint, String anchorSetFingerprint)
+	{
+		return thumbprint + ":" + anchorSetFingerprint;
+	}
+}
@@ -31,16 +31,14 @@ import java.security.cert.CertPathValidator;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateParsingException;
+import java.security.cert.PKIXCertPathValidatorResult;
 import java.security.cert.PKIXParameters;
-import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
@@ -81,6 +79,10 @@ public class TrustChainValidator
 	
 	private int maxIssuerChainLength = DefaultMaxIssuerChainLength;
 	
+	private TrustChainValidationCache validationCache = new TrustChainValidationCache();
+	
+	private AIACertificateCache aiaCertCache = AIACertificateCache.getInstance();
+	
 	private static final Log LOGGER = LogFactory.getFactory().getInstance(TrustChainValidator.class);
 	
 	static
@@ -116,6 +118,52 @@ public class TrustChainValidator
 		certResolvers = resolver;
 	}
 	
+	/**
+	 * Gets the cache of validated certificate chains.  The cache exposes hit and miss counts of the validator.
+	 * @return The cache of validated certificate chains.
+	 * @since 2.1
+	 */
+	public TrustChainValidationCache getValidationCache()
+	{
+		return validationCache;
+	}
+	
+	/**
+	 * Sets the cache of validated certificate chains.
+	 * @param validationCache The cache of validated certificate chains.
+	 * @since 2.1
+	 */
+	public void setValidationCache(TrustChainValidationCache validationCache)
+	{
+		if (validationCache == null)
+			throw new IllegalArgumentException("Validation cache cannot be null.");
+		
+		this.validationCache = validationCache;
+	}
+	
+	/**
+	 * Gets the cache of intermediate certificates downloaded from AIA extensions.  Defaults to the process wide cache.
+	 * @return The cache of intermediate certificates downloaded from AIA extensions.
+	 * @since 2.1
+	 */
+	public AIACertificateCache getAIACertificateCache()
+	{
+		return aiaCertCache;
+	}
+	
+	/**
+	 * Sets the cache of intermediate certificates downloaded from AIA extensions.
+	 * @param aiaCertCache The cache of intermediate certificates downloaded from AIA extensions.
+	 * @since 2.1
+	 */
+	public void setAIACertificateCache(AIACertificateCache aiaCertCache)
+	{
+		if (aiaCertCache == null)
+			throw new IllegalArgumentException("AIA certificate cache cannot be null.");
+		
+		this.aiaCertCache = aiaCertCache;
+	}
+	
 	/**
 	 * Indicates if a certificate is considered to be trusted by resolving a valid certificate trust chain with the provided anchors.
 	 * @param certificate The certificate to check.
@@ -136,6 +184,11 @@ public class TrustChainValidator
     		if (isIssuerInAnchors(anchors, certificate))
     			return true;
     		
+    		// check if this certificate has already been validated against this set of anchors
+    		final String thumbprint = Thumbprint.toThumbprint(certificate).toString();
+    		final String anchorSetFingerprint = validationCache.getAnchorSetFingerprint(anchors);
+    		if (validationCache.isVerified(thumbprint, anchorSetFingerprint))
+    			return true;
     		
     		CertPath certPath = null;
         	CertificateFactory factory = CertificateFactory.getInstance("X509");
@@ -151,18 +204,9 @@ public class TrustChainValidator
         			certs.addAll(intermediatesCerts);
         	}
         	
-        	Set<TrustAnchor> trustAnchorSet = new HashSet<TrustAnchor>();
-        		
-        	for (X509Certificate archor : anchors)
-        		trustAnchorSet.add(new TrustAnchor(archor, null));
-        	
-            PKIXParameters params = new PKIXParameters(trustAnchorSet); 
+        	// the trust anchors are shared across validations of the same anchor set, the parameters are a per validation copy
+            final PKIXParameters params = validationCache.getParameters(anchorSetFingerprint, anchors); 
             
-        			
-        	/*
-        	 *  Disable CRL checking in cert path validation for now until a better implementation is put together
-        	 */
-        	params.setRevocationEnabled(false);
         	// JCE will only allow OSCP checking when revocation checking is enabled
         	// however some implementations will fail if revocation checking is turned on, but the CRL
         	// extension does not exist. for compatibility reasons, only turn this on if CRL extension points are defined
@@ -181,7 +225,16 @@ public class TrustChainValidator
         	CertPathValidator pathValidator = CertPathValidator.getInstance("PKIX", CryptoExtensions.getJCEProviderNameForTypeAndAlgorithm("CertPathValidator", "PKIX"));    		
     		
 
-        	pathValidator.validate(certPath, params);
+        	final PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult)pathValidator.validate(certPath, params);
+        	
+        	final Collection<X509Certificate> chain = new ArrayList<X509Certificate>();
+        	for (Certificate cert : certs)
+        		chain.add((X509Certificate)cert);
+        	if (result.getTrustAnchor().getTrustedCert() != null)
+        		chain.add(result.getTrustAnchor().getTrustedCert());
+        	
+        	validationCache.putVerified(thumbprint, anchorSetFingerprint, chain);
+        	
     		return true;
     	}
     	catch (Exception e)
@@ -322,6 +375,16 @@ public class TrustChainValidator
     {
     	final Collection<X509Certificate> retVal = new ArrayList<X509Certificate>();
     
+    	// downloads go through the AIA cache so known issuers are not fetched over the network on every message
+    	final AIACertificateCache.CertificateLoader loader = new AIACertificateCache.CertificateLoader()
+    	{
+    		@Override
+    		public X509Certificate load(String url) throws NHINDException
+    		{
+    			return downloadCertFromAIA(url);
+    		}
+    	};
+    	
     	// check to see if there are extensions
     	final AuthorityInfoAccessExtentionField aiaField = new AuthorityInfoAccessExtentionField(false);
     	
@@ -344,7 +407,7 @@ public class TrustChainValidator
     				// now pull the certificate from the URL
     				try
     				{
-    					final X509Certificate intermCert = downloadCertFromAIA(url);
+    					final X509Certificate intermCert = aiaCertCache.getCertificate(url, loader);
     					retVal.add(intermCert);
     				}
     				catch (NHINDException e)
@@ -34,7 +34,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nhindirect.policy.PolicyExpression;
 import org.nhindirect.policy.PolicyFilter;
-import org.nhindirect.policy.PolicyFilterFactory;
 import org.nhindirect.policy.PolicyParseException;
 import org.nhindirect.policy.PolicyProcessException;
 import org.nhindirect.policy.PolicyRequiredException;
@@ -47,6 +46,7 @@ import org.nhindirect.stagent.NHINDAddress;
 import org.nhindirect.stagent.NHINDAddressCollection;
 import org.nhindirect.stagent.OutgoingMessage;
 import org.nhindirect.stagent.cert.SignerCertPair;
+import org.nhindirect.stagent.policy.CachingPolicyFilterFactory;
 import org.nhindirect.stagent.policy.PolicyResolver;
 import org.nhindirect.stagent.trust.annotation.TrustPolicyFilter;
 import org.nhindirect.stagent.trust.annotation.TrustPolicyResolver;
@@ -85,7 +85,7 @@ public class TrustModel
     	certChainValidator = new TrustChainValidator();
         try
         {
-        	this.policyFilter = PolicyFilterFactory.getInstance();
+        	this.policyFilter = CachingPolicyFilterFactory.getInstance(CachingPolicyFilterFactory.TRUST_FILTER_NAME);
         }
         catch (PolicyParseException e)
         {
@@ -103,7 +103,7 @@ public class TrustModel
     	certChainValidator = validator;
         try
         {
-        	this.policyFilter = PolicyFilterFactory.getInstance();
+        	this.policyFilter = CachingPolicyFilterFactory.getInstance(CachingPolicyFilterFactory.TRUST_FILTER_NAME);
         }
         catch (PolicyParseException e)
         {
@@ -0,0 +1,283 @@
+package org.nhindirect.stagent;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.internet.InternetAddress;
+
+import org.nhindirect.stagent.cert.CertResolutionMetrics;
+import org.nhindirect.stagent.cert.CertificateResolver;
+import org.nhindirect.stagent.cert.impl.DNSCertificateStore;
+import org.nhindirect.stagent.cryptography.SMIMECryptographerImpl;
+import org.nhindirect.stagent.mail.Message;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsManagerUtils;
+import org.nhindirect.stagent.options.OptionsParameter;
+import org.nhindirect.stagent.trust.TrustAnchorResolver;
+import org.nhindirect.stagent.trust.TrustModel;
+import org.nhindirect.stagent.utils.TestUtils;
+
+import junit.framework.TestCase;
+
+public class DefaultNHINDAgent_bindRecipientCertificatesTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+		OptionsManagerUtils.clearOptionsManagerInstance();
+		CertResolutionMetrics.getInstance().reset();
+	}
+
+	@Override
+	public void tearDown()
+	{
+		OptionsManagerUtils.clearOptionsManagerOptions();
+		CertResolutionMetrics.getInstance().reset();
+	}
+
+	protected OutgoingMessage buildOutgoingMessage(String... recipients) throws Exception
+	{
+		final String testMessage = TestUtils.readResource("MultipartMimeMessage.txt");
+		final Message message = new Message(new ByteArrayInputStream(testMessage.getBytes("ASCII")));
+
+		final NHINDAddressCollection recipientAddresses = new NHINDAddressCollection();
+		for (String recipient : recipients)
+			recipientAddresses.add(new NHINDAddress(recipient));
+
+		return new OutgoingMessage(message, recipientAddresses, new NHINDAddress("gm2552@cerner.com"));
+	}
+
+	protected DefaultNHINDAgent createAgent(CertificateResolver publicCertResolver)
+	{
+		return new DefaultNHINDAgent("Cerner.com", mock(CertificateResolver.class),
+				publicCertResolver, mock(TrustAnchorResolver.class));
+	}
+
+	public void testBindRecipientCertificates_multipleDomains_assertPartialResultsWithReasons() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				if (address.getAddress().endsWith("@found.com"))
+					return Arrays.asList(cert);
+				else if (address.getAddress().endsWith("@invalid.com"))
+					throw new NHINDException(AgentError.AllCertsInResolverInvalid);
+				else if (address.getAddress().endsWith("@error.com"))
+					throw new NHINDException("Server unavailable");
+
+				return new ArrayList<X509Certificate>();
+			}
+		};
+
+		final OutgoingMessage message = buildOutgoingMessage("user@found.com", "user@invalid.com", "user@error.com", "user@missing.com");
+		createAgent(publicCertResolver).bindRecipientCertificates(message);
+
+		final NHINDAddressCollection recipients = message.getRecipients();
+
+		assertEquals(1, recipients.get(0).getCertificates().size());
+		assertNull(recipients.get(0).getCertificateResolutionFailure());
+
+		assertFalse(recipients.get(1).hasCertificates());
+		assertTrue(recipients.get(1).getCertificateResolutionFailure().contains("invalid"));
+
+		assertFalse(recipients.get(2).hasCertificates());
+		assertTrue(recipients.get(2).getCertificateResolutionFailure().contains("Server unavailable"));
+
+		assertEquals(0, recipients.get(3).getCertificates().size());
+		assertTrue(recipients.get(3).getCertificateResolutionFailure().contains("No public certificates"));
+	}
+
+	public void testBindRecipientCertificates_duplicateRecipients_assertResolvedOnce() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+		final AtomicInteger lookups = new AtomicInteger();
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				lookups.incrementAndGet();
+				return Arrays.asList(cert);
+			}
+		};
+
+		final OutgoingMessage message = buildOutgoingMessage("user@domain1.com", "USER@domain1.com", "user@domain2.com", "other@domain2.com");
+		createAgent(publicCertResolver).bindRecipientCertificates(message);
+
+		assertEquals(3, lookups.get());
+		for (NHINDAddress recipient : message.getRecipients())
+			assertEquals(1, recipient.getCertificates().size());
+	}
+
+	protected DefaultNHINDAgent createAgent(CertificateResolver... publicCertResolvers)
+	{
+		return new DefaultNHINDAgent(Arrays.asList("Cerner.com"), mock(CertificateResolver.class),
+				Arrays.asList(publicCertResolvers), mock(TrustAnchorResolver.class), TrustModel.Default, SMIMECryptographerImpl.Default);
+	}
+
+	static class CountingDNSCertificateStore extends DNSCertificateStore
+	{
+		final AtomicInteger asyncLookups = new AtomicInteger();
+		final Collection<X509Certificate> certs;
+
+		CountingDNSCertificateStore(Collection<X509Certificate> certs)
+		{
+			super(Arrays.asList("127.0.0.1"));
+			this.certs = certs;
+		}
+
+		@Override
+		public Future<Collection<X509Certificate>> getCertificatesAsync(InternetAddress address)
+		{
+			asyncLookups.incrementAndGet();
+			final FutureTask<Collection<X509Certificate>> retVal = new FutureTask<Collection<X509Certificate>>(new Callable<Collection<X509Certificate>>()
+			{
+				public Collection<X509Certificate> call()
+				{
+					return certs;
+				}
+			});
+			retVal.run();
+			return retVal;
+		}
+	}
+
+	public void testBindRecipientCertificates_resolvedBeforeDNS_assertNoDNSLookups() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				return Arrays.asList(cert);
+			}
+		};
+		final CountingDNSCertificateStore dnsStore = new CountingDNSCertificateStore(Arrays.asList(mock(X509Certificate.class)));
+
+		final OutgoingMessage message = buildOutgoingMessage("user@domain1.com", "user@domain2.com");
+		createAgent(publicCertResolver, dnsStore).bindRecipientCertificates(message);
+
+		assertEquals(0, dnsStore.asyncLookups.get());
+		for (NHINDAddress recipient : message.getRecipients())
+			assertEquals(cert, recipient.getCertificates().iterator().next());
+	}
+
+	public void testBindRecipientCertificates_notResolvedBeforeDNS_assertDNSLookupPerRecipient() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				return null;
+			}
+		};
+		final CountingDNSCertificateStore dnsStore = new CountingDNSCertificateStore(Arrays.asList(cert));
+
+		final OutgoingMessage message = buildOutgoingMessage("user@domain1.com", "user@domain2.com");
+		createAgent(publicCertResolver, dnsStore).bindRecipientCertificates(message);
+
+		assertEquals(2, dnsStore.asyncLookups.get());
+		for (NHINDAddress recipient : message.getRecipients())
+			assertEquals(cert, recipient.getCertificates().iterator().next());
+	}
+
+	public void testBindRecipientCertificates_deadlineExceeded_assertSlowRecipientsUnbound() throws Exception
+	{
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.PUBLIC_CERT_RESOLUTION_TIMEOUT, "200"));
+
+		final X509Certificate cert = mock(X509Certificate.class);
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				if (address.getAddress().endsWith("@slow.com"))
+				{
+					try
+					{
+						Thread.sleep(10000);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				return Arrays.asList(cert);
+			}
+		};
+
+		final OutgoingMessage message = buildOutgoingMessage("user@fast.com", "user@slow.com");
+
+		final long start = System.currentTimeMillis();
+		createAgent(publicCertResolver).bindRecipientCertificates(message);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+
+		assertEquals(1, message.getRecipients().get(0).getCertificates().size());
+
+		assertNull(message.getRecipients().get(1).getCertificates());
+		assertTrue(message.getRecipients().get(1).getCertificateResolutionFailure().contains("did not complete"));
+	}
+
+	public void testBindRecipientCertificates_singleDomainDeadlineExceeded_assertRecipientUnbound() throws Exception
+	{
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.PUBLIC_CERT_RESOLUTION_TIMEOUT, "200"));
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.PUBLIC_CERT_RESOLUTION_THREADS, "1"));
+
+		final X509Certificate cert = mock(X509Certificate.class);
+
+		final CertificateResolver publicCertResolver = new CertificateResolver()
+		{
+			public Collection<X509Certificate> getCertificates(InternetAddress address)
+			{
+				try
+				{
+					Thread.sleep(10000);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				return Arrays.asList(cert);
+			}
+		};
+
+		final OutgoingMessage message = buildOutgoingMessage("user@slow.com");
+
+		final long start = System.currentTimeMillis();
+		createAgent(publicCertResolver).bindRecipientCertificates(message);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+
+		assertNull(message.getRecipients().get(0).getCertificates());
+		assertTrue(message.getRecipients().get(0).getCertificateResolutionFailure().contains("did not complete"));
+	}
+
+	public void testBindRecipientCertificates_assertResolverTimingsRecorded() throws Exception
+	{
+		final CertificateResolver publicCertResolver = mock(CertificateResolver.class);
+
+		final OutgoingMessage message = buildOutgoingMessage("user@domain1.com", "user@domain2.com");
+		createAgent(publicCertResolver).bindRecipientCertificates(message);
+
+		final CertResolutionMetrics.ResolverTimings timings =
+				CertResolutionMetrics.getInstance().getTimings().get(CertResolutionMetrics.getResolverType(publicCertResolver));
+
+		assertNotNull(timings);
+		assertEquals(2, timings.getLookupCount());
+		assertEquals(0, timings.getFailureCount());
+	}
+}
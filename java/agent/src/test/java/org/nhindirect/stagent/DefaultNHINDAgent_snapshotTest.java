@@ -0,0 +1,100 @@
+package org.nhindirect.stagent;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+
+import org.nhindirect.stagent.cert.CertificateResolver;
+import org.nhindirect.stagent.trust.TrustAnchorResolver;
+
+import junit.framework.TestCase;
+
+public class DefaultNHINDAgent_snapshotTest extends TestCase
+{
+	protected DefaultNHINDAgent createAgent()
+	{
+		return new DefaultNHINDAgent("test.com", mock(CertificateResolver.class),
+				mock(CertificateResolver.class), mock(TrustAnchorResolver.class));
+	}
+
+	public void testSetters_assertNewSnapshotPublished() throws Exception
+	{
+		final DefaultNHINDAgent agent = createAgent();
+		final AgentSnapshot original = agent.getSnapshot();
+
+		final TrustAnchorResolver anchors = mock(TrustAnchorResolver.class);
+		agent.setTrustAnchorResolver(anchors);
+		agent.setDomains(Arrays.asList("other.com"));
+
+		assertNotSame(original, agent.getSnapshot());
+		assertSame(anchors, agent.getTrustAnchors());
+		assertEquals(1, agent.getDomains().size());
+		assertEquals("other.com", agent.getDomains().iterator().next());
+
+		// the original snapshot is never modified
+		assertNotSame(anchors, original.getTrustAnchors());
+		assertEquals("test.com", original.getDomains().iterator().next());
+	}
+
+	public void testSetSnapshot_assertReplacedAtomically() throws Exception
+	{
+		final DefaultNHINDAgent agent = createAgent();
+
+		final TrustAnchorResolver anchors = mock(TrustAnchorResolver.class);
+		final CertificateResolver privateCerts = mock(CertificateResolver.class);
+		agent.setSnapshot(agent.getSnapshot().withTrustAnchors(anchors).withPrivateCertResolver(privateCerts).withWrappingEnabled(false));
+
+		assertSame(anchors, agent.getTrustAnchors());
+		assertSame(privateCerts, agent.getPrivateCertResolver());
+		assertFalse(agent.isWrappingEnabled());
+	}
+
+	public void testSetSnapshot_nullSnapshot_assertException() throws Exception
+	{
+		boolean exceptionOccured = false;
+		try
+		{
+			createAgent().setSnapshot(null);
+		}
+		catch (IllegalArgumentException e)
+		{
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+
+	public void testBindProcessingSnapshot_concurrentUpdate_assertBoundSnapshotUsed() throws Exception
+	{
+		final DefaultNHINDAgent agent = createAgent();
+		final TrustAnchorResolver originalAnchors = agent.getTrustAnchors();
+		final TrustAnchorResolver newAnchors = mock(TrustAnchorResolver.class);
+
+		final boolean bound = agent.bindProcessingSnapshot();
+		try
+		{
+			assertTrue(bound);
+			// nested processing calls reuse the outer snapshot
+			assertFalse(agent.bindProcessingSnapshot());
+
+			final Thread updater = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					agent.setTrustAnchorResolver(newAnchors);
+				}
+			});
+			updater.start();
+			updater.join();
+
+			// the message in flight keeps the state it started with
+			assertSame(originalAnchors, agent.getTrustAnchors());
+			assertSame(newAnchors, agent.getSnapshot().getTrustAnchors());
+		}
+		finally
+		{
+			agent.releaseProcessingSnapshot(bound);
+		}
+
+		assertSame(newAnchors, agent.getTrustAnchors());
+	}
+}
@@ -1,13 +1,17 @@
 package org.nhindirect.stagent.cert;
 
+import static org.mockito.Mockito.mock;
+
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.mail.internet.InternetAddress;
 
 import org.nhindirect.stagent.AgentError;
 import org.nhindirect.stagent.NHINDException;
+import org.nhindirect.stagent.cert.impl.OCSPRevocationManager;
 import org.nhindirect.stagent.utils.TestUtils;
 
 import junit.framework.TestCase;
@@ -118,6 +122,47 @@ public class CertificateStore_getUsableCertsTest extends TestCase
 		assertEquals(userCert, foundCert.iterator().next());
 	}
 	
+	public void testFilterUsable_ocspEnabled_assertRevocationCheckedOnce() throws Exception
+	{
+		final X509Certificate goodCert = mock(X509Certificate.class);
+		final X509Certificate revokedCert = mock(X509Certificate.class);
+		
+		final AtomicInteger batchChecks = new AtomicInteger();
+		final AtomicInteger singleChecks = new AtomicInteger();
+		final OCSPRevocationManager revocationManager = new OCSPRevocationManager(null)
+		{
+			@Override
+			public Collection<X509Certificate> getRevokedCertificates(Collection<X509Certificate> certificates)
+			{
+				batchChecks.incrementAndGet();
+				assertEquals(2, certificates.size());
+				return Arrays.asList(revokedCert);
+			}
+			
+			@Override
+			public boolean isRevoked(X509Certificate certificate)
+			{
+				singleChecks.incrementAndGet();
+				return false;
+			}
+		};
+		
+		CertificateStore store = new CertificateStoreAdapter()
+		{
+			@Override
+		    protected RevocationManager getRevocationManager()
+		    {
+		    	return revocationManager;
+		    }
+		};
+		
+		Collection<X509Certificate> usable = store.filterUsable(Arrays.asList(goodCert, revokedCert));
+		assertEquals(1, usable.size());
+		assertSame(goodCert, usable.iterator().next());
+		assertEquals(1, batchChecks.get());
+		assertEquals(0, singleChecks.get());
+	}
+	
 	static class CertificateStoreAdapter extends CertificateStore
 	{
 
@@ -0,0 +1,129 @@
+package org.nhindirect.stagent.cert.impl;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRL;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.utils.TestUtils;
+
+public class CRLRevocationManager_singleFlightTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+    	CryptoExtensions.registerJCEProviders();
+
+		CRLRevocationManager.initCRLCacheLocation();
+		CRLRevocationManager.getInstance().flush();
+		CRLRevocationManager.crlCacheLocation = null;
+	}
+
+	@Override
+	public void tearDown()
+	{
+		CRLRevocationManager.getInstance().flush();
+		CRLRevocationManager.initCRLCacheLocation();
+	}
+
+	protected X509CRL generateCRL(Date nextUpdate) throws Exception
+	{
+		X509CRL crl = (X509CRL)TestUtils.loadCRL("certs.crl");
+
+		KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+		KeyPair pair = kpGen.generateKeyPair();
+		X509V2CRLGenerator crlGen = new X509V2CRLGenerator();
+    	crlGen.setIssuerDN(new X500Principal("CN=Test CRL"));
+    	crlGen.setNextUpdate(nextUpdate);
+    	crlGen.setSignatureAlgorithm("SHA256withRSAEncryption");
+    	crlGen.setThisUpdate(Calendar.getInstance().getTime());
+		crlGen.addCRL(crl);
+		return crlGen.generate(pair.getPrivate(), "BC");
+	}
+
+	public void testGetCrlFromUri_concurrentRequests_assertSingleDownload() throws Exception
+	{
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.YEAR, cal.get(Calendar.YEAR) + 10);
+		final X509CRL crl = generateCRL(cal.getTime());
+
+		final AtomicInteger downloads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final CRLRevocationManager mgr = new CRLRevocationManager()
+		{
+			@Override
+			protected X509CRL downloadCrl(String crlUrlString)
+			{
+				downloads.incrementAndGet();
+				try
+				{
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {/* no-op */}
+
+				return crl;
+			}
+		};
+
+		final AtomicInteger found = new AtomicInteger();
+		final Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; ++i)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					if (mgr.getCrlFromUri("http://localhost:8080/master.crl") != null)
+						found.incrementAndGet();
+				}
+			});
+			threads[i].start();
+		}
+
+		// let all of the threads wait on the download before releasing it
+		Thread.sleep(500);
+		release.countDown();
+
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(threads.length, found.get());
+		assertEquals(1, downloads.get());
+	}
+
+	public void testGetCrlFromUri_nearNextUpdate_assertRefreshedInBackground() throws Exception
+	{
+		final X509CRL crl = generateCRL(new Date(System.currentTimeMillis() + 3000));
+
+		final AtomicInteger downloads = new AtomicInteger();
+
+		final CRLRevocationManager mgr = new CRLRevocationManager()
+		{
+			@Override
+			protected X509CRL downloadCrl(String crlUrlString)
+			{
+				downloads.incrementAndGet();
+				return crl;
+			}
+		};
+
+		assertEquals(crl, mgr.getCrlFromUri("http://localhost:8080/master.crl"));
+		assertEquals(1, downloads.get());
+
+		// the refresh is scheduled shortly before the next update date
+		Thread.sleep(4000);
+
+		assertEquals(2, downloads.get());
+	}
+}
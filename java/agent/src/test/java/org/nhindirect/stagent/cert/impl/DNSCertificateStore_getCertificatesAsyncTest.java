@@ -0,0 +1,142 @@
+package org.nhindirect.stagent.cert.impl;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.internet.InternetAddress;
+
+import junit.framework.TestCase;
+
+import org.nhindirect.stagent.cert.CertCacheFactory;
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+
+public class DNSCertificateStore_getCertificatesAsyncTest extends TestCase
+{
+	protected final AtomicInteger activeQueries = new AtomicInteger();
+	protected final AtomicInteger maxActiveQueries = new AtomicInteger();
+	protected final AtomicInteger resolversCreated = new AtomicInteger();
+	
+	@Override
+	public void setUp()
+	{
+		// flush the caches
+		CertCacheFactory.getInstance().flushAll();
+	}
+	
+	/*
+	 * Mockito serializes calls to a stubbed answer, so concurrent queries are answered by a hand written resolver
+	 */
+	protected ExtendedResolver getSlowNXDomainResolver(final long delay) throws Exception
+	{
+		return new ExtendedResolver(new Resolver[0])
+		{
+			@Override
+			public Message send(Message request) throws IOException 
+			{
+				final int active = activeQueries.incrementAndGet();
+				synchronized (maxActiveQueries)
+				{
+					if (active > maxActiveQueries.get())
+						maxActiveQueries.set(active);
+				}
+				
+				try
+				{
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException("Interrupted");
+				}
+				finally
+				{
+					activeQueries.decrementAndGet();
+				}
+				
+				final Message response = new Message(request.getHeader().getID());
+		        response.getHeader().setFlag(Flags.QR);
+		    	response.addRecord(request.getQuestion(), Section.QUESTION);
+		    	response.getHeader().setRcode(Rcode.NXDOMAIN);
+		    	response.getHeader().setFlag(Flags.AA);
+		    	
+		    	return response;
+			}
+		};
+	}
+	
+	protected DNSCertificateStore createStore(long delay) throws Exception
+	{
+		final ExtendedResolver resolver = getSlowNXDomainResolver(delay);
+		
+		return new DNSCertificateStore()
+		{
+			protected ExtendedResolver createExResolver(String[] servers, int retries, int timeout)
+			{
+				resolversCreated.incrementAndGet();
+				return resolver;
+			}
+		};
+	}
+	
+	public void testLookupDNS_multipleSteps_assertResolverReused() throws Exception
+	{
+		final DNSCertificateStore store = createStore(0);
+		
+		Collection<X509Certificate> certs = store.lookupDNS("asyncpool1.com");
+		assertTrue(certs.isEmpty());
+		
+		certs = store.lookupDNS("asyncpool2.com");
+		assertTrue(certs.isEmpty());
+		
+		assertEquals(1, resolversCreated.get());
+	}
+	
+	public void testGetCertificates_multipleAddresses_assertResolvedInParallel() throws Exception
+	{
+		final DNSCertificateStore store = createStore(200);
+		
+		final InternetAddress addr1 = new InternetAddress("user@asyncparallel1.com");
+		final InternetAddress addr2 = new InternetAddress("user@asyncparallel2.com");
+		
+		final Map<InternetAddress, Collection<X509Certificate>> certs = store.getCertificates(Arrays.asList(addr1, addr2), 60000);
+		
+		assertEquals(2, certs.size());
+		assertTrue(certs.containsKey(addr1));
+		assertNull(certs.get(addr1));
+		assertTrue(certs.containsKey(addr2));
+		assertTrue(maxActiveQueries.get() >= 2);
+	}
+	
+	public void testGetCertificates_deadlineExceeded_assertAddressOmitted() throws Exception
+	{
+		final DNSCertificateStore store = createStore(1000);
+		
+		final long start = System.currentTimeMillis();
+		final Map<InternetAddress, Collection<X509Certificate>> certs = store.getCertificates(
+				Arrays.asList(new InternetAddress("user@asyncdeadline.com")), 100);
+		
+		assertTrue(certs.isEmpty());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+	
+	public void testGetCertificatesAsync_sameAddress_assertSingleLookup() throws Exception
+	{
+		final DNSCertificateStore store = createStore(500);
+		
+		final Future<Collection<X509Certificate>> lookup1 = store.getCertificatesAsync(new InternetAddress("user@asyncsame.com"));
+		final Future<Collection<X509Certificate>> lookup2 = store.getCertificatesAsync(new InternetAddress("User@AsyncSame.com"));
+		
+		assertSame(lookup1, lookup2);
+		assertNull(lookup1.get());
+	}
+}
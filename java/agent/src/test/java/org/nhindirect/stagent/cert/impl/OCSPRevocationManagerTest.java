@@ -0,0 +1,375 @@
+package org.nhindirect.stagent.cert.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.X509Extension;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.ocsp.BasicOCSPRespGenerator;
+import org.bouncycastle.ocsp.CertificateStatus;
+import org.bouncycastle.ocsp.OCSPReq;
+import org.bouncycastle.ocsp.OCSPRespGenerator;
+import org.bouncycastle.ocsp.Req;
+import org.bouncycastle.ocsp.RevokedStatus;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.cert.RevocationManager;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsManagerUtils;
+import org.nhindirect.stagent.options.OptionsParameter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class OCSPRevocationManagerTest extends TestCase
+{
+	private static final BigInteger REVOKED_SERIAL = BigInteger.valueOf(666);
+
+	private KeyPair caKeyPair;
+	private X509Certificate caCert;
+	private HttpServer responder;
+	private String responderURL;
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger certIdCount = new AtomicInteger();
+
+	// response times relative to the time the responder answers
+	private volatile long thisUpdateOffset = 0;
+	private volatile Long nextUpdateOffset = 3600000L;
+
+	// ECHO returns the request nonce, NONE omits it, and WRONG returns a different nonce
+	private volatile String nonceMode = "ECHO";
+
+	@Override
+	public void setUp() throws Exception
+	{
+		CryptoExtensions.registerJCEProviders();
+		OptionsManagerUtils.clearOptionsManagerInstance();
+
+		final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+		kpGen.initialize(1024);
+		caKeyPair = kpGen.generateKeyPair();
+		caCert = generateCertificate(BigInteger.ONE, "CN=Test OCSP CA", caKeyPair, caKeyPair, null);
+
+		// stand in OCSP responder that reports the revoked serial number as revoked and all others as good
+		responder = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		responder.createContext("/ocsp", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				requestCount.incrementAndGet();
+				try
+				{
+					final OCSPReq request = new OCSPReq(IOUtils.toByteArray(exchange.getRequestBody()));
+
+					final BasicOCSPRespGenerator basicGen = new BasicOCSPRespGenerator(caKeyPair.getPublic());
+					final long now = System.currentTimeMillis();
+					for (Req req : request.getRequestList())
+					{
+						certIdCount.incrementAndGet();
+						final CertificateStatus status = req.getCertID().getSerialNumber().equals(REVOKED_SERIAL) ?
+								new RevokedStatus(new Date(), 1) : CertificateStatus.GOOD;
+						basicGen.addResponse(req.getCertID(), status, new Date(now + thisUpdateOffset), 
+								(nextUpdateOffset == null) ? null : new Date(now + nextUpdateOffset), null);
+					}
+
+					final X509Extensions requestExtensions = request.getRequestExtensions();
+					if (requestExtensions != null && requestExtensions.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce) != null && 
+							!nonceMode.equals("NONE"))
+					{
+						X509Extension nonce = requestExtensions.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+						if (nonceMode.equals("WRONG"))
+							nonce = new X509Extension(false, new DEROctetString(new DEROctetString(new byte[] {1, 2, 3}).getDEREncoded()));
+
+						final Vector<Object> oids = new Vector<Object>();
+						final Vector<Object> values = new Vector<Object>();
+						oids.add(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+						values.add(nonce);
+						basicGen.setResponseExtensions(new X509Extensions(oids, values));
+					}
+
+					final byte[] response = new OCSPRespGenerator().generate(OCSPRespGenerator.SUCCESSFUL,
+							basicGen.generate("SHA1WITHRSA", caKeyPair.getPrivate(), null, new Date(), "BC")).getEncoded();
+
+					exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+					exchange.sendResponseHeaders(200, response.length);
+					final OutputStream outStream = exchange.getResponseBody();
+					outStream.write(response);
+					outStream.close();
+				}
+				catch (Exception e)
+				{
+					exchange.sendResponseHeaders(500, -1);
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		responder.start();
+
+		responderURL = "http://localhost:" + responder.getAddress().getPort() + "/ocsp";
+	}
+
+	@Override
+	public void tearDown()
+	{
+		responder.stop(0);
+		OptionsManagerUtils.clearOptionsManagerOptions();
+	}
+
+	protected X509Certificate generateCertificate(BigInteger serial, String subject, KeyPair subjectKeys, KeyPair issuerKeys, String ocspURL) throws Exception
+	{
+		final X509V3CertificateGenerator certGen = new X509V3CertificateGenerator();
+		certGen.setSerialNumber(serial);
+		certGen.setIssuerDN(new X500Principal(caCert == null ? subject : caCert.getSubjectX500Principal().getName()));
+		certGen.setSubjectDN(new X500Principal(subject));
+		certGen.setNotBefore(new Date(System.currentTimeMillis() - 60000L));
+		certGen.setNotAfter(new Date(System.currentTimeMillis() + 86400000L));
+		certGen.setPublicKey(subjectKeys.getPublic());
+		certGen.setSignatureAlgorithm("SHA1WithRSAEncryption");
+
+		if (ocspURL != null)
+			certGen.addExtension(X509Extensions.AuthorityInfoAccess, false,
+					new AuthorityInformationAccess(AccessDescription.id_ad_ocsp, new GeneralName(GeneralName.uniformResourceIdentifier, ocspURL)));
+
+		return certGen.generate(issuerKeys.getPrivate(), "BC");
+	}
+
+	protected X509Certificate generateLeaf(BigInteger serial, String ocspURL) throws Exception
+	{
+		final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+		kpGen.initialize(1024);
+
+		return generateCertificate(serial, "CN=leaf" + serial + "@test.com", kpGen.generateKeyPair(), caKeyPair, ocspURL);
+	}
+
+	protected OCSPRevocationManager createManager(RevocationManager fallback)
+	{
+		return new OCSPRevocationManager(fallback)
+		{
+			@Override
+			protected X509Certificate resolveIssuer(X509Certificate certificate)
+			{
+				return caCert;
+			}
+		};
+	}
+
+	public void testIsRevoked_goodCert_assertNotRevokedAndCached() throws Exception
+	{
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(100), responderURL);
+		final OCSPRevocationManager mgr = createManager(null);
+
+		assertFalse(mgr.isRevoked(leaf));
+		assertFalse(mgr.isRevoked(leaf));
+
+		assertEquals(1, requestCount.get());
+		assertNotNull(mgr.getCachedResponse(leaf, caCert));
+		assertNotNull(mgr.getCachedResponseExpiration(leaf, caCert));
+	}
+
+	public void testIsRevoked_revokedCert_assertRevoked() throws Exception
+	{
+		final X509Certificate leaf = generateLeaf(REVOKED_SERIAL, responderURL);
+
+		assertTrue(createManager(null).isRevoked(leaf));
+		assertTrue(createManager(null).isRevoked(leaf, caCert));
+	}
+
+	public void testGetRevokedCertificates_multipleCerts_assertSingleRequest() throws Exception
+	{
+		final X509Certificate good1 = generateLeaf(BigInteger.valueOf(101), responderURL);
+		final X509Certificate good2 = generateLeaf(BigInteger.valueOf(102), responderURL);
+		final X509Certificate revoked = generateLeaf(REVOKED_SERIAL, responderURL);
+
+		final Collection<X509Certificate> revokedCerts = createManager(null).getRevokedCertificates(Arrays.asList(good1, revoked, good2));
+
+		assertEquals(1, revokedCerts.size());
+		assertTrue(revokedCerts.contains(revoked));
+		assertEquals(1, requestCount.get());
+		assertEquals(3, certIdCount.get());
+	}
+
+	public void testIsRevoked_noOCSPLocation_assertFallbackUsed() throws Exception
+	{
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(103), null);
+		final CountingRevocationManager fallback = new CountingRevocationManager(leaf);
+
+		assertTrue(createManager(fallback).isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertEquals(0, requestCount.get());
+	}
+
+	public void testIsRevoked_responderUnavailable_assertFallbackUsed() throws Exception
+	{
+		// nothing listens on this port
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(104), "http://localhost:1/ocsp");
+		final CountingRevocationManager fallback = new CountingRevocationManager(leaf);
+
+		assertTrue(createManager(fallback).isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+	}
+
+	public void testIsRevoked_responseSignedByUntrustedKey_assertFallbackUsed() throws Exception
+	{
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(105), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager();
+
+		// claim a different issuer so the response signature does not match
+		final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "BC");
+		kpGen.initialize(1024);
+		final KeyPair otherKeys = kpGen.generateKeyPair();
+		final X509Certificate otherIssuer = generateCertificate(BigInteger.TEN, "CN=Test OCSP CA", otherKeys, otherKeys, null);
+
+		final OCSPRevocationManager mgr = new OCSPRevocationManager(fallback)
+		{
+			@Override
+			protected X509Certificate resolveIssuer(X509Certificate certificate)
+			{
+				return otherIssuer;
+			}
+		};
+
+		assertFalse(mgr.isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertNull(mgr.getCachedResponse(leaf, otherIssuer));
+	}
+
+	public void testIsRevoked_nextUpdatePassed_assertResponseRejectedAndFallbackUsed() throws Exception
+	{
+		thisUpdateOffset = -7200000L;
+		nextUpdateOffset = -3600000L;
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(106), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager(leaf);
+		final OCSPRevocationManager mgr = createManager(fallback);
+
+		// the stale good response must not hide the revocation reported by the fallback
+		assertTrue(mgr.isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertNull(mgr.getCachedResponse(leaf, caCert));
+	}
+
+	public void testIsRevoked_thisUpdateInFuture_assertResponseRejected() throws Exception
+	{
+		thisUpdateOffset = 3600000L;
+		nextUpdateOffset = 7200000L;
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(107), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager();
+		final OCSPRevocationManager mgr = createManager(fallback);
+
+		assertFalse(mgr.isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertNull(mgr.getCachedResponse(leaf, caCert));
+	}
+
+	public void testIsRevoked_responseOlderThanMaxAge_assertResponseRejected() throws Exception
+	{
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.OCSP_MAX_RESPONSE_AGE, "60000"));
+
+		thisUpdateOffset = -600000L;
+		nextUpdateOffset = 3600000L;
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(108), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager();
+		final OCSPRevocationManager mgr = createManager(fallback);
+
+		assertFalse(mgr.isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertNull(mgr.getCachedResponse(leaf, caCert));
+	}
+
+	public void testIsRevoked_nextUpdatePassedWithinClockSkew_assertResponseAccepted() throws Exception
+	{
+		thisUpdateOffset = -120000L;
+		nextUpdateOffset = -60000L;
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(109), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager();
+
+		assertFalse(createManager(fallback).isRevoked(leaf));
+		assertEquals(0, fallback.checks.get());
+	}
+
+	public void testIsRevoked_noNextUpdate_assertCachedNoLongerThanMaxAge() throws Exception
+	{
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.OCSP_MAX_RESPONSE_AGE, "60000"));
+
+		nextUpdateOffset = null;
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(110), responderURL);
+		final OCSPRevocationManager mgr = createManager(null);
+
+		final long start = System.currentTimeMillis();
+		assertFalse(mgr.isRevoked(leaf));
+		assertTrue(mgr.getCachedResponseExpiration(leaf, caCert).getTime() <= start + 60000L + 1000L);
+	}
+
+	public void testIsRevoked_responderOmitsNonce_assertResponseAccepted() throws Exception
+	{
+		nonceMode = "NONE";
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(111), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager();
+
+		assertFalse(createManager(fallback).isRevoked(leaf));
+		assertEquals(0, fallback.checks.get());
+	}
+
+	public void testIsRevoked_nonceMismatch_assertResponseRejected() throws Exception
+	{
+		nonceMode = "WRONG";
+
+		final X509Certificate leaf = generateLeaf(BigInteger.valueOf(112), responderURL);
+		final CountingRevocationManager fallback = new CountingRevocationManager(leaf);
+		final OCSPRevocationManager mgr = createManager(fallback);
+
+		assertTrue(mgr.isRevoked(leaf));
+		assertEquals(1, fallback.checks.get());
+		assertNull(mgr.getCachedResponse(leaf, caCert));
+	}
+
+	static class CountingRevocationManager implements RevocationManager
+	{
+		final AtomicInteger checks = new AtomicInteger();
+		final Set<X509Certificate> revoked = new HashSet<X509Certificate>();
+
+		CountingRevocationManager(X509Certificate... revoked)
+		{
+			this.revoked.addAll(Arrays.asList(revoked));
+		}
+
+		@Override
+		public boolean isRevoked(X509Certificate certificate)
+		{
+			checks.incrementAndGet();
+			return revoked.contains(certificate);
+		}
+	}
+}
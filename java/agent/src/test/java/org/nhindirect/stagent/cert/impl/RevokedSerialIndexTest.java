@@ -0,0 +1,81 @@
+package org.nhindirect.stagent.cert.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+
+import junit.framework.TestCase;
+
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.utils.TestUtils;
+
+public class RevokedSerialIndexTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+    	CryptoExtensions.registerJCEProviders();
+	}
+
+	public void testFromCRL_assertRevokedSerialsFound() throws Exception
+	{
+		final X509CRL crl = (X509CRL)TestUtils.loadCRL("certs.crl");
+
+		final RevokedSerialIndex index = RevokedSerialIndex.fromCRL(crl);
+
+		assertEquals(crl.getRevokedCertificates().size(), index.size());
+		for (X509CRLEntry entry : crl.getRevokedCertificates())
+			assertTrue(index.contains(entry.getSerialNumber()));
+
+		assertTrue(index.isIssuedBy(crl.getIssuerX500Principal()));
+	}
+
+	public void testFromCRL_serialNotRevoked_assertNotFound() throws Exception
+	{
+		final X509CRL crl = (X509CRL)TestUtils.loadCRL("certs.crl");
+
+		final RevokedSerialIndex index = RevokedSerialIndex.fromCRL(crl);
+
+		BigInteger serial = BigInteger.ONE;
+		while (crl.getRevokedCertificate(serial) != null)
+			serial = serial.add(BigInteger.ONE);
+
+		assertFalse(index.contains(serial));
+		assertFalse(index.contains(new BigInteger("123456789012345678901234567890")));
+	}
+
+	public void testWriteAndRead_assertEquivalentIndex() throws Exception
+	{
+		final X509CRL crl = (X509CRL)TestUtils.loadCRL("certs.crl");
+
+		final RevokedSerialIndex index = RevokedSerialIndex.fromCRL(crl);
+
+		final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		index.write(outStream);
+
+		final RevokedSerialIndex readIndex = RevokedSerialIndex.read(new ByteArrayInputStream(outStream.toByteArray()));
+
+		assertEquals(index.size(), readIndex.size());
+		assertEquals(index.getNextUpdate(), readIndex.getNextUpdate());
+		assertTrue(readIndex.isIssuedBy(crl.getIssuerX500Principal()));
+		for (X509CRLEntry entry : crl.getRevokedCertificates())
+			assertTrue(readIndex.contains(entry.getSerialNumber()));
+	}
+
+	public void testRead_corruptStream_assertException() throws Exception
+	{
+		boolean exceptionOccured = false;
+		try
+		{
+			RevokedSerialIndex.read(new ByteArrayInputStream(new byte[] {9, 6, 4, 2, 1, 1, 1, 1}));
+		}
+		catch (IOException e)
+		{
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+}
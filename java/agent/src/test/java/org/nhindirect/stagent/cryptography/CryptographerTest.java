@@ -256,6 +256,7 @@ public class CryptographerTest extends TestCase
 				exceptionOccured = true;
 		}
 		assertTrue(exceptionOccured);
+		assertEquals(0, cryptographer.getDecryptionAttemptCount());
 	}
 	
 	public void testEncryptWithSingleCert_decryptWithMutlipeCerts_onlyOneCertCorrect_assertDecrypted() throws Exception
@@ -280,6 +281,9 @@ public class CryptographerTest extends TestCase
 		MimeEntity decryEntity = cryptographer.decrypt(encEntity, Arrays.asList(certex1, certex2));
 
 		assertNotNull(decryEntity);
+		// only the matching recipient cert's private key should be tried
+		assertEquals(1, cryptographer.getDecryptionAttemptCount());
+		assertEquals(1, cryptographer.getDecryptionHitCount());
 		
 		byte[] decryEntityBytes = EntitySerializer.Default.serializeToBytes(decryEntity);
 		byte[] entityBytes = EntitySerializer.Default.serializeToBytes(entity);
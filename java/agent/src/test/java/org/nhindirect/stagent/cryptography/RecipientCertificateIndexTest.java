@@ -0,0 +1,79 @@
+package org.nhindirect.stagent.cryptography;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.cms.RecipientId;
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.cert.X509CertificateEx;
+import org.nhindirect.stagent.utils.TestUtils;
+
+public class RecipientCertificateIndexTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+    	CryptoExtensions.registerJCEProviders();
+	}
+	
+	public void testGetMatchingCertificates_issuerAndSerial_assertMatch() throws Exception
+	{
+		X509CertificateEx user1 = TestUtils.getInternalCert("user1");
+		X509CertificateEx altName = TestUtils.getInternalCert("altnameonly");
+		
+		RecipientCertificateIndex index = new RecipientCertificateIndex(Arrays.asList(altName, user1));
+		assertEquals(2, index.size());
+		
+		Collection<X509CertificateEx> matches = index.getMatchingCertificates(createRecipientId(user1));
+		assertEquals(1, matches.size());
+		assertEquals(user1, matches.iterator().next());
+	}
+	
+	public void testGetMatchingCertificates_noMatch_assertEmpty() throws Exception
+	{
+		X509CertificateEx altName = TestUtils.getInternalCert("altnameonly");
+		
+		RecipientCertificateIndex index = new RecipientCertificateIndex(Arrays.asList(altName));
+
+		assertTrue(index.getMatchingCertificates(createRecipientId(TestUtils.getExternalCert("user1"))).isEmpty());
+	}
+	
+	public void testConstruct_duplicateCerts_assertIndexedOnce() throws Exception
+	{
+		X509CertificateEx user1 = TestUtils.getInternalCert("user1");
+		
+		RecipientCertificateIndex index = new RecipientCertificateIndex(Arrays.asList(user1, user1));
+		assertEquals(1, index.size());
+		assertEquals(1, index.getMatchingCertificates(createRecipientId(user1)).size());
+	}
+	
+	public void testGetMatchingCertificates_subjectKeyIdentifier_assertMatch() throws Exception
+	{
+		X509CertificateEx user1 = TestUtils.getInternalCert("user1");
+		X509CertificateEx altName = TestUtils.getInternalCert("altnameonly");
+		
+		byte[] keyId = RecipientCertificateIndex.getSubjectKeyIdentifier(user1);
+		assertNotNull(keyId);
+		
+		RecipientCertificateIndex index = new RecipientCertificateIndex(Arrays.asList(altName, user1));
+		
+		RecipientId rid = new RecipientId();
+		rid.setSubjectKeyIdentifier(keyId);
+		
+		Collection<X509CertificateEx> matches = index.getMatchingCertificates(rid);
+		assertEquals(1, matches.size());
+		assertEquals(user1, matches.iterator().next());
+	}
+	
+	private RecipientId createRecipientId(X509Certificate cert) throws Exception
+	{
+		RecipientId retVal = new RecipientId();
+		retVal.setSerialNumber(cert.getSerialNumber());
+		retVal.setIssuer(cert.getIssuerX500Principal().getEncoded());
+		
+		return retVal;
+	}
+}
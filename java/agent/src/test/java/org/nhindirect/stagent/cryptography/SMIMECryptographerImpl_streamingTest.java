@@ -0,0 +1,170 @@
+package org.nhindirect.stagent.cryptography;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeMultipart;
+
+import junit.framework.TestCase;
+
+import org.nhindirect.stagent.CryptoExtensions;
+import org.nhindirect.stagent.cert.X509CertificateEx;
+import org.nhindirect.stagent.mail.Message;
+import org.nhindirect.stagent.mail.MimeEntity;
+import org.nhindirect.stagent.mail.MimeStandard;
+import org.nhindirect.stagent.options.OptionsManager;
+import org.nhindirect.stagent.options.OptionsManagerUtils;
+import org.nhindirect.stagent.options.OptionsParameter;
+import org.nhindirect.stagent.parser.EntitySerializer;
+import org.nhindirect.stagent.utils.TestUtils;
+
+public class SMIMECryptographerImpl_streamingTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+    	CryptoExtensions.registerJCEProviders();
+    	
+    	// force content to spill to disk
+    	OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_SPILL_THRESHOLD, "1024"));
+	}
+	
+	@Override
+	public void tearDown()
+	{
+		OptionsManagerUtils.clearOptionsManagerOptions();
+	}
+	
+	protected MimeEntity createLargeEntity() throws Exception
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 5000; ++i)
+			builder.append("This is line ").append(i).append(" of a large clinical document.\r\n");
+		
+		MimeEntity entity = new MimeEntity();
+		entity.setText(builder.toString());
+		entity.setHeader(MimeStandard.ContentTypeHeader, "text/plain");
+		entity.setHeader(MimeStandard.ContentTransferEncodingHeader, "7bit");
+		
+		return entity;
+	}
+	
+	public void testConstruct_streamingOptionSet_assertStreamingEnabled() throws Exception
+	{
+		assertFalse(new SMIMECryptographerImpl().isStreamingEnabled());
+		
+		OptionsManager.getInstance().setOptionsParameter(new OptionsParameter(OptionsParameter.CRYPTOGRAHPER_SMIME_STREAMING_ENABLED, "true"));
+		
+		assertTrue(new SMIMECryptographerImpl().isStreamingEnabled());
+	}
+	
+	public void testEncryptAndDecrypt_largeEntity_assertDecrypted() throws Exception
+	{
+		X509Certificate cert = TestUtils.getExternalCert("user1");
+		
+		SMIMECryptographerImpl cryptographer = new SMIMECryptographerImpl();
+		cryptographer.setStreamingEnabled(true);
+		
+		MimeEntity entity = createLargeEntity();
+		
+		MimeEntity encEntity = cryptographer.encrypt(entity, cert);
+		assertNotNull(encEntity);
+		assertTrue(encEntity.getContentType().startsWith(SMIMEStandard.EncryptedContentMediaType));
+		assertEquals(MimeStandard.TransferEncodingBase64, encEntity.getEncoding());
+		
+		X509CertificateEx certex = TestUtils.getInternalCert("user1");
+		
+		MimeEntity decryEntity = cryptographer.decrypt(encEntity, certex);
+		assertNotNull(decryEntity);
+		
+		byte[] decryEntityBytes = EntitySerializer.Default.serializeToBytes(decryEntity);
+		byte[] entityBytes = EntitySerializer.Default.serializeToBytes(entity);
+		
+		assertTrue(Arrays.equals(decryEntityBytes, entityBytes));
+	}
+	
+	public void testEncryptStreamed_decryptNonStreamed_assertDecrypted() throws Exception
+	{
+		X509Certificate cert = TestUtils.getExternalCert("user1");
+		
+		SMIMECryptographerImpl streamingCryptographer = new SMIMECryptographerImpl();
+		streamingCryptographer.setStreamingEnabled(true);
+		
+		MimeEntity entity = createLargeEntity();
+		
+		MimeEntity encEntity = streamingCryptographer.encrypt(entity, cert);
+
+		MimeEntity decryEntity = new SMIMECryptographerImpl().decrypt(encEntity, TestUtils.getInternalCert("user1"));
+		
+		assertTrue(Arrays.equals(EntitySerializer.Default.serializeToBytes(decryEntity), 
+				EntitySerializer.Default.serializeToBytes(entity)));
+	}
+	
+	public void testEncryptAndDecrypt_multipartEntity_assertDecrypted() throws Exception
+	{
+		X509Certificate cert = TestUtils.getExternalCert("user1");
+		
+		SMIMECryptographerImpl cryptographer = new SMIMECryptographerImpl();
+		cryptographer.setStreamingEnabled(true);
+		
+		MimeEntity entityXML = new MimeEntity();
+		entityXML.setText("<Test></Test>");
+		entityXML.setHeader(MimeStandard.ContentTypeHeader, "text/xml");		
+		
+		MimeMultipart mpEntity = new MimeMultipart();
+		mpEntity.addBodyPart(createLargeEntity());
+		mpEntity.addBodyPart(entityXML);
+		
+		MimeEntity encEntity = cryptographer.encrypt(mpEntity, cert);
+		MimeEntity decryEntity = cryptographer.decrypt(encEntity, TestUtils.getInternalCert("user1"));
+		
+		ByteArrayOutputStream oStream = new ByteArrayOutputStream();
+		mpEntity.writeTo(oStream);
+		InternetHeaders hdrs = new InternetHeaders();
+		hdrs.addHeader(MimeStandard.ContentTypeHeader, mpEntity.getContentType());
+		MimeEntity orgEntity = new MimeEntity(hdrs, oStream.toByteArray());
+		
+		assertTrue(Arrays.equals(EntitySerializer.Default.serializeToBytes(decryEntity), 
+				EntitySerializer.Default.serializeToBytes(orgEntity)));
+	}
+	
+	public void testSignAndCheckSignature_largeEntity_assertValid() throws Exception
+	{
+		X509CertificateEx certex = TestUtils.getInternalCert("user1");
+		
+		SMIMECryptographerImpl cryptographer = new SMIMECryptographerImpl();
+		cryptographer.setStreamingEnabled(true);
+		
+		MimeEntity entity = createLargeEntity();
+		
+		SignedEntity signedEnt = cryptographer.sign(entity, certex);
+		assertNotNull(signedEnt);
+		assertNotNull(signedEnt.getSignature());
+		
+		assertTrue(Arrays.equals(EntitySerializer.Default.serializeToBytes(signedEnt.getContent()), 
+				EntitySerializer.Default.serializeToBytes(entity)));
+		
+		X509Certificate cert = TestUtils.getExternalCert("user1");
+		
+		// validate with both the streaming and non streaming implementations
+		cryptographer.checkSignature(signedEnt, cert, new ArrayList<X509Certificate>());
+		new SMIMECryptographerImpl().checkSignature(signedEnt, cert, new ArrayList<X509Certificate>());
+	}
+	
+	public void testSignMessage_multipartMessage_assertValid() throws Exception
+	{
+		SMIMECryptographerImpl cryptographer = new SMIMECryptographerImpl();
+		cryptographer.setStreamingEnabled(true);
+		
+		String testMessage = TestUtils.readResource("MultipartMimeMessage.txt");
+		
+		SignedEntity signedEnt = cryptographer.sign(new Message(new ByteArrayInputStream(testMessage.getBytes())), 
+				TestUtils.getInternalCert("user1"));
+		
+		cryptographer.checkSignature(signedEnt, TestUtils.getExternalCert("user1"), new ArrayList<X509Certificate>());
+	}
+}
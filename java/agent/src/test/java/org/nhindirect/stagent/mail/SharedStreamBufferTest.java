@@ -0,0 +1,154 @@
+package org.nhindirect.stagent.mail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import junit.framework.TestCase;
+
+public class SharedStreamBufferTest extends TestCase 
+{
+	public void testWrite_underThreshold_assertInMemory() throws Exception
+	{
+		SharedStreamBuffer buffer = new SharedStreamBuffer(1024, null);
+		byte[] data = "Hello world.".getBytes("ASCII");
+		buffer.write(data);
+		
+		assertFalse(buffer.isSpilled());
+		assertEquals(data.length, buffer.getSize());
+		
+		InputStream stream = buffer.getSharedInputStream();
+		assertTrue(stream instanceof SharedInputStream);
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(stream)));
+	}
+	
+	public void testWrite_overThreshold_assertSpilled() throws Exception
+	{
+		File spillLocation = new File("./target/spilltest");
+		spillLocation.mkdirs();
+		
+		SharedStreamBuffer buffer = new SharedStreamBuffer(16, spillLocation);
+		byte[] data = new byte[4096];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte)i;
+		
+		buffer.write(data, 0, 8);
+		assertFalse(buffer.isSpilled());
+		buffer.write(data, 8, data.length - 8);
+		assertTrue(buffer.isSpilled());
+		assertEquals(data.length, buffer.getSize());
+		
+		InputStream stream = buffer.getSharedInputStream();
+		assertTrue(stream instanceof SharedInputStream);
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(stream)));
+		
+		// the same content can be read again after the first stream is consumed
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(buffer.getSharedInputStream())));
+		IOUtils.closeQuietly(stream);
+	}
+	
+	public void testWrite_afterClose_assertException() throws Exception
+	{
+		SharedStreamBuffer buffer = new SharedStreamBuffer(16, null);
+		buffer.close();
+		
+		boolean exceptionOccured = false;
+		try
+		{
+			buffer.write(1);
+		}
+		catch (java.io.IOException e)
+		{
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+	
+	public void testCreateEntity_spilledContent_assertEntityParsed() throws Exception
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1000; ++i)
+			builder.append("Line ").append(i).append("\r\n");
+		
+		InternetHeaders headers = new InternetHeaders();
+		headers.addHeader(MimeStandard.ContentTypeHeader, "text/plain");
+		headers.addHeader(MimeStandard.ContentTransferEncodingHeader, "7bit");
+		
+		MimeEntity entity = new MimeEntity(headers, IOUtils.toInputStream(builder.toString()));
+		
+		assertEquals("text/plain", entity.getContentType());
+		assertEquals(builder.toString(), IOUtils.toString(entity.getInputStream()));
+	}
+	
+	public void testDispose_spilledContent_assertFileDeletedWhenStreamsClosed() throws Exception
+	{
+		File spillLocation = new File("./target/spilltest/dispose");
+		spillLocation.mkdirs();
+		
+		SharedStreamBuffer buffer = new SharedStreamBuffer(16, spillLocation);
+		byte[] data = new byte[4096];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte)i;
+		buffer.write(data);
+		
+		InputStream stream = buffer.getSharedInputStream();
+		InputStream subStream = ((SharedInputStream)stream).newStream(100, 200);
+		assertEquals(1, spillLocation.listFiles().length);
+		
+		// streams remain readable after the buffer is disposed
+		buffer.dispose();
+		assertEquals(1, spillLocation.listFiles().length);
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(stream)));
+		assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 200), IOUtils.toByteArray(subStream)));
+		
+		stream.close();
+		assertEquals(1, spillLocation.listFiles().length);
+		subStream.close();
+		assertEquals(0, spillLocation.listFiles().length);
+	}
+	
+	public void testDispose_unreadSpilledContent_assertFileDeleted() throws Exception
+	{
+		File spillLocation = new File("./target/spilltest/unread");
+		spillLocation.mkdirs();
+		
+		SharedStreamBuffer buffer = new SharedStreamBuffer(16, spillLocation);
+		buffer.write(new byte[1024]);
+		assertEquals(1, spillLocation.listFiles().length);
+		
+		buffer.dispose();
+		assertEquals(0, spillLocation.listFiles().length);
+	}
+	
+	public void testToMimeEntity_spilledContent_assertContentShared() throws Exception
+	{
+		File spillLocation = new File("./target/spilltest/entity");
+		spillLocation.mkdirs();
+		
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1000; ++i)
+			builder.append("Line ").append(i).append("\r\n");
+		
+		InternetHeaders headers = new InternetHeaders();
+		headers.addHeader(MimeStandard.ContentTypeHeader, "text/plain");
+		
+		SharedStreamBuffer buffer = new SharedStreamBuffer(16, spillLocation);
+		buffer.writeEntity(headers, IOUtils.toInputStream(builder.toString()));
+		MimeEntity entity = buffer.toMimeEntity();
+		
+		assertTrue(entity.isContentShared());
+		assertEquals(builder.toString(), IOUtils.toString(entity.getInputStream()));
+		
+		// a message built from the entity shares its content
+		InternetHeaders messageHeaders = new InternetHeaders();
+		messageHeaders.addHeader(MimeStandard.ContentTypeHeader, "text/plain");
+		Message message = new Message(messageHeaders, entity);
+		assertEquals("text/plain", message.getContentType());
+		assertEquals(builder.toString(), IOUtils.toString(message.getInputStream()));
+	}
+}
@@ -0,0 +1,171 @@
+package org.nhindirect.stagent.trust;
+
+import java.io.File;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.nhindirect.stagent.NHINDException;
+import org.nhindirect.stagent.utils.TestUtils;
+
+public class AIACertificateCacheTest extends TestCase
+{
+	private static final String TEST_URL = "http://ca.example.com/issuer.der";
+
+	private static final File CACHE_LOCATION = new File("./target/AIACertCache");
+
+	static class CountingLoader implements AIACertificateCache.CertificateLoader
+	{
+		final AtomicInteger loads = new AtomicInteger();
+		final X509Certificate cert;
+
+		CountingLoader(X509Certificate cert)
+		{
+			this.cert = cert;
+		}
+
+		@Override
+		public X509Certificate load(String url) throws NHINDException
+		{
+			loads.incrementAndGet();
+			if (cert == null)
+				throw new NHINDException("Failed to download certificate from AIA extension.");
+
+			return cert;
+		}
+	}
+
+	@Override
+	public void setUp() throws Exception
+	{
+		if (CACHE_LOCATION.exists())
+			FileUtils.cleanDirectory(CACHE_LOCATION);
+	}
+
+	public void testGetCertificate_secondCall_assertLoadedOnce() throws Exception
+	{
+		final CountingLoader loader = new CountingLoader(TestUtils.loadCertificate("cert-b.der"));
+		final AIACertificateCache cache = new AIACertificateCache(null, 3600, 60);
+
+		assertEquals(loader.cert, cache.getCertificate(TEST_URL, loader));
+		assertEquals(loader.cert, cache.getCertificate(TEST_URL, loader));
+		assertEquals(1, loader.loads.get());
+	}
+
+	public void testGetInstance_separateValidators_assertSharedCache() throws Exception
+	{
+		final TrustChainValidator validator1 = new TrustChainValidator();
+		final TrustChainValidator validator2 = new TrustChainValidator();
+
+		assertSame(AIACertificateCache.getInstance(), validator1.getAIACertificateCache());
+		assertSame(validator1.getAIACertificateCache(), validator2.getAIACertificateCache());
+	}
+
+	public void testGetCertificate_downloadFails_assertNegativeCached() throws Exception
+	{
+		final CountingLoader loader = new CountingLoader(null);
+		final AIACertificateCache cache = new AIACertificateCache(null, 3600, 60);
+
+		for (int i = 0; i < 2; ++i)
+		{
+			boolean exceptionOccured = false;
+			try
+			{
+				cache.getCertificate(TEST_URL, loader);
+			}
+			catch (NHINDException e)
+			{
+				exceptionOccured = true;
+			}
+			assertTrue(exceptionOccured);
+		}
+
+		assertEquals(1, loader.loads.get());
+	}
+
+	public void testGetCertificate_negativeCacheDisabled_assertLoadedEachTime() throws Exception
+	{
+		final CountingLoader loader = new CountingLoader(null);
+		final AIACertificateCache cache = new AIACertificateCache(null, 3600, 0);
+
+		for (int i = 0; i < 2; ++i)
+		{
+			try
+			{
+				cache.getCertificate(TEST_URL, loader);
+			}
+			catch (NHINDException e) {/* expected */}
+		}
+
+		assertEquals(2, loader.loads.get());
+	}
+
+	public void testGetCertificate_fileCache_assertLoadedFromFile() throws Exception
+	{
+		final CountingLoader loader = new CountingLoader(TestUtils.loadCertificate("cert-b.der"));
+
+		assertEquals(loader.cert, new AIACertificateCache(CACHE_LOCATION, 3600, 60).getCertificate(TEST_URL, loader));
+		assertEquals(1, CACHE_LOCATION.list().length);
+
+		// a new cache instance should be populated from the file cache
+		assertEquals(loader.cert, new AIACertificateCache(CACHE_LOCATION, 3600, 60).getCertificate(TEST_URL, loader));
+		assertEquals(1, loader.loads.get());
+	}
+
+	public void testGetCertificate_concurrentRequests_assertSingleDownload() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("cert-b.der");
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+
+		final AIACertificateCache.CertificateLoader slowLoader = new AIACertificateCache.CertificateLoader()
+		{
+			@Override
+			public X509Certificate load(String url) throws NHINDException
+			{
+				loads.incrementAndGet();
+				try
+				{
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {/* no-op */}
+				return cert;
+			}
+		};
+
+		final AIACertificateCache cache = new AIACertificateCache(null, 3600, 60);
+		final AtomicInteger resolved = new AtomicInteger();
+
+		final Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; ++i)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						if (cache.getCertificate(TEST_URL, slowLoader) != null)
+							resolved.incrementAndGet();
+					}
+					catch (NHINDException e) {/* no-op */}
+				}
+			});
+			threads[i].start();
+		}
+
+		// give all of the threads time to block on the download before releasing it
+		Thread.sleep(500);
+		release.countDown();
+
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(threads.length, resolved.get());
+		assertEquals(1, loads.get());
+	}
+}
@@ -19,6 +19,12 @@ public class TrustChainValidator_getIntermediateCertsByAIATest extends TestCase
 	static class TrustChainValidatorWrapper extends TrustChainValidator
 	{
 		public String retrievedURL;
+		
+		public TrustChainValidatorWrapper()
+		{
+			// each test stubs its own downloads, so do not share the process wide AIA cache
+			setAIACertificateCache(new AIACertificateCache(null, AIACertificateCache.DEFAULT_CACHE_TTL, 0));
+		}
 	}
 	
 	public void testGetIntermediateCertsByAIA_AIAExists_validateResolved() throws Exception
@@ -0,0 +1,116 @@
+package org.nhindirect.stagent.trust;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXParameters;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.nhindirect.stagent.CryptoExtensions;
+
+public class TrustChainValidator_validationCacheTest extends TestCase
+{
+	@Override
+	public void setUp()
+	{
+    	CryptoExtensions.registerJCEProviders();
+	}
+
+	protected X509Certificate loadCertificate(String file) throws Exception
+	{
+		final byte[] data = FileUtils.readFileToByteArray(new File("src/test/resources/certs/" + file));
+
+		return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(data));
+	}
+
+	public void testIsTrusted_validateTwice_assertCacheHit() throws Exception
+	{
+    	final X509Certificate anchor = loadCertificate("cert-b.der");
+    	final X509Certificate certToValidate = loadCertificate("cert-a.der");
+
+    	final TrustChainValidator validator = new TrustChainValidator();
+    	validator.setValidationCache(new TrustChainValidationCache(10, 3600));
+
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertEquals(0, validator.getValidationCache().getHitCount());
+    	assertEquals(1, validator.getValidationCache().getMissCount());
+    	assertEquals(1, validator.getValidationCache().size());
+
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertEquals(1, validator.getValidationCache().getHitCount());
+    	assertEquals(1, validator.getValidationCache().getMissCount());
+	}
+
+	public void testIsTrusted_differentAnchorSet_assertCacheMiss() throws Exception
+	{
+    	final X509Certificate anchor = loadCertificate("cert-b.der");
+    	final X509Certificate otherAnchor = loadCertificate("messaging.cerner.com.der");
+    	final X509Certificate certToValidate = loadCertificate("cert-a.der");
+
+    	final TrustChainValidator validator = new TrustChainValidator();
+    	validator.setValidationCache(new TrustChainValidationCache(10, 3600));
+
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor, otherAnchor)));
+    	assertEquals(0, validator.getValidationCache().getHitCount());
+    	assertEquals(2, validator.getValidationCache().getMissCount());
+
+    	// anchor order does not change the anchor set fingerprint
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(otherAnchor, anchor)));
+    	assertEquals(1, validator.getValidationCache().getHitCount());
+	}
+
+	public void testIsTrusted_untrustedCert_assertNotCached() throws Exception
+	{
+    	final X509Certificate anchor = loadCertificate("messaging.cerner.com.der");
+    	final X509Certificate certToValidate = loadCertificate("cert-a.der");
+
+    	final TrustChainValidator validator = new TrustChainValidator();
+    	validator.setValidationCache(new TrustChainValidationCache(10, 3600));
+
+    	assertFalse(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertFalse(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertEquals(0, validator.getValidationCache().getHitCount());
+    	assertEquals(0, validator.getValidationCache().size());
+	}
+
+	public void testIsTrusted_cacheDisabled_assertNoHits() throws Exception
+	{
+    	final X509Certificate anchor = loadCertificate("cert-b.der");
+    	final X509Certificate certToValidate = loadCertificate("cert-a.der");
+
+    	final TrustChainValidator validator = new TrustChainValidator();
+    	validator.setValidationCache(new TrustChainValidationCache(10, 0));
+
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertTrue(validator.isTrusted(certToValidate, Arrays.asList(anchor)));
+    	assertEquals(0, validator.getValidationCache().getHitCount());
+    	assertEquals(0, validator.getValidationCache().size());
+	}
+
+	public void testGetParameters_sameAnchorSet_assertCopyPerCall() throws Exception
+	{
+    	final X509Certificate anchor = loadCertificate("cert-b.der");
+
+    	final TrustChainValidationCache cache = new TrustChainValidationCache(10, 3600);
+    	final String fingerprint = cache.getAnchorSetFingerprint(Arrays.asList(anchor));
+
+    	final PKIXParameters params1 = cache.getParameters(fingerprint, Arrays.asList(anchor));
+    	final PKIXParameters params2 = cache.getParameters(fingerprint, Arrays.asList(anchor));
+
+    	assertNotSame(params1, params2);
+    	assertSame(params1.getTrustAnchors(), params2.getTrustAnchors());
+
+    	params1.setRevocationEnabled(true);
+    	params1.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters()));
+    	assertFalse(params2.isRevocationEnabled());
+    	assertTrue(params2.getCertStores().isEmpty());
+    	assertFalse(cache.getParameters(fingerprint, Arrays.asList(anchor)).isRevocationEnabled());
+	}
+}
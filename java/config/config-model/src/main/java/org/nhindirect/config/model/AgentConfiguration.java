@@ -0,0 +1,185 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+   in the documentation and/or other materials provided with the distribution.  
+3. Neither the name of the The NHIN Direct Project (nhindirect.org) nor the names of its contributors may be used to endorse or promote 
+   products derived from this software without specific prior written permission.
+   
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.nhindirect.config.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.codehaus.enunciate.json.JsonRootType;
+
+/**
+ * All of the configuration consumed by the security and trust agent in a single document.  Clients that build an agent for every
+ * configured domain can retrieve this document with one call instead of looking up anchors and trust bundle associations
+ * one domain at a time.
+ * <p>
+ * Trust bundles and anchors are listed once no matter how many domains they are associated with.
+ * @since 1.0
+ */
+///CLOVER:OFF
+@JsonRootType
+public class AgentConfiguration 
+{
+	private Collection<Domain> domains;
+	private Collection<Anchor> anchors;
+	private Collection<TrustBundle> trustBundles;
+	private Collection<TrustBundleDomainReltn> trustBundleDomainReltns;
+	private Collection<CertPolicyGroupDomainReltn> policyGroupDomainReltns;
+	private Collection<Setting> settings;
+	
+	/**
+	 * Empty constructor
+	 */
+	public AgentConfiguration()
+	{
+		
+	}
+
+	/**
+	 * Gets the domains.
+	 * @return The domains.
+	 */
+	public Collection<Domain> getDomains() 
+	{
+		if (domains == null)
+			domains = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(domains);
+	}
+
+	/**
+	 * Sets the domains.
+	 * @param domains The domains.
+	 */
+	public void setDomains(Collection<Domain> domains) 
+	{
+		this.domains = new ArrayList<Domain>(domains);
+	}
+
+	/**
+	 * Gets the trust anchors of all domains.
+	 * @return The trust anchors of all domains.
+	 */
+	public Collection<Anchor> getAnchors() 
+	{
+		if (anchors == null)
+			anchors = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(anchors);
+	}
+
+	/**
+	 * Sets the trust anchors of all domains.
+	 * @param anchors The trust anchors of all domains.
+	 */
+	public void setAnchors(Collection<Anchor> anchors) 
+	{
+		this.anchors = new ArrayList<Anchor>(anchors);
+	}
+
+	/**
+	 * Gets the trust bundles including their anchors.
+	 * @return The trust bundles including their anchors.
+	 */
+	public Collection<TrustBundle> getTrustBundles() 
+	{
+		if (trustBundles == null)
+			trustBundles = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(trustBundles);
+	}
+
+	/**
+	 * Sets the trust bundles including their anchors.
+	 * @param trustBundles The trust bundles including their anchors.
+	 */
+	public void setTrustBundles(Collection<TrustBundle> trustBundles) 
+	{
+		this.trustBundles = new ArrayList<TrustBundle>(trustBundles);
+	}
+
+	/**
+	 * Gets the trust bundle to domain associations.  The bundles in the associations do not carry their anchors; the anchors are
+	 * found in the matching bundle of the trust bundle collection.
+	 * @return The trust bundle to domain associations.
+	 */
+	public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns() 
+	{
+		if (trustBundleDomainReltns == null)
+			trustBundleDomainReltns = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(trustBundleDomainReltns);
+	}
+
+	/**
+	 * Sets the trust bundle to domain associations.
+	 * @param trustBundleDomainReltns The trust bundle to domain associations.
+	 */
+	public void setTrustBundleDomainReltns(Collection<TrustBundleDomainReltn> trustBundleDomainReltns) 
+	{
+		this.trustBundleDomainReltns = new ArrayList<TrustBundleDomainReltn>(trustBundleDomainReltns);
+	}
+
+	/**
+	 * Gets the certificate policy group to domain associations.
+	 * @return The certificate policy group to domain associations.
+	 */
+	public Collection<CertPolicyGroupDomainReltn> getPolicyGroupDomainReltns() 
+	{
+		if (policyGroupDomainReltns == null)
+			policyGroupDomainReltns = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(policyGroupDomainReltns);
+	}
+
+	/**
+	 * Sets the certificate policy group to domain associations.
+	 * @param policyGroupDomainReltns The certificate policy group to domain associations.
+	 */
+	public void setPolicyGroupDomainReltns(Collection<CertPolicyGroupDomainReltn> policyGroupDomainReltns) 
+	{
+		this.policyGroupDomainReltns = new ArrayList<CertPolicyGroupDomainReltn>(policyGroupDomainReltns);
+	}
+
+	/**
+	 * Gets the name value pair settings.
+	 * @return The name value pair settings.
+	 */
+	public Collection<Setting> getSettings() 
+	{
+		if (settings == null)
+			settings = Collections.emptyList();
+		
+		return Collections.unmodifiableCollection(settings);
+	}
+
+	/**
+	 * Sets the name value pair settings.
+	 * @param settings The name value pair settings.
+	 */
+	public void setSettings(Collection<Setting> settings) 
+	{
+		this.settings = new ArrayList<Setting>(settings);
+	}
+}
+///CLOVER:ON
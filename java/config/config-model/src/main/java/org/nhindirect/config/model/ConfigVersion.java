@@ -0,0 +1,143 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+   in the documentation and/or other materials provided with the distribution.  
+3. Neither the name of the The NHIN Direct Project (nhindirect.org) nor the names of its contributors may be used to endorse or promote 
+   products derived from this software without specific prior written permission.
+   
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.nhindirect.config.model;
+
+import org.codehaus.enunciate.json.JsonRootType;
+
+/**
+ * Fingerprints of the configuration categories consumed by the security and trust agent.  Each fingerprint changes whenever
+ * an entity in its category is added, removed, or modified, so clients can poll the fingerprints and only reload the categories
+ * that actually changed.
+ * <p>
+ * Fingerprints are opaque strings and should only be compared for equality.
+ * @since 1.0
+ */
+///CLOVER:OFF
+@JsonRootType
+public class ConfigVersion 
+{
+	private String domainsVersion;
+	private String anchorsVersion;
+	private String trustBundlesVersion;
+	private String certPoliciesVersion;
+	private String settingsVersion;
+	
+	/**
+	 * Empty constructor
+	 */
+	public ConfigVersion()
+	{
+		
+	}
+
+	/**
+	 * Gets the fingerprint of the domains and their postmaster addresses.
+	 * @return The fingerprint of the domains and their postmaster addresses.
+	 */
+	public String getDomainsVersion() 
+	{
+		return domainsVersion;
+	}
+
+	/**
+	 * Sets the fingerprint of the domains and their postmaster addresses.
+	 * @param domainsVersion The fingerprint of the domains and their postmaster addresses.
+	 */
+	public void setDomainsVersion(String domainsVersion) 
+	{
+		this.domainsVersion = domainsVersion;
+	}
+
+	/**
+	 * Gets the fingerprint of the trust anchors.
+	 * @return The fingerprint of the trust anchors.
+	 */
+	public String getAnchorsVersion() 
+	{
+		return anchorsVersion;
+	}
+
+	/**
+	 * Sets the fingerprint of the trust anchors.
+	 * @param anchorsVersion The fingerprint of the trust anchors.
+	 */
+	public void setAnchorsVersion(String anchorsVersion) 
+	{
+		this.anchorsVersion = anchorsVersion;
+	}
+
+	/**
+	 * Gets the fingerprint of the trust bundles and their domain associations.
+	 * @return The fingerprint of the trust bundles and their domain associations.
+	 */
+	public String getTrustBundlesVersion() 
+	{
+		return trustBundlesVersion;
+	}
+
+	/**
+	 * Sets the fingerprint of the trust bundles and their domain associations.
+	 * @param trustBundlesVersion The fingerprint of the trust bundles and their domain associations.
+	 */
+	public void setTrustBundlesVersion(String trustBundlesVersion) 
+	{
+		this.trustBundlesVersion = trustBundlesVersion;
+	}
+
+	/**
+	 * Gets the fingerprint of the certificate policies, policy groups, and their domain associations.
+	 * @return The fingerprint of the certificate policies, policy groups, and their domain associations.
+	 */
+	public String getCertPoliciesVersion() 
+	{
+		return certPoliciesVersion;
+	}
+
+	/**
+	 * Sets the fingerprint of the certificate policies, policy groups, and their domain associations.
+	 * @param certPoliciesVersion The fingerprint of the certificate policies, policy groups, and their domain associations.
+	 */
+	public void setCertPoliciesVersion(String certPoliciesVersion) 
+	{
+		this.certPoliciesVersion = certPoliciesVersion;
+	}
+
+	/**
+	 * Gets the fingerprint of the name value pair settings.
+	 * @return The fingerprint of the name value pair settings.
+	 */
+	public String getSettingsVersion() 
+	{
+		return settingsVersion;
+	}
+
+	/**
+	 * Sets the fingerprint of the name value pair settings.
+	 * @param settingsVersion The fingerprint of the name value pair settings.
+	 */
+	public void setSettingsVersion(String settingsVersion) 
+	{
+		this.settingsVersion = settingsVersion;
+	}
+}
+///CLOVER:ON
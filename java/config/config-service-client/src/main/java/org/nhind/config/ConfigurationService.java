@@ -54,6 +54,7 @@ public interface ConfigurationService extends java.rmi.Remote {
     public void removeCertificatesForOwner(java.lang.String owner) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
     public void refreshTrustBundle(long id) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
     public org.nhind.config.TrustBundleDomainReltn[] getTrustBundlesByDomain(long domainId, boolean fetchAnchors) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
+    public org.nhind.config.TrustBundleDomainReltn[] getTrustBundleDomainReltns(boolean fetchAnchors) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
     public void addAddress(org.nhind.config.Address[] address) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
     public org.nhind.config.Setting[] getAllSettings() throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
     public void disassociatePolicyGroupsFromDomain(long domainId) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException;
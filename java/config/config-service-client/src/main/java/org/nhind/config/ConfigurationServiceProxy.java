@@ -320,6 +320,12 @@ public class ConfigurationServiceProxy implements org.nhind.config.Configuration
     return configurationService.getTrustBundlesByDomain(domainId, fetchAnchors);
   }
   
+  public org.nhind.config.TrustBundleDomainReltn[] getTrustBundleDomainReltns(boolean fetchAnchors) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException{
+    if (configurationService == null)
+      _initConfigurationServiceProxy();
+    return configurationService.getTrustBundleDomainReltns(fetchAnchors);
+  }
+  
   public void addAddress(org.nhind.config.Address[] address) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException{
     if (configurationService == null)
       _initConfigurationServiceProxy();
@@ -2,17 +2,21 @@ package org.nhind.config.module;
 
 import org.nhind.config.provider.DefaultRESTServiceProvider;
 import org.nhind.config.rest.AddressService;
+import org.nhind.config.rest.AgentConfigurationService;
 import org.nhind.config.rest.AnchorService;
 import org.nhind.config.rest.CertPolicyService;
 import org.nhind.config.rest.CertificateService;
+import org.nhind.config.rest.ConfigVersionService;
 import org.nhind.config.rest.DNSService;
 import org.nhind.config.rest.DomainService;
 import org.nhind.config.rest.SettingService;
 import org.nhind.config.rest.TrustBundleService;
 import org.nhind.config.rest.impl.DefaultAddressService;
+import org.nhind.config.rest.impl.DefaultAgentConfigurationService;
 import org.nhind.config.rest.impl.DefaultAnchorService;
 import org.nhind.config.rest.impl.DefaultCertPolicyService;
 import org.nhind.config.rest.impl.DefaultCertificateService;
+import org.nhind.config.rest.impl.DefaultConfigVersionService;
 import org.nhind.config.rest.impl.DefaultDNSService;
 import org.nhind.config.rest.impl.DefaultDomainService;
 import org.nhind.config.rest.impl.DefaultSettingService;
@@ -58,9 +62,11 @@ public class DefaultRESTServiceModule extends AbstractModule
 	protected void configure()
 	{   
 		bind(AddressService.class).toProvider(new DefaultRESTServiceProvider<AddressService>(serviceURL, securityManager, DefaultAddressService.class));
+		bind(AgentConfigurationService.class).toProvider(new DefaultRESTServiceProvider<AgentConfigurationService>(serviceURL, securityManager, DefaultAgentConfigurationService.class));
 		bind(AnchorService.class).toProvider(new DefaultRESTServiceProvider<AnchorService>(serviceURL, securityManager, DefaultAnchorService.class));
 		bind(CertificateService.class).toProvider(new DefaultRESTServiceProvider<CertificateService>(serviceURL, securityManager, DefaultCertificateService.class));
 		bind(CertPolicyService.class).toProvider(new DefaultRESTServiceProvider<CertPolicyService>(serviceURL, securityManager, DefaultCertPolicyService.class));
+		bind(ConfigVersionService.class).toProvider(new DefaultRESTServiceProvider<ConfigVersionService>(serviceURL, securityManager, DefaultConfigVersionService.class));
 		bind(DNSService.class).toProvider(new DefaultRESTServiceProvider<DNSService>(serviceURL, securityManager, DefaultDNSService.class));
 		bind(DomainService.class).toProvider(new DefaultRESTServiceProvider<DomainService>(serviceURL, securityManager, DefaultDomainService.class));
 		bind(SettingService.class).toProvider(new DefaultRESTServiceProvider<SettingService>(serviceURL, securityManager, DefaultSettingService.class));
@@ -0,0 +1,14 @@
+package org.nhind.config.rest;
+
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.AgentConfiguration;
+
+public interface AgentConfigurationService 
+{
+	/**
+	 * Gets all of the configuration consumed by the security and trust agent in a single call.
+	 * @return The agent configuration, or null if the configuration service does not support bulk retrieval.
+	 * @throws ServiceException
+	 */
+	public AgentConfiguration getAgentConfiguration() throws ServiceException;
+}
@@ -0,0 +1,14 @@
+package org.nhind.config.rest;
+
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.ConfigVersion;
+
+public interface ConfigVersionService 
+{
+	/**
+	 * Gets the current fingerprint of each configuration category.
+	 * @return The configuration version, or null if the configuration service does not support change detection.
+	 * @throws ServiceException
+	 */
+	public ConfigVersion getConfigVersion() throws ServiceException;
+}
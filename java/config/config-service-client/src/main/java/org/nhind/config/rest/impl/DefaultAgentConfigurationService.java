@@ -0,0 +1,28 @@
+package org.nhind.config.rest.impl;
+
+import java.util.Collection;
+
+import org.apache.http.client.HttpClient;
+import org.nhind.config.rest.AgentConfigurationService;
+import org.nhind.config.rest.impl.requests.GetAgentConfigurationRequest;
+import org.nhindirect.common.rest.AbstractSecuredService;
+import org.nhindirect.common.rest.ServiceSecurityManager;
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.AgentConfiguration;
+
+public class DefaultAgentConfigurationService extends AbstractSecuredService implements AgentConfigurationService
+{
+    public DefaultAgentConfigurationService(String serviceUrl, HttpClient httpClient, 
+    		ServiceSecurityManager securityManager) 
+    {	
+        super(serviceUrl, httpClient, securityManager);
+    }
+
+	@Override
+	public AgentConfiguration getAgentConfiguration() throws ServiceException 
+	{
+		final Collection<AgentConfiguration> configs = callWithRetry(new GetAgentConfigurationRequest(httpClient, serviceURL, jsonMapper, securityManager));
+		
+		return (configs.isEmpty()) ? null : configs.iterator().next();
+	}
+}
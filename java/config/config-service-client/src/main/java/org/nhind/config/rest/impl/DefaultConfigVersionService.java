@@ -0,0 +1,28 @@
+package org.nhind.config.rest.impl;
+
+import java.util.Collection;
+
+import org.apache.http.client.HttpClient;
+import org.nhind.config.rest.ConfigVersionService;
+import org.nhind.config.rest.impl.requests.GetConfigVersionRequest;
+import org.nhindirect.common.rest.AbstractSecuredService;
+import org.nhindirect.common.rest.ServiceSecurityManager;
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.ConfigVersion;
+
+public class DefaultConfigVersionService extends AbstractSecuredService implements ConfigVersionService
+{
+    public DefaultConfigVersionService(String serviceUrl, HttpClient httpClient, 
+    		ServiceSecurityManager securityManager) 
+    {	
+        super(serviceUrl, httpClient, securityManager);
+    }
+
+	@Override
+	public ConfigVersion getConfigVersion() throws ServiceException 
+	{
+		final Collection<ConfigVersion> versions = callWithRetry(new GetConfigVersionRequest(httpClient, serviceURL, jsonMapper, securityManager));
+		
+		return (versions.isEmpty()) ? null : versions.iterator().next();
+	}
+}
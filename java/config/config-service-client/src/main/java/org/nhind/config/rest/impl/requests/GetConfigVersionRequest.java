@@ -0,0 +1,23 @@
+package org.nhind.config.rest.impl.requests;
+
+import org.apache.http.client.HttpClient;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.nhindirect.common.rest.AbstractGetRequest;
+import org.nhindirect.common.rest.ServiceSecurityManager;
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.ConfigVersion;
+
+public class GetConfigVersionRequest extends AbstractGetRequest<ConfigVersion>
+{
+    public GetConfigVersionRequest(HttpClient httpClient, String certServerUrl,
+            ObjectMapper jsonMapper, ServiceSecurityManager securityManager) 
+    {
+        super(httpClient, certServerUrl, jsonMapper, securityManager, false);
+    }
+ 
+    @Override
+    protected String getRequestUri() throws ServiceException
+    {
+    	return serviceUrl + "version";
+    }
+}
@@ -16,7 +16,7 @@ public class ConfigurationServiceImplServiceSoapBindingStub extends org.apache.a
     static org.apache.axis.description.OperationDesc [] _operations;
 
     static {
-        _operations = new org.apache.axis.description.OperationDesc[86];
+        _operations = new org.apache.axis.description.OperationDesc[87];
         _initOperationDesc1();
         _initOperationDesc2();
         _initOperationDesc3();
@@ -1595,6 +1595,23 @@ public class ConfigurationServiceImplServiceSoapBindingStub extends org.apache.a
                      ));
         _operations[85] = oper;
 
+        oper = new org.apache.axis.description.OperationDesc();
+        oper.setName("getTrustBundleDomainReltns");
+        param = new org.apache.axis.description.ParameterDesc(new javax.xml.namespace.QName("", "fetchAnchors"), org.apache.axis.description.ParameterDesc.IN, new javax.xml.namespace.QName("http://www.w3.org/2001/XMLSchema", "boolean"), boolean.class, false, false);
+        oper.addParameter(param);
+        oper.setReturnType(new javax.xml.namespace.QName("http://nhind.org/config", "trustBundleDomainReltn"));
+        oper.setReturnClass(org.nhind.config.TrustBundleDomainReltn[].class);
+        oper.setReturnQName(new javax.xml.namespace.QName("", "return"));
+        oper.setStyle(org.apache.axis.constants.Style.WRAPPED);
+        oper.setUse(org.apache.axis.constants.Use.LITERAL);
+        oper.addFault(new org.apache.axis.description.FaultDesc(
+                      new javax.xml.namespace.QName("http://nhind.org/config", "ConfigurationServiceException"),
+                      "org.nhind.config.ConfigurationServiceException",
+                      new javax.xml.namespace.QName("http://nhind.org/config", "ConfigurationServiceException"), 
+                      true
+                     ));
+        _operations[86] = oper;
+
     }
 
     public ConfigurationServiceImplServiceSoapBindingStub() throws org.apache.axis.AxisFault {
@@ -5091,4 +5108,45 @@ public class ConfigurationServiceImplServiceSoapBindingStub extends org.apache.a
 }
     }
 
+    public org.nhind.config.TrustBundleDomainReltn[] getTrustBundleDomainReltns(boolean fetchAnchors) throws java.rmi.RemoteException, org.nhind.config.ConfigurationServiceException {
+        if (super.cachedEndpoint == null) {
+            throw new org.apache.axis.NoEndPointException();
+        }
+        org.apache.axis.client.Call _call = createCall();
+        _call.setOperation(_operations[86]);
+        _call.setUseSOAPAction(true);
+        _call.setSOAPActionURI("urn:GetTrustBundleDomainReltns");
+        _call.setEncodingStyle(null);
+        _call.setProperty(org.apache.axis.client.Call.SEND_TYPE_ATTR, Boolean.FALSE);
+        _call.setProperty(org.apache.axis.AxisEngine.PROP_DOMULTIREFS, Boolean.FALSE);
+        _call.setSOAPVersion(org.apache.axis.soap.SOAPConstants.SOAP11_CONSTANTS);
+        _call.setOperationName(new javax.xml.namespace.QName("http://nhind.org/config", "getTrustBundleDomainReltns"));
+
+        setRequestHeaders(_call);
+        setAttachments(_call);
+ try {        java.lang.Object _resp = _call.invoke(new java.lang.Object[] {new java.lang.Boolean(fetchAnchors)});
+
+        if (_resp instanceof java.rmi.RemoteException) {
+            throw (java.rmi.RemoteException)_resp;
+        }
+        else {
+            extractAttachments(_call);
+            try {
+                return (org.nhind.config.TrustBundleDomainReltn[]) _resp;
+            } catch (java.lang.Exception _exception) {
+                return (org.nhind.config.TrustBundleDomainReltn[]) org.apache.axis.utils.JavaUtils.convert(_resp, org.nhind.config.TrustBundleDomainReltn[].class);
+            }
+        }
+  } catch (org.apache.axis.AxisFault axisFaultException) {
+    if (axisFaultException.detail != null) {
+        if (axisFaultException.detail instanceof java.rmi.RemoteException) {
+              throw (java.rmi.RemoteException) axisFaultException.detail;
+         }
+        if (axisFaultException.detail instanceof org.nhind.config.ConfigurationServiceException) {
+              throw (org.nhind.config.ConfigurationServiceException) axisFaultException.detail;
+         }
+   }
+  throw axisFaultException;
+}
+    }
 }
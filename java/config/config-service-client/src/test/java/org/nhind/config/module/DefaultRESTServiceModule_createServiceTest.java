@@ -1,17 +1,21 @@
 package org.nhind.config.module;
 
 import org.nhind.config.rest.AddressService;
+import org.nhind.config.rest.AgentConfigurationService;
 import org.nhind.config.rest.AnchorService;
 import org.nhind.config.rest.CertPolicyService;
 import org.nhind.config.rest.CertificateService;
+import org.nhind.config.rest.ConfigVersionService;
 import org.nhind.config.rest.DNSService;
 import org.nhind.config.rest.DomainService;
 import org.nhind.config.rest.SettingService;
 import org.nhind.config.rest.TrustBundleService;
 import org.nhind.config.rest.impl.DefaultAddressService;
+import org.nhind.config.rest.impl.DefaultAgentConfigurationService;
 import org.nhind.config.rest.impl.DefaultAnchorService;
 import org.nhind.config.rest.impl.DefaultCertPolicyService;
 import org.nhind.config.rest.impl.DefaultCertificateService;
+import org.nhind.config.rest.impl.DefaultConfigVersionService;
 import org.nhind.config.rest.impl.DefaultDNSService;
 import org.nhind.config.rest.impl.DefaultDomainService;
 import org.nhind.config.rest.impl.DefaultSettingService;
@@ -35,6 +39,9 @@ public class DefaultRESTServiceModule_createServiceTest
 		AbstractSecuredService service = (AbstractSecuredService)configInjector.getInstance(AddressService.class);
 		assertTrue(service instanceof DefaultAddressService);
 		
+		service = (AbstractSecuredService)configInjector.getInstance(AgentConfigurationService.class);
+		assertTrue(service instanceof DefaultAgentConfigurationService);
+		
 		service = (AbstractSecuredService)configInjector.getInstance(AnchorService.class);
 		assertTrue(service instanceof DefaultAnchorService);
 		
@@ -44,6 +51,9 @@ public class DefaultRESTServiceModule_createServiceTest
 		service = (AbstractSecuredService)configInjector.getInstance(CertPolicyService.class);
 		assertTrue(service instanceof DefaultCertPolicyService);
 		
+		service = (AbstractSecuredService)configInjector.getInstance(ConfigVersionService.class);
+		assertTrue(service instanceof DefaultConfigVersionService);
+		
 		service = (AbstractSecuredService)configInjector.getInstance(DNSService.class);
 		assertTrue(service instanceof DefaultDNSService);
 		
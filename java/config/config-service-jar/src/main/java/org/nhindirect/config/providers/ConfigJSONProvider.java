@@ -57,10 +57,12 @@ public class ConfigJSONProvider extends JacksonJsonProvider
     }
 	///CLOVER:ON
 	
-	/*
-	 * Create the custom, default object mapper.
+	/**
+	 * Creates an object mapper with the serialization settings used by the configuration service.  Resources that stream their responses
+	 * use it so streamed content matches the content written by this provider.
+	 * @return A new object mapper.
 	 */
-	private static ObjectMapper getDefaultObjectMapper()
+	public static ObjectMapper getDefaultObjectMapper()
 	{
 		ObjectMapper mappy = new ObjectMapper();
 	    mappy.configure(SerializationConfig.Feature.WRITE_DATES_AS_TIMESTAMPS, false);
@@ -0,0 +1,250 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package org.nhindirect.config.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.nhindirect.config.model.TrustBundle;
+import org.nhindirect.config.model.TrustBundleDomainReltn;
+import org.nhindirect.config.providers.ConfigJSONProvider;
+import org.nhindirect.config.resources.util.EntityModelConversion;
+import org.nhindirect.config.store.Anchor;
+import org.nhindirect.config.store.CertPolicyGroupDomainReltn;
+import org.nhindirect.config.store.Domain;
+import org.nhindirect.config.store.Setting;
+import org.nhindirect.config.store.dao.AnchorDao;
+import org.nhindirect.config.store.dao.CertPolicyDao;
+import org.nhindirect.config.store.dao.DomainDao;
+import org.nhindirect.config.store.dao.SettingDao;
+import org.nhindirect.config.store.dao.TrustBundleDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.inject.Singleton;
+
+/**
+ * JAX-RS resource for retrieving all of the configuration consumed by the security and trust agent in a single call.
+ * <p>
+ * Every category is read with one query regardless of the number of configured domains, and trust bundle anchors are only
+ * included once in the bundle list rather than once per domain association.  The response is streamed: each entity is converted
+ * and written as the response body is sent, so the full configuration model is never held in memory.
+ * <p>
+ * Although not required, this class is instantiated using the Jersey SpringServlet and dependencies are defined in the Sprint context XML file.
+ * @since 2.0
+ */
+@Component
+@Path("agentconfig/")
+@Singleton
+public class AgentConfigurationResource extends ProtectedResource
+{	
+    private static final Log log = LogFactory.getLog(AgentConfigurationResource.class);
+    
+    private static final ObjectMapper mapper = ConfigJSONProvider.getDefaultObjectMapper();
+    
+    /**
+     * Domain DAO is defined in the context XML file an injected by Spring
+     */
+    protected DomainDao domainDao;
+    
+    /**
+     * Anchor DAO is defined in the context XML file an injected by Spring
+     */
+    protected AnchorDao anchorDao;
+    
+    /**
+     * TrustBundle DAO is defined in the context XML file an injected by Spring
+     */
+    protected TrustBundleDao bundleDao;
+    
+    /**
+     * CertPolicy DAO is defined in the context XML file an injected by Spring
+     */
+    protected CertPolicyDao policyDao;
+    
+    /**
+     * Settings DAO is defined in the context XML file an injected by Spring
+     */
+    protected SettingDao settingDao;
+    
+    /**
+     * Constructor
+     */
+    public AgentConfigurationResource()
+    {
+		
+	}
+    
+    /**
+     * Sets the domain Dao.  Auto populate by Spring
+     * @param domainDao The domain Dao.
+     */
+    @Autowired
+    public void setDomainDao(DomainDao domainDao) 
+    {
+        this.domainDao = domainDao;
+    }
+    
+    /**
+     * Sets the anchor Dao.  Auto populate by Spring
+     * @param anchorDao The anchor Dao.
+     */
+    @Autowired
+    public void setAnchorDao(AnchorDao anchorDao) 
+    {
+        this.anchorDao = anchorDao;
+    }
+    
+    /**
+     * Sets the trustBundle Dao.  Auto populate by Spring
+     * @param bundleDao The trustBundle Dao.
+     */
+    @Autowired
+    public void setTrustBundleDao(TrustBundleDao bundleDao) 
+    {
+        this.bundleDao = bundleDao;
+    }
+    
+    /**
+     * Sets the certificate policy Dao.  Auto populate by Spring
+     * @param policyDao The certificate policy Dao.
+     */
+    @Autowired
+    public void setCertPolicyDao(CertPolicyDao policyDao) 
+    {
+        this.policyDao = policyDao;
+    }
+    
+    /**
+     * Sets the settings Dao.  Auto populated by Spring
+     * @param settingDao Settings Dao
+     */
+    @Autowired
+    public void setSettingDao(SettingDao settingDao) 
+    {
+        this.settingDao = settingDao;
+    }
+    
+    /**
+     * Gets the domains, anchors, trust bundles, trust bundle associations, policy group associations, and settings
+     * of the system.  The body has the JSON form of {@link org.nhindirect.config.model.AgentConfiguration}.
+     * @return A JSON representation of the agent configuration.
+     */
+    @Produces(MediaType.APPLICATION_JSON)       
+    @GET
+    public Response getAgentConfiguration()
+    {
+    	final Collection<Domain> domains;
+    	final Collection<Anchor> anchors;
+    	final Collection<org.nhindirect.config.store.TrustBundle> bundles;
+    	final Collection<org.nhindirect.config.store.TrustBundleDomainReltn> bundleReltns;
+    	final Collection<CertPolicyGroupDomainReltn> policyReltns;
+    	final Collection<Setting> settings;
+    	
+    	// run the queries before the response is committed so a failure can still be reported with a status code
+    	try
+    	{
+    		domains = domainDao.searchDomain(null, null);
+    		anchors = anchorDao.listAll();
+    		bundles = bundleDao.getTrustBundles();
+    		bundleReltns = bundleDao.getTrustBundleDomainReltns();
+    		policyReltns = policyDao.getPolicyGroupDomainReltns();
+    		settings = settingDao.getAll();
+    	}
+    	catch (Exception e)
+    	{
+    		log.error("Error looking up agent configuration.", e);
+    		return Response.serverError().cacheControl(noCache).build();
+    	}
+    	
+    	final StreamingOutput body = new StreamingOutput()
+    	{
+    		@Override
+    		public void write(OutputStream out) throws IOException, WebApplicationException
+    		{
+    			final JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+    			gen.writeStartObject();
+    			
+    			gen.writeArrayFieldStart("domains");
+    			for (Domain domain : domains)
+    				mapper.writeValue(gen, EntityModelConversion.toModelDomain(domain));
+    			gen.writeEndArray();
+    			
+    			gen.writeArrayFieldStart("anchors");
+    			for (Anchor anchor : anchors)
+    				mapper.writeValue(gen, EntityModelConversion.toModelAnchor(anchor));
+    			gen.writeEndArray();
+    			
+    			gen.writeArrayFieldStart("trustBundles");
+    			for (org.nhindirect.config.store.TrustBundle bundle : bundles)
+    				mapper.writeValue(gen, EntityModelConversion.toModelTrustBundle(bundle));
+    			gen.writeEndArray();
+    			
+    			gen.writeArrayFieldStart("trustBundleDomainReltns");
+    			for (org.nhindirect.config.store.TrustBundleDomainReltn reltn : bundleReltns)
+    			{
+	    			// the anchors are already in the bundle list, so only reference the bundle
+	    			final TrustBundle bundleRef = new TrustBundle();
+	    			bundleRef.setId(reltn.getTrustBundle().getId());
+	    			bundleRef.setBundleName(reltn.getTrustBundle().getBundleName());
+	    			
+	        		final TrustBundleDomainReltn newReltn = new TrustBundleDomainReltn();
+	        		newReltn.setIncoming(reltn.isIncoming());
+	        		newReltn.setOutgoing(reltn.isOutgoing());
+	        		newReltn.setDomain(EntityModelConversion.toModelDomain(reltn.getDomain()));
+	        		newReltn.setTrustBundle(bundleRef);
+	        		
+	        		mapper.writeValue(gen, newReltn);
+    			}
+    			gen.writeEndArray();
+    			
+    			gen.writeArrayFieldStart("policyGroupDomainReltns");
+    			for (CertPolicyGroupDomainReltn reltn : policyReltns)
+    				mapper.writeValue(gen, EntityModelConversion.toModelCertPolicyGroupDomainReltn(reltn));
+    			gen.writeEndArray();
+    			
+    			gen.writeArrayFieldStart("settings");
+    			for (Setting setting : settings)
+    				mapper.writeValue(gen, EntityModelConversion.toModelSetting(setting));
+    			gen.writeEndArray();
+    			
+    			gen.writeEndObject();
+    			gen.flush();
+    		}
+    	};
+    	
+    	return Response.ok(body).cacheControl(noCache).build();
+    }
+}
@@ -0,0 +1,295 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.config.resources;
+
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nhindirect.config.model.ConfigVersion;
+import org.nhindirect.config.store.Anchor;
+import org.nhindirect.config.store.BundleThumbprint;
+import org.nhindirect.config.store.CertPolicy;
+import org.nhindirect.config.store.CertPolicyGroupDomainReltn;
+import org.nhindirect.config.store.CertPolicyGroupReltn;
+import org.nhindirect.config.store.Domain;
+import org.nhindirect.config.store.Setting;
+import org.nhindirect.config.store.TrustBundle;
+import org.nhindirect.config.store.TrustBundleDomainReltn;
+import org.nhindirect.config.store.dao.AnchorDao;
+import org.nhindirect.config.store.dao.CertPolicyDao;
+import org.nhindirect.config.store.dao.DomainDao;
+import org.nhindirect.config.store.dao.SettingDao;
+import org.nhindirect.config.store.dao.TrustBundleDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.inject.Singleton;
+
+/**
+ * JAX-RS resource for change detection of the configuration consumed by the security and trust agent.
+ * <p>
+ * Each configuration category is reduced to a SHA-1 fingerprint of its entities so clients can poll a single small document
+ * and only reload the categories whose fingerprint changed since their last poll.
+ * <p>
+ * Although not required, this class is instantiated using the Jersey SpringServlet and dependencies are defined in the Sprint context XML file.
+ * @since 2.0
+ */
+@Component
+@Path("version/")
+@Singleton
+public class ConfigVersionResource extends ProtectedResource
+{	
+    private static final Log log = LogFactory.getLog(ConfigVersionResource.class);
+    
+    /**
+     * Domain DAO is defined in the context XML file an injected by Spring
+     */
+    protected DomainDao domainDao;
+    
+    /**
+     * Anchor DAO is defined in the context XML file an injected by Spring
+     */
+    protected AnchorDao anchorDao;
+    
+    /**
+     * TrustBundle DAO is defined in the context XML file an injected by Spring
+     */
+    protected TrustBundleDao bundleDao;
+    
+    /**
+     * CertPolicy DAO is defined in the context XML file an injected by Spring
+     */
+    protected CertPolicyDao policyDao;
+    
+    /**
+     * Settings DAO is defined in the context XML file an injected by Spring
+     */
+    protected SettingDao settingDao;
+    
+    /**
+     * Constructor
+     */
+    public ConfigVersionResource()
+    {
+		
+	}
+    
+    /**
+     * Sets the domain Dao.  Auto populate by Spring
+     * @param domainDao The domain Dao.
+     */
+    @Autowired
+    public void setDomainDao(DomainDao domainDao) 
+    {
+        this.domainDao = domainDao;
+    }
+    
+    /**
+     * Sets the anchor Dao.  Auto populate by Spring
+     * @param anchorDao The anchor Dao.
+     */
+    @Autowired
+    public void setAnchorDao(AnchorDao anchorDao) 
+    {
+        this.anchorDao = anchorDao;
+    }
+    
+    /**
+     * Sets the trustBundle Dao.  Auto populate by Spring
+     * @param bundleDao The trustBundle Dao.
+     */
+    @Autowired
+    public void setTrustBundleDao(TrustBundleDao bundleDao) 
+    {
+        this.bundleDao = bundleDao;
+    }
+    
+    /**
+     * Sets the certificate policy Dao.  Auto populate by Spring
+     * @param policyDao The certificate policy Dao.
+     */
+    @Autowired
+    public void setCertPolicyDao(CertPolicyDao policyDao) 
+    {
+        this.policyDao = policyDao;
+    }
+    
+    /**
+     * Sets the settings Dao.  Auto populated by Spring
+     * @param settingDao Settings Dao
+     */
+    @Autowired
+    public void setSettingDao(SettingDao settingDao) 
+    {
+        this.settingDao = settingDao;
+    }
+    
+    /**
+     * Gets the current fingerprint of each configuration category.
+     * @return A JSON representation of the configuration version.
+     */
+    @Produces(MediaType.APPLICATION_JSON)       
+    @GET
+    public Response getConfigVersion()
+    {
+    	try
+    	{
+    		final Collection<Domain> domains = domainDao.searchDomain(null, null);
+    		
+    		final ConfigVersion version = new ConfigVersion();
+    		version.setDomainsVersion(getDomainsVersion(domains));
+    		version.setAnchorsVersion(getAnchorsVersion());
+    		version.setTrustBundlesVersion(getTrustBundlesVersion());
+    		version.setCertPoliciesVersion(getCertPoliciesVersion());
+    		version.setSettingsVersion(getSettingsVersion());
+    		
+    		return Response.ok(version).cacheControl(noCache).build();
+    	}
+    	catch (Exception e)
+    	{
+    		log.error("Error calculating configuration version.", e);
+    		return Response.serverError().cacheControl(noCache).build();
+    	}
+    }
+    
+    protected String getDomainsVersion(Collection<Domain> domains) throws Exception
+    {
+    	final List<String> entries = new ArrayList<String>();
+    	if (domains != null)
+    		for (Domain domain : domains)
+    			entries.add(toEntry(domain.getId(), domain.getDomainName(), domain.getStatus(), domain.getPostMasterEmail(), 
+    					domain.getUpdateTime()));
+    	
+    	return fingerprint(entries);
+    }
+    
+    protected String getAnchorsVersion() throws Exception
+    {
+    	final List<String> entries = new ArrayList<String>();
+    	final Collection<Anchor> anchors = anchorDao.listAll();
+    	if (anchors != null)
+    		for (Anchor anchor : anchors)
+    			entries.add(toEntry(anchor.getId(), anchor.getOwner(), anchor.getThumbprint(), anchor.getStatus(), 
+    					anchor.isIncoming(), anchor.isOutgoing()));
+    	
+    	return fingerprint(entries);
+    }
+    
+    protected String getTrustBundlesVersion() throws Exception
+    {
+    	final List<String> entries = new ArrayList<String>();
+    	final Collection<TrustBundle> bundles = bundleDao.getTrustBundles();
+    	if (bundles != null)
+    		for (TrustBundle bundle : bundles)
+    			entries.add(toEntry(bundle.getId(), bundle.getBundleName(), bundle.getCheckSum()));
+    	
+    	// bundle contents are shared across domains, so the associations are part of the category as well
+    	final Collection<TrustBundleDomainReltn> reltns = bundleDao.getTrustBundleDomainReltns();
+    	if (reltns != null)
+    		for (TrustBundleDomainReltn reltn : reltns)
+    			entries.add(toEntry("reltn", reltn.getId(), reltn.getDomain().getDomainName(), reltn.getTrustBundle().getId(), 
+    					reltn.isIncoming(), reltn.isOutgoing()));
+    	
+    	return fingerprint(entries);
+    }
+    
+    protected String getCertPoliciesVersion() throws Exception
+    {
+    	final List<String> entries = new ArrayList<String>();
+    	final Collection<CertPolicyGroupDomainReltn> reltns = policyDao.getPolicyGroupDomainReltns();
+    	if (reltns != null)
+    	{
+    		for (CertPolicyGroupDomainReltn reltn : reltns)
+    		{
+    			entries.add(toEntry(reltn.getId(), reltn.getDomain().getDomainName(), reltn.getCertPolicyGroup().getId()));
+    			
+    			final Collection<CertPolicyGroupReltn> policyUses = reltn.getCertPolicyGroup().getCertPolicyGroupReltn();
+    			if (policyUses != null)
+    			{
+    				for (CertPolicyGroupReltn policyUse : policyUses)
+    				{
+    					final CertPolicy policy = policyUse.getCertPolicy();
+    					entries.add(toEntry(reltn.getId(), policyUse.getId(), policyUse.getPolicyUse(), policyUse.isIncoming(), 
+    							policyUse.isOutgoing(), policy.getId(), policy.getLexicon(), 
+    							BundleThumbprint.toThumbprint(policy.getPolicyData() == null ? new byte[0] : policy.getPolicyData())));
+    				}
+    			}
+    		}
+    	}
+    	
+    	return fingerprint(entries);
+    }
+    
+    protected String getSettingsVersion() throws Exception
+    {
+    	final List<String> entries = new ArrayList<String>();
+    	final Collection<Setting> settings = settingDao.getAll();
+    	if (settings != null)
+    		for (Setting setting : settings)
+    			entries.add(toEntry(setting.getName(), setting.getValue(), setting.getStatus()));
+    	
+    	return fingerprint(entries);
+    }
+    
+    /*
+     * Builds a canonical string for a single entity.  Calendars are reduced to their time in milliseconds so the entry does not
+     * depend on the time zone of the persistence layer.
+     */
+    protected static String toEntry(Object... fields)
+    {
+    	final StringBuilder builder = new StringBuilder();
+    	for (Object field : fields)
+    	{
+    		if (field instanceof Calendar)
+    			field = ((Calendar)field).getTimeInMillis();
+    		
+    		builder.append(field).append('|');
+    	}
+    	
+    	return builder.toString();
+    }
+    
+    /*
+     * Entries are sorted before hashing so the fingerprint does not depend on the order rows are returned from the store.
+     */
+    protected static String fingerprint(List<String> entries) throws NoSuchAlgorithmException, UnsupportedEncodingException
+    {
+    	Collections.sort(entries);
+    	
+    	final StringBuilder builder = new StringBuilder();
+    	for (String entry : entries)
+    		builder.append(entry).append('\n');
+    	
+    	return BundleThumbprint.toThumbprint(builder.toString().getBytes("UTF-8")).toString();
+    }
+}
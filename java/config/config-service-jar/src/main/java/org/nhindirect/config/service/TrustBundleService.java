@@ -179,4 +179,15 @@ public interface TrustBundleService
     @WebMethod(operationName = "getTrustBundlesByDomain", action = "urn:GetTrustBundlesByDomain")
     public Collection<TrustBundleDomainReltn>  getTrustBundlesByDomain(@WebParam(name = "domainId") long domainId, 
     		@WebParam(name = "fetchAnchors") boolean fetchAnchors) throws ConfigurationServiceException;      
+    
+	/**
+	 * Gets the trust bundle associations of all domains in a single call.
+	 * @param fetchAnchors Indicates if the anchors should be returned with each bundle.  When the anchors are retrieved separately using
+	 * {@link #getTrustBundles(boolean)}, it is desirable to suppress returning the anchors with every association.
+	 * @return Collection of all trust bundle to domain associations.
+	 * @throws ConfigurationServiceException
+	 */
+    @WebMethod(operationName = "getTrustBundleDomainReltns", action = "urn:GetTrustBundleDomainReltns")
+    public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns(@WebParam(name = "fetchAnchors") boolean fetchAnchors) 
+    		throws ConfigurationServiceException;      
 }
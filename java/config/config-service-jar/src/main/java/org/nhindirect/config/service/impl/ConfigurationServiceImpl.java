@@ -986,6 +986,16 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 		return trustBundleSvc.getTrustBundlesByDomain(domainId, fetchAnchors);
 	}   
 	
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	@FaultAction(className = ConfigurationFault.class)
+	public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns(boolean fetchAnchors) throws ConfigurationServiceException 
+	{
+		return trustBundleSvc.getTrustBundleDomainReltns(fetchAnchors);
+	}   
+	
 	@Override
 	@FaultAction(className = ConfigurationFault.class)
 	public Collection<CertPolicy> getPolicies() throws ConfigurationServiceException 
@@ -269,6 +269,24 @@ public class TrustBundleServiceImpl implements TrustBundleService
 		return bundles;
 		
 	}
+	
+    /**
+     * {@inheritDoc}
+     */
+	@Override
+	public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns(boolean fetchAnchors)
+			throws ConfigurationServiceException 
+	{
+		final Collection<TrustBundleDomainReltn> bundles = dao.getTrustBundleDomainReltns();
+		
+		if (!fetchAnchors)
+		{
+			for (TrustBundleDomainReltn bundle : bundles)
+				bundle.getTrustBundle().setTrustBundleAnchors(new ArrayList<TrustBundleAnchor>());
+		}
+		
+		return bundles;
+	}
             
 	/**
      * Set the value of the TrustBundlDao object.
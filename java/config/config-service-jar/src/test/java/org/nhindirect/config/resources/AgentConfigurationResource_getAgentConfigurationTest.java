@@ -0,0 +1,194 @@
+package org.nhindirect.config.resources;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Test;
+import org.nhindirect.config.BaseTestPlan;
+import org.nhindirect.config.ConfigServiceRunner;
+import org.nhindirect.config.TestUtils;
+import org.nhindirect.config.model.Address;
+import org.nhindirect.config.model.AgentConfiguration;
+import org.nhindirect.config.model.Domain;
+import org.nhindirect.config.model.EntityStatus;
+import org.nhindirect.config.model.Setting;
+import org.nhindirect.config.model.TrustBundle;
+import org.nhindirect.config.model.TrustBundleDomainReltn;
+import org.nhindirect.config.store.dao.SettingDao;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+
+public class AgentConfigurationResource_getAgentConfigurationTest
+{
+	   protected SettingDao settingDao;
+
+		static WebResource resource;
+
+		abstract class TestPlan extends BaseTestPlan
+		{
+			@Override
+			protected void setupMocks()
+			{
+				try
+				{
+					settingDao = (SettingDao)ConfigServiceRunner.getSpringApplicationContext().getBean("settingDao");
+
+					resource = 	getResource(ConfigServiceRunner.getConfigServiceURL());
+				}
+				catch (Throwable t)
+				{
+					throw new RuntimeException(t);
+				}
+			}
+
+			@Override
+			protected void tearDownMocks()
+			{
+
+			}
+
+			protected void addConfiguration() throws Exception
+			{
+
+			}
+
+			@Override
+			protected void performInner() throws Exception
+			{
+				addConfiguration();
+
+				doAssertions(resource.path("/api/agentconfig/").get(AgentConfiguration.class));
+			}
+
+			protected void doAssertions(AgentConfiguration config) throws Exception
+			{
+
+			}
+		}
+
+		@Test
+		public void testGetAgentConfiguration_emptyConfiguration_assertEmptyCollections() throws Exception
+		{
+			new TestPlan()
+			{
+				@Override
+				protected void doAssertions(AgentConfiguration config) throws Exception
+				{
+					assertNotNull(config);
+					assertTrue(config.getDomains().isEmpty());
+					assertTrue(config.getAnchors().isEmpty());
+					assertTrue(config.getTrustBundles().isEmpty());
+					assertTrue(config.getTrustBundleDomainReltns().isEmpty());
+					assertTrue(config.getPolicyGroupDomainReltns().isEmpty());
+					assertTrue(config.getSettings().isEmpty());
+				}
+			}.perform();
+		}
+
+		@Test
+		public void testGetAgentConfiguration_domainBundleAndSetting_assertConfigurationRetrieved() throws Exception
+		{
+			new TestPlan()
+			{
+				@Override
+				protected void addConfiguration() throws Exception
+				{
+					final Address postmasterAddress = new Address();
+					postmasterAddress.setEmailAddress("me@test.com");
+
+					final Domain domain = new Domain();
+					domain.setDomainName("test.com");
+					domain.setStatus(EntityStatus.ENABLED);
+					domain.setPostmasterAddress(postmasterAddress);
+					resource.path("/api/domain").entity(domain, MediaType.APPLICATION_JSON).put(domain);
+
+					final TrustBundle bundle = new TrustBundle();
+					bundle.setBundleName("testBundle1");
+					final File fl = new File("src/test/resources/bundles/providerTestBundle.p7b");
+					bundle.setBundleURL(filePrefix + fl.getAbsolutePath());
+					bundle.setRefreshInterval(24);
+					bundle.setSigningCertificateData(null);
+					resource.path("/api/trustbundle").entity(bundle, MediaType.APPLICATION_JSON).put(bundle);
+
+					resource.path("/api/trustbundle/" + TestUtils.uriEscape("testBundle1") + "/" + TestUtils.uriEscape("test.com")).
+						queryParam("incoming", "true").queryParam("outgoing", "false").post();
+
+					resource.path("/api/setting/setting1/value1").put();
+				}
+
+				@Override
+				protected void doAssertions(AgentConfiguration config) throws Exception
+				{
+					assertEquals(1, config.getDomains().size());
+					assertEquals("test.com", config.getDomains().iterator().next().getDomainName());
+
+					assertEquals(1, config.getTrustBundles().size());
+					assertEquals("testBundle1", config.getTrustBundles().iterator().next().getBundleName());
+
+					assertEquals(1, config.getTrustBundleDomainReltns().size());
+					final TrustBundleDomainReltn reltn = config.getTrustBundleDomainReltns().iterator().next();
+					assertEquals("test.com", reltn.getDomain().getDomainName());
+					assertEquals("testBundle1", reltn.getTrustBundle().getBundleName());
+					assertTrue(reltn.isIncoming());
+					assertFalse(reltn.isOutgoing());
+					// anchors are only carried by the bundle list
+					assertTrue(reltn.getTrustBundle().getTrustBundleAnchors().isEmpty());
+
+					assertEquals(1, config.getSettings().size());
+					final Setting setting = config.getSettings().iterator().next();
+					assertEquals("setting1", setting.getName());
+					assertEquals("value1", setting.getValue());
+				}
+			}.perform();
+		}
+
+		@Test
+		public void testGetAgentConfiguration_errorInLookup_assertServiceError() throws Exception
+		{
+			new TestPlan()
+			{
+				protected AgentConfigurationResource configService;
+
+				@Override
+				protected void setupMocks()
+				{
+					try
+					{
+						super.setupMocks();
+
+						configService = (AgentConfigurationResource)ConfigServiceRunner.getSpringApplicationContext().getBean("agentConfigurationResource");
+
+						SettingDao mockDAO = mock(SettingDao.class);
+						doThrow(new RuntimeException()).when(mockDAO).getAll();
+
+						configService.setSettingDao(mockDAO);
+					}
+					catch (Throwable t)
+					{
+						throw new RuntimeException(t);
+					}
+				}
+
+				@Override
+				protected void tearDownMocks()
+				{
+					super.tearDownMocks();
+
+					configService.setSettingDao(settingDao);
+				}
+
+				@Override
+				protected void assertException(Exception exception) throws Exception
+				{
+					assertTrue(exception instanceof UniformInterfaceException);
+					UniformInterfaceException ex = (UniformInterfaceException)exception;
+					assertEquals(500, ex.getResponse().getStatus());
+				}
+			}.perform();
+		}
+}
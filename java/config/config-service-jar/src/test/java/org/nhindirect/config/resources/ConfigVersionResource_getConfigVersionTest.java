@@ -0,0 +1,185 @@
+package org.nhindirect.config.resources;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+import org.nhindirect.config.BaseTestPlan;
+import org.nhindirect.config.ConfigServiceRunner;
+import org.nhindirect.config.model.ConfigVersion;
+import org.nhindirect.config.store.dao.SettingDao;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+
+public class ConfigVersionResource_getConfigVersionTest 
+{
+	   protected SettingDao settingDao;
+	    
+		static WebResource resource;
+		
+		abstract class TestPlan extends BaseTestPlan 
+		{
+			@Override
+			protected void setupMocks()
+			{
+				try
+				{
+					settingDao = (SettingDao)ConfigServiceRunner.getSpringApplicationContext().getBean("settingDao");
+					
+					resource = 	getResource(ConfigServiceRunner.getConfigServiceURL());		
+				}
+				catch (Throwable t)
+				{
+					throw new RuntimeException(t);
+				}
+			}
+			
+			@Override
+			protected void tearDownMocks()
+			{
+
+			}
+
+			protected void changeConfiguration() throws Exception
+			{
+				
+			}
+			
+			@Override
+			protected void performInner() throws Exception
+			{				
+				final ConfigVersion before = resource.path("/api/version/").get(ConfigVersion.class);
+				
+				changeConfiguration();
+				
+				final ConfigVersion after = resource.path("/api/version/").get(ConfigVersion.class);
+				
+				doAssertions(before, after);
+			}
+				
+			protected void doAssertions(ConfigVersion before, ConfigVersion after) throws Exception
+			{
+				
+			}
+		}	
+		
+		@Test
+		public void testGetConfigVersion_noChanges_assertVersionsUnchanged() throws Exception
+		{
+			new TestPlan()
+			{
+				@Override
+				protected void doAssertions(ConfigVersion before, ConfigVersion after) throws Exception
+				{
+					assertNotNull(before.getDomainsVersion());
+					assertNotNull(before.getAnchorsVersion());
+					assertNotNull(before.getTrustBundlesVersion());
+					assertNotNull(before.getCertPoliciesVersion());
+					assertNotNull(before.getSettingsVersion());
+					
+					assertEquals(before.getDomainsVersion(), after.getDomainsVersion());
+					assertEquals(before.getAnchorsVersion(), after.getAnchorsVersion());
+					assertEquals(before.getTrustBundlesVersion(), after.getTrustBundlesVersion());
+					assertEquals(before.getCertPoliciesVersion(), after.getCertPoliciesVersion());
+					assertEquals(before.getSettingsVersion(), after.getSettingsVersion());
+				}
+			}.perform();
+		}	
+		
+		@Test
+		public void testGetConfigVersion_settingAdded_assertOnlySettingsVersionChanged() throws Exception
+		{
+			new TestPlan()
+			{
+				@Override
+				protected void changeConfiguration() throws Exception
+				{
+					resource.path("/api/setting/setting1/value1").put();
+				}
+				
+				@Override
+				protected void doAssertions(ConfigVersion before, ConfigVersion after) throws Exception
+				{
+					assertFalse(before.getSettingsVersion().equals(after.getSettingsVersion()));
+					
+					assertEquals(before.getDomainsVersion(), after.getDomainsVersion());
+					assertEquals(before.getAnchorsVersion(), after.getAnchorsVersion());
+					assertEquals(before.getTrustBundlesVersion(), after.getTrustBundlesVersion());
+					assertEquals(before.getCertPoliciesVersion(), after.getCertPoliciesVersion());
+				}
+			}.perform();
+		}
+		
+		@Test
+		public void testGetConfigVersion_settingUpdated_assertSettingsVersionChanged() throws Exception
+		{
+			new TestPlan()
+			{
+				@Override
+				protected void setupMocks()
+				{
+					super.setupMocks();
+					
+					resource.path("/api/setting/setting1/value1").put();
+				}
+				
+				@Override
+				protected void changeConfiguration() throws Exception
+				{
+					resource.path("/api/setting/setting1/value2").post();
+				}
+				
+				@Override
+				protected void doAssertions(ConfigVersion before, ConfigVersion after) throws Exception
+				{
+					assertFalse(before.getSettingsVersion().equals(after.getSettingsVersion()));
+				}
+			}.perform();
+		}
+		
+		@Test
+		public void testGetConfigVersion_errorInLookup_assertServiceError() throws Exception
+		{
+			new TestPlan()
+			{
+				protected ConfigVersionResource versionService;
+				
+				@Override
+				protected void setupMocks()
+				{
+					try
+					{
+						super.setupMocks();
+						
+						versionService = (ConfigVersionResource)ConfigServiceRunner.getSpringApplicationContext().getBean("configVersionResource");
+
+						SettingDao mockDAO = mock(SettingDao.class);
+						doThrow(new RuntimeException()).when(mockDAO).getAll();
+						
+						versionService.setSettingDao(mockDAO);
+					}
+					catch (Throwable t)
+					{
+						throw new RuntimeException(t);
+					}
+				}
+				
+				@Override
+				protected void tearDownMocks()
+				{
+					super.tearDownMocks();
+					
+					versionService.setSettingDao(settingDao);
+				}
+				
+				@Override
+				protected void assertException(Exception exception) throws Exception 
+				{
+					assertTrue(exception instanceof UniformInterfaceException);
+					UniformInterfaceException ex = (UniformInterfaceException)exception;
+					assertEquals(500, ex.getResponse().getStatus());
+				}
+			}.perform();
+		}			
+}
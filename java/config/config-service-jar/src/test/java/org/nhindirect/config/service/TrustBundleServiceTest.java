@@ -173,4 +173,15 @@ public class TrustBundleServiceTest extends TestCase
 		
 		verify(dao, times(2)).getTrustBundlesByDomain(1234);		
 	}	
+	
+	public void testGetTrustBundleDomainReltns() throws Exception
+	{
+		impl.getTrustBundleDomainReltns(false);
+		
+		verify(dao, times(1)).getTrustBundleDomainReltns();
+		
+		impl.getTrustBundleDomainReltns(true);
+		
+		verify(dao, times(2)).getTrustBundleDomainReltns();		
+	}	
 }
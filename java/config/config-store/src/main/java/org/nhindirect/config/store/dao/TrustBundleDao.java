@@ -160,4 +160,13 @@ public interface TrustBundleDao
 	 * @throws ConfigurationStoreException
 	 */
 	public Collection<TrustBundleDomainReltn> getTrustBundlesByDomain(long domainId) throws ConfigurationStoreException;		
+	
+	/**
+	 * Gets all trust bundle to domain associations in a single query.  This is intended for clients that need the associations
+	 * of every domain and would otherwise need to look them up one domain at a time.
+	 * @return Collection of all trust bundle to domain associations.
+	 * @throws ConfigurationStoreException
+	 * @since 1.5
+	 */
+	public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns() throws ConfigurationStoreException;
 }
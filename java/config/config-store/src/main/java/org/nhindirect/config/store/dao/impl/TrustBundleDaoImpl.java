@@ -609,4 +609,39 @@ public class TrustBundleDaoImpl implements TrustBundleDao
         
 		return retVal;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+    @Transactional(readOnly = true)	
+	public Collection<TrustBundleDomainReltn> getTrustBundleDomainReltns() throws ConfigurationStoreException
+	{
+		validateState();
+		
+		Collection<TrustBundleDomainReltn> retVal = null;
+        try
+        {
+	        final Query select = entityManager.createQuery("SELECT tbd from TrustBundleDomainReltn tbd");
+	        
+	        retVal = (Collection<TrustBundleDomainReltn>)select.getResultList();
+	        if (retVal.size() == 0)
+	        	return Collections.emptyList();
+	        
+	        for (TrustBundleDomainReltn reltn : retVal)
+	        {
+	                if (!reltn.getTrustBundle().getTrustBundleAnchors().isEmpty())
+	                	for (TrustBundleAnchor anchor : reltn.getTrustBundle().getTrustBundleAnchors())
+	                		anchor.getData();
+	        }
+	       
+        }
+      	catch (Exception e)
+    	{
+    		throw new ConfigurationStoreException("Failed to execute trust bundle relation DAO query.", e);
+    	}
+        
+		return retVal;
+	}
 }
@@ -0,0 +1,115 @@
+package org.nhindirect.config.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.junit.Test;
+import org.nhindirect.config.store.dao.impl.TrustBundleDaoImpl;
+
+public class TrustBundleDaoImpl_getTrustBundleDomainReltnsTest extends TrustBundleDaoBaseTest
+{
+	@Test
+	public void testGetTrustBundleDomainReltns_associationsToMultipleDomains_assertAllRetrieved()
+	{
+		final Domain domain1 = new Domain();
+		domain1.setDomainName("Test Domain 1");
+		dmDao.add(domain1);
+
+		final Domain domain2 = new Domain();
+		domain2.setDomainName("Test Domain 2");
+		dmDao.add(domain2);
+
+		final TrustBundle bundle1 = new TrustBundle();
+		bundle1.setBundleName("Test Bundle1");
+		bundle1.setBundleURL("http://test/url/bundle1");
+		bundle1.setCheckSum("1234");
+		tbDao.addTrustBundle(bundle1);
+
+		final TrustBundle bundle2 = new TrustBundle();
+		bundle2.setBundleName("Test Bundle2");
+		bundle2.setBundleURL("http://test/url/bundle2");
+		bundle2.setCheckSum("1234");
+		tbDao.addTrustBundle(bundle2);
+
+		tbDao.associateTrustBundleToDomain(domain1.getId(), bundle1.getId(), true, true);
+		tbDao.associateTrustBundleToDomain(domain2.getId(), bundle1.getId(), true, false);
+		tbDao.associateTrustBundleToDomain(domain2.getId(), bundle2.getId(), false, true);
+
+		final Collection<TrustBundleDomainReltn> reltns = tbDao.getTrustBundleDomainReltns();
+		assertEquals(3, reltns.size());
+
+		int domain2Reltns = 0;
+		for (TrustBundleDomainReltn reltn : reltns)
+			if (reltn.getDomain().getDomainName().equals(domain2.getDomainName()))
+				++domain2Reltns;
+
+		assertEquals(2, domain2Reltns);
+	}
+
+	@Test
+	public void testGetTrustBundleDomainReltns_noAssociations_assertEmptyCollection()
+	{
+		final TrustBundle bundle = new TrustBundle();
+		bundle.setBundleName("Test Bundle");
+		bundle.setBundleURL("http://test/url/bundle");
+		bundle.setCheckSum("1234");
+		tbDao.addTrustBundle(bundle);
+
+		assertEquals(0, tbDao.getTrustBundleDomainReltns().size());
+	}
+
+	@Test
+	public void testGetTrustBundleDomainReltns_noEntityManager_assertException()
+	{
+		final TrustBundleDaoImpl dao = new TrustBundleDaoImpl();
+
+		boolean exceptionOccured = false;
+
+		try
+		{
+			dao.getTrustBundleDomainReltns();
+		}
+		catch (IllegalStateException ex)
+		{
+			exceptionOccured = true;
+		}
+
+		assertTrue(exceptionOccured);
+	}
+
+	@Test
+	public void testGetTrustBundleDomainReltns_errorInGet_assertException()
+	{
+		boolean exceptionOccured = false;
+		final EntityManager mgr = mock(EntityManager.class);
+
+		final Query findReltnQeury = mock(Query.class);
+		doThrow(new RuntimeException("Just Passing Through")).when(findReltnQeury).getResultList();
+		when(mgr.createQuery("SELECT tbd from TrustBundleDomainReltn tbd")).thenReturn(findReltnQeury);
+
+		final TrustBundleDaoImpl dao  = new TrustBundleDaoImpl();
+		dao.setEntityManager(mgr);
+
+		try
+		{
+			dao.getTrustBundleDomainReltns();
+		}
+		catch (ConfigurationStoreException e)
+		{
+			exceptionOccured = true;
+		}
+
+		assertTrue(exceptionOccured);
+		verify(findReltnQeury, times(1)).getResultList();
+	}
+}
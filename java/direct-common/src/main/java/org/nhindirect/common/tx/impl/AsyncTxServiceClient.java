@@ -0,0 +1,546 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.common.tx.impl;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.HttpClient;
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.common.rest.exceptions.ServiceMethodException;
+import org.nhindirect.common.tx.TxDetailParser;
+import org.nhindirect.common.tx.model.Tx;
+
+/**
+ * Tx service client that tracks messages asynchronously.  Messages are placed in a bounded in memory queue and returned to the caller
+ * immediately; a background thread submits them to the monitoring service in batches.  Failed submissions are retried with an exponential
+ * backoff.
+ * <p>
+ * If a spool directory is configured, messages that do not fit in the queue and messages that have not been submitted when the client is shut
+ * down are written to the spool directory and submitted later, including after a restart.  Otherwise these messages are dropped.  Messages that
+ * do not fit in the queue are handed to the background thread, which writes them to the spool directory, so callers never wait on disk I/O.  
+ * At most the larger of the queue and batch size messages wait to be spooled; further messages are dropped.  A spooled message is removed from
+ * the spool directory only after the monitoring service accepts it.  Messages may be submitted more than once if a batch fails after the 
+ * monitoring service accepted part of it.
+ * <p>
+ * Batches are posted to the txs/batch resource.  If the monitoring service does not support it, the client falls back to submitting messages
+ * one at a time.  Notification suppression checks return a value to the caller and are always executed synchronously.
+ * @since 1.3
+ */
+public class AsyncTxServiceClient extends RESTTxServiceClient
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(AsyncTxServiceClient.class);
+	
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+	
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	
+	public static final int DEFAULT_MAX_SPOOL_SIZE = 100000;
+	
+	public static final long DEFAULT_MAX_BACKOFF = 60000; // 1 minute
+	
+	protected static final long INITIAL_BACKOFF = 1000; // 1 second
+	
+	protected static final long IDLE_POLL_INTERVAL = 1000; // 1 second
+	
+	/*
+	 * Placed in the queue by shutdown to wake the sender.  Never submitted.
+	 */
+	protected static final Tx SHUTDOWN_SIGNAL = new Tx();
+	
+	protected static final String SPOOL_FILE_EXTENSION = ".tx";
+	
+	protected static final String SPOOL_TEMP_FILE_EXTENSION = ".tmp";
+	
+	protected final BlockingQueue<Tx> queue;
+	protected final BlockingQueue<Tx> spoolQueue;
+	protected final int batchSize;
+	protected final long maxBackoff;
+	protected final File spoolDirectory;
+	protected final int maxSpoolSize;
+	
+	protected final AtomicInteger spoolCount = new AtomicInteger();
+	protected final AtomicLong droppedCount = new AtomicLong();
+	protected final AtomicLong sentCount = new AtomicLong();
+	protected final AtomicLong failedSendCount = new AtomicLong();
+	
+	protected volatile boolean bulkSupported = true;
+	protected volatile boolean running = true;
+	
+	protected final Thread sender;
+	
+	/**
+	 * Creates a client with the default queue and batch sizes and no spool directory.
+	 * @param txServiceUrl The URL of the monitoring service.
+	 * @param httpClient The client used to communicate with the monitoring service.
+	 * @param parser Parser used to convert messages into Tx objects.
+	 */
+	public AsyncTxServiceClient(String txServiceUrl, HttpClient httpClient, TxDetailParser parser)
+	{
+		this(txServiceUrl, httpClient, parser, DEFAULT_MAX_QUEUE_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BACKOFF, null, DEFAULT_MAX_SPOOL_SIZE);
+	}
+	
+	/**
+	 * Creates a client.
+	 * @param txServiceUrl The URL of the monitoring service.
+	 * @param httpClient The client used to communicate with the monitoring service.
+	 * @param parser Parser used to convert messages into Tx objects.
+	 * @param maxQueueSize The maximum number of messages held in memory waiting to be submitted.
+	 * @param batchSize The maximum number of messages submitted in a single call.
+	 * @param maxBackoff The maximum time in milliseconds to wait between retries of a failed submission.
+	 * @param spoolDirectory Directory where messages that do not fit in memory are written.  May be null in which case these messages are dropped.
+	 * @param maxSpoolSize The maximum number of messages held in the spool directory.
+	 */
+	public AsyncTxServiceClient(String txServiceUrl, HttpClient httpClient, TxDetailParser parser, int maxQueueSize, int batchSize, 
+			long maxBackoff, File spoolDirectory, int maxSpoolSize)
+	{
+		super(txServiceUrl, httpClient, parser);
+		
+		if (maxQueueSize <= 0 || batchSize <= 0 || maxBackoff < INITIAL_BACKOFF)
+			throw new IllegalArgumentException("Invalid parameter received. Got: maxQueueSize: " + maxQueueSize + ", batchSize: " 
+					+ batchSize + ", maxBackoff: " + maxBackoff);
+		
+		this.queue = new ArrayBlockingQueue<Tx>(maxQueueSize);
+		this.batchSize = batchSize;
+		this.maxBackoff = maxBackoff;
+		this.spoolDirectory = spoolDirectory;
+		this.maxSpoolSize = maxSpoolSize;
+		this.spoolQueue = (spoolDirectory == null || maxSpoolSize <= 0) ? null : 
+			new ArrayBlockingQueue<Tx>(Math.min(maxSpoolSize, Math.max(maxQueueSize, batchSize)));
+		
+		if (spoolDirectory != null)
+		{
+			if (!spoolDirectory.exists() && !spoolDirectory.mkdirs())
+				throw new IllegalArgumentException("Could not create Tx spool directory " + spoolDirectory.getAbsolutePath());
+			
+			// pick up messages left over from a previous run
+			spoolCount.set(getSpoolFiles().length);
+			if (spoolCount.get() > 0)
+				LOGGER.info(spoolCount.get() + " spooled messages will be submitted to the monitoring service.");
+		}
+		
+		sender = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				sendLoop();
+			}
+		}, "AsyncTxServiceClient-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+	
+	@Override
+	public void trackMessage(MimeMessage msg) throws ServiceException
+	{
+		enqueue(TrackMessageRequest.convertMimeMessageToTx(msg, parser));
+	}
+
+	@Override
+	public void trackMessage(InternetHeaders headers) throws ServiceException
+	{
+		enqueue(TrackMessageRequest.convertMimeMessageToTx(TrackMessageRequest.convertHeadersToMessage(headers), parser));
+	}
+
+	@Override
+	public void trackMessage(Tx tx) throws ServiceException
+	{
+		enqueue(tx);
+	}
+	
+	/**
+	 * Stops the background sender and waits for it to finish.  A submission that is in progress is allowed to complete.  Messages that have
+	 * not been submitted are written to the spool directory if one is configured.  Otherwise a final attempt is made to submit them.  Messages 
+	 * tracked after shutdown are spooled or dropped.
+	 */
+	public void shutdown()
+	{
+		running = false;
+		// wakes the sender if it is waiting for messages; if the queue is full the sender is busy and will see the flag
+		queue.offer(SHUTDOWN_SIGNAL);
+		try
+		{
+			sender.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		// messages queued by callers that raced with shutdown
+		final List<Tx> remaining = new ArrayList<Tx>();
+		queue.drainTo(remaining);
+		if (spoolQueue != null)
+			spoolQueue.drainTo(remaining);
+		removeShutdownSignal(remaining);
+		for (Tx tx : remaining)
+			overflow(tx);
+	}
+	
+	/**
+	 * Gets the number of messages waiting in memory to be submitted.
+	 * @return The number of messages waiting in memory to be submitted.
+	 */
+	public int getQueueDepth()
+	{
+		return queue.size();
+	}
+	
+	/**
+	 * Gets the number of messages waiting in the spool directory to be submitted.  Messages that are waiting to be written to the spool
+	 * directory are not included.
+	 * @return The number of messages waiting in the spool directory to be submitted.
+	 */
+	public int getSpoolDepth()
+	{
+		return spoolCount.get();
+	}
+	
+	/**
+	 * Gets the number of messages that were dropped because the queue and spool were full.
+	 * @return The number of messages that were dropped.
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+	
+	/**
+	 * Gets the number of messages submitted to the monitoring service.
+	 * @return The number of messages submitted to the monitoring service.
+	 */
+	public long getSentCount()
+	{
+		return sentCount.get();
+	}
+	
+	/**
+	 * Gets the number of submission attempts that failed and were retried.
+	 * @return The number of failed submission attempts.
+	 */
+	public long getFailedSendCount()
+	{
+		return failedSendCount.get();
+	}
+	
+	protected void enqueue(Tx tx)
+	{
+        if (tx == null) 
+        {
+            throw new IllegalArgumentException("Invalid parameter received. Tx cannot be null.");
+        }
+        
+		if (!running)
+		{
+			// the sender has stopped, so nothing else will write the message to the spool
+			overflow(tx);
+			return;
+		}
+		
+		// the sender writes messages that do not fit in memory to the spool
+		if (!queue.offer(tx) && (spoolQueue == null || !spoolQueue.offer(tx)))
+			drop();
+	}
+	
+	/*
+	 * Spools a message that could not be queued, or drops it if there is no room for it.
+	 */
+	protected void overflow(Tx tx)
+	{
+		if (spoolDirectory != null && spoolCount.get() < maxSpoolSize && spool(tx))
+			return;
+		
+		drop();
+	}
+	
+	protected void drop()
+	{
+		final long dropped = droppedCount.incrementAndGet();
+		// don't flood the log while the monitoring service is down
+		if (dropped == 1 || dropped % 1000 == 0)
+			LOGGER.warn("Tx queue is full.  " + dropped + " messages have been dropped without being submitted to the monitoring service.");
+	}
+	
+	protected boolean spool(Tx tx)
+	{
+		final String name = String.format("%019d-%s", System.currentTimeMillis(), UUID.randomUUID().toString());
+		final File tempFile = new File(spoolDirectory, name + SPOOL_TEMP_FILE_EXTENSION);
+		try
+		{
+			jsonMapper.writeValue(tempFile, tx);
+			// rename so the sender never reads a partially written file
+			if (!tempFile.renameTo(new File(spoolDirectory, name + SPOOL_FILE_EXTENSION)))
+				throw new IOException("Could not rename " + tempFile.getAbsolutePath());
+			
+			spoolCount.incrementAndGet();
+			return true;
+		}
+		catch (IOException e)
+		{
+			LOGGER.warn("Failed to write Tx to spool directory " + spoolDirectory.getAbsolutePath(), e);
+			tempFile.delete();
+			return false;
+		}
+	}
+	
+	protected File[] getSpoolFiles()
+	{
+		final File[] files = spoolDirectory.listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.getName().endsWith(SPOOL_FILE_EXTENSION);
+			}
+		});
+		
+		if (files == null)
+			return new File[0];
+		
+		// names start with the time the message was spooled
+		Arrays.sort(files);
+		return files;
+	}
+	
+	/*
+	 * Writes the messages handed off by callers to the spool directory.
+	 */
+	protected void spillSpoolQueue()
+	{
+		if (spoolQueue == null)
+			return;
+		
+		Tx tx;
+		while ((tx = spoolQueue.poll()) != null)
+			overflow(tx);
+	}
+	
+	/*
+	 * Copies up to max spooled messages into the batch.  The spool files are kept until the messages are submitted.
+	 */
+	protected void loadSpooled(List<Tx> batch, Map<Tx, File> spooled, int max)
+	{
+		if (spoolDirectory == null || spoolCount.get() == 0)
+			return;
+		
+		for (File file : getSpoolFiles())
+		{
+			if (max-- <= 0)
+				break;
+			
+			try
+			{
+				final Tx tx = jsonMapper.readValue(file, Tx.class);
+				batch.add(tx);
+				spooled.put(tx, file);
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn("Dropping unreadable spooled Tx " + file.getAbsolutePath(), e);
+				droppedCount.incrementAndGet();
+				if (file.delete())
+					spoolCount.decrementAndGet();
+			}
+		}
+	}
+	
+	/*
+	 * Removes the spool files of messages that are no longer in the batch because they were submitted.
+	 */
+	protected void releaseSpooled(List<Tx> batch, Map<Tx, File> spooled)
+	{
+		if (spooled.isEmpty())
+			return;
+		
+		final Set<Tx> pending = Collections.newSetFromMap(new IdentityHashMap<Tx, Boolean>());
+		pending.addAll(batch);
+		
+		final Iterator<Map.Entry<Tx, File>> iter = spooled.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			final Map.Entry<Tx, File> entry = iter.next();
+			if (pending.contains(entry.getKey()))
+				continue;
+			
+			if (entry.getValue().delete())
+				spoolCount.decrementAndGet();
+			iter.remove();
+		}
+	}
+	
+	/*
+	 * Removes the shutdown signal from messages taken off the queue.
+	 */
+	protected void removeShutdownSignal(List<Tx> batch)
+	{
+		final Iterator<Tx> iter = batch.iterator();
+		while (iter.hasNext())
+			if (iter.next() == SHUTDOWN_SIGNAL)
+				iter.remove();
+	}
+	
+	/*
+	 * Waits before retrying a failed submission or until the client is shut down.  Messages handed off by callers are spooled while waiting.
+	 */
+	protected void waitForRetry(long backoff) throws InterruptedException
+	{
+		final long retryTime = System.currentTimeMillis() + backoff;
+		long remaining;
+		while (running && (remaining = retryTime - System.currentTimeMillis()) > 0)
+		{
+			spillSpoolQueue();
+			Thread.sleep(Math.min(remaining, IDLE_POLL_INTERVAL));
+		}
+	}
+	
+	protected void sendLoop()
+	{
+		final List<Tx> batch = new ArrayList<Tx>();
+		// messages in the batch that were read from spool files
+		final Map<Tx, File> spooled = new IdentityHashMap<Tx, File>();
+		long backoff = 0;
+		
+		try
+		{
+			while (running)
+			{
+				spillSpoolQueue();
+				
+				if (batch.isEmpty())
+				{
+					final Tx first = queue.poll(IDLE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					if (first != null)
+					{
+						batch.add(first);
+						queue.drainTo(batch, batchSize - 1);
+						removeShutdownSignal(batch);
+					}
+					// messages that overflowed to disk go out once memory has been drained
+					if (batch.size() < batchSize)
+						loadSpooled(batch, spooled, batchSize - batch.size());
+					
+					if (batch.isEmpty())
+						continue;
+				}
+				
+				// woken by shutdown, which keeps what is left
+				if (!running)
+					break;
+				
+				final boolean sent = sendBatch(batch);
+				releaseSpooled(batch, spooled);
+				if (sent)
+					backoff = 0;
+				else
+				{
+					failedSendCount.incrementAndGet();
+					backoff = (backoff == 0) ? INITIAL_BACKOFF : Math.min(backoff * 2, maxBackoff);
+					waitForRetry(backoff);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// shutting down
+		}
+		
+		// keep whatever has not been submitted
+		spillSpoolQueue();
+		queue.drainTo(batch);
+		removeShutdownSignal(batch);
+		if (batch.isEmpty())
+			return;
+		
+		if (spoolDirectory != null)
+		{
+			// messages read from the spool are still in their spool files
+			for (Tx tx : batch)
+				if (!spooled.containsKey(tx))
+					overflow(tx);
+		}
+		else if (!sendBatch(batch))
+		{
+			droppedCount.addAndGet(batch.size());
+			LOGGER.warn(batch.size() + " messages were not submitted to the monitoring service before shutdown.");
+		}
+	}
+	
+	/*
+	 * Submits the batch and removes the messages that were accepted from it.
+	 */
+	protected boolean sendBatch(List<Tx> batch)
+	{
+		try
+		{
+			if (bulkSupported)
+			{
+				try
+				{
+					callWithRetry(new TrackMessagesRequest(httpClient, serviceURL, jsonMapper, batch));
+					sentCount.addAndGet(batch.size());
+					batch.clear();
+					return true;
+				}
+				catch (ServiceMethodException e)
+				{
+					if (e.getResponseCode() != 404)
+						throw e;
+					
+					LOGGER.info("Monitoring service does not support batch submission.  Messages will be submitted one at a time.");
+					bulkSupported = false;
+				}
+			}
+			
+			final Iterator<Tx> iter = batch.iterator();
+			while (iter.hasNext())
+			{
+				callWithRetry(new TrackMessageRequest(httpClient, serviceURL, jsonMapper, parser, iter.next()));
+				iter.remove();
+				sentCount.incrementAndGet();
+			}
+			return true;
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to submit " + batch.size() + " messages to the monitoring service.", e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.common.tx.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.nhindirect.common.rest.UnsecuredServiceRequestBase;
+import org.nhindirect.common.tx.model.Tx;
+
+/**
+ * Request that submits a batch of pre parsed Tx objects to the monitoring service in a single call.
+ * @since 1.3
+ */
+public class TrackMessagesRequest extends UnsecuredServiceRequestBase<Object, RuntimeException>
+{
+	private final Collection<Tx> txs;
+	
+    public TrackMessagesRequest(HttpClient httpClient, String txServiceUrl, ObjectMapper jsonMapper, Collection<Tx> txs) 
+    {
+        super(httpClient, txServiceUrl, jsonMapper);
+        
+        if (txs == null || txs.isEmpty()) 
+        {
+            throw new IllegalArgumentException("Invalid parameter received. Txs cannot be null or empty.");
+        }
+        
+        this.txs = new ArrayList<Tx>(txs);
+    }
+    
+    /*
+     * Get the URI
+     */
+    private String getRequestUri() 
+    {
+    	String theURI = serviceUrl.endsWith("/") ? serviceUrl : serviceUrl + "/";
+    	
+        return theURI + "txs/batch";
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final HttpPost createRequest() throws IOException 
+    {
+    	HttpPost post = new HttpPost(getRequestUri());
+        post.setHeader("Accept", MediaType.APPLICATION_JSON);
+        return buildEntityRequest(post, makeContent(), MediaType.APPLICATION_JSON);
+    }
+    
+    /*
+     * make the content payload to be sent
+     */
+    private byte[] makeContent() throws IOException 
+    {
+        return jsonMapper.writeValueAsBytes(txs);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Object parseResponse(HttpEntity response)
+            throws IOException
+    {
+    	// doesn't matter
+    	return null;
+    }
+    
+    /**
+     * {@inheritDoc}}
+     */
+    @Override
+    public void destroy()
+    {
+
+    }
+}
@@ -0,0 +1,167 @@
+package org.nhindirect.common.tx.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.nhindirect.common.BaseTestPlan;
+import org.nhindirect.common.ServiceRunner;
+import org.nhindirect.common.rest.HttpClientFactory;
+import org.nhindirect.common.tx.mock.MockTxsResource;
+import org.nhindirect.common.tx.model.Tx;
+import org.nhindirect.common.tx.model.TxMessageType;
+import org.nhindirect.common.util.TestUtils;
+
+public class AsyncTxServiceClient_trackMessageTest
+{
+	protected static final String UNREACHABLE_SERVICE_URL = "http://localhost:1/msg-monitor";
+
+	protected MockTxsResource resource;
+	protected AsyncTxServiceClient client;
+	protected File spoolDir;
+
+	abstract class TestPlan extends BaseTestPlan
+	{
+		@Override
+		protected void setupMocks()
+		{
+			try
+			{
+				ServiceRunner.startServices();
+
+				resource = (MockTxsResource)ServiceRunner.getSpringApplicationContext().getBean("mockTxsResource");
+				resource.clearTxState();
+
+				spoolDir = new File("./target/TxSpool/" + UUID.randomUUID().toString());
+			}
+			catch (Throwable t)
+			{
+				throw new RuntimeException(t);
+			}
+		}
+
+		@Override
+		protected void tearDownMocks()
+		{
+			if (client != null)
+				client.shutdown();
+
+			if (resource != null)
+				resource.clearTxState();
+
+			FileUtils.deleteQuietly(spoolDir);
+		}
+
+		protected Collection<Tx> getTxsToSubmit(int count)
+		{
+			final Collection<Tx> txs = new ArrayList<Tx>();
+			for (int i = 0; i < count; ++i)
+				txs.add(TestUtils.makeMessage(TxMessageType.IMF, UUID.randomUUID().toString(), "", "gm2552@cerner.com",
+						"gm2552@direct.securehealthemail.com", ""));
+
+			return txs;
+		}
+
+		protected void waitForTxs(int count) throws Exception
+		{
+			for (int i = 0; i < 100 && (resource.getTxs().size() < count || client.getSentCount() < count); ++i)
+				Thread.sleep(100);
+		}
+	}
+
+	@Test
+	public void testTrackMessage_multipleTxs_assertSubmittedInBatches() throws Exception
+	{
+		new TestPlan()
+		{
+			@Override
+			protected void performInner() throws Exception
+			{
+				client = new AsyncTxServiceClient(ServiceRunner.getTxsServiceURL(), HttpClientFactory.createHttpClient(),
+						new DefaultTxDetailParser());
+
+				for (Tx tx : getTxsToSubmit(20))
+					client.trackMessage(tx);
+
+				waitForTxs(20);
+				client.shutdown();
+
+				assertEquals(20, resource.getTxs().size());
+				assertTrue(resource.getBatchCount() >= 1);
+				assertTrue(resource.getBatchCount() <= 20);
+				assertEquals(20, client.getSentCount());
+				assertEquals(0, client.getQueueDepth());
+				assertEquals(0, client.getDroppedCount());
+			}
+		}.perform();
+	}
+
+	@Test
+	public void testTrackMessage_serviceUnavailable_queueFull_assertDropped() throws Exception
+	{
+		new TestPlan()
+		{
+			@Override
+			protected void performInner() throws Exception
+			{
+				client = new AsyncTxServiceClient(UNREACHABLE_SERVICE_URL, HttpClientFactory.createHttpClient(),
+						new DefaultTxDetailParser(), 1, 10, AsyncTxServiceClient.DEFAULT_MAX_BACKOFF, null, 0);
+
+				for (Tx tx : getTxsToSubmit(5))
+					client.trackMessage(tx);
+
+				// at most one message is in flight and one is queued
+				assertTrue(client.getDroppedCount() >= 3);
+				assertTrue(client.getQueueDepth() <= 1);
+
+				// the final submission attempt on shutdown fails too
+				client.shutdown();
+				assertEquals(5, client.getDroppedCount());
+				assertEquals(0, client.getQueueDepth());
+				assertEquals(0, client.getSentCount());
+			}
+		}.perform();
+	}
+
+	@Test
+	public void testTrackMessage_serviceUnavailable_spooled_assertSubmittedAfterRestart() throws Exception
+	{
+		new TestPlan()
+		{
+			@Override
+			protected void performInner() throws Exception
+			{
+				client = new AsyncTxServiceClient(UNREACHABLE_SERVICE_URL, HttpClientFactory.createHttpClient(),
+						new DefaultTxDetailParser(), 1, 10, AsyncTxServiceClient.DEFAULT_MAX_BACKOFF, spoolDir, 100);
+
+				for (Tx tx : getTxsToSubmit(5))
+					client.trackMessage(tx);
+
+				assertEquals(0, client.getDroppedCount());
+
+				// anything still in memory or in flight is spooled on shutdown
+				client.shutdown();
+				assertEquals(5, client.getSpoolDepth());
+				assertEquals(5, spoolDir.list().length);
+				assertEquals(0, client.getQueueDepth());
+				assertEquals(0, resource.getTxs().size());
+
+				client = new AsyncTxServiceClient(ServiceRunner.getTxsServiceURL(), HttpClientFactory.createHttpClient(),
+						new DefaultTxDetailParser(), 1, 10, AsyncTxServiceClient.DEFAULT_MAX_BACKOFF, spoolDir, 100);
+
+				waitForTxs(5);
+				client.shutdown();
+
+				assertEquals(5, resource.getTxs().size());
+				assertEquals(0, client.getSpoolDepth());
+				assertEquals(0, spoolDir.list().length);
+			}
+		}.perform();
+	}
+}
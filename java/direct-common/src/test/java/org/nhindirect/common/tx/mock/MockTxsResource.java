@@ -3,6 +3,8 @@ package org.nhindirect.common.tx.mock;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -26,7 +28,9 @@ import com.google.inject.Singleton;
 @Singleton
 public class MockTxsResource
 {
-	protected Collection<Tx> txs = new ArrayList<Tx>();
+	protected Collection<Tx> txs = Collections.synchronizedList(new ArrayList<Tx>());
+	
+	protected final AtomicInteger batchCount = new AtomicInteger();
 	
 
     @TypeHint(Tx.class)  
@@ -40,6 +44,18 @@ public class MockTxsResource
 		return Response.status(Status.CREATED).build();
     }
 
+    @Path("batch")
+    @TypeHint(Tx.class)  
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)  
+    public Response addTxs(List<Tx> txs)
+    {
+    	batchCount.incrementAndGet();
+    	this.txs.addAll(txs);
+    	
+		return Response.status(Status.CREATED).build();
+    }
+    
     @Path("suppressNotification")
     @TypeHint(Boolean.class)  
     @POST
@@ -62,11 +78,20 @@ public class MockTxsResource
     public void clearTxState()
     {
     	txs.clear();
+    	batchCount.set(0);
+    }
+    
+    public int getBatchCount()
+    {
+    	return batchCount.get();
     }
 
     public Collection<Tx> getTxs()
     {
-    	return Collections.unmodifiableCollection(txs);
+    	synchronized (txs)
+    	{
+    		return Collections.unmodifiableCollection(new ArrayList<Tx>(txs));
+    	}
     }
 }
 
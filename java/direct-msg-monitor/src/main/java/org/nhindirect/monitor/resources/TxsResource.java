@@ -21,6 +21,8 @@ THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.nhindirect.monitor.resources;
 
+import java.util.List;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -130,6 +132,51 @@ public class TxsResource
 		return Response.status(Status.CREATED).cacheControl(noCache).build();
     }
     
+    /**
+     * Adds a batch of messages into the system.  Messages are added to the route in the order they are received.
+     * @param txs The messages to add.
+     * @return Jax-RS response object containing the http status code.  If all messages are successfully added to the route, then status 201 (created)
+     * is returned.  500 is returned if an error occurs; messages that precede the failed message have already been added to the route.
+     * @since 1.2
+     */
+    @Path("batch")
+    @TypeHint(Tx.class)  
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)  
+    public Response addTxs(List<Tx> txs)
+    {
+    	///CLOVER:OFF
+    	if (LOGGER.isTraceEnabled())
+    		LOGGER.trace("Attempting to add Tx batch");
+    	///CLOVER:ON
+    	
+    	if (template == null)
+    		throw new IllegalStateException("Template producer cannot be null.  Please examine the txs resource configuration");
+    	
+    	if (txs != null)
+    	{
+	    	for (Tx tx : txs)
+	    	{
+		    	try
+		    	{
+		    		template.sendBody(tx);
+		    	}
+		    	catch (Throwable t)
+		    	{
+		    		LOGGER.error("Failed to add Tx message from batch", t);
+		    		return Response.serverError().cacheControl(noCache).build();
+		    	}
+	    	}
+    	}
+    	
+    	///CLOVER:OFF
+    	if (LOGGER.isTraceEnabled())
+    		LOGGER.trace("Tx batch added");
+    	///CLOVER:ON
+    	
+		return Response.status(Status.CREATED).cacheControl(noCache).build();
+    }
+    
     /**
 	 * Indicates if a notification message should be suppressed from being delivered to the original message edge client
 	 * based on existing notifications being received, if the original message is subject to the timely and reliable guidance,
@@ -0,0 +1,88 @@
+package org.nhindirect.monitor.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.ws.rs.core.Response;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Matchers.any;
+
+import org.apache.camel.ProducerTemplate;
+import org.junit.Test;
+import org.nhindirect.common.tx.model.Tx;
+
+public class TxsResource_addTxsTest 
+{
+	@Test
+	public void testAddTxs_nullTemplate_assertExcecption()
+	{
+		TxsResource resource = new TxsResource(null, null);
+		
+		boolean exceptionOccured = false;
+		
+		try
+		{
+			resource.addTxs(Arrays.asList(mock(Tx.class)));
+		}
+		catch (IllegalStateException e)
+		{
+			exceptionOccured = true;
+		}
+		
+		assertTrue(exceptionOccured);
+	}
+	
+	@Test
+	public void testAddTxs_multipleTxs_assertAllSubmittedAndCreatedCode()
+	{
+		ProducerTemplate template = mock(ProducerTemplate.class);
+		
+		Tx tx1 = mock(Tx.class);
+		Tx tx2 = mock(Tx.class);
+		
+		TxsResource resource = new TxsResource(template, null);
+
+		Response res = resource.addTxs(Arrays.asList(tx1, tx2));
+		
+		assertEquals(201, res.getStatus());
+		verify(template, times(1)).sendBody(tx1);
+		verify(template, times(1)).sendBody(tx2);
+	}
+	
+	@Test
+	public void testAddTxs_exceptionInSubmission_assertErrorCodeAndRemainingNotSubmitted()
+	{
+		ProducerTemplate template = mock(ProducerTemplate.class);
+		
+		Tx tx1 = mock(Tx.class);
+		Tx tx2 = mock(Tx.class);
+		doThrow(new RuntimeException("")).when(template).sendBody(tx1);
+		
+		TxsResource resource = new TxsResource(template, null);
+
+		Response res = resource.addTxs(Arrays.asList(tx1, tx2));
+		
+		assertEquals(500, res.getStatus());
+		verify(template, never()).sendBody(tx2);
+	}
+	
+	@Test
+	public void testAddTxs_emptyBatch_assertCreatedCode()
+	{
+		ProducerTemplate template = mock(ProducerTemplate.class);
+		
+		TxsResource resource = new TxsResource(template, null);
+
+		Response res = resource.addTxs(Arrays.<Tx>asList());
+		
+		assertEquals(201, res.getStatus());
+		verify(template, never()).sendBody(any());
+	}
+}
@@ -23,6 +23,8 @@ package org.nhindirect.policy;
 
 import java.util.Vector;
 
+import org.nhindirect.policy.impl.machine.CompiledPolicy;
+
 /**
  * Factory class for creating {@link OperationPolicyExpression} instances.
  * @author Greg Meyer
@@ -55,6 +57,9 @@ public class OperationPolicyExpressionFactory
 		protected final PolicyOperator operator;
 		protected final Vector<PolicyExpression> operands;
 		
+		private transient volatile CompiledPolicy compiledPolicy;
+		private transient volatile boolean compiled;
+		
 		/**
 		 * Constructor
 		 * @param operator The operator that will be executed when the expression is evaluated.
@@ -93,6 +98,24 @@ public class OperationPolicyExpressionFactory
 			return operands;
 		}
 		
+		/**
+		 * Gets the program compiled from the expression.  The program is compiled on first use and held by the expression.
+		 * @return The compiled program or null if the expression references fields that cannot be compiled.
+		 * @throws PolicyProcessException
+		 * @since 1.1
+		 */
+		public CompiledPolicy getCompiledPolicy() throws PolicyProcessException
+		{
+			if (!compiled)
+			{
+				// concurrent compiles produce equivalent programs, so the last one wins
+				compiledPolicy = CompiledPolicy.isCompilable(this) ? CompiledPolicy.compile(this) : null;
+				compiled = true;
+			}
+			
+			return compiledPolicy;
+		}
+		
 		///CLOVER:OFF
 		@Override
 		public String toString()
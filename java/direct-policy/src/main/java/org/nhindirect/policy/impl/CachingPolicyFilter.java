@@ -0,0 +1,369 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.util.encoders.Hex;
+import org.nhindirect.policy.PolicyExpression;
+import org.nhindirect.policy.PolicyFilter;
+import org.nhindirect.policy.PolicyLexicon;
+import org.nhindirect.policy.PolicyLexiconParser;
+import org.nhindirect.policy.PolicyLexiconParserFactory;
+import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.PolicyRequiredException;
+
+/**
+ * {@link PolicyFilter} decorator that caches compliance verdicts.  Verdicts are keyed by the thumbprint of the certificate and a digest of the
+ * serialized policy, so a changed certificate or policy never matches a stale verdict.  {@link PolicyRequiredException} outcomes are cached along
+ * with boolean verdicts; other processing errors are not cached.
+ * <p>
+ * The cache is a bounded LRU.  Owners of the filter should call {@link #clear()} when the policies they evaluate are reloaded.
+ * @since 1.1
+ */
+public class CachingPolicyFilter implements PolicyFilter, CachingPolicyFilterMBean
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(CachingPolicyFilter.class);
+	
+	public static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+	
+	protected final PolicyFilter filter;
+	
+	protected final Map<String, Object> verdicts;
+	
+	protected final Map<PolicyExpression, String> policyDigests = 
+			Collections.synchronizedMap(new WeakHashMap<PolicyExpression, String>());
+	
+	protected final AtomicLong hitCount = new AtomicLong();
+	
+	protected final AtomicLong missCount = new AtomicLong();
+	
+	/**
+	 * Constructor.  Creates a cache with the default maximum size.
+	 * @param filter The filter that evaluates policies on a cache miss.
+	 */
+	public CachingPolicyFilter(PolicyFilter filter)
+	{
+		this(filter, DEFAULT_MAX_CACHE_SIZE);
+	}
+	
+	/**
+	 * Constructor
+	 * @param filter The filter that evaluates policies on a cache miss.
+	 * @param maxCacheSize The maximum number of verdicts held in the cache.
+	 */
+	@SuppressWarnings("serial")
+	public CachingPolicyFilter(PolicyFilter filter, final int maxCacheSize)
+	{
+		if (filter == null)
+			throw new IllegalArgumentException("Filter cannot be null");
+		
+		if (maxCacheSize < 1)
+			throw new IllegalArgumentException("Max cache size must be greater than 0");
+		
+		this.filter = filter;
+		this.verdicts = new LinkedHashMap<String, Object>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest)
+			{
+				return size() > maxCacheSize;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the filter that evaluates policies on a cache miss.
+	 * @return The filter that evaluates policies on a cache miss.
+	 */
+	public PolicyFilter getFilter()
+	{
+		return filter;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCompliant(X509Certificate cert, InputStream policyStream, PolicyLexicon lexicon) throws PolicyProcessException
+	{
+		final byte[] policy;
+		try
+		{
+			policy = IOUtils.toByteArray(policyStream);
+		}
+		catch (Exception e)
+		{
+			throw new PolicyProcessException("Failed to read policy stream.", e);
+		}
+		
+		final String thumbprint = getThumbprint(cert);
+		final String key = (thumbprint == null) ? null : thumbprint + ":" + lexicon.name() + ":" + digest(policy);
+		
+		final Object cached = getCachedVerdict(key);
+		if (cached != null)
+			return toVerdict(cached);
+		
+		final PolicyLexiconParser parser = PolicyLexiconParserFactory.getInstance(lexicon);
+		final PolicyExpression expression = parser.parse(new ByteArrayInputStream(policy));
+		
+		return evaluate(key, cert, expression);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCompliant(X509Certificate cert, PolicyExpression expression) throws PolicyProcessException
+	{
+		final String thumbprint = getThumbprint(cert);
+		final String policyDigest = (thumbprint == null) ? null : getPolicyDigest(expression);
+		final String key = (policyDigest == null) ? null : thumbprint + ":" + policyDigest;
+		
+		final Object cached = getCachedVerdict(key);
+		if (cached != null)
+			return toVerdict(cached);
+		
+		return evaluate(key, cert, expression);
+	}
+	
+	/*
+	 * Evaluates the policy with the underlying filter and caches the outcome
+	 */
+	private boolean evaluate(String key, X509Certificate cert, PolicyExpression expression) throws PolicyProcessException
+	{
+		missCount.incrementAndGet();
+		
+		try
+		{
+			final boolean retVal = filter.isCompliant(cert, expression);
+			putCachedVerdict(key, Boolean.valueOf(retVal));
+			
+			return retVal;
+		}
+		catch (PolicyRequiredException e)
+		{
+			putCachedVerdict(key, e.getMessage());
+			throw e;
+		}
+	}
+	
+	/*
+	 * Cached verdicts are either a Boolean or the message of a PolicyRequiredException
+	 */
+	private static boolean toVerdict(Object cached) throws PolicyRequiredException
+	{
+		if (cached instanceof Boolean)
+			return ((Boolean)cached).booleanValue();
+		
+		throw new PolicyRequiredException(cached.toString());
+	}
+	
+	private Object getCachedVerdict(String key)
+	{
+		if (key == null)
+			return null;
+		
+		final Object retVal;
+		synchronized(verdicts)
+		{
+			retVal = verdicts.get(key);
+		}
+		
+		if (retVal != null)
+			hitCount.incrementAndGet();
+		
+		return retVal;
+	}
+	
+	private void putCachedVerdict(String key, Object verdict)
+	{
+		if (key == null)
+			return;
+		
+		synchronized(verdicts)
+		{
+			verdicts.put(key, verdict);
+		}
+	}
+	
+	/**
+	 * Gets the digest of the serialized form of a policy expression.  Digests are held for as long as the expression object is referenced.
+	 * @param expression The policy expression.
+	 * @return The hex encoded digest or null if the expression cannot be serialized.
+	 */
+	protected String getPolicyDigest(PolicyExpression expression)
+	{
+		String retVal = policyDigests.get(expression);
+		if (retVal == null)
+		{
+			try
+			{
+				final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+				new JavaSerializedObjectLexiconPolicyParser().serialize(expression, outStream);
+				
+				retVal = digest(outStream.toByteArray());
+				policyDigests.put(expression, retVal);
+			}
+			catch (Exception e)
+			{
+				LOGGER.warn("Policy expression could not be serialized.  Verdicts for this expression will not be cached.", e);
+				return null;
+			}
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Gets the SHA-1 thumbprint of a certificate.
+	 * @param cert The certificate.
+	 * @return The hex encoded thumbprint or null if the certificate cannot be encoded.
+	 */
+	protected String getThumbprint(X509Certificate cert)
+	{
+		try
+		{
+			final byte[] encoded = (cert == null) ? null : cert.getEncoded();
+			
+			return (encoded == null) ? null : digest(encoded);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+	
+	private static String digest(byte[] data)
+	{
+		try
+		{
+			return new String(Hex.encode(MessageDigest.getInstance("SHA-1").digest(data)), "ASCII");
+		}
+		///CLOVER:OFF
+		catch (Exception e)
+		{
+			throw new IllegalStateException("SHA-1 digest is not available.", e);
+		}
+		///CLOVER:ON
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getMissCount()
+	{
+		return missCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Double getHitRatio()
+	{
+		final long hits = hitCount.get();
+		final long total = hits + missCount.get();
+		
+		return (total == 0) ? 0.0 : (double)hits / total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Integer getCacheSize()
+	{
+		synchronized(verdicts)
+		{
+			return verdicts.size();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void clear()
+	{
+		synchronized(verdicts)
+		{
+			verdicts.clear();
+		}
+	}
+	
+	/**
+	 * Registers the filter with the platform MBean server.  If an MBean is already registered with the same name, it is replaced
+	 * so a reloaded filter takes over the name of the filter it replaces.
+	 * @param name The name of the filter used in the MBean's object name.
+	 */
+	public void registerMBean(String name)
+	{
+		final StringBuilder objectNameBuilder = new StringBuilder(CachingPolicyFilter.class.getPackage().getName());
+		objectNameBuilder.append(":type=").append(CachingPolicyFilter.class.getSimpleName());
+		objectNameBuilder.append(",name=").append(name);
+		
+		try
+		{
+			final ObjectName objectName = new ObjectName(objectNameBuilder.toString());
+			final StandardMBean mbean = new StandardMBean(this, CachingPolicyFilterMBean.class);
+		
+			final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			synchronized(CachingPolicyFilter.class)
+			{
+				if (mbeanServer.isRegistered(objectName))
+					mbeanServer.unregisterMBean(objectName);
+				
+				mbeanServer.registerMBean(mbean, objectName);
+			}
+		}
+		catch (JMException e)
+		{
+			LOGGER.error("Unable to register the CachingPolicyFilter MBean", e);
+		}
+	}
+}
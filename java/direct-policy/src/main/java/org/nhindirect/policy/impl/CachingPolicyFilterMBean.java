@@ -0,0 +1,55 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.impl;
+
+/**
+ * JMX interface for monitoring a {@link CachingPolicyFilter}.
+ * @since 1.1
+ */
+public interface CachingPolicyFilterMBean 
+{
+	/**
+	 * Gets the number of policy evaluations answered from the cache.
+	 * @return The number of policy evaluations answered from the cache.
+	 */
+	public Long getHitCount();
+	
+	/**
+	 * Gets the number of policy evaluations that were passed to the underlying filter.
+	 * @return The number of policy evaluations that were passed to the underlying filter.
+	 */
+	public Long getMissCount();
+	
+	/**
+	 * Gets the ratio of cache hits to total evaluations.
+	 * @return The ratio of cache hits to total evaluations, or 0 if no evaluations have occurred.
+	 */
+	public Double getHitRatio();
+	
+	/**
+	 * Gets the number of cached verdicts.
+	 * @return The number of cached verdicts.
+	 */
+	public Integer getCacheSize();
+	
+	/**
+	 * Removes all cached verdicts.
+	 */
+	public void clear();
+}
@@ -27,17 +27,26 @@ import java.util.Vector;
 
 import org.nhindirect.policy.ExecutionEngine;
 import org.nhindirect.policy.Opcode;
+import org.nhindirect.policy.OperationPolicyExpressionFactory.OperationPolicyExpressionImpl;
 import org.nhindirect.policy.PolicyExpression;
 import org.nhindirect.policy.PolicyFilter;
 import org.nhindirect.policy.PolicyLexicon;
 import org.nhindirect.policy.PolicyLexiconParser;
 import org.nhindirect.policy.PolicyLexiconParserFactory;
 import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.impl.machine.CompiledPolicy;
+import org.nhindirect.policy.impl.machine.CompiledStackMachine;
 import org.nhindirect.policy.impl.machine.StackMachine;
 import org.nhindirect.policy.impl.machine.StackMachineCompiler;
+import org.nhindirect.policy.x509.AbstractX509Field;
 
 /**
  * Default implementation of the {@link PolicyFilter} interface.
+ * <p>
+ * When the filter uses the default {@link StackMachineCompiler} and {@link StackMachine}, expressions are compiled once into a
+ * certificate independent {@link CompiledPolicy} and evaluated by a {@link CompiledStackMachine}.  Compiled programs are held
+ * by the expression objects created by the policy parsers.  Custom compilers, custom execution engines, compilers in report mode, and
+ * expressions that reference fields that cannot be compiled use the per certificate compile and evaluate path.
  * @author Greg Meyer
  * @since 1.0
  */
@@ -46,6 +55,8 @@ public class DefaultPolicyFilter implements PolicyFilter
 	protected org.nhindirect.policy.Compiler compiler;
 	protected ExecutionEngine executionEngine;
 	
+	protected final CompiledStackMachine compiledMachine = new CompiledStackMachine();
+	
 	/**
 	 * Default constructor.  Creates default instances of the compiler and execution engine.
 	 */
@@ -99,9 +110,45 @@ public class DefaultPolicyFilter implements PolicyFilter
 		if (executionEngine == null)
 			throw new IllegalStateException("Execution engine cannot be null");
 		
+		if (isCompiledEvaluationSupported())
+		{
+			final CompiledPolicy program = getCompiledPolicy(expression);
+			if (program != null)
+				return compiledMachine.evaluate(program, cert);
+		}
+		
 		final Vector<Opcode> opcodes = compiler.compile(cert, expression);
 		
 		return executionEngine.evaluate(opcodes);
 	}
+	
+	/**
+	 * Indicates if expressions can be evaluated as compiled programs.  Compiled programs are only used when the filter is configured
+	 * with the default compiler and execution engine and the compiler is not in report mode.
+	 * @return true if expressions are evaluated as compiled programs.  false otherwise
+	 */
+	protected boolean isCompiledEvaluationSupported()
+	{
+		return compiler.getClass() == StackMachineCompiler.class && !compiler.isReportModeEnabled() && 
+				executionEngine.getClass() == StackMachine.class;
+	}
+	
+	/**
+	 * Gets the compiled program for an expression.  Programs of expressions created by the policy parsers are compiled once and held 
+	 * by the expression; other expressions are compiled on each call.
+	 * @param expression The parsed expression tree.
+	 * @return The compiled program or null if the expression cannot be compiled.
+	 * @throws PolicyProcessException
+	 */
+	protected CompiledPolicy getCompiledPolicy(PolicyExpression expression) throws PolicyProcessException
+	{
+		if (expression instanceof OperationPolicyExpressionImpl)
+			return ((OperationPolicyExpressionImpl)expression).getCompiledPolicy();
+		
+		if (expression instanceof AbstractX509Field)
+			return ((AbstractX509Field<?>)expression).getCompiledPolicy();
+		
+		return CompiledPolicy.isCompilable(expression) ? CompiledPolicy.compile(expression) : null;
+	}
 
 }
@@ -0,0 +1,90 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.impl.machine;
+
+import java.security.cert.X509Certificate;
+
+import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.PolicyValue;
+import org.nhindirect.policy.x509.AbstractX509Field;
+import org.nhindirect.policy.x509.X509Field;
+
+/**
+ * Per evaluation holder of the certificate being evaluated and the values extracted from it for the field slots of a {@link CompiledPolicy}.
+ * Field values are extracted the first time a slot is read.  Contexts are not thread safe and are intended to be used by a single evaluation.
+ * @since 1.1
+ */
+public class CertificateEvaluationContext
+{
+	protected final X509Certificate certificate;
+	protected final PolicyValue<?>[] slotValues;
+	
+	/**
+	 * Constructor
+	 * @param certificate The certificate being evaluated.
+	 * @param program The program the context will be used with.
+	 */
+	public CertificateEvaluationContext(X509Certificate certificate, CompiledPolicy program)
+	{
+		this.certificate = certificate;
+		this.slotValues = new PolicyValue<?>[program.fields.length];
+	}
+	
+	/**
+	 * Gets the certificate being evaluated.
+	 * @return The certificate being evaluated.
+	 */
+	public X509Certificate getCertificate()
+	{
+		return certificate;
+	}
+	
+	/**
+	 * Gets the value of a field slot, extracting it from the certificate if it has not already been read.
+	 * @param program The program that defines the slot.
+	 * @param slot The slot index.
+	 * @return The value of the field for the certificate.
+	 * @throws PolicyProcessException Thrown if a required field is not present in the certificate.
+	 */
+	public PolicyValue<?> getFieldValue(CompiledPolicy program, int slot) throws PolicyProcessException
+	{
+		PolicyValue<?> retVal = slotValues[slot];
+		if (retVal == null)
+		{
+			retVal = extractFieldValue(program.fields[slot]);
+			slotValues[slot] = retVal;
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Extracts a field value from the certificate without modifying the field definition shared by the program.
+	 * @param field The field definition.
+	 * @return The value of the field for the certificate.
+	 * @throws PolicyProcessException Thrown if a required field is not present in the certificate.
+	 */
+	protected PolicyValue<?> extractFieldValue(AbstractX509Field<?> field) throws PolicyProcessException
+	{
+		final X509Field<?> instance = field.newEvaluationInstance();
+		instance.injectReferenceValue(certificate);
+		
+		return instance.getPolicyValue();
+	}
+}
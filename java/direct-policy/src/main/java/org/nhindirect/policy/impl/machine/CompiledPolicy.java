@@ -0,0 +1,337 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.impl.machine;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nhindirect.policy.LiteralPolicyExpression;
+import org.nhindirect.policy.OperationPolicyExpression;
+import org.nhindirect.policy.PolicyExpression;
+import org.nhindirect.policy.PolicyOperator;
+import org.nhindirect.policy.PolicyOperatorExecutor;
+import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.PolicyValue;
+import org.nhindirect.policy.ReferencePolicyExpression;
+import org.nhindirect.policy.impl.BinaryBooleanPolicyOperatorExecutor;
+import org.nhindirect.policy.impl.BinaryCollectionPolicyOperatorExecutor;
+import org.nhindirect.policy.impl.BinaryIntegerPolicyOperatorExecutor;
+import org.nhindirect.policy.impl.UnaryBooleanPolicyOperatorExecutor;
+import org.nhindirect.policy.impl.UnaryIntegerPolicyOperatorExecutor;
+import org.nhindirect.policy.x509.AbstractX509Field;
+import org.nhindirect.policy.x509.X509Field;
+
+/**
+ * Immutable, certificate independent program compiled from a policy expression.  Literal values, operators, and the executors that
+ * implement the operators are resolved when the program is compiled, and each X509 field referenced by the expression is assigned a slot 
+ * that is filled in from the certificate at evaluation time.  Referenced fields must extend {@link AbstractX509Field} so their values can be 
+ * extracted without modifying the shared field.  Because the program never holds certificate values, a single instance can be evaluated by the {@link CompiledStackMachine}
+ * against many certificates concurrently.
+ * <p>
+ * Instructions are stored in reverse polish order, the same order used by the {@link StackMachineCompiler}.
+ * @since 1.1
+ */
+public final class CompiledPolicy
+{
+	static final int INSTRUCTION_LITERAL = 0;
+	static final int INSTRUCTION_FIELD = 1;
+	static final int INSTRUCTION_UNARY_OPERATOR = 2;
+	static final int INSTRUCTION_BINARY_OPERATOR = 3;
+	
+	final int[] instructions;
+	
+	// per instruction arguments; only the array matching the instruction type is populated
+	final PolicyValue<?>[] literals;
+	final int[] fieldSlots;
+	final PolicyOperator[] operators;
+	final ExecutorFactory[] executorFactories;
+	
+	final AbstractX509Field<?>[] fields;
+	
+	final int maxStackDepth;
+	
+	/**
+	 * Compiles an expression tree into a program.
+	 * @param expression The parsed expression tree.
+	 * @return The compiled program.
+	 * @throws PolicyProcessException Thrown if the expression contains unsupported expression types or an operator executor cannot be resolved.
+	 */
+	public static CompiledPolicy compile(PolicyExpression expression) throws PolicyProcessException
+	{
+		if (expression == null)
+			throw new IllegalArgumentException("Expression cannot be null");
+		
+		final Builder builder = new Builder();
+		builder.add(expression);
+		
+		return new CompiledPolicy(builder);
+	}
+	
+	/**
+	 * Indicates if an expression can be compiled into a program.  Expressions that reference certificate fields that do not
+	 * extend {@link AbstractX509Field} cannot be compiled.
+	 * @param expression The parsed expression tree.
+	 * @return true if the expression can be compiled.  false otherwise
+	 */
+	public static boolean isCompilable(PolicyExpression expression)
+	{
+		switch (expression.getExpressionType())
+		{
+			case LITERAL:
+				return true;
+			case REFERENCE:
+				return expression instanceof AbstractX509Field;
+			case OPERATION:
+			{
+				for (PolicyExpression operand : ((OperationPolicyExpression)expression).getOperands())
+					if (!isCompilable(operand))
+						return false;
+				
+				return true;
+			}
+			///CLOVER:OFF
+			default:
+				return false;
+			///CLOVER:ON
+		}
+	}
+	
+	private CompiledPolicy(Builder builder)
+	{
+		final int size = builder.instructions.size();
+		
+		instructions = new int[size];
+		literals = new PolicyValue<?>[size];
+		fieldSlots = new int[size];
+		operators = new PolicyOperator[size];
+		executorFactories = new ExecutorFactory[size];
+		
+		for (int i = 0; i < size; ++i)
+		{
+			final Object arg = builder.args.get(i);
+			
+			instructions[i] = builder.instructions.get(i);
+			switch (instructions[i])
+			{
+				case INSTRUCTION_LITERAL:
+					literals[i] = (PolicyValue<?>)arg;
+					break;
+				case INSTRUCTION_FIELD:
+					fieldSlots[i] = (Integer)arg;
+					break;
+				default:
+					operators[i] = (PolicyOperator)arg;
+					executorFactories[i] = builder.factories.get(i);
+					break;
+			}
+		}
+		
+		fields = builder.fields.toArray(new AbstractX509Field<?>[builder.fields.size()]);
+		maxStackDepth = builder.maxDepth;
+	}
+	
+	/**
+	 * Gets the number of instructions in the program.
+	 * @return The number of instructions in the program.
+	 */
+	public int getInstructionCount()
+	{
+		return instructions.length;
+	}
+	
+	/**
+	 * Gets the number of distinct certificate fields referenced by the program.
+	 * @return The number of certificate field slots.
+	 */
+	public int getFieldSlotCount()
+	{
+		return fields.length;
+	}
+	
+	/*
+	 * Accumulates instructions while walking the expression tree
+	 */
+	private static class Builder
+	{
+		final List<Integer> instructions = new ArrayList<Integer>();
+		final List<Object> args = new ArrayList<Object>();
+		final List<ExecutorFactory> factories = new ArrayList<ExecutorFactory>();
+		final List<AbstractX509Field<?>> fields = new ArrayList<AbstractX509Field<?>>();
+		final Map<X509Field<?>, Integer> fieldSlots = new IdentityHashMap<X509Field<?>, Integer>();
+		
+		int depth;
+		int maxDepth;
+		
+		void add(PolicyExpression expression) throws PolicyProcessException
+		{
+			switch (expression.getExpressionType())
+			{
+				case LITERAL:
+				{
+					append(INSTRUCTION_LITERAL, ((LiteralPolicyExpression<?>)expression).getPolicyValue(), null);
+					push();
+					break;
+				}
+				case REFERENCE:
+				{
+					final ReferencePolicyExpression<?,?> refExpression = (ReferencePolicyExpression<?,?>)expression;
+					if (!(refExpression instanceof AbstractX509Field))
+						throw new PolicyProcessException("Unsupported reference expression type " + refExpression.getPolicyExpressionReferenceType());
+					
+					final AbstractX509Field<?> field = (AbstractX509Field<?>)refExpression;
+					
+					// the same field instance referenced multiple times shares a slot
+					Integer slot = fieldSlots.get(field);
+					if (slot == null)
+					{
+						slot = fields.size();
+						fields.add(field);
+						fieldSlots.put(field, slot);
+					}
+					
+					append(INSTRUCTION_FIELD, slot, null);
+					push();
+					break;
+				}
+				case OPERATION:
+				{
+					final OperationPolicyExpression opExpression = (OperationPolicyExpression)expression;
+					for (PolicyExpression operand : opExpression.getOperands())
+						add(operand);
+					
+					final PolicyOperator operator = opExpression.getPolicyOperator();
+					switch (operator.getParamsType())
+					{
+						case BINARY:
+						{
+							if (depth < 2)
+								throw new PolicyProcessException("Operator " + operator.getOperatorText() + " requires two operands.");
+							
+							append(INSTRUCTION_BINARY_OPERATOR, operator, getExecutorFactory(operator));
+							depth -= 1;
+							break;
+						}
+						case UNARY:
+						{
+							if (depth < 1)
+								throw new PolicyProcessException("Operator " + operator.getOperatorText() + " requires one operand.");
+							
+							append(INSTRUCTION_UNARY_OPERATOR, operator, getExecutorFactory(operator));
+							break;
+						}
+					}
+					break;
+				}
+				///CLOVER:OFF
+				default:
+					throw new PolicyProcessException("Unsupported expression type " + expression.getExpressionType());
+				///CLOVER:ON
+			}
+		}
+		
+		void append(int instruction, Object arg, ExecutorFactory factory)
+		{
+			instructions.add(instruction);
+			args.add(arg);
+			factories.add(factory);
+		}
+		
+		void push()
+		{
+			if (++depth > maxDepth)
+				maxDepth = depth;
+		}
+		
+		static ExecutorFactory getExecutorFactory(PolicyOperator operator) throws PolicyProcessException
+		{
+			final Class<?> executorClass = operator.getExecutorClass();
+			
+			if (executorClass == BinaryBooleanPolicyOperatorExecutor.class)
+				return BINARY_BOOLEAN_FACTORY;
+			else if (executorClass == BinaryCollectionPolicyOperatorExecutor.class)
+				return BINARY_COLLECTION_FACTORY;
+			else if (executorClass == BinaryIntegerPolicyOperatorExecutor.class)
+				return BINARY_INTEGER_FACTORY;
+			else if (executorClass == UnaryBooleanPolicyOperatorExecutor.class)
+				return UNARY_BOOLEAN_FACTORY;
+			else if (executorClass == UnaryIntegerPolicyOperatorExecutor.class)
+				return UNARY_INTEGER_FACTORY;
+			
+			///CLOVER:OFF
+			throw new PolicyProcessException("Unsupported operator executor " + executorClass.getName());
+			///CLOVER:ON
+		}
+	}
+	
+	/*
+	 * Creates the executor of an operator.  Factories are resolved at compile time so evaluation creates executors directly
+	 * rather than through reflection.  Unary executors ignore the second operand.
+	 */
+	static abstract class ExecutorFactory
+	{
+		abstract PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator);
+	}
+	
+	static final ExecutorFactory BINARY_BOOLEAN_FACTORY = new ExecutorFactory()
+	{
+		@Override
+		PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator)
+		{
+			return new BinaryBooleanPolicyOperatorExecutor<Object,Object>(first, second, operator);
+		}
+	};
+	
+	static final ExecutorFactory BINARY_COLLECTION_FACTORY = new ExecutorFactory()
+	{
+		@Override
+		PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator)
+		{
+			return new BinaryCollectionPolicyOperatorExecutor<Object,Object>(first, second, operator);
+		}
+	};
+	
+	static final ExecutorFactory BINARY_INTEGER_FACTORY = new ExecutorFactory()
+	{
+		@Override
+		PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator)
+		{
+			return new BinaryIntegerPolicyOperatorExecutor<Object,Object>(first, second, operator);
+		}
+	};
+	
+	static final ExecutorFactory UNARY_BOOLEAN_FACTORY = new ExecutorFactory()
+	{
+		@Override
+		PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator)
+		{
+			return new UnaryBooleanPolicyOperatorExecutor<Object>(first, operator);
+		}
+	};
+	
+	static final ExecutorFactory UNARY_INTEGER_FACTORY = new ExecutorFactory()
+	{
+		@Override
+		PolicyOperatorExecutor<?,?> create(PolicyValue<Object> first, PolicyValue<Object> second, PolicyOperator operator)
+		{
+			return new UnaryIntegerPolicyOperatorExecutor<Object>(first, operator);
+		}
+	};
+}
@@ -0,0 +1,119 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.impl.machine;
+
+import java.security.cert.X509Certificate;
+
+import org.nhindirect.policy.PolicyOperatorExecutor;
+import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.PolicyValue;
+
+/**
+ * Stack machine that evaluates {@link CompiledPolicy} programs.  Unlike the {@link StackMachine}, the machine holds no state; the operand
+ * stack is sized from the program and certificate values are held by a {@link CertificateEvaluationContext}.  A single instance can
+ * evaluate programs concurrently without synchronization.
+ * @since 1.1
+ */
+public class CompiledStackMachine
+{
+	/**
+	 * Default constructor.
+	 */
+	public CompiledStackMachine()
+	{
+		
+	}
+	
+	/**
+	 * Evaluates a program against a certificate.
+	 * @param program The compiled program.
+	 * @param cert The certificate that is evaluated for policy compliance.
+	 * @return true if the certificate is compliant with the policy.  false otherwise
+	 * @throws PolicyProcessException
+	 */
+	public boolean evaluate(CompiledPolicy program, X509Certificate cert) throws PolicyProcessException
+	{
+		return evaluate(program, new CertificateEvaluationContext(cert, program));
+	}
+	
+	/**
+	 * Evaluates a program using an existing certificate context.
+	 * @param program The compiled program.
+	 * @param context The context holding the certificate and its extracted field values.
+	 * @return true if the certificate is compliant with the policy.  false otherwise
+	 * @throws PolicyProcessException
+	 */
+	public boolean evaluate(CompiledPolicy program, CertificateEvaluationContext context) throws PolicyProcessException
+	{
+		final PolicyValue<?>[] stack = new PolicyValue<?>[program.maxStackDepth];
+		int top = 0;
+		
+		final int[] instructions = program.instructions;
+		for (int i = 0; i < instructions.length; ++i)
+		{
+			switch (instructions[i])
+			{
+				case CompiledPolicy.INSTRUCTION_LITERAL:
+					stack[top++] = program.literals[i];
+					break;
+					
+				case CompiledPolicy.INSTRUCTION_FIELD:
+					stack[top++] = context.getFieldValue(program, program.fieldSlots[i]);
+					break;
+					
+				case CompiledPolicy.INSTRUCTION_UNARY_OPERATOR:
+					stack[top - 1] = execute(program, i, stack[top - 1], null);
+					break;
+					
+				case CompiledPolicy.INSTRUCTION_BINARY_OPERATOR:
+				{
+					// operands are passed in the same order the StackMachine pops them
+					final PolicyValue<?> result = execute(program, i, stack[top - 1], stack[top - 2]);
+					stack[--top - 1] = result;
+					stack[top] = null;
+					break;
+				}
+			}
+		}
+		
+		if (top != 1)
+			throw new IllegalStateException("Stack machine is either empty or has remaining parameters to be processed." +
+					"\r\n\tFinal stack size: " + top);
+		
+		final Object finalValue = stack[0].getPolicyValue();
+		if (!(finalValue instanceof Boolean))
+			throw new IllegalStateException("Final machine value must be a boolean litteral" +
+					"\r\n\tFinal value type: " + finalValue.getClass() 
+					+ "\r\n\tFinal value value:" + finalValue.toString());	
+		
+		return ((Boolean)finalValue).booleanValue();
+	}
+	
+	/*
+	 * Creates the operator's executor with the factory resolved at compile time and executes it
+	 */
+	@SuppressWarnings("unchecked")
+	private PolicyValue<?> execute(CompiledPolicy program, int instruction, PolicyValue<?> first, PolicyValue<?> second)
+	{
+		final PolicyOperatorExecutor<?,?> executor = program.executorFactories[instruction].create((PolicyValue<Object>)first, 
+				(PolicyValue<Object>)second, program.operators[instruction]);
+		
+		return executor.execute();
+	}
+}
@@ -80,15 +80,8 @@ public abstract class AbstractExtensionField<P> extends AbstractTBSField<P> impl
     protected DERObject getExtensionValue(X509Certificate cert)
             throws PolicyProcessException
     {
-    	final String oid = getExtentionIdentifier().getId();
-    	
-        byte[]  bytes = cert.getExtensionValue(oid);
-        if (bytes == null)
-        {
-            return null;
-        }
-
-        return getObject(bytes);
+    	// decoded extensions are shared by all fields evaluating the certificate
+    	return ParsedCertificate.getInstance(cert).getExtensionObject(cert, getExtentionIdentifier().getId());
     }
     
     /**
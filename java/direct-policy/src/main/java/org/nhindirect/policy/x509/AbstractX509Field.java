@@ -32,6 +32,7 @@ import org.nhindirect.policy.PolicyExpressionReferenceType;
 import org.nhindirect.policy.PolicyExpressionType;
 import org.nhindirect.policy.PolicyProcessException;
 import org.nhindirect.policy.PolicyValue;
+import org.nhindirect.policy.impl.machine.CompiledPolicy;
 
 /**
  * Abstract implementation of the {@link X509Field} interface.
@@ -40,7 +41,7 @@ import org.nhindirect.policy.PolicyValue;
  *
  * @param <P> The object type of the evaluated field of the X509Certiciate.
  */
-public abstract class AbstractX509Field<P> implements X509Field<P>
+public abstract class AbstractX509Field<P> implements X509Field<P>, Cloneable
 {	
 	static final long serialVersionUID = 8705426787272691746L;
 	
@@ -50,6 +51,8 @@ public abstract class AbstractX509Field<P> implements X509Field<P>
 	
 	protected boolean required;
 	
+	private transient volatile CompiledPolicy compiledPolicy;
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -98,6 +101,52 @@ public abstract class AbstractX509Field<P> implements X509Field<P>
 		this.required = required;
 	}
 	
+	/**
+	 * Creates an unevaluated copy of the field.  The copy shares the field definition with this field, but holds its own injected
+	 * certificate and policy value so that a single parsed field can be evaluated against multiple certificates concurrently.
+	 * @return An unevaluated copy of the field.
+	 * @since 1.1
+	 */
+	@SuppressWarnings("unchecked")
+	public AbstractX509Field<P> newEvaluationInstance()
+	{
+		try
+		{
+			final AbstractX509Field<P> retVal = (AbstractX509Field<P>)super.clone();
+			retVal.policyValue = null;
+			retVal.certificate = null;
+			retVal.compiledPolicy = null;
+			
+			return retVal;
+		}
+		///CLOVER:OFF
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException("X509 field could not be copied.", e);
+		}
+		///CLOVER:ON
+	}
+	
+	/**
+	 * Gets the program compiled from this field when it is evaluated as a policy on its own.  The program is compiled on first use and 
+	 * held by the field.
+	 * @return The compiled program.
+	 * @throws PolicyProcessException
+	 * @since 1.1
+	 */
+	public CompiledPolicy getCompiledPolicy() throws PolicyProcessException
+	{
+		// concurrent compiles produce equivalent programs, so the last one wins
+		CompiledPolicy retVal = compiledPolicy;
+		if (retVal == null)
+		{
+			retVal = CompiledPolicy.compile(this);
+			compiledPolicy = retVal;
+		}
+		
+		return retVal;
+	}
+	
 	/**
 	 * Converts an encoded internal octet string object to a DERObject
 	 * @param ext The encoded octet string as a byte array
@@ -29,7 +29,6 @@ import java.util.Vector;
 import javax.security.auth.x500.X500Principal;
 
 import org.bouncycastle.asn1.DERObjectIdentifier;
-import org.bouncycastle.asn1.DERObject;
 import org.bouncycastle.asn1.x509.TBSCertificateStructure;
 import org.bouncycastle.asn1.x509.X509Name;
 import org.nhindirect.policy.PolicyProcessException;
@@ -87,20 +86,7 @@ public class IssuerAttributeField extends AbstractTBSField<Collection<String>>
 			return;
 		}
 		
-		DERObject tbsValue = null;
-		
-		try
-		{
-			tbsValue = this.getDERObject(certificate.getTBSCertificate());
-		}
-		///CLOVER:OFF
-		catch (Exception e)
-		{
-			throw new PolicyProcessException("Exception parsing TBS certificate fields.", e);
-		}
-		///CLOVER:ON
-		
-		final TBSCertificateStructure tbsStruct = TBSCertificateStructure.getInstance(tbsValue);
+		final TBSCertificateStructure tbsStruct = ParsedCertificate.getInstance(certificate).getTBSCertificateStructure(certificate);
 		
 		final X509Name x509Name = getX509Name(tbsStruct);
 		
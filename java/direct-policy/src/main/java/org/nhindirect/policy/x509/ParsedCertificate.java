@@ -0,0 +1,180 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.policy.x509;
+
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERObject;
+import org.bouncycastle.asn1.x509.TBSCertificateStructure;
+import org.nhindirect.policy.PolicyProcessException;
+
+/**
+ * Parsed view of the ASN.1 structures of a certificate that is shared by all X509 fields.  Each extension and the TBS structure are decoded
+ * at most once, the first time a field asks for them.
+ * <p>
+ * Views are held in a bounded concurrent map keyed by the certificate, so lookups do not take a global lock and repeated policy evaluations
+ * of the same certificate do not decode ASN.1 again.  When the map reaches {@link #MAX_VIEWS} entries, a quarter of the views are evicted
+ * to make room; an evicted view is simply decoded again on its next use.  Views do not reference their certificate, so the certificate is 
+ * passed to each lookup.
+ * @since 1.1
+ */
+public class ParsedCertificate
+{
+	/**
+	 * The maximum number of certificate views that are held.
+	 */
+	public static final int MAX_VIEWS = 1000;
+	
+	private static final ConcurrentMap<X509Certificate, ParsedCertificate> VIEWS = 
+			new ConcurrentHashMap<X509Certificate, ParsedCertificate>();
+	
+	// marks extensions that are not present in the certificate
+	private static final Object NOT_PRESENT = new Object();
+	
+	private final ConcurrentMap<String, Object> extensions = new ConcurrentHashMap<String, Object>();
+	
+	private volatile TBSCertificateStructure tbsStructure;
+	
+	/**
+	 * Gets the parsed view of a certificate, creating it if necessary.
+	 * @param cert The certificate.
+	 * @return The parsed view of the certificate.
+	 */
+	public static ParsedCertificate getInstance(X509Certificate cert)
+	{
+		if (cert == null)
+			throw new IllegalArgumentException("Certificate cannot be null");
+		
+		ParsedCertificate retVal = VIEWS.get(cert);
+		if (retVal == null)
+		{
+			if (VIEWS.size() >= MAX_VIEWS)
+				evictViews();
+			
+			final ParsedCertificate view = new ParsedCertificate();
+			retVal = VIEWS.putIfAbsent(cert, view);
+			if (retVal == null)
+				retVal = view;
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Removes a quarter of the views.  Concurrent evictions may remove a few more views than necessary, which only costs a decode.
+	 */
+	private static void evictViews()
+	{
+		int toRemove = MAX_VIEWS / 4;
+		for (Iterator<X509Certificate> iter = VIEWS.keySet().iterator(); iter.hasNext() && toRemove > 0; --toRemove)
+		{
+			iter.next();
+			iter.remove();
+		}
+	}
+	
+	private ParsedCertificate()
+	{
+	}
+	
+	/**
+	 * Gets the decoded value of an extension.
+	 * @param cert The certificate the view was created for.
+	 * @param oid The object identifier of the extension.
+	 * @return The decoded extension value or null if the extension is not present in the certificate.
+	 * @throws PolicyProcessException Thrown if the extension cannot be decoded.
+	 */
+	public DERObject getExtensionObject(X509Certificate cert, String oid) throws PolicyProcessException
+	{
+		Object retVal = extensions.get(oid);
+		if (retVal == null)
+		{
+			final byte[] bytes = cert.getExtensionValue(oid);
+			retVal = (bytes == null) ? NOT_PRESENT : decodeExtension(bytes);
+			
+			// concurrent decodes of the same extension produce equivalent objects
+			extensions.put(oid, retVal);
+		}
+		
+		return (retVal == NOT_PRESENT) ? null : (DERObject)retVal;
+	}
+	
+	/**
+	 * Gets the decoded TBS structure of the certificate.
+	 * @param cert The certificate the view was created for.
+	 * @return The decoded TBS structure.
+	 * @throws PolicyProcessException Thrown if the TBS structure cannot be decoded.
+	 */
+	public TBSCertificateStructure getTBSCertificateStructure(X509Certificate cert) throws PolicyProcessException
+	{
+		TBSCertificateStructure retVal = tbsStructure;
+		if (retVal == null)
+		{
+			ASN1InputStream aIn = null;
+			try
+			{
+				aIn = new ASN1InputStream(cert.getTBSCertificate());
+				retVal = TBSCertificateStructure.getInstance(aIn.readObject());
+			}
+			catch (Exception e)
+			{
+				throw new PolicyProcessException("Exception parsing TBS certificate fields.", e);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(aIn);
+			}
+			
+			tbsStructure = retVal;
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Extension values are DER octet strings wrapping the encoded extension
+	 */
+	private static DERObject decodeExtension(byte[] ext) throws PolicyProcessException
+	{
+		ASN1InputStream aIn = null;
+		try
+		{
+			aIn = new ASN1InputStream(ext);
+			final ASN1OctetString octs = (ASN1OctetString)aIn.readObject();
+			IOUtils.closeQuietly(aIn);
+			
+			aIn = new ASN1InputStream(octs.getOctets());
+			return aIn.readObject();
+		}
+		catch (Exception e)
+		{
+			throw new PolicyProcessException("Exception processing data ", e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(aIn);
+		}
+	}
+}
@@ -23,7 +23,6 @@ package org.nhindirect.policy.x509;
 
 import java.security.cert.X509Certificate;
 
-import org.bouncycastle.asn1.DERObject;
 import org.bouncycastle.asn1.x509.TBSCertificateStructure;
 
 import org.nhindirect.policy.PolicyProcessException;
@@ -66,20 +65,7 @@ public class SubjectPublicKeyAlgorithmField extends AbstractTBSField<String>
 	{
 		this.certificate = value;
 		
-		DERObject tbsValue = null;
-		
-		try
-		{
-			tbsValue = this.getDERObject(certificate.getTBSCertificate());
-		}
-		///CLOVER:OFF
-		catch (Exception e)
-		{
-			throw new PolicyProcessException("Exception parsing TBS certificate fields.", e);
-		}
-		///CLOVER:ON
-		
-		final TBSCertificateStructure tbsStruct = TBSCertificateStructure.getInstance(tbsValue);
+		final TBSCertificateStructure tbsStruct = ParsedCertificate.getInstance(certificate).getTBSCertificateStructure(certificate);
 
 		this.policyValue = PolicyValueFactory.getInstance(tbsStruct.getSubjectPublicKeyInfo().
 				getAlgorithmId().getObjectId().toString());
@@ -0,0 +1,161 @@
+package org.nhindirect.policy.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+import java.util.Vector;
+
+import org.nhindirect.policy.LiteralPolicyExpressionFactory;
+import org.nhindirect.policy.OperationPolicyExpressionFactory;
+import org.nhindirect.policy.PolicyExpression;
+import org.nhindirect.policy.PolicyFilter;
+import org.nhindirect.policy.PolicyOperator;
+import org.nhindirect.policy.PolicyRequiredException;
+import org.nhindirect.policy.PolicyValueFactory;
+import org.nhindirect.policy.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class CachingPolicyFilter_isCompliantTest extends TestCase
+{
+	protected PolicyExpression buildExpression(boolean value)
+	{
+		final Vector<PolicyExpression> operands = new Vector<PolicyExpression>();
+		operands.add(LiteralPolicyExpressionFactory.getInstance(PolicyValueFactory.getInstance(value)));
+
+		return OperationPolicyExpressionFactory.getInstance(PolicyOperator.LOGICAL_NOT, operands);
+	}
+
+	public void testIsCompliant_sameCertAndPolicy_assertEvaluatedOnce() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("umesh.der");
+		final PolicyExpression expression = buildExpression(false);
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+		when(delegate.isCompliant(cert, expression)).thenReturn(true);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		assertTrue(filter.isCompliant(cert, expression));
+		assertTrue(filter.isCompliant(cert, expression));
+
+		verify(delegate, times(1)).isCompliant(cert, expression);
+		assertEquals(1L, filter.getHitCount().longValue());
+		assertEquals(1L, filter.getMissCount().longValue());
+		assertEquals(0.5, filter.getHitRatio());
+	}
+
+	public void testIsCompliant_equivalentPolicyInstance_assertCacheHit() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("umesh.der");
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+		when(delegate.isCompliant(eq(cert), (PolicyExpression)any())).thenReturn(true);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		assertTrue(filter.isCompliant(cert, buildExpression(false)));
+		assertTrue(filter.isCompliant(cert, buildExpression(false)));
+
+		verify(delegate, times(1)).isCompliant(eq(cert), (PolicyExpression)any());
+	}
+
+	public void testIsCompliant_differentPolicy_assertCacheMiss() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("umesh.der");
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		filter.isCompliant(cert, buildExpression(false));
+		filter.isCompliant(cert, buildExpression(true));
+
+		verify(delegate, times(2)).isCompliant(eq(cert), (PolicyExpression)any());
+		assertEquals(2, filter.getCacheSize().intValue());
+	}
+
+	public void testIsCompliant_requiredException_assertExceptionCached() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("umesh.der");
+		final PolicyExpression expression = buildExpression(false);
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+		when(delegate.isCompliant(cert, expression)).thenThrow(new PolicyRequiredException("Required field missing"));
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		for (int i = 0; i < 2; ++i)
+		{
+			boolean exceptionOccured = false;
+			try
+			{
+				filter.isCompliant(cert, expression);
+			}
+			catch (PolicyRequiredException e)
+			{
+				assertEquals("Required field missing", e.getMessage());
+				exceptionOccured = true;
+			}
+			assertTrue(exceptionOccured);
+		}
+
+		verify(delegate, times(1)).isCompliant(cert, expression);
+	}
+
+	public void testIsCompliant_clear_assertEvaluatedAgain() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("umesh.der");
+		final PolicyExpression expression = buildExpression(false);
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		filter.isCompliant(cert, expression);
+		filter.clear();
+		assertEquals(0, filter.getCacheSize().intValue());
+		filter.isCompliant(cert, expression);
+
+		verify(delegate, times(2)).isCompliant(cert, expression);
+	}
+
+	public void testIsCompliant_maxSizeExceeded_assertEldestEvicted() throws Exception
+	{
+		final X509Certificate cert1 = TestUtils.loadCertificate("umesh.der");
+		final X509Certificate cert2 = TestUtils.loadCertificate("mshost.der");
+		final PolicyExpression expression = buildExpression(false);
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate, 1);
+
+		filter.isCompliant(cert1, expression);
+		filter.isCompliant(cert2, expression);
+		filter.isCompliant(cert1, expression);
+
+		assertEquals(1, filter.getCacheSize().intValue());
+		verify(delegate, times(2)).isCompliant(cert1, expression);
+	}
+
+	public void testIsCompliant_certCannotBeEncoded_assertNotCached() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+		final PolicyExpression expression = buildExpression(false);
+
+		final PolicyFilter delegate = mock(PolicyFilter.class);
+
+		final CachingPolicyFilter filter = new CachingPolicyFilter(delegate);
+
+		filter.isCompliant(cert, expression);
+		filter.isCompliant(cert, expression);
+
+		verify(delegate, times(2)).isCompliant(cert, expression);
+		assertEquals(0, filter.getCacheSize().intValue());
+	}
+}
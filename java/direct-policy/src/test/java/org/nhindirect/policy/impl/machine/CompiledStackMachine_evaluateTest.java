@@ -0,0 +1,170 @@
+package org.nhindirect.policy.impl.machine;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.nhindirect.policy.LiteralPolicyExpressionFactory;
+import org.nhindirect.policy.OperationPolicyExpression;
+import org.nhindirect.policy.OperationPolicyExpressionFactory;
+import org.nhindirect.policy.PolicyExpression;
+import org.nhindirect.policy.PolicyOperator;
+import org.nhindirect.policy.PolicyProcessException;
+import org.nhindirect.policy.PolicyValueFactory;
+import org.nhindirect.policy.util.TestUtils;
+import org.nhindirect.policy.x509.KeyUsageExtensionField;
+
+import junit.framework.TestCase;
+
+public class CompiledStackMachine_evaluateTest extends TestCase
+{
+	protected OperationPolicyExpression buildKeyUsageExpression(KeyUsageExtensionField field, int keyUsage)
+	{
+		// (keyUsage & field) > 0
+		final Vector<PolicyExpression> operands1 = new Vector<PolicyExpression>();
+		operands1.add(LiteralPolicyExpressionFactory.getInstance(PolicyValueFactory.getInstance(keyUsage)));
+		operands1.add(field);
+
+		final Vector<PolicyExpression> operands2 = new Vector<PolicyExpression>();
+		operands2.add(OperationPolicyExpressionFactory.getInstance(PolicyOperator.BITWISE_AND, operands1));
+		operands2.add(LiteralPolicyExpressionFactory.getInstance(PolicyValueFactory.getInstance(0)));
+
+		return OperationPolicyExpressionFactory.getInstance(PolicyOperator.GREATER, operands2);
+	}
+
+	public void testEvaluate_keyUsageExpression_assertTrueAndExpressionNotModified() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("AlAnderson@hospitalA.direct.visionshareinc.com.der");
+		final KeyUsageExtensionField field = new KeyUsageExtensionField(true);
+
+		final CompiledPolicy program = CompiledPolicy.compile(buildKeyUsageExpression(field, KeyUsage.nonRepudiation));
+
+		assertEquals(5, program.getInstructionCount());
+		assertEquals(1, program.getFieldSlotCount());
+
+		assertTrue(new CompiledStackMachine().evaluate(program, cert));
+
+		// the shared field definition should never hold certificate values
+		boolean exceptionOccured = false;
+		try
+		{
+			field.getPolicyValue();
+		}
+		catch (IllegalStateException e)
+		{
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+
+	public void testEvaluate_multipleCertificates_assertSameResultsAsStackMachine() throws Exception
+	{
+		final List<X509Certificate> certs = Arrays.asList(TestUtils.loadCertificate("AlAnderson@hospitalA.direct.visionshareinc.com.der"),
+				TestUtils.loadCertificate("mshost.der"), TestUtils.loadCertificate("umesh.der"));
+
+		final OperationPolicyExpression expression = buildKeyUsageExpression(new KeyUsageExtensionField(false), KeyUsage.keyEncipherment);
+		final CompiledPolicy program = CompiledPolicy.compile(expression);
+		final CompiledStackMachine machine = new CompiledStackMachine();
+
+		final StackMachineCompiler compiler = new StackMachineCompiler();
+		for (X509Certificate cert : certs)
+			assertEquals(new StackMachine().evaluate(compiler.compile(cert, expression)).booleanValue(), machine.evaluate(program, cert));
+	}
+
+	public void testEvaluate_fieldReferencedTwice_assertSingleSlot() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("AlAnderson@hospitalA.direct.visionshareinc.com.der");
+		final KeyUsageExtensionField field = new KeyUsageExtensionField(true);
+
+		final Vector<PolicyExpression> operands = new Vector<PolicyExpression>();
+		operands.add(buildKeyUsageExpression(field, KeyUsage.nonRepudiation));
+		operands.add(buildKeyUsageExpression(field, KeyUsage.digitalSignature));
+
+		final CompiledPolicy program = CompiledPolicy.compile(OperationPolicyExpressionFactory.getInstance(PolicyOperator.LOGICAL_AND, operands));
+
+		assertEquals(1, program.getFieldSlotCount());
+		assertTrue(new CompiledStackMachine().evaluate(program, cert));
+	}
+
+	public void testEvaluate_concurrentEvaluations_assertConsistentResults() throws Exception
+	{
+		final X509Certificate[] certs = new X509Certificate[] {TestUtils.loadCertificate("AlAnderson@hospitalA.direct.visionshareinc.com.der"),
+				TestUtils.loadCertificate("umesh.der")};
+
+		final OperationPolicyExpression expression = buildKeyUsageExpression(new KeyUsageExtensionField(false), KeyUsage.nonRepudiation);
+		final CompiledPolicy program = CompiledPolicy.compile(expression);
+		final CompiledStackMachine machine = new CompiledStackMachine();
+
+		final boolean[] expected = new boolean[certs.length];
+		for (int i = 0; i < certs.length; ++i)
+			expected[i] = machine.evaluate(program, certs[i]);
+
+		final AtomicInteger mismatches = new AtomicInteger();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i)
+		{
+			final int offset = i;
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for (int j = 0; j < 200; ++j)
+					{
+						final int index = (offset + j) % certs.length;
+						try
+						{
+							if (machine.evaluate(program, certs[index]) != expected[index])
+								mismatches.incrementAndGet();
+						}
+						catch (PolicyProcessException e)
+						{
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(0, mismatches.get());
+	}
+
+	public void testCompile_missingOperand_assertException() throws Exception
+	{
+		final Vector<PolicyExpression> operands = new Vector<PolicyExpression>();
+		operands.add(LiteralPolicyExpressionFactory.getInstance(PolicyValueFactory.getInstance(true)));
+
+		boolean exceptionOccured = false;
+		try
+		{
+			CompiledPolicy.compile(OperationPolicyExpressionFactory.getInstance(PolicyOperator.LOGICAL_AND, operands));
+		}
+		catch (PolicyProcessException e)
+		{
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+	
+	public void testGetCompiledPolicy_parsedExpression_assertProgramHeldByExpression() throws Exception
+	{
+		final X509Certificate cert = TestUtils.loadCertificate("AlAnderson@hospitalA.direct.visionshareinc.com.der");
+		final KeyUsageExtensionField field = new KeyUsageExtensionField(true);
+		
+		final OperationPolicyExpressionFactory.OperationPolicyExpressionImpl expression = 
+				(OperationPolicyExpressionFactory.OperationPolicyExpressionImpl)buildKeyUsageExpression(field, KeyUsage.nonRepudiation);
+		
+		final CompiledPolicy program = expression.getCompiledPolicy();
+		assertNotNull(program);
+		assertSame(program, expression.getCompiledPolicy());
+		assertSame(field.getCompiledPolicy(), field.getCompiledPolicy());
+		
+		assertTrue(new CompiledStackMachine().evaluate(program, cert));
+	}
+}
@@ -0,0 +1,85 @@
+package org.nhindirect.policy.x509;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+
+import org.bouncycastle.asn1.x509.TBSCertificateStructure;
+import org.nhindirect.policy.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class ParsedCertificate_getExtensionObjectTest extends TestCase
+{
+	public void testGetExtensionObject_multipleFields_assertDecodedOnce() throws Exception
+	{
+		final X509Certificate realCert = TestUtils.loadCertificate("mshost.der");
+		final String oid = ExtensionIdentifier.KEY_USAGE.getId();
+
+		final X509Certificate cert = mock(X509Certificate.class);
+		when(cert.getExtensionValue(oid)).thenReturn(realCert.getExtensionValue(oid));
+
+		final KeyUsageExtensionField field1 = new KeyUsageExtensionField(true);
+		field1.injectReferenceValue(cert);
+
+		final KeyUsageExtensionField field2 = new KeyUsageExtensionField(true);
+		field2.injectReferenceValue(cert);
+
+		final KeyUsageExtensionField realField = new KeyUsageExtensionField(true);
+		realField.injectReferenceValue(realCert);
+
+		assertEquals(realField.getPolicyValue().getPolicyValue(), field1.getPolicyValue().getPolicyValue());
+		assertEquals(field1.getPolicyValue().getPolicyValue(), field2.getPolicyValue().getPolicyValue());
+		assertSame(ParsedCertificate.getInstance(cert).getExtensionObject(cert, oid), ParsedCertificate.getInstance(cert).getExtensionObject(cert, oid));
+
+		verify(cert, times(1)).getExtensionValue(oid);
+	}
+
+	public void testGetExtensionObject_extensionNotPresent_assertNullAndLookedUpOnce() throws Exception
+	{
+		final X509Certificate cert = mock(X509Certificate.class);
+		final String oid = ExtensionIdentifier.SUBJECT_ALT_NAME.getId();
+
+		final ParsedCertificate view = ParsedCertificate.getInstance(cert);
+		assertNull(view.getExtensionObject(cert, oid));
+		assertNull(view.getExtensionObject(cert, oid));
+
+		verify(cert, times(1)).getExtensionValue((String)any());
+	}
+
+	public void testGetTBSCertificateStructure_subjectAndIssuerFields_assertParsedOnce() throws Exception
+	{
+		final X509Certificate realCert = TestUtils.loadCertificate("mshost.der");
+
+		final X509Certificate cert = mock(X509Certificate.class);
+		when(cert.getTBSCertificate()).thenReturn(realCert.getTBSCertificate());
+
+		final SubjectAttributeField subjectField = new SubjectAttributeField(false, RDNAttributeIdentifier.COMMON_NAME);
+		subjectField.injectReferenceValue(cert);
+
+		final IssuerAttributeField issuerField = new IssuerAttributeField(false, RDNAttributeIdentifier.COMMON_NAME);
+		issuerField.injectReferenceValue(cert);
+
+		final SubjectAttributeField realSubjectField = new SubjectAttributeField(false, RDNAttributeIdentifier.COMMON_NAME);
+		realSubjectField.injectReferenceValue(realCert);
+
+		assertEquals(realSubjectField.getPolicyValue().getPolicyValue(), subjectField.getPolicyValue().getPolicyValue());
+
+		final TBSCertificateStructure tbs = ParsedCertificate.getInstance(cert).getTBSCertificateStructure(cert);
+		assertSame(tbs, ParsedCertificate.getInstance(cert).getTBSCertificateStructure(cert));
+
+		verify(cert, times(1)).getTBSCertificate();
+	}
+
+	public void testGetInstance_equalCertificates_assertSameView() throws Exception
+	{
+		final X509Certificate cert1 = TestUtils.loadCertificate("mshost.der");
+		final X509Certificate cert2 = TestUtils.loadCertificate("mshost.der");
+
+		assertSame(ParsedCertificate.getInstance(cert1), ParsedCertificate.getInstance(cert2));
+	}
+}
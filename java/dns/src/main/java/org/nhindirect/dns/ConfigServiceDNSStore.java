@@ -21,12 +21,21 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import java.security.KeyStore;
 import java.security.Security;
@@ -38,6 +47,7 @@ import java.security.interfaces.RSAKey;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
 import org.nhind.config.ConfigurationServiceProxy;
 import org.nhind.config.DnsRecord;
 import org.nhindirect.dns.annotation.ConfigServiceURL;
@@ -51,6 +61,7 @@ import org.xbill.DNS.Opcode;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
 import org.xbill.DNS.Section;
 import org.xbill.DNS.Type;
 
@@ -69,10 +80,60 @@ public class ConfigServiceDNSStore implements DNSStore
 	protected static final String DEFAULT_JCE_PROVIDER_STRING = "BC";
 	protected static final String JCE_PROVIDER_STRING_SYS_PARAM = "org.nhindirect.dns.JCEProviderName";	
 	
+	protected static final String OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM = "org.nhindirect.dns.OwnerIndexRefreshInterval";
+	protected static final long DEFAULT_OWNER_INDEX_REFRESH_INTERVAL = 300; // 5 minutes
+	
+	protected static final int OWNER_INDEX_PAGE_SIZE = 1000;
+	
+	protected static final int MAX_NEGATIVE_CACHE_SIZE = 10000;
+	
+	protected static final int MAX_CERT_RRSET_CACHE_SIZE = 10000;
+	
 	protected static final Log LOGGER = LogFactory.getFactory().getInstance(ConfigServiceDNSStore.class);
 	
 	protected Map<String, Record> soaRecords = null;
 	
+	/**
+	 * Index of DNS encoded owner names to the owner names stored in the configuration service.
+	 */
+	protected volatile Map<String, String> ownerIndex = null;
+	protected volatile long ownerIndexExpiration = 0;
+	protected final long ownerIndexRefreshInterval;
+	private final Object ownerIndexLock = new Object();
+	private final AtomicBoolean ownerIndexRefreshing = new AtomicBoolean(false);
+	
+	/**
+	 * Reloads expired owner indexes in the background so lookups are not blocked on the configuration service.
+	 */
+	private static final ExecutorService ownerIndexRefresher = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			final Thread thread = new Thread(r, "ConfigServiceDNSStore owner index refresh");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	/**
+	 * Expiration times of lookups that returned no records keyed by name and type.
+	 */
+	protected final Map<String, Long> negativeCache = new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * Fully built CERT RRsets keyed by record name.  Access is synchronized on the map.
+	 */
+	@SuppressWarnings("serial")
+	protected final Map<String, CERTRRsetCacheEntry> certRRsetCache = new LinkedHashMap<String, CERTRRsetCacheEntry>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CERTRRsetCacheEntry> eldest)
+		{
+			return size() > MAX_CERT_RRSET_CACHE_SIZE;
+		}
+	};
+	
 	/**
 	 * Gets the configured JCE crypto provider string for crypto operations.  This is configured using the
 	 * -Dorg.nhindirect.dns.JCEProviderName JVM parameters.  If the parameter is not set or is empty,
@@ -102,6 +163,37 @@ public class ConfigServiceDNSStore implements DNSStore
 			System.setProperty(JCE_PROVIDER_STRING_SYS_PARAM, name);
 	}
 	
+	/**
+	 * Gets the configured refresh interval of the certificate owner index in seconds.  This is configured using the
+	 * -Dorg.nhindirect.dns.OwnerIndexRefreshInterval JVM parameter.  If the parameter is not set or is invalid,
+	 * then the default interval of 300 seconds is returned.  An interval of 0 or less disables the owner index and CERT 
+	 * lookups probe the configuration service for each possible owner name.
+	 * <p>
+	 * Certificates added to the configuration service after the index is loaded are not found until the index is reloaded, so the
+	 * interval bounds how long a new certificate owner is answered with no records.  Negative answers for names that are missing from 
+	 * the index are cached no longer than the index itself.
+	 * @return The owner index refresh interval in seconds.
+	 * 
+	 * @since 1.3
+	 */
+	public static long getOwnerIndexRefreshInterval()
+	{
+		final String interval = System.getProperty(OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM);
+		
+		if (interval == null || interval.isEmpty())
+			return DEFAULT_OWNER_INDEX_REFRESH_INTERVAL;
+		
+		try
+		{
+			return Long.parseLong(interval);
+		}
+		catch (NumberFormatException e)
+		{
+			LOGGER.warn("Invalid owner index refresh interval " + interval + ".  Using default interval.");
+			return DEFAULT_OWNER_INDEX_REFRESH_INTERVAL;
+		}
+	}
+	
 	static
 	{
 		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
@@ -116,7 +208,19 @@ public class ConfigServiceDNSStore implements DNSStore
 	@Inject
 	public ConfigServiceDNSStore(@ConfigServiceURL URL serviceURL)
 	{
-		proxy = new ConfigurationServiceProxy(serviceURL.toString());		
+		this(new ConfigurationServiceProxy(serviceURL.toString()));
+	}
+	
+	/**
+	 * Creates a store using an existing configuration service proxy to lookup DNS records.
+	 * @param proxy The configuration service proxy.
+	 * 
+	 * @since 1.3
+	 */
+	protected ConfigServiceDNSStore(ConfigurationServiceProxy proxy)
+	{
+		this.proxy = proxy;
+		this.ownerIndexRefreshInterval = getOwnerIndexRefreshInterval();
 	}
 	
 	/**
@@ -269,6 +373,9 @@ public class ConfigServiceDNSStore implements DNSStore
 	 */
 	protected RRset processGenericRecordRequest(String name, int type) throws DNSException
 	{		
+		if (isNegativelyCached(name, type))
+			return null;
+		
 		DnsRecord records[];
 		
 		try
@@ -281,7 +388,10 @@ public class ConfigServiceDNSStore implements DNSStore
 		}
 		
 		if (records == null || records.length == 0)
+		{
+			cacheNegativeResponse(name, type);
 			return null;
+		}
 		
 		RRset retVal = new RRset();	
 		try
@@ -304,6 +414,9 @@ public class ConfigServiceDNSStore implements DNSStore
 	
 	protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
 	{		
+		if (isNegativelyCached(name, Type.ANY))
+			return null;
+		
 		DnsRecord records[];
 		
 		try
@@ -316,7 +429,10 @@ public class ConfigServiceDNSStore implements DNSStore
 		}
 		
 		if (records == null || records.length == 0)
+		{
+			cacheNegativeResponse(name, Type.ANY);
 			return null;
+		}
 		
 		Collection<Record>  retVal = new ArrayList<Record>();	
 		try
@@ -338,127 +454,441 @@ public class ConfigServiceDNSStore implements DNSStore
 	}
 	
 	/**
-	 * Processes all DNS CERT requests.
+	 * Processes all DNS CERT requests.  The DNS encoded name is resolved to a certificate owner using the owner index so that hits 
+	 * require a single configuration service call and misses require none.  If the owner index is disabled or cannot be loaded, the
+	 * configuration service is probed for each possible owner name.
 	 * @param name The record name.  In many cases this a email address.
 	 * @return Returns a set of record responses to the request.
 	 * @throws DNSException
 	 */
-	@SuppressWarnings("unused")
 	protected RRset processCERTRecordRequest(String name) throws DNSException
 	{
 		if (name.endsWith("."))
 			name = name.substring(0, name.length() - 1);
-				
-		Certificate[] certs;
 		
-		// use the certificate configuration service
-		try
-		{
-			certs = proxy.getCertificatesForOwner(name, null);
-		}
-		catch (Exception e)
+		if (isNegativelyCached(name, Type.CERT))
+			return null;
+		
+		Certificate[] certs = null;
+		
+		final Map<String, String> index = getOwnerIndex();
+		if (index != null)
 		{
-			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getMessage(), e);
+			final String owner = index.get(normalizeName(name));
+			if (owner == null)
+			{
+				// the owner may have been added after the index was loaded, so don't cache the miss past the next reload
+				cacheNegativeResponse(name, Type.CERT, ownerIndexExpiration);
+				return null;
+			}
+			
+			certs = getCertificatesForOwner(owner);
 		}
-		
-		if (certs == null || certs.length == 0)
+		else
 		{
-			// unless the call above was for an org level cert, it will probably always fail because the
-			// "name" parameter has had all instances of "@" replaced with ".".  The certificate service 
-			// stores owners using "@".
-			// This is horrible, but try hitting the cert service replacing each "." with "@" one by one.
-			// Start at the beginning of the address because this is more than likely where the "@" character
-			// will be.
-			int previousIndex = 0;
-			int replaceIndex = 0;
-			while ((replaceIndex = name.indexOf(".", previousIndex)) > -1)
+			certs = getCertificatesForOwner(name);
+			
+			if (certs == null || certs.length == 0)
 			{
-				char[] chars = name.toCharArray();
-				chars[replaceIndex] = '@';
-				try
+				// unless the call above was for an org level cert, it will probably always fail because the
+				// "name" parameter has had all instances of "@" replaced with ".".  The certificate service 
+				// stores owners using "@".
+				// This is horrible, but try hitting the cert service replacing each "." with "@" one by one.
+				// Start at the beginning of the address because this is more than likely where the "@" character
+				// will be.
+				int previousIndex = 0;
+				int replaceIndex = 0;
+				while ((replaceIndex = name.indexOf(".", previousIndex)) > -1)
 				{
-					certs = proxy.getCertificatesForOwner(String.copyValueOf(chars), null);
+					char[] chars = name.toCharArray();
+					chars[replaceIndex] = '@';
+					
+					certs = getCertificatesForOwner(String.copyValueOf(chars));
+					
+					if (certs != null && certs.length > 0)
+						break;
+					
+					if (replaceIndex >= (name.length() - 1))
+						break;
+					
+					previousIndex = replaceIndex + 1;
 				}
-				catch (Exception e)
-				{
-					throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getMessage(), e);
-				}				
-				if (certs != null && certs.length > 0)
-					break;
-				
-				if (replaceIndex >= (name.length() - 1))
-					break;
-				
-				previousIndex = replaceIndex + 1;
 			}
 		}
 			
 		if (certs == null || certs.length == 0)
+		{
+			cacheNegativeResponse(name, Type.CERT);
 			return null;
+		}
 		
 		if (!name.endsWith("."))
 			name += ".";
 		
+		return getCERTRRset(name, certs);
+	}
+	
+	/**
+	 * Gets the CERT RRset for a set of certificates.  Built RRsets are cached by record name and reused as long as the configuration 
+	 * service returns the same certificates with the same data, so unchanged certificates are not decoded and encoded again.  
+	 * A change to any of the owner's certificates rebuilds the RRset.
+	 * @param name The fully qualified record name.
+	 * @param certs The certificates stored in the configuration service.
+	 * @return A set of CERT records containing the certificates.
+	 * @throws DNSException Thrown if the certificate data cannot be parsed.
+	 * 
+	 * @since 1.3
+	 */
+	protected RRset getCERTRRset(String name, Certificate[] certs) throws DNSException
+	{
+		final String key = normalizeName(name);
+		
+		synchronized (certRRsetCache)
+		{
+			final CERTRRsetCacheEntry entry = certRRsetCache.get(key);
+			if (entry != null && entry.matches(certs))
+				return entry.rrset;
+		}
+		
 		RRset retVal = new RRset();		
+		for (Certificate cert : certs)
+			retVal.addRR(createCERTRecord(name, cert));
+		
+		synchronized (certRRsetCache)
+		{
+			certRRsetCache.put(key, new CERTRRsetCacheEntry(certs, retVal));
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Removes all cached CERT RRsets.
+	 * 
+	 * @since 1.3
+	 */
+	public void flushCERTRecordCache()
+	{
+		synchronized (certRRsetCache)
+		{
+			certRRsetCache.clear();
+		}
+	}
+	
+	/**
+	 * Creates a CERT record from a certificate stored in the configuration service.  The certificate data may either be 
+	 * an X509 certificate (possibly wrapped in a PKCS12 container) or a URL to the location of the certificate.
+	 * @param name The fully qualified record name.
+	 * @param cert The certificate stored in the configuration service.
+	 * @return A CERT record containing the certificate.
+	 * @throws DNSException Thrown if the certificate data cannot be parsed.
+	 * 
+	 * @since 1.3
+	 */
+	@SuppressWarnings("unused")
+	protected CERTRecord createCERTRecord(String name, Certificate cert) throws DNSException
+	{
 		try
 		{
-			for (Certificate cert : certs)
+			int certRecordType = CERTRecord.PKIX;
+			byte[] retData = null;
+			
+			X509Certificate xCert = null;
+			try
 			{
-				int certRecordType = CERTRecord.PKIX;
-				byte[] retData = null;
-				
-				X509Certificate xCert = null;
+				xCert = dataToCert(cert.getData());
+				retData = xCert.getEncoded();
+			}
+			catch (DNSException e)
+			{
+				// probably not a Certificate... might be a URL
+			}
+			
+
+			if (xCert == null)
+			{
+				// see if it's a URL
 				try
 				{
-					xCert = dataToCert(cert.getData());
-					retData = xCert.getEncoded();
+					retData = cert.getData();
+					URL url = new URL(new String(retData));
+					certRecordType = CERTRecord.URI;
 				}
-				catch (DNSException e)
+				catch (Exception e)
 				{
-					// probably not a Certificate... might be a URL
-				}
+					throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+				}					
+			}
+			
+			int keyTag = 0;
+			int alg = 0;
+			if (xCert != null && xCert.getPublicKey() instanceof RSAKey)
+			{
+				RSAKey key = (RSAKey)xCert.getPublicKey();
+				byte[] modulus = key.getModulus().toByteArray();
 				
-
-				if (xCert == null)
+				keyTag = (modulus[modulus.length - 2] << 8) & 0xFF00;
+				
+				keyTag |= modulus[modulus.length - 1] & 0xFF;	
+				alg = 5;
+			}
+			
+			return new CERTRecord(Name.fromString(name), DClass.IN, 86400L, certRecordType, keyTag, 
+					alg /*public key alg, RFC 4034*/, retData);
+		}		
+		catch (DNSException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+		}
+	}
+	
+	/*
+	 * Retrieves the certificates of a single owner from the configuration service.
+	 */
+	protected Certificate[] getCertificatesForOwner(String owner) throws DNSException
+	{
+		try
+		{
+			return proxy.getCertificatesForOwner(owner, null);
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Gets the index of DNS encoded owner names to the certificate owner names stored in the configuration service.  The index is loaded 
+	 * with a single configuration service call.  Once the owner index refresh interval expires, the current index continues to be returned 
+	 * while it is reloaded in the background.  Only the initial load blocks the caller.  If a load fails, the previous index continues 
+	 * to be used until the next refresh interval.
+	 * @return The owner index.  Returns null if the index is disabled or has never been successfully loaded.
+	 * 
+	 * @since 1.3
+	 */
+	protected Map<String, String> getOwnerIndex()
+	{
+		if (ownerIndexRefreshInterval <= 0)
+			return null;
+		
+		final Map<String, String> index = ownerIndex;
+		if (System.currentTimeMillis() < ownerIndexExpiration)
+			return index;
+		
+		if (index == null)
+		{
+			// nothing to serve yet
+			synchronized (ownerIndexLock)
+			{
+				if (System.currentTimeMillis() >= ownerIndexExpiration)
+					loadOwnerIndex();
+				
+				return ownerIndex;
+			}
+		}
+		
+		if (ownerIndexRefreshing.compareAndSet(false, true))
+		{
+			try
+			{
+				ownerIndexRefresher.execute(new Runnable()
 				{
-					// see if it's a URL
-					try
+					@Override
+					public void run()
 					{
-						retData = cert.getData();
-						URL url = new URL(new String(retData));
-						certRecordType = CERTRecord.URI;
+						try
+						{
+							synchronized (ownerIndexLock)
+							{
+								loadOwnerIndex();
+							}
+						}
+						finally
+						{
+							ownerIndexRefreshing.set(false);
+						}
 					}
-					catch (Exception e)
-					{
-						throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
-					}					
-				}
-				
-				int keyTag = 0;
-				int alg = 0;
-				if (xCert != null && xCert.getPublicKey() instanceof RSAKey)
-				{
-					RSAKey key = (RSAKey)xCert.getPublicKey();
-					byte[] modulus = key.getModulus().toByteArray();
-					
-					keyTag = (modulus[modulus.length - 2] << 8) & 0xFF00;
-					
-					keyTag |= modulus[modulus.length - 1] & 0xFF;	
-					alg = 5;
-				}
-				
-				CERTRecord rec = new CERTRecord(Name.fromString(name), DClass.IN, 86400L, certRecordType, keyTag, 
-						alg /*public key alg, RFC 4034*/, retData);
+				});
+			}
+			///CLOVER:OFF
+			catch (RejectedExecutionException e)
+			{
+				ownerIndexRefreshing.set(false);
+				LOGGER.warn("Failed to schedule reload of certificate owner index: " + e.getMessage(), e);
+			}
+			///CLOVER:ON
+		}
+		
+		return index;
+	}
+	
+	/*
+	 * Loads the owner index from the configuration service and sets its expiration.  Callers hold the owner index lock.
+	 */
+	private void loadOwnerIndex()
+	{
+		try
+		{
+			final Map<String, String> newIndex = new HashMap<String, String>();
+			for (String owner : getCertificateOwners())
+			{
+				if (owner == null || owner.isEmpty())
+					continue;
 				
-				retVal.addRR(rec);
+				final String recordName = getCERTRecordName(owner);
+				final String existingOwner = newIndex.get(recordName);
+				if (existingOwner == null || existingOwner.indexOf('@') > owner.indexOf('@'))
+					newIndex.put(recordName, owner);
 			}
-		}		
+			
+			ownerIndex = Collections.unmodifiableMap(newIndex);
+		}
 		catch (Exception e)
 		{
-			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+			LOGGER.warn("Failed to load certificate owner index from config service: " + e.getMessage(), e);
 		}
 		
-		return retVal;
+		ownerIndexExpiration = System.currentTimeMillis() + (ownerIndexRefreshInterval * 1000);
+	}
+	
+	/*
+	 * Gets the owners of all certificates.  The certificates are requested a page at a time without their data or private keys 
+	 * so building the index does not pull every certificate blob from the configuration service at once.
+	 */
+	private Collection<String> getCertificateOwners() throws Exception
+	{
+		final CertificateGetOptions options = new CertificateGetOptions();
+		options.setIncludeData(false);
+		options.setIncludePrivateKey(false);
+		
+		final Collection<String> owners = new ArrayList<String>();
+		long lastCertificateId = 0;
+		while (true)
+		{
+			final Certificate[] certs = proxy.listCertificates(lastCertificateId, OWNER_INDEX_PAGE_SIZE, options);
+			if (certs == null || certs.length == 0)
+				break;
+			
+			long pageLastCertificateId = lastCertificateId;
+			for (Certificate cert : certs)
+			{
+				owners.add(cert.getOwner());
+				pageLastCertificateId = Math.max(pageLastCertificateId, cert.getId());
+			}
+			
+			// a short page is the last one; a service that does not page returns everything at once or the same page again
+			if (certs.length != OWNER_INDEX_PAGE_SIZE || pageLastCertificateId <= lastCertificateId)
+				break;
+			
+			lastCertificateId = pageLastCertificateId;
+		}
+		
+		return owners;
+	}
+	
+	/**
+	 * Converts a certificate owner to the fully qualified name of its CERT records.  The '@' of an address is encoded as a '.'.  If two 
+	 * owners encode to the same name, the owner with the earliest '@' (an org level owner first) is preferred.
+	 * @param owner The certificate owner.
+	 * @return The normalized CERT record name.
+	 * 
+	 * @since 1.3
+	 */
+	protected static String getCERTRecordName(String owner)
+	{
+		return normalizeName(owner.replace('@', '.'));
+	}
+	
+	/**
+	 * Normalizes a record name to a lower case, fully qualified name.  Record names are matched case insensitive.
+	 * @param name The record name.
+	 * @return The normalized record name.
+	 * 
+	 * @since 1.3
+	 */
+	protected static String normalizeName(String name)
+	{
+		name = name.toLowerCase(Locale.ENGLISH);
+		
+		return (name.endsWith(".")) ? name : name + ".";
+	}
+	
+	/**
+	 * Determines if a previous lookup for the name and type returned no records and the negative response has not expired.
+	 * @param name The record name.
+	 * @param type The record type.
+	 * @return True if the lookup is known to return no records.
+	 * 
+	 * @since 1.3
+	 */
+	protected boolean isNegativelyCached(String name, int type)
+	{
+		final String key = normalizeName(name) + ":" + type;
+		final Long expiration = negativeCache.get(key);
+		
+		if (expiration == null)
+			return false;
+		
+		if (System.currentTimeMillis() < expiration)
+			return true;
+		
+		negativeCache.remove(key);
+		return false;
+	}
+	
+	/**
+	 * Caches a lookup that returned no records.  Per RFC 2308, the negative response is cached for the lesser of the TTL and 
+	 * minimum TTL of the name's SOA record.  Names without an SOA record are not cached.
+	 * @param name The record name.
+	 * @param type The record type.
+	 * 
+	 * @since 1.3
+	 */
+	protected void cacheNegativeResponse(String name, int type)
+	{
+		cacheNegativeResponse(name, type, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Caches a lookup that returned no records for the lesser of the SOA negative TTL and the time remaining until a given expiration.
+	 * @param name The record name.
+	 * @param type The record type.
+	 * @param maxExpiration The latest time in milliseconds at which the negative response expires.
+	 * 
+	 * @since 1.3
+	 */
+	protected void cacheNegativeResponse(String name, int type, long maxExpiration)
+	{
+		final Record soaRecord = checkForSoaRecord(name);
+		if (!(soaRecord instanceof SOARecord))
+			return;
+		
+		final long ttl = Math.min(soaRecord.getTTL(), ((SOARecord)soaRecord).getMinimum());
+		if (ttl <= 0)
+			return;
+		
+		final long now = System.currentTimeMillis();
+		final long expiration = Math.min(now + (ttl * 1000), maxExpiration);
+		if (expiration <= now)
+			return;
+		
+		if (negativeCache.size() >= MAX_NEGATIVE_CACHE_SIZE)
+		{
+			// sweep out expired entries first; start over if the cache is still full
+			final Iterator<Map.Entry<String, Long>> iter = negativeCache.entrySet().iterator();
+			while (iter.hasNext())
+				if (iter.next().getValue() <= now)
+					iter.remove();
+			
+			if (negativeCache.size() >= MAX_NEGATIVE_CACHE_SIZE)
+				negativeCache.clear();
+		}
+		
+		negativeCache.put(normalizeName(name) + ":" + type, expiration);
 	}
 	
 	/*
@@ -594,4 +1024,40 @@ public class ConfigServiceDNSStore implements DNSStore
     	
     	return retVal;
     }
+	
+	/**
+	 * A built CERT RRset along with the identity and data of the certificates it was built from.
+	 * @author Greg Meyer
+	 * @since 1.3
+	 */
+	protected static class CERTRRsetCacheEntry
+	{
+		final long[] ids;
+		final byte[][] data;
+		final RRset rrset;
+		
+		CERTRRsetCacheEntry(Certificate[] certs, RRset rrset)
+		{
+			ids = new long[certs.length];
+			data = new byte[certs.length][];
+			for (int i = 0; i < certs.length; ++i)
+			{
+				ids[i] = certs[i].getId();
+				data[i] = certs[i].getData();
+			}
+			this.rrset = rrset;
+		}
+		
+		boolean matches(Certificate[] certs)
+		{
+			if (certs.length != ids.length)
+				return false;
+			
+			for (int i = 0; i < certs.length; ++i)
+				if (certs[i].getId() != ids[i] || !Arrays.equals(certs[i].getData(), data[i]))
+					return false;
+			
+			return true;
+		}
+	}
 }
@@ -18,14 +18,24 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 package org.nhindirect.dns;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xbill.DNS.Flags;
 import org.xbill.DNS.Header;
 import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
 import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
 
 /**
  * Abstract DNSResponder for DNS requests.  It implements common methods for calling the DNS store and handling error conditions.  Protocol specific
@@ -36,9 +46,21 @@ import org.xbill.DNS.Section;
 public abstract class DNSResponder
 {
 	private static final Log LOGGER = LogFactory.getFactory().getInstance(DNSResponder.class);
+	
+	protected static final int MAX_STREAM_MESSAGE_SIZE = 65535;
+	
+	// largest UDP response allowed for clients that do not support EDNS0
+	protected static final int MIN_UDP_PAYLOAD_SIZE = 512;
+	
+	protected static final int EDNS_VERSION = 0;
+	
+	// size of the message header
+	private static final int STREAM_MESSAGE_OVERHEAD = 12;
 
 	protected DNSServerSettings settings;
 	protected DNSStore store;
+	
+	private final ConcurrentMap<Integer, LatencyHistogram> lookupLatency = new ConcurrentHashMap<Integer, LatencyHistogram>();
 
 	/**
 	 * Creates a DNS responder using the provided settings and DNS store.  The responder will not handle requests
@@ -95,14 +117,32 @@ public abstract class DNSResponder
 	 * @return A response to the DNS request.
 	 */
 	public Message processRequest(Message request)
+	{
+		return processRequest(request, null);
+	}
+	
+	/**
+	 * Processes a DNS request received from a known source and returns a DNS response.  The source and the transport of the responder
+	 * are passed to stores that implement {@link SourceAwareDNSStore}.
+	 * @param request The DNS request message.
+	 * @param source The address the request was received from.  May be null if the source is not known.
+	 * @return A response to the DNS request.
+	 * 
+	 * @since 1.3
+	 */
+	public Message processRequest(Message request, InetAddress source)
 	{
 		if (request == null)
 			throw new IllegalArgumentException("Missing request.  Request cannot be null.");
 
+		final OPTRecord requestOPT = request.getOPT();
+		if (requestOPT != null && requestOPT.getVersion() > EDNS_VERSION)
+			return processBadVersion(request);
+		
 		Message response;
 		try
 		{
-			response = store.get(request);
+			response = lookup(request, source);
             if (response == null || response.getHeader() == null)
             {
 
@@ -121,9 +161,90 @@ public abstract class DNSResponder
 			response = processError(request, e.getError());
 		}
 
+		if (response != null)
+			setOPT(request, response);
+		
 		return response;
 	}
+	
+	/*
+	 * Replaces any OPT record in the response with the server's own OPT record if the request included one 
+	 */
+	private void setOPT(Message request, Message response)
+	{
+		for (Record rec : response.getSectionArray(Section.ADDITIONAL))
+			if (rec.getType() == Type.OPT)
+				response.removeRecord(rec, Section.ADDITIONAL);
+		
+		if (request.getOPT() != null)
+			response.addRecord(new OPTRecord(getMaxUDPPayloadSize(), 0, EDNS_VERSION), Section.ADDITIONAL);
+	}
+	
+	/*
+	 * Creates a BADVERS response to a request that uses an unsupported EDNS version.  BADVERS is an extended response code, so its upper 
+	 * bits are carried in the OPT record.
+	 */
+	private Message processBadVersion(Message request)
+	{
+		final Message response = processError(request, DNSError.newError(Rcode.NOERROR));
+		if (response != null)
+		{
+			response.getHeader().setRcode(Rcode.BADVERS & 0xF);
+			response.addRecord(new OPTRecord(getMaxUDPPayloadSize(), Rcode.BADVERS >>> 4, EDNS_VERSION), Section.ADDITIONAL);
+		}
+		
+		return response;
+	}
+	
+	/*
+	 * Gets the configured max UDP payload size bounded by the plain DNS and UDP limits
+	 */
+	private int getMaxUDPPayloadSize()
+	{
+		return Math.min(MAX_STREAM_MESSAGE_SIZE, Math.max(MIN_UDP_PAYLOAD_SIZE, settings.getMaxUDPPayloadSize()));
+	}
 
+	/**
+	 * Gets the latency histograms of DNS store lookups keyed by query type.
+	 * @return The latency histograms of DNS store lookups keyed by query type.
+	 * 
+	 * @since 1.3
+	 */
+	public Map<Integer, LatencyHistogram> getLookupLatency()
+	{
+		return Collections.unmodifiableMap(lookupLatency);
+	}
+	
+	/**
+	 * Indicates if the responder receives requests over a stream transport (TCP).
+	 * @return True if requests are received over a stream transport.  False if they are received over UDP.
+	 * 
+	 * @since 1.3
+	 */
+	protected boolean isStreamTransport()
+	{
+		return false;
+	}
+	
+	/*
+	 * Gets the response from the DNS store and records how long the lookup took
+	 */
+	private Message lookup(Message request, InetAddress source) throws DNSException
+	{
+		final long startTime = System.nanoTime();
+		try
+		{
+			return (store instanceof SourceAwareDNSStore) ? ((SourceAwareDNSStore)store).get(request, source, isStreamTransport()) : 
+				store.get(request);
+		}
+		finally
+		{
+			final Record question = request.getQuestion();
+			if (question != null)
+				LatencyHistogram.getHistogram(lookupLatency, question.getType()).record(System.nanoTime() - startTime);
+		}
+	}
+	
 	/**
 	 * Processes a DNS error condition and creates an appropriate DNS response.
 	 * @param request The original DNS request.
@@ -186,4 +307,143 @@ public abstract class DNSResponder
     {
     	return msg.toWire();
     }
+    
+    /**
+     * Gets the largest UDP response that can be sent for a request.  Clients that include an EDNS0 OPT record in the request can receive 
+     * up to the smaller of their advertised payload size and the configured {@link DNSServerSettings#getMaxUDPPayloadSize()}.  All other 
+     * clients are limited to 512 bytes.
+     * @param request The DNS request.  May be null if the request could not be parsed.
+     * @return The largest UDP response in bytes.
+     * 
+     * @since 1.3
+     */
+    protected int getMaxUDPResponseSize(Message request)
+    {
+    	final OPTRecord opt = (request == null) ? null : request.getOPT();
+    	if (opt == null)
+    		return MIN_UDP_PAYLOAD_SIZE;
+    	
+    	return Math.max(MIN_UDP_PAYLOAD_SIZE, Math.min(opt.getPayloadSize(), getMaxUDPPayloadSize()));
+    }
+    
+    /**
+     * Converts a Message object to a raw DNS wire format message for a datagram (UDP) transport.  The response is serialized once and returned
+     * as is if it fits within {@link #getMaxUDPResponseSize(Message)}.  Otherwise the additional and authority sections are dropped, and if the
+     * answer section still does not fit, whole RRsets are removed from the end of the answer and the TC flag is set so the client retries over TCP.
+     * The OPT record is always kept so the client knows the server supports EDNS0.
+     * @param request The DNS request.  May be null if the request could not be parsed.
+     * @param response The response to convert.
+     * @return The raw DNS wire format of the response.
+     * 
+     * @since 1.3
+     */
+    protected byte[] toDatagramBytes(Message request, Message response)
+    {
+    	final int maxSize = getMaxUDPResponseSize(request);
+    	
+    	final byte[] wire = response.toWire();
+    	if (wire.length <= maxSize)
+    		return wire;
+    	
+    	final OPTRecord opt = response.getOPT();
+    	final int optSize = (opt == null) ? 0 : opt.toWire(Section.ADDITIONAL).length;
+    	
+    	// the additional and authority sections are optional and can be dropped without setting the TC flag
+    	Message truncated = createPart(response);
+    	for (Record rec : response.getSectionArray(Section.ANSWER))
+    		truncated.addRecord(rec, Section.ANSWER);
+    	
+    	byte[] truncatedWire = truncated.toWire();
+    	if (truncatedWire.length + optSize > maxSize)
+    	{
+    		// removes whole RRsets and sets the TC flag
+    		truncatedWire = truncated.toWire(maxSize - optSize);
+    		if (opt == null)
+    			return truncatedWire;
+    		
+    		try
+    		{
+    			truncated = new Message(truncatedWire);
+    		}
+    		catch (IOException e)
+    		{
+    			LOGGER.warn("Failed to parse truncated response: " + e.getMessage(), e);
+    			return truncatedWire;
+    		}
+    	}
+    	
+    	if (opt == null)
+    		return truncatedWire;
+    	
+    	truncated.addRecord(opt, Section.ADDITIONAL);
+    	
+    	return truncated.toWire();
+    }
+    
+    /**
+     * Converts a Message object to one or more raw DNS wire format messages for a stream (TCP) transport.  Stream messages are limited to 
+     * 65535 bytes, so responses that exceed the limit, such as transfers of large zones, are split into multiple messages that each hold 
+     * a portion of the answer records.
+     * @param msg The message to convert.
+     * @return The raw DNS wire format of each message in the order they are to be written.
+     * 
+     * @since 1.3
+     */
+    protected List<byte[]> toStreamBytes(Message msg)
+    {
+    	final byte[] wire = msg.toWire();
+    	if (wire.length <= MAX_STREAM_MESSAGE_SIZE)
+    		return Collections.singletonList(wire);
+    	
+    	final Record question = msg.getQuestion();
+    	final int baseSize = STREAM_MESSAGE_OVERHEAD + ((question == null) ? 0 : question.toWire(Section.QUESTION).length);
+    	
+    	final List<byte[]> retVal = new ArrayList<byte[]>();
+    	Message part = null;
+    	int partSize = 0;
+    	for (Record rec : msg.getSectionArray(Section.ANSWER))
+    	{
+    		// the uncompressed size of a record is an upper bound of the space it takes in a message
+    		final int recSize = rec.toWire(Section.ANSWER).length;
+    		if (part != null && partSize + recSize > MAX_STREAM_MESSAGE_SIZE)
+    		{
+    			retVal.add(part.toWire());
+    			part = null;
+    		}
+    		
+    		if (part == null)
+    		{
+    			part = createPart(msg);
+    			partSize = baseSize;
+    		}
+    		
+    		part.addRecord(rec, Section.ANSWER);
+    		partSize += recSize;
+    	}
+    	
+    	if (part != null)
+    		retVal.add(part.toWire());
+    	
+    	return retVal;
+    }
+    
+    /*
+     * Creates a message with the header and question of the given message and no other records
+     */
+    private static Message createPart(Message msg)
+    {
+    	final Message retVal = new Message(msg.getHeader().getID());
+    	final Header header = retVal.getHeader();
+    	header.setOpcode(msg.getHeader().getOpcode());
+    	header.setRcode(msg.getHeader().getRcode());
+    	for (int flag = 0; flag < 16; ++flag)
+    		if (Flags.isFlag(flag) && msg.getHeader().getFlag(flag))
+    			header.setFlag(flag);
+    	
+    	final Record question = msg.getQuestion();
+    	if (question != null)
+    		retVal.addRecord(question, Section.QUESTION);
+    	
+    	return retVal;
+    }
 }
@@ -33,7 +33,7 @@ public class DNSResponderTCP extends DNSResponder
 	public DNSResponderTCP(DNSServerSettings settings, DNSStore store) throws DNSException
 	{
 		super(settings, store);
-		socketServer = new TCPServer(settings, this);
+		socketServer = (settings.isNonBlockingIO()) ? new NIOTCPServer(settings, this) : new TCPServer(settings, this);
 	}
 
 	
@@ -55,4 +55,13 @@ public class DNSResponderTCP extends DNSResponder
 	{
 		socketServer.stop();
 	}	
+	
+	/**
+	 * {@inheritDoc}}
+	 */
+	@Override
+	protected boolean isStreamTransport()
+	{
+		return true;
+	}
 }
@@ -33,7 +33,7 @@ public class DNSResponderUDP extends DNSResponder
 	public DNSResponderUDP(DNSServerSettings settings, DNSStore store) throws DNSException
 	{
 		super(settings, store);
-		socketServer = new UDPServer(settings, this);
+		socketServer = (settings.isNonBlockingIO()) ? new NIOUDPServer(settings, this) : new UDPServer(settings, this);
 	}
 
 	
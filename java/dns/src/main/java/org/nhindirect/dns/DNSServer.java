@@ -96,17 +96,22 @@ public class DNSServer implements DNSServerMBean
 	private void registerMBean(DNSServerSettings settings)
 	{
 		String[] itemNames = {"Port", "Bind Address", "Max Request Size", "Max Outstanding Accepts", "Max Active Accepts", "Max Connection Backlog", 
-				"Read Buffer Size", "Send Timeout", "Receive Timeout", "Socket Close Timeout"};
+				"Read Buffer Size", "Send Timeout", "Receive Timeout", "Socket Close Timeout", "Non-Blocking IO", 
+				"Max UDP Payload Size", "Max TCP Connections", "Max TCP Pipelined Requests", "Max TCP Pending Response Bytes"};
 		
 		String[] itemDesc = {"Port", "Bind Address", "Max Request Size", "Max Outstanding Accepts", "Max Active Accepts", "Max Connection Backlog", 
-				"Read Buffer Size", "Send Timeout", "Receive Timeout", "Socket Close Timeout"};
+				"Read Buffer Size", "Send Timeout", "Receive Timeout", "Socket Close Timeout", "Non-Blocking IO", 
+				"Max UDP Payload Size", "Max TCP Connections", "Max TCP Pipelined Requests", "Max TCP Pending Response Bytes"};
 		
 		OpenType<?>[] types = {SimpleType.INTEGER, SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER,
-				SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER};
+				SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.BOOLEAN, SimpleType.INTEGER, SimpleType.INTEGER, 
+				SimpleType.INTEGER, SimpleType.INTEGER};
 		
 		Object[] settingsValues = {settings.getPort(), settings.getBindAddress(), settings.getMaxRequestSize(), settings.getMaxOutstandingAccepts(), 
 				settings.getMaxActiveRequests(), settings.getMaxConnectionBacklog(), settings.getReadBufferSize(), settings.getSendTimeout(), 
-				settings.getReceiveTimeout(), settings.getSocketCloseTimeout()};
+				settings.getReceiveTimeout(), settings.getSocketCloseTimeout(), settings.isNonBlockingIO(), 
+				settings.getMaxUDPPayloadSize(), settings.getMaxTCPConnections(), settings.getMaxTCPPipelinedRequests(), 
+				settings.getMaxTCPPendingResponseBytes()};
 		
 		try
 		{
@@ -32,10 +32,18 @@ public class DNSServerSettings extends SocketServerSettings
 	private static final int DEFAULT_PORT = 53;
 	private static final String DEFAULT_BIND_ADDRESS = "0.0.0.0"; // bind to all adapters
 	public  static final int DAFAULT_MAX_REQUEST_SIZE = 1024 * 16;
+	public  static final int DEFAULT_MAX_UDP_PAYLOAD_SIZE = 1232;
+	public  static final int DEFAULT_MAX_TCP_CONNECTIONS = 1024;
+	public  static final int DEFAULT_MAX_TCP_PIPELINED_REQUESTS = 32;
+	public  static final int DEFAULT_MAX_TCP_PENDING_RESPONSE_BYTES = 1024 * 256;
 	
 	private int port;
 	private String bindAddress;
 	private int maxRequestSize;
+	private int maxUDPPayloadSize;
+	private int maxTCPConnections;
+	private int maxTCPPipelinedRequests;
+	private int maxTCPPendingResponseBytes;
 	
 	/**
 	 * Create default DNS server settings
@@ -46,6 +54,10 @@ public class DNSServerSettings extends SocketServerSettings
 		port = DEFAULT_PORT;
 		bindAddress = DEFAULT_BIND_ADDRESS;
 		maxRequestSize = DAFAULT_MAX_REQUEST_SIZE;
+		maxUDPPayloadSize = DEFAULT_MAX_UDP_PAYLOAD_SIZE;
+		maxTCPConnections = DEFAULT_MAX_TCP_CONNECTIONS;
+		maxTCPPipelinedRequests = DEFAULT_MAX_TCP_PIPELINED_REQUESTS;
+		maxTCPPendingResponseBytes = DEFAULT_MAX_TCP_PENDING_RESPONSE_BYTES;
 	}
 
 	/**
@@ -103,4 +115,98 @@ public class DNSServerSettings extends SocketServerSettings
 	{
 		this.maxRequestSize = maxRequestSize;
 	}
+	
+	/**
+	 * Gets the largest UDP response payload in bytes that the server will send to clients that advertise EDNS0 support.  The size sent to a
+	 * client is the smaller of this value and the payload size advertised in the client's OPT record, but never less than the 512 byte limit
+	 * of plain DNS.  Responses that do not fit are truncated and flagged with the TC bit so the client retries over TCP.  The default is 1232 
+	 * bytes, which avoids IP fragmentation on common network paths.
+	 * @return The largest UDP response payload in bytes.
+	 * 
+	 * @since 1.3
+	 */
+	public int getMaxUDPPayloadSize()
+	{
+		return maxUDPPayloadSize;
+	}
+	
+	/**
+	 * Sets the largest UDP response payload in bytes that the server will send to clients that advertise EDNS0 support.
+	 * @param maxUDPPayloadSize The largest UDP response payload in bytes.
+	 * 
+	 * @since 1.3
+	 */
+	public void setMaxUDPPayloadSize(int maxUDPPayloadSize)
+	{
+		this.maxUDPPayloadSize = maxUDPPayloadSize;
+	}
+	
+	/**
+	 * Gets the maximum number of TCP connections the non-blocking TCP server keeps open.  Connections accepted beyond this limit are 
+	 * closed immediately.  The default is 1024.
+	 * @return The maximum number of open TCP connections.
+	 * 
+	 * @since 1.3
+	 */
+	public int getMaxTCPConnections()
+	{
+		return maxTCPConnections;
+	}
+	
+	/**
+	 * Sets the maximum number of TCP connections the non-blocking TCP server keeps open.
+	 * @param maxTCPConnections The maximum number of open TCP connections.
+	 * 
+	 * @since 1.3
+	 */
+	public void setMaxTCPConnections(int maxTCPConnections)
+	{
+		this.maxTCPConnections = maxTCPConnections;
+	}
+	
+	/**
+	 * Gets the maximum number of pipelined queries of a single TCP connection that the non-blocking TCP server processes at the same time.  
+	 * The server stops reading from a connection while it is at this limit.  The default is 32.
+	 * @return The maximum number of in flight queries per TCP connection.
+	 * 
+	 * @since 1.3
+	 */
+	public int getMaxTCPPipelinedRequests()
+	{
+		return maxTCPPipelinedRequests;
+	}
+	
+	/**
+	 * Sets the maximum number of pipelined queries of a single TCP connection that the non-blocking TCP server processes at the same time.
+	 * @param maxTCPPipelinedRequests The maximum number of in flight queries per TCP connection.
+	 * 
+	 * @since 1.3
+	 */
+	public void setMaxTCPPipelinedRequests(int maxTCPPipelinedRequests)
+	{
+		this.maxTCPPipelinedRequests = maxTCPPipelinedRequests;
+	}
+	
+	/**
+	 * Gets the maximum size in bytes of the responses the non-blocking TCP server holds for a connection that is not reading them.  
+	 * The server stops reading queries from a connection while its unsent responses exceed this size.  The default is 256K.
+	 * @return The maximum size in bytes of unsent responses per TCP connection.
+	 * 
+	 * @since 1.3
+	 */
+	public int getMaxTCPPendingResponseBytes()
+	{
+		return maxTCPPendingResponseBytes;
+	}
+	
+	/**
+	 * Sets the maximum size in bytes of the responses the non-blocking TCP server holds for a connection that is not reading them.
+	 * @param maxTCPPendingResponseBytes The maximum size in bytes of unsent responses per TCP connection.
+	 * 
+	 * @since 1.3
+	 */
+	public void setMaxTCPPendingResponseBytes(int maxTCPPendingResponseBytes)
+	{
+		this.maxTCPPendingResponseBytes = maxTCPPendingResponseBytes;
+	}
 }
@@ -20,21 +20,32 @@ package org.nhindirect.dns;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.Socket;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 
 
 /**
@@ -56,8 +67,12 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	protected final AtomicBoolean running;  
 	
 	private long serverStartTime = Long.MAX_VALUE;
-	private volatile long rejectedCount = 0;
-	private volatile long requestCount = 0;
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong successCount = new AtomicLong();
+	private final ConcurrentMap<Integer, LatencyHistogram> requestLatency = new ConcurrentHashMap<Integer, LatencyHistogram>();
 	private TemporalCountBucket countBuckets[] = {new TemporalCountBucket(), new TemporalCountBucket(), 
 			new TemporalCountBucket(), new TemporalCountBucket(), new TemporalCountBucket()};
 	
@@ -110,8 +125,7 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 			// create the accept thread
 			running.set(true);
 			
-			dnsRequestService = new ThreadPoolExecutor(0, settings.getMaxActiveRequests(), 
-					120L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+			dnsRequestService = createDNSRequestService();
 			
 			
 			socketAcceptService = Executors.newSingleThreadExecutor();
@@ -154,6 +168,19 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 		catch (InterruptedException e) {/* no op */}
 	}
 	
+	/**
+	 * Creates the thread pool that processes DNS requests.  By default, requests are handed directly to a processing thread
+	 * and are rejected if all {@link DNSServerSettings#getMaxActiveRequests()} threads are busy.
+	 * @return The thread pool that processes DNS requests.
+	 * 
+	 * @since 1.3
+	 */
+	protected ThreadPoolExecutor createDNSRequestService()
+	{
+		return new ThreadPoolExecutor(0, settings.getMaxActiveRequests(), 
+				120L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+	}
+	
 	/**
 	 * Creates and initializes the socket implementation that will accept incoming requests.
 	 * @throws DNSException
@@ -185,25 +212,64 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	{
 		
 		updateCountMetrics();
-		if (dnsRequestService.getActiveCount() < settings.getMaxActiveRequests())
+		try
+		{
 			dnsRequestService.execute(getDNSRequestTask(s));
-		else
+		}
+		catch (RejectedExecutionException e)
 		{		
-			
-			++rejectedCount;
-			// just close the socket... we're too busy to handle anything
-			try
-			{
-				if (s instanceof Socket)
-					((Socket)s).close();
-			}
-			catch (IOException e) {}
+			rejectedCount.incrementAndGet();
+			rejectDNSRequest(s);
+		}
+	}
+	
+	/**
+	 * Cleans up a DNS request that could not be submitted because the server is too busy.  By default, TCP sockets are closed.
+	 * @param s The parameter that was passed to {@link #submitDNSRequest(Object)}.
+	 * 
+	 * @since 1.3
+	 */
+	protected void rejectDNSRequest(Object s)
+	{
+		// just close the socket... we're too busy to handle anything
+		try
+		{
+			if (s instanceof Socket)
+				((Socket)s).close();
+		}
+		catch (IOException e) {}
+	}
+	
+	/**
+	 * Updates the success, miss, and error counts for a processed request and records the time it took to process the request 
+	 * from the time it was received.
+	 * @param query The DNS request.  May be null if the request could not be parsed.
+	 * @param response The DNS response.  May be null if a response could not be created.
+	 * @param startTime The value of {@link System#nanoTime()} when the request was received.
+	 * 
+	 * @since 1.3
+	 */
+	protected void recordResponse(Message query, Message response, long startTime)
+	{
+		if (response == null)
+			errorCount.incrementAndGet();
+		else if (response.getRcode() == Rcode.NOERROR || response.getRcode() == Rcode.NXDOMAIN)
+		{
+			successCount.incrementAndGet();
+			if (response.getSectionArray(Section.ANSWER).length == 0)
+				missCount.incrementAndGet();	
 		}
+		else
+			errorCount.incrementAndGet();
+		
+		final Record question = (query == null) ? null : query.getQuestion();
+		if (question != null)
+			LatencyHistogram.getHistogram(requestLatency, question.getType()).record(System.nanoTime() - startTime);
 	}
 	
 	private void updateCountMetrics()
 	{
-		++requestCount;
+		requestCount.incrementAndGet();
 		long curTime = System.currentTimeMillis();
 		int bucketIndex = (int)((curTime / 1000) % 5);
 		
@@ -232,7 +298,7 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	@Override
 	public Long getRejectedRequestCount() 
 	{
-		return rejectedCount;
+		return rejectedCount.get();
 	}	
 	
 	/**
@@ -241,9 +307,89 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	@Override
 	public Long getResourceRequestCount() 
 	{
-		return requestCount;
+		return requestCount.get();
 	}	
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getMissedRequestCount() 
+	{
+		return missCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getSuccessfulRequestCount() 
+	{
+		return successCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getErrorRequestCount()
+	{
+		return errorCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Integer getActiveRequestCount()
+	{
+		final ThreadPoolExecutor service = dnsRequestService;
+		
+		return (service == null) ? 0 : service.getActiveCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Integer getQueuedRequestCount()
+	{
+		final ThreadPoolExecutor service = dnsRequestService;
+		
+		return (service == null) ? 0 : service.getQueue().size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TabularData getRequestLatency()
+	{
+		return toTabularData(requestLatency);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TabularData getLookupLatency()
+	{
+		return toTabularData(responder.getLookupLatency());
+	}
+	
+	private TabularData toTabularData(Map<Integer, LatencyHistogram> histograms)
+	{
+		try
+		{
+			return LatencyHistogram.toTabularData(histograms);
+		}
+		catch (OpenDataException e)
+		{
+			LOGGER.error("Failed to create latency tabular data: " + e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */		
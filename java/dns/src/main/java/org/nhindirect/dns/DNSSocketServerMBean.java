@@ -15,6 +15,8 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 
 package org.nhindirect.dns;
 
+import javax.management.openmbean.TabularData;
+
 /**
  * MBean interface definition for monitoring and managing a DNS socket server.
  * @author Greg Meyer
@@ -65,4 +67,37 @@ public interface DNSSocketServerMBean
 	 * @return The number of requests that were rejected by the server due to being to busy.
 	 */
 	public Long getRejectedRequestCount();
+	
+	/**
+	 * Gets the number of requests that are currently being processed.
+	 * @return The number of requests that are currently being processed.
+	 * 
+	 * @since 1.3
+	 */
+	public Integer getActiveRequestCount();
+	
+	/**
+	 * Gets the number of requests that are waiting for a processing thread.  Servers that hand requests directly to processing threads
+	 * always return 0.
+	 * @return The number of requests that are waiting for a processing thread.
+	 * 
+	 * @since 1.3
+	 */
+	public Integer getQueuedRequestCount();
+	
+	/**
+	 * Gets latency statistics by query type measured from the time a request is received until its response is created.  Latencies are in microseconds.
+	 * @return Latency statistics by query type.
+	 * 
+	 * @since 1.3
+	 */
+	public TabularData getRequestLatency();
+	
+	/**
+	 * Gets latency statistics by query type of DNS store lookups.  Latencies are in microseconds.
+	 * @return Latency statistics by query type.
+	 * 
+	 * @since 1.3
+	 */
+	public TabularData getLookupLatency();
 }
@@ -0,0 +1,207 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xbill.DNS.Type;
+
+/**
+ * Lock free histogram of latencies in microseconds.  Latencies are counted in buckets that split each power of two into 8 linear
+ * sub buckets, so reported percentiles are within 12.5% of the actual value while recording a latency only requires a few atomic increments.
+ * @since 1.3
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	// covers latencies up to 2^32 microseconds (a little over an hour)
+	private static final int BUCKET_COUNT = (32 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	private static final String[] ITEM_NAMES = {"Query Type", "Count", "Mean", "50th Percentile", "90th Percentile", "99th Percentile", "Max"};
+	private static final String[] ITEM_DESCS = {"Query Type", "Number of requests", "Mean latency in microseconds", 
+		"50th percentile latency in microseconds", "90th percentile latency in microseconds", "99th percentile latency in microseconds", 
+		"Max latency in microseconds"};
+	private static final OpenType<?>[] ITEM_TYPES = {SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG, 
+		SimpleType.LONG, SimpleType.LONG};
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Gets the histogram for a key from a map of histograms, adding a new histogram if one does not exist.
+	 * @param histograms The map of histograms.
+	 * @param key The key of the histogram.  Generally a DNS query type.
+	 * @return The histogram for the key.
+	 */
+	public static LatencyHistogram getHistogram(ConcurrentMap<Integer, LatencyHistogram> histograms, int key)
+	{
+		LatencyHistogram retVal = histograms.get(key);
+		if (retVal == null)
+		{
+			final LatencyHistogram newHistogram = new LatencyHistogram();
+			retVal = histograms.putIfAbsent(key, newHistogram);
+			if (retVal == null)
+				retVal = newHistogram;
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Converts a map of histograms keyed by DNS query type to JMX tabular data with one row for each query type.
+	 * @param histograms The map of histograms.
+	 * @return Tabular data with the count, mean, percentiles, and max of each histogram.
+	 * @throws OpenDataException
+	 */
+	public static TabularData toTabularData(Map<Integer, LatencyHistogram> histograms) throws OpenDataException
+	{
+		final CompositeType rowType = new CompositeType(LatencyHistogram.class.getSimpleName(), "Latency statistics for a query type.", 
+				ITEM_NAMES, ITEM_DESCS, ITEM_TYPES);
+		final TabularType tableType = new TabularType(LatencyHistogram.class.getSimpleName() + "s", "Latency statistics by query type.", 
+				rowType, new String[] {ITEM_NAMES[0]});
+		
+		final TabularDataSupport retVal = new TabularDataSupport(tableType);
+		for (Map.Entry<Integer, LatencyHistogram> entry : histograms.entrySet())
+		{
+			final LatencyHistogram histogram = entry.getValue();
+			final Object[] values = {Type.string(entry.getKey()), histogram.getCount(), histogram.getMean(), histogram.getPercentile(50), 
+					histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax()};
+			
+			retVal.put(new CompositeDataSupport(rowType, ITEM_NAMES, values));
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Records a latency.
+	 * @param nanos The latency in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		final long micros = Math.max(0, nanos / 1000);
+		
+		buckets.incrementAndGet(getBucketIndex(micros));
+		count.incrementAndGet();
+		total.addAndGet(micros);
+		
+		long currentMax;
+		while (micros > (currentMax = max.get()))
+			if (max.compareAndSet(currentMax, micros))
+				break;
+	}
+	
+	/**
+	 * Gets the number of recorded latencies.
+	 * @return The number of recorded latencies.
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+	
+	/**
+	 * Gets the mean latency in microseconds.
+	 * @return The mean latency in microseconds.
+	 */
+	public double getMean()
+	{
+		final long curCount = count.get();
+		
+		return (curCount == 0) ? 0 : (double)total.get() / curCount;
+	}
+	
+	/**
+	 * Gets the maximum latency in microseconds.
+	 * @return The maximum latency in microseconds.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * Gets the latency in microseconds at a given percentile.  The value is the upper bound of the bucket holding the percentile.
+	 * @param percentile The percentile between 0 and 100.
+	 * @return The latency in microseconds at the percentile.
+	 */
+	public long getPercentile(double percentile)
+	{
+		long totalCount = 0;
+		final long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			counts[i] = buckets.get(i);
+			totalCount += counts[i];
+		}
+		
+		if (totalCount == 0)
+			return 0;
+		
+		final long target = Math.max(1, (long)Math.ceil(totalCount * percentile / 100.0));
+		long runningCount = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			runningCount += counts[i];
+			if (runningCount >= target)
+				return Math.min(getBucketUpperBound(i), max.get());
+		}
+		
+		return max.get();
+	}
+	
+	/*
+	 * Values below the sub bucket count have their own buckets.  Larger values are split by their highest bit and the next 3 bits.
+	 */
+	static int getBucketIndex(long micros)
+	{
+		if (micros < SUB_BUCKET_COUNT)
+			return (int)micros;
+		
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int subBucket = (int)((micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+		
+		return Math.min(BUCKET_COUNT - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket);
+	}
+	
+	/*
+	 * Gets the largest value that is counted in a bucket.
+	 */
+	static long getBucketUpperBound(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		
+		final int exponent = (index / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+		final int subBucket = index % SUB_BUCKET_COUNT;
+		
+		return ((long)(SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
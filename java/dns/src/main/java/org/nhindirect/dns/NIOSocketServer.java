@@ -0,0 +1,232 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xbill.DNS.Message;
+
+/**
+ * Base socket server for selector based, non-blocking transports.  A single selector thread performs all socket IO and hands complete
+ * DNS requests to a fixed pool of {@link DNSServerSettings#getMaxActiveRequests()} processing threads.  Requests that arrive while all 
+ * processing threads are busy wait in a queue of up to {@link DNSServerSettings#getMaxOutstandingAccepts()} requests before they are rejected. 
+ * @since 1.3
+ */
+public abstract class NIOSocketServer extends DNSSocketServer
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(NIOSocketServer.class);
+	
+	protected Selector selector;
+	
+	/**
+	 * Creates a non-blocking socket server.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @throws DNSException
+	 */
+	public NIOSocketServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
+	{
+		super(settings, responder);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stop() throws DNSException
+	{
+		super.stop();
+		
+		selector.wakeup();
+		
+		waitForGracefulStop();
+		
+		closeChannels();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected ThreadPoolExecutor createDNSRequestService()
+	{
+		return new ThreadPoolExecutor(settings.getMaxActiveRequests(), settings.getMaxActiveRequests(), 
+				120L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, settings.getMaxOutstandingAccepts())));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getSocketAcceptTask()
+	{
+		return new SelectorTask();
+	}
+	
+	/**
+	 * Handles a selected key.  Called only from the selector thread.
+	 * @param key The selected key.
+	 * @throws IOException
+	 */
+	protected abstract void processSelectedKey(SelectionKey key) throws IOException;
+	
+	/**
+	 * Performs work that must be done on the selector thread such as changing interest operations or expiring idle connections.  Called 
+	 * each time the selector wakes up.  The default implementation does nothing.
+	 */
+	protected void processPendingOperations()
+	{
+		
+	}
+	
+	/**
+	 * Closes the selector and all channels.
+	 */
+	protected abstract void closeChannels();
+	
+	/**
+	 * Processes a raw DNS request and returns the response.  Updates the success, miss, and error counts and the request latency.
+	 * @param in The raw DNS request.
+	 * @param source The address the request was received from.
+	 * @param startTime The value of {@link System#nanoTime()} when the request was received.
+	 * @return The response or null if a response could not be created.
+	 */
+	protected Message processRequest(byte[] in, InetAddress source, long startTime)
+	{
+		Message query = null;
+		
+		try
+		{
+			query = responder.toMessage(in);
+		}
+		catch (DNSException e) {/* counted as an error below */}
+		
+		return processRequest(query, source, startTime);
+	}
+	
+	/**
+	 * Processes a DNS request and returns the response.  Updates the success, miss, and error counts and the request latency.
+	 * @param query The DNS request or null if the raw request could not be parsed.
+	 * @param source The address the request was received from.
+	 * @param startTime The value of {@link System#nanoTime()} when the request was received.
+	 * @return The response or null if a response could not be created.
+	 * 
+	 * @since 1.3
+	 */
+	protected Message processRequest(Message query, InetAddress source, long startTime)
+	{
+		final Message response = (query == null) ? null : responder.processRequest(query, source);
+		
+		recordResponse(query, response, startTime);
+		
+		return response;
+	}
+	
+	/*
+	 * In the case that the server loses its channels, the selector and channels need to be re-established.
+	 */
+	private void reconnect()
+	{
+		closeChannels();
+		
+		boolean connected = false;
+		while (!connected && running.get())
+		{	
+			try
+			{
+				createServerSocket();
+				connected = true;
+				LOGGER.error("DNS server channel re-established");
+			}
+			catch (DNSException ex)
+			{
+				LOGGER.error("DNS server channel failed to rebind.  Trying again in 5 seconds.");
+				
+				// the channel creation failed.... 
+				// sleep 5 seconds and come back around and try again
+				try
+				{
+					Thread.sleep(5000);
+				}
+				catch (InterruptedException iex) {/* no-op */}
+			}
+		}
+	}
+	
+	/*
+	 * Task that runs the selector loop
+	 */
+	private class SelectorTask implements Runnable
+	{
+		public void run()
+		{
+			while(running.get())
+			{
+				try
+				{
+					selector.select(1000);
+					
+					final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+					while (iter.hasNext())
+					{
+						final SelectionKey key = iter.next();
+						iter.remove();
+						
+						if (!key.isValid())
+							continue;
+						
+						try
+						{
+							processSelectedKey(key);
+						}
+						catch (IOException e)
+						{
+							// drop the channel if it is a client connection
+							if (key.attachment() != null)
+							{
+								key.cancel();
+								try
+								{
+									key.channel().close();
+								}
+								catch (IOException ex) {/* no-op */}
+							}
+							else
+								throw e;
+						}
+					}
+					
+					processPendingOperations();
+				}
+				catch (IOException e)
+				{
+					if (running.get())
+					{
+						LOGGER.error("DNS server channel dropped:" + e.getMessage());
+						reconnect();						
+					}
+				}
+			}
+		}
+	}
+}
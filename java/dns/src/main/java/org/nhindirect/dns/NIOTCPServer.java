@@ -0,0 +1,479 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+
+/**
+ * Non-blocking TCP socket server that handles DNS requests over TCP.  Connections are kept open for multiple queries and queries may be 
+ * pipelined as described in RFC 7766; responses are written as soon as they are available and may be returned out of order.  Connections
+ * that have no outstanding queries are closed after the {@link DNSServerSettings#getReceiveTimeout() receive timeout}.
+ * <p>
+ * At most {@link DNSServerSettings#getMaxTCPConnections()} connections are kept open; further connections are closed as soon as they are 
+ * accepted.  The server stops reading from a connection while it has {@link DNSServerSettings#getMaxTCPPipelinedRequests()} queries in flight 
+ * or more than {@link DNSServerSettings#getMaxTCPPendingResponseBytes()} bytes of responses that the client has not read, and resumes once 
+ * the connection is back under these limits.
+ * @since 1.3
+ */
+public class NIOTCPServer extends NIOSocketServer
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(NIOTCPServer.class);
+	
+	private ServerSocketChannel serverChannel;
+	
+	// accessed only from the selector thread
+	private final Set<Connection> connections = new HashSet<Connection>();
+	private int openConnections = 0;
+	private long lastIdleCheck = 0;
+	private long rejectedConnections = 0;
+	
+	// connections that have responses waiting to be written
+	private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+	
+	/**
+	 * Creates a non-blocking TCP socket server.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @throws DNSException
+	 */
+	public NIOTCPServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
+	{
+		super(settings, responder);		
+		
+		registerMBean(this.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void start() throws DNSException
+	{
+		LOGGER.info("DNS NIO TCP Server Starting");
+		super.start();
+		
+		if (LOGGER.isInfoEnabled())
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("DNS NIO TCP Server Startup Complete\r\n\tBind Address: ").append(settings.getBindAddress());
+			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			LOGGER.info(builder.toString());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createServerSocket() throws DNSException
+	{
+		try
+		{
+			selector = Selector.open();
+			
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(Inet4Address.getByName(settings.getBindAddress()), settings.getPort()), 
+					settings.getMaxConnectionBacklog());
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		catch (Exception e)
+		{
+			closeChannels();
+			throw new DNSException(null, "Failed to create TCP server channel: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void closeChannels()
+	{
+		if (connections != null)
+		{
+			for (Connection conn : connections)
+				conn.close();
+			
+			connections.clear();
+		}
+		
+		try
+		{
+			if (serverChannel != null)
+				serverChannel.close();
+		}
+		catch (IOException e) {/* no-op */}
+		
+		try
+		{
+			if (selector != null)
+				selector.close();
+		}
+		catch (IOException e) {/* no-op */}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void processSelectedKey(SelectionKey key) throws IOException
+	{
+		if (key.isAcceptable())
+		{
+			SocketChannel channel;
+			while ((channel = serverChannel.accept()) != null)
+			{
+				if (openConnections >= settings.getMaxTCPConnections())
+				{
+					// don't flood the log while under load
+					if (rejectedConnections++ % 1000 == 0)
+						LOGGER.warn("Closing DNS TCP connection.  The maximum of " + settings.getMaxTCPConnections() + " connections are open.");
+					
+					try
+					{
+						channel.close();
+					}
+					catch (IOException e) {/* no-op */}
+					continue;
+				}
+				
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				
+				final Connection conn = new Connection(channel);
+				conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+				connections.add(conn);
+				++openConnections;
+			}
+			return;
+		}
+		
+		final Connection conn = (Connection)key.attachment();
+		if (key.isReadable())
+			conn.read();
+		
+		if (key.isValid() && key.isWritable())
+			conn.write();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void processPendingOperations()
+	{
+		Connection conn;
+		while ((conn = pendingWrites.poll()) != null)
+		{
+			try
+			{
+				if (conn.key.isValid())
+					conn.write();
+			}
+			catch (IOException e)
+			{
+				conn.close();
+			}
+		}
+		
+		// close idle connections about once a second
+		final long now = System.currentTimeMillis();
+		if (now - lastIdleCheck < 1000)
+			return;
+		
+		lastIdleCheck = now;
+		final Iterator<Connection> iter = connections.iterator();
+		while (iter.hasNext())
+		{
+			conn = iter.next();
+			if (!conn.channel.isOpen())
+				iter.remove();
+			else if (conn.isIdle(now))
+			{
+				conn.close();
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object s)
+	{
+		// we're too busy, but the connection may have other pipelined queries in flight so answer with a server failure
+		final TCPRequest request = (TCPRequest)s;
+		List<byte[]> writeBytes = null;
+		try
+		{
+			final Message query = new Message(request.query);
+			final Message response = responder.processError(query, DNSError.newError(Rcode.SERVFAIL));
+			if (response != null)
+				writeBytes = responder.toStreamBytes(response);
+		}
+		catch (IOException e) {/* no-op */}
+		
+		request.connection.respond(writeBytes);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getDNSRequestTask(Object request)
+	{
+		return new RequestTask((TCPRequest)request);
+	}
+	
+	/*
+	 * A client connection.  Reads and interest operation changes happen on the selector thread.  Responses are queued by the
+	 * processing threads and written by the selector thread.
+	 */
+	private class Connection
+	{
+		final SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer readBuffer;
+		boolean inputClosed = false;
+		boolean closed = false;
+		volatile long lastActivity;
+		
+		final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+		final AtomicInteger pendingWriteBytes = new AtomicInteger();
+		final AtomicInteger outstandingRequests = new AtomicInteger();
+		
+		Connection(SocketChannel channel)
+		{
+			this.channel = channel;
+			this.readBuffer = ByteBuffer.allocate(Math.min(settings.getReadBufferSize(), settings.getMaxRequestSize() + 2));
+			this.lastActivity = System.currentTimeMillis();
+		}
+		
+		void read() throws IOException
+		{
+			final int read = channel.read(readBuffer);
+			if (read < 0)
+			{
+				// the client will not send any more queries, but may still be waiting for responses
+				inputClosed = true;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				closeIfComplete();
+				return;
+			}
+			
+			lastActivity = System.currentTimeMillis();
+			
+			processReadBuffer();
+		}
+		
+		/*
+		 * Submits the complete queries in the read buffer while the connection is under its limits.  Queries that are not submitted
+		 * stay in the buffer, and reading from the socket stops until the connection is back under its limits.
+		 */
+		void processReadBuffer()
+		{
+			// each message is prefixed with a two byte length
+			readBuffer.flip();
+			while (readBuffer.remaining() >= 2 && !isOverLimits())
+			{
+				final int length = readBuffer.getShort(readBuffer.position()) & 0xFFFF;
+				if (length == 0 || length > settings.getMaxRequestSize())
+				{
+					LOGGER.warn("Closing DNS TCP connection.  Invalid request size " + length);
+					close();
+					return;
+				}
+				
+				if (readBuffer.remaining() < length + 2)
+					break;
+				
+				readBuffer.position(readBuffer.position() + 2);
+				final byte[] query = new byte[length];
+				readBuffer.get(query);
+				
+				outstandingRequests.incrementAndGet();
+				submitDNSRequest(new TCPRequest(this, query));
+			}
+			readBuffer.compact();
+			
+			final boolean overLimits = isOverLimits();
+			
+			// grow the buffer if a partial message fills it
+			if (!readBuffer.hasRemaining() && !overLimits)
+			{
+				final ByteBuffer newBuffer = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, settings.getMaxRequestSize() + 2));
+				readBuffer.flip();
+				newBuffer.put(readBuffer);
+				readBuffer = newBuffer;
+			}
+			
+			if (!inputClosed && key.isValid())
+			{
+				if (overLimits)
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				else
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		}
+		
+		boolean isOverLimits()
+		{
+			return outstandingRequests.get() >= settings.getMaxTCPPipelinedRequests() || 
+					pendingWriteBytes.get() > settings.getMaxTCPPendingResponseBytes();
+		}
+		
+		/*
+		 * Queues a response.  Called from processing threads.  A null response completes the request without a response.
+		 */
+		void respond(List<byte[]> writeBytes)
+		{
+			if (writeBytes != null)
+			{
+				for (byte[] message : writeBytes)
+				{
+					final ByteBuffer buffer = ByteBuffer.allocate(message.length + 2);
+					buffer.putShort((short)message.length);
+					buffer.put(message);
+					buffer.flip();
+					pendingWriteBytes.addAndGet(buffer.remaining());
+					writeQueue.add(buffer);
+				}
+			}
+			outstandingRequests.decrementAndGet();
+			
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+		
+		void write() throws IOException
+		{
+			ByteBuffer buffer;
+			while ((buffer = writeQueue.peek()) != null)
+			{
+				channel.write(buffer);
+				if (buffer.hasRemaining())
+				{
+					// socket send buffer is full... wait until it is writable
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					resumeIfUnderLimits();
+					return;
+				}
+				writeQueue.poll();
+				pendingWriteBytes.addAndGet(-buffer.capacity());
+				lastActivity = System.currentTimeMillis();
+			}
+			
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			resumeIfUnderLimits();
+			closeIfComplete();
+		}
+		
+		/*
+		 * Picks up queries that were left in the read buffer and resumes reading once requests complete or responses are written.
+		 */
+		void resumeIfUnderLimits()
+		{
+			if (!closed && key.isValid() && !isOverLimits())
+				processReadBuffer();
+		}
+		
+		boolean isIdle(long now)
+		{
+			return outstandingRequests.get() == 0 && writeQueue.isEmpty() && (now - lastActivity) > settings.getReceiveTimeout();
+		}
+		
+		void closeIfComplete()
+		{
+			if (inputClosed && outstandingRequests.get() == 0 && writeQueue.isEmpty())
+				close();
+		}
+		
+		void close()
+		{
+			if (closed)
+				return;
+			
+			closed = true;
+			--openConnections;
+			
+			if (key != null)
+				key.cancel();
+			
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e) {/* no-op */}
+		}
+	}
+	
+	/*
+	 * A query read from a connection
+	 */
+	private static class TCPRequest
+	{
+		final Connection connection;
+		final byte[] query;
+		
+		TCPRequest(Connection connection, byte[] query)
+		{
+			this.connection = connection;
+			this.query = query;
+		}
+	}
+	
+	/*
+	 * Task that handles DNS requests.
+	 */
+	private class RequestTask implements Runnable
+	{
+		private final TCPRequest request;
+		private final long startTime;
+		
+		public RequestTask(TCPRequest request)
+		{
+			startTime = System.nanoTime();
+			this.request = request;
+		}
+		
+		public void run()
+		{
+			final Message response = processRequest(request.query, request.connection.channel.socket().getInetAddress(), startTime);
+			
+			request.connection.respond((response == null) ? null : responder.toStreamBytes(response));
+		}
+	}
+}
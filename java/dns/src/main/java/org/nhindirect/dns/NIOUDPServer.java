@@ -0,0 +1,243 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xbill.DNS.Message;
+
+/**
+ * Non-blocking UDP socket server that handles DNS requests over UDP.  Datagrams are received by a single selector thread into a pool of 
+ * reusable direct buffers, so receiving a request does not allocate a request sized buffer.
+ * @since 1.3
+ */
+public class NIOUDPServer extends NIOSocketServer
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(NIOUDPServer.class);
+	
+	private DatagramChannel channel;
+	
+	private BlockingQueue<ByteBuffer> bufferPool;
+	
+	/**
+	 * Creates a non-blocking UDP server that listens to datagram packets.  The server will not start accepting messages until the 
+	 * {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @throws DNSException
+	 */
+	public NIOUDPServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
+	{
+		super(settings, responder);		
+		
+		registerMBean(this.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void start() throws DNSException
+	{
+		LOGGER.info("DNS NIO UPD Server Starting");
+		
+		// one buffer for each request that can be processing or waiting for a processing thread 
+		bufferPool = new ArrayBlockingQueue<ByteBuffer>(settings.getMaxActiveRequests() + Math.max(1, settings.getMaxOutstandingAccepts()));
+		
+		super.start();
+		
+		if (LOGGER.isInfoEnabled())
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("DNS NIO UDP Server Startup Complete\r\n\tBind Address: ").append(settings.getBindAddress());
+			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			LOGGER.info(builder.toString());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createServerSocket() throws DNSException
+	{
+		try
+		{
+			selector = Selector.open();
+			
+			channel = DatagramChannel.open();
+			channel.socket().setReceiveBufferSize(settings.getMaxRequestSize());
+			channel.socket().bind(new InetSocketAddress(Inet4Address.getByName(settings.getBindAddress()), settings.getPort()));
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+		}
+		catch (Exception e)
+		{
+			closeChannels();
+			throw new DNSException(null, "Failed to create UDP server channel: " + e.getMessage(), e);
+		}
+	}	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void closeChannels()
+	{
+		try
+		{
+			if (channel != null)
+				channel.close();
+		}
+		catch (IOException e) {/* no-op */}
+		
+		try
+		{
+			if (selector != null)
+				selector.close();
+		}
+		catch (IOException e) {/* no-op */}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void processSelectedKey(SelectionKey key) throws IOException
+	{
+		if (!key.isReadable())
+			return;
+		
+		// drain all datagrams that are waiting on the channel
+		while (true)
+		{
+			final ByteBuffer buffer = acquireBuffer();
+			final SocketAddress from = channel.receive(buffer);
+			if (from == null)
+			{
+				releaseBuffer(buffer);
+				break;
+			}
+			
+			buffer.flip();
+			submitDNSRequest(new UDPRequest(buffer, from));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object s)
+	{
+		// drop the datagram... we're too busy to handle anything
+		releaseBuffer(((UDPRequest)s).buffer);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getDNSRequestTask(Object request)
+	{
+		return new RequestTask((UDPRequest)request);
+	}
+	
+	/*
+	 * Gets a buffer from the pool or allocates one if the pool is empty
+	 */
+	private ByteBuffer acquireBuffer()
+	{
+		final ByteBuffer buffer = bufferPool.poll();
+		
+		return (buffer != null) ? buffer : ByteBuffer.allocateDirect(settings.getMaxRequestSize());
+	}
+	
+	/*
+	 * Returns a buffer to the pool.  Buffers are discarded if the pool is full.
+	 */
+	private void releaseBuffer(ByteBuffer buffer)
+	{
+		buffer.clear();
+		bufferPool.offer(buffer);
+	}
+	
+	/*
+	 * A received datagram and its source address
+	 */
+	private static class UDPRequest
+	{
+		final ByteBuffer buffer;
+		final SocketAddress from;
+		
+		UDPRequest(ByteBuffer buffer, SocketAddress from)
+		{
+			this.buffer = buffer;
+			this.from = from;
+		}
+	}
+	
+	/*
+	 * Task that handles DNS requests.
+	 */
+	private class RequestTask implements Runnable
+	{
+		private final UDPRequest request;
+		private final long startTime;
+		
+		public RequestTask(UDPRequest request)
+		{
+			startTime = System.nanoTime();
+			this.request = request;
+		}
+		
+		public void run()
+		{
+			final byte[] in = new byte[request.buffer.remaining()];
+			request.buffer.get(in);
+			releaseBuffer(request.buffer);
+			
+			Message query = null;
+			try
+			{
+				query = responder.toMessage(in);
+			}
+			catch (DNSException e) {/* counted as an error when processed */}
+			
+			final Message response = processRequest(query, ((InetSocketAddress)request.from).getAddress(), startTime);
+			if (response == null)
+				return;
+			
+			try
+			{
+				channel.send(ByteBuffer.wrap(responder.toDatagramBytes(query, response)), request.from);
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("Wire/connection protocol error handing DNS request: " + e.getMessage(), e);
+			}
+		}
+	}
+}
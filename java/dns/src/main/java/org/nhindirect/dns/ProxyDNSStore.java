@@ -20,14 +20,34 @@ package org.nhindirect.dns;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Header;
 import org.xbill.DNS.Message;
+import org.xbill.DNS.Opcode;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
 import org.xbill.DNS.ResolverConfig;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
 
 /**
  * Proxy DNS store that delegates all requests to another set of DNS servers.
  * The store defaults to using port 53 and the machine's configured DNS servers.
+ * <p>
+ * Responses are cached for the lowest TTL of their records.  Negative responses (NXDOMAIN and empty answers) are cached for the lesser 
+ * of the TTL and minimum TTL of the SOA record in the authority section per RFC 2308 and are not cached if the response does not 
+ * contain an SOA record.  Identical queries that arrive while a query is outstanding wait for and share the outstanding response.
  * @author Greg Meyer
  *
  * @since 1.0
@@ -36,8 +56,27 @@ public class ProxyDNSStore implements DNSStore
 {
 	private static final int DEFAULT_RESOLVER_PORT = 53;
 	
+	protected static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+	
 	private final String[] servers;
 	private final int port;
+	
+	private final ExtendedResolver udpResolver;
+	private final ExtendedResolver tcpResolver;
+	
+	private volatile int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+	
+	@SuppressWarnings("serial")
+	private final Map<String, CachedResponse> cache = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest)
+		{
+			return size() > maxCacheSize;
+		}
+	};
+	
+	private final ConcurrentMap<String, FutureTask<Message>> inFlightQueries = new ConcurrentHashMap<String, FutureTask<Message>>();
 
 	/**
 	 * Creates a default proxy store.
@@ -53,7 +92,7 @@ public class ProxyDNSStore implements DNSStore
 	 */
 	public ProxyDNSStore(int port)
 	{
-		this(null, DEFAULT_RESOLVER_PORT);
+		this(null, port);
 	}
 
 	/**
@@ -91,21 +130,141 @@ public class ProxyDNSStore implements DNSStore
 		}
 		
 		this.port = port;
+		
+		// resolvers are reusable and safe for concurrent requests
+		udpResolver = createExResolver(this.servers, port, 2, 2000);
+		tcpResolver = createExResolver(this.servers, port, 2, 2000);
+		if (tcpResolver != null)
+			tcpResolver.setTCP(true);
+	}
+	
+	/**
+	 * Sets the maximum number of responses held in the cache.  Setting the size to 0 disables caching.  The default size is 10000.
+	 * @param maxCacheSize The maximum number of responses held in the cache.
+	 * 
+	 * @since 1.3
+	 */
+	public void setMaxCacheSize(int maxCacheSize)
+	{
+		this.maxCacheSize = maxCacheSize;
+		
+		if (maxCacheSize <= 0)
+			flush();
+	}
+	
+	/**
+	 * Removes all responses from the cache.
+	 * 
+	 * @since 1.3
+	 */
+	public void flush()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Message get(Message dnsMsg) throws DNSException
+	public Message get(final Message dnsMsg) throws DNSException
 	{
-		ExtendedResolver resolver = createExResolver(servers, port, 2, 2000);
-		// try UPD first
+		final Record question = dnsMsg.getQuestion();
+		if (question == null || dnsMsg.getHeader().getOpcode() != Opcode.QUERY)
+			return sendQuery(dnsMsg);
+		
+		final String key = question.getName().toString().toLowerCase(Locale.ENGLISH) + ":" + question.getType() + ":" + question.getDClass();
+		
+		synchronized (cache)
+		{
+			final CachedResponse cached = cache.get(key);
+			if (cached != null)
+			{
+				if (!cached.isExpired())
+					return cached.toResponse(dnsMsg);
+				
+				cache.remove(key);
+			}
+		}
+		
+		// coalesce identical queries into a single upstream query
+		final FutureTask<Message> newQuery = new FutureTask<Message>(new Callable<Message>()
+		{
+			@Override
+			public Message call()
+			{
+				return sendQuery(dnsMsg);
+			}
+		});
+		
+		FutureTask<Message> query = inFlightQueries.putIfAbsent(key, newQuery);
+		final boolean owner = (query == null);
+		if (owner)
+		{
+			query = newQuery;
+			try
+			{
+				query.run();
+			}
+			finally
+			{
+				inFlightQueries.remove(key, query);
+			}
+		}
+		
+		Message response;
+		try
+		{
+			response = query.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Interrupted waiting for proxy response.", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof DNSException)
+				throw (DNSException)e.getCause();
+			
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Proxy request failed: " + e.getCause().getMessage(), e);
+		}
+		
+		if (response == null)
+			return null;
+		
+		final CachedResponse cached = new CachedResponse(response);
+		if (owner)
+		{
+			final long ttl = getCacheTTL(response);
+			if (ttl > 0 && maxCacheSize > 0)
+			{
+				cached.expiration = System.currentTimeMillis() + (ttl * 1000);
+				synchronized (cache)
+				{
+					cache.put(key, cached);
+				}
+			}
+		}
 		
+		// every caller gets a copy of the response with its own message id
+		return cached.toResponse(dnsMsg);
+	}
+	
+	/*
+	 * Sends the query upstream.  Tries UDP first and falls back to TCP.
+	 */
+	protected Message sendQuery(Message dnsMsg)
+	{
 		Message response = null;
+		if (udpResolver == null)
+			return null;
+		
 		try
 		{
-			response = resolver.send(dnsMsg);			
+			response = udpResolver.send(dnsMsg);			
 		}
 		catch (IOException e)
 		{
@@ -115,10 +274,9 @@ public class ProxyDNSStore implements DNSStore
 		if (response == null)
 		{
 			// try TCP
-			resolver.setTCP(true);
 			try
 			{
-				response = resolver.send(dnsMsg);			
+				response = tcpResolver.send(dnsMsg);			
 			}
 			catch (IOException e)
 			{
@@ -129,6 +287,44 @@ public class ProxyDNSStore implements DNSStore
 		return response;
 	}
 	
+	/**
+	 * Gets the number of seconds a response can be cached.
+	 * @param response The response.
+	 * @return The number of seconds the response can be cached.  Returns 0 if the response cannot be cached.
+	 * 
+	 * @since 1.3
+	 */
+	protected long getCacheTTL(Message response)
+	{
+		final Header header = response.getHeader();
+		if (header.getFlag(Flags.TC))
+			return 0;
+		
+		final int rcode = response.getRcode();
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		
+		if (rcode == Rcode.NXDOMAIN || (rcode == Rcode.NOERROR && answers.length == 0))
+		{
+			// negative response... use the SOA in the authority section
+			for (Record rec : response.getSectionArray(Section.AUTHORITY))
+				if (rec instanceof SOARecord)
+					return Math.min(rec.getTTL(), ((SOARecord)rec).getMinimum());
+			
+			return 0;
+		}
+		
+		if (rcode != Rcode.NOERROR)
+			return 0;
+		
+		long ttl = Long.MAX_VALUE;
+		for (int section : new int[] {Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL})
+			for (Record rec : response.getSectionArray(section))
+				if (rec.getType() != Type.OPT)
+					ttl = Math.min(ttl, rec.getTTL());
+		
+		return ttl;
+	}
+	
 	/*
 	 * Create the resolver that will do the DNS requests.
 	 */
@@ -138,10 +334,62 @@ public class ProxyDNSStore implements DNSStore
 		try
 		{
 			retVal = new ExtendedResolver(servers);
+			retVal.setPort(port);
 			retVal.setRetries(retries);
 			retVal.setTimeout(timeout);
 		}
 		catch (UnknownHostException e) {/* no-op */}
 		return retVal;
 	}
+	
+	/*
+	 * A response and the time it was received.  Cached copies are returned with the remaining TTL of each record.
+	 */
+	private static class CachedResponse
+	{
+		final Message response;
+		final long created;
+		volatile long expiration;
+		
+		CachedResponse(Message response)
+		{
+			this.response = response;
+			this.created = System.currentTimeMillis();
+			this.expiration = this.created;
+		}
+		
+		boolean isExpired()
+		{
+			return System.currentTimeMillis() >= expiration;
+		}
+		
+		Message toResponse(Message request)
+		{
+			final long elapsed = (System.currentTimeMillis() - created) / 1000;
+			
+			final Message retVal = new Message(request.getHeader().getID());
+			final Header header = retVal.getHeader();
+			final Header cachedHeader = response.getHeader();
+			for (int i = 0; i < 16; ++i)
+				if (Flags.isFlag(i) && cachedHeader.getFlag(i))
+					header.setFlag(i);
+			header.setOpcode(cachedHeader.getOpcode());
+			header.setRcode(cachedHeader.getRcode());
+			
+			retVal.addRecord(request.getQuestion(), Section.QUESTION);
+			for (int section : new int[] {Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL})
+			{
+				for (Record rec : response.getSectionArray(section))
+				{
+					if (rec.getType() == Type.OPT || elapsed == 0)
+						retVal.addRecord(rec, section);
+					else
+						retVal.addRecord(Record.newRecord(rec.getName(), rec.getType(), rec.getDClass(), 
+								Math.max(0, rec.getTTL() - elapsed), rec.rdataToWireCanonical()), section);
+				}
+			}
+			
+			return retVal;
+		}
+	}
 }
@@ -0,0 +1,489 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Header;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Opcode;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.ZoneTransferIn;
+
+/**
+ * Implementation of the {@link DNSStore} interface that serves requests from local copies of zones transferred from a primary DNS server such
+ * as a server backed by a {@link ZoneSnapshotDNSStore} with zone transfers enabled.  Secondary stores never call the configuration service, so
+ * DNS nodes can be added without adding load to the configuration service.
+ * <p>
+ * Zones are transferred with AXFR when the store is created.  The store then checks the SOA serial number of each zone on the primary server 
+ * at a configurable interval and transfers the zone again if the serial number changed.  A NOTIFY message from the primary server 
+ * triggers a check of the zone.  NOTIFY triggered checks of a zone are coalesced and run at most once every 
+ * {@link #MIN_NOTIFY_REFRESH_INTERVAL} milliseconds, so a flood of NOTIFY messages cannot flood the primary server with queries.  If the primary server is unavailable, the store continues to answer from its last copy of the zone.
+ * <p>
+ * The store is configured with the following JVM parameters:
+ * <ul>
+ * <li>-Dorg.nhindirect.dns.PrimaryServer: The host[:port] of the primary server.  The port defaults to 53.</li>
+ * <li>-Dorg.nhindirect.dns.SecondaryZones: A comma delimited list of the zones to transfer.</li>
+ * <li>-Dorg.nhindirect.dns.SecondaryZoneRefreshInterval: The interval in seconds between serial number checks.  An interval of 0 or less
+ * disables the checks so zones are only refreshed on NOTIFY.  The default is 300 seconds.</li>
+ * </ul>
+ * @since 1.3
+ */
+public class SecondaryZoneDNSStore implements DNSStore
+{
+	protected static final String PRIMARY_SERVER_SYS_PARAM = "org.nhindirect.dns.PrimaryServer";
+	protected static final String SECONDARY_ZONES_SYS_PARAM = "org.nhindirect.dns.SecondaryZones";
+	protected static final String REFRESH_INTERVAL_SYS_PARAM = "org.nhindirect.dns.SecondaryZoneRefreshInterval";
+	protected static final long DEFAULT_REFRESH_INTERVAL = 300; // 5 minutes
+	protected static final int DEFAULT_DNS_PORT = 53;
+	protected static final int SOA_QUERY_TIMEOUT = 5; // seconds
+	protected static final long MIN_NOTIFY_REFRESH_INTERVAL = 5000; // 5 seconds
+	
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(SecondaryZoneDNSStore.class);
+	
+	protected final InetSocketAddress primaryServer;
+	protected final Map<String, AtomicReference<SecondaryZone>> zones;
+	protected final ScheduledExecutorService refreshExecutor;
+	
+	// zones with a NOTIFY triggered check waiting to run and the time the last one ran
+	private final Set<String> pendingNotifyRefreshes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Map<String, Long> lastNotifyRefreshes = new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * Gets the configured secondary zone refresh interval in seconds.  This is configured using the
+	 * -Dorg.nhindirect.dns.SecondaryZoneRefreshInterval JVM parameter.  If the parameter is not set or is invalid,
+	 * then the default interval of 300 seconds is returned.
+	 * @return The secondary zone refresh interval in seconds.
+	 */
+	public static long getRefreshInterval()
+	{
+		final String interval = System.getProperty(REFRESH_INTERVAL_SYS_PARAM);
+		
+		if (interval == null || interval.isEmpty())
+			return DEFAULT_REFRESH_INTERVAL;
+		
+		try
+		{
+			return Long.parseLong(interval);
+		}
+		catch (NumberFormatException e)
+		{
+			LOGGER.warn("Invalid secondary zone refresh interval " + interval + ".  Using default interval.");
+			return DEFAULT_REFRESH_INTERVAL;
+		}
+	}
+	
+	/**
+	 * Gets the configured address of the primary server.  This is configured using the -Dorg.nhindirect.dns.PrimaryServer JVM parameter.
+	 * @return The address of the primary server.
+	 * @throws IllegalStateException Thrown if the parameter is not set or is invalid.
+	 */
+	public static InetSocketAddress getPrimaryServer()
+	{
+		final String server = System.getProperty(PRIMARY_SERVER_SYS_PARAM);
+		if (server == null || server.trim().isEmpty())
+			throw new IllegalStateException("The primary server must be set with the " + PRIMARY_SERVER_SYS_PARAM + " parameter.");
+		
+		final int index = server.lastIndexOf(':');
+		try
+		{
+			return (index > 0) ? InetSocketAddress.createUnresolved(server.substring(0, index).trim(), Integer.parseInt(server.substring(index + 1).trim())) :
+				InetSocketAddress.createUnresolved(server.trim(), DEFAULT_DNS_PORT);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalStateException("Invalid primary server " + server, e);
+		}
+	}
+	
+	/**
+	 * Gets the configured zones to transfer.  This is configured using the -Dorg.nhindirect.dns.SecondaryZones JVM parameter.
+	 * @return The zones to transfer.  Returns an empty list if the parameter is not set.
+	 */
+	public static List<String> getSecondaryZones()
+	{
+		final String zones = System.getProperty(SECONDARY_ZONES_SYS_PARAM);
+		if (zones == null || zones.trim().isEmpty())
+			return Collections.emptyList();
+		
+		final List<String> retVal = new ArrayList<String>();
+		for (String zone : zones.split(","))
+			if (!zone.trim().isEmpty())
+				retVal.add(zone.trim());
+		
+		return retVal;
+	}
+	
+	/**
+	 * Creates a secondary store using the configured primary server, zones, and refresh interval.
+	 */
+	public SecondaryZoneDNSStore()
+	{
+		this(getPrimaryServer(), getSecondaryZones(), getRefreshInterval());
+	}
+	
+	/**
+	 * Creates a secondary store.  The zones are transferred from the primary server before the constructor returns.  Zones that cannot
+	 * be transferred are retried on the refresh interval or when the primary server sends a NOTIFY message.
+	 * @param primaryServer The address of the primary server.
+	 * @param zones The zones to transfer.
+	 * @param refreshInterval The interval in seconds between serial number checks.  An interval of 0 or less disables the checks.
+	 */
+	public SecondaryZoneDNSStore(InetSocketAddress primaryServer, Collection<String> zones, long refreshInterval)
+	{
+		if (zones == null || zones.isEmpty())
+			throw new IllegalArgumentException("At least one secondary zone must be provided.");
+		
+		this.primaryServer = primaryServer;
+		
+		final Map<String, AtomicReference<SecondaryZone>> zoneMap = new HashMap<String, AtomicReference<SecondaryZone>>();
+		for (String zone : zones)
+			zoneMap.put(ConfigServiceDNSStore.normalizeName(zone), new AtomicReference<SecondaryZone>());
+		this.zones = Collections.unmodifiableMap(zoneMap);
+		
+		refresh();
+		
+		// the executor also handles refreshes triggered by NOTIFY messages, so it is created even if the checks are disabled
+		refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				final Thread thread = new Thread(r, "SecondaryZoneDNSStore refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		if (refreshInterval > 0)
+		{
+			refreshExecutor.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					refresh();
+				}
+			}, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+		}
+	}
+	
+	/**
+	 * Checks the serial number of each zone on the primary server and transfers the zones that changed.
+	 * @return True if at least one zone was transferred.  False otherwise.
+	 */
+	public boolean refresh()
+	{
+		boolean retVal = false;
+		for (String zone : zones.keySet())
+			retVal |= refreshZone(zone);
+		
+		return retVal;
+	}
+	
+	/**
+	 * Checks the serial number of a zone on the primary server and transfers the zone if it changed.  Any difference in the serial number
+	 * triggers a transfer, not only an increase, as the primary server may revert to the configured serial number when it restarts.
+	 * @param zone The zone to refresh.
+	 * @return True if the zone was transferred.  False if the zone is up to date or could not be transferred.
+	 */
+	public boolean refreshZone(String zone)
+	{
+		final AtomicReference<SecondaryZone> zoneRef = zones.get(ConfigServiceDNSStore.normalizeName(zone));
+		if (zoneRef == null)
+			return false;
+		
+		try
+		{
+			final Name zoneName = Name.fromString(ConfigServiceDNSStore.normalizeName(zone));
+			final SecondaryZone current = zoneRef.get();
+			if (current != null && getPrimarySerial(zoneName) == current.soa.getSerial())
+				return false;
+			
+			final SecondaryZone newZone = new SecondaryZone(transferZone(zoneName));
+			zoneRef.set(newZone);
+			
+			if (LOGGER.isDebugEnabled())
+				LOGGER.debug("Transferred zone " + zone + " with serial number " + newZone.soa.getSerial() + " and " + newZone.recordCount + " records.");
+			
+			return true;
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Failed to refresh zone " + zone + " from primary server " + primaryServer + ".  The previous copy will be used: " + e.getMessage(), e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Stops the background zone refresh.
+	 */
+	public void shutdown()
+	{
+		refreshExecutor.shutdownNow();
+	}
+	
+	/**
+	 * Gets the serial number of the local copy of a zone.
+	 * @param zone The zone.
+	 * @return The serial number of the local copy of the zone.  Returns -1 if the zone has not been transferred.
+	 */
+	public long getSerial(String zone)
+	{
+		final AtomicReference<SecondaryZone> zoneRef = zones.get(ConfigServiceDNSStore.normalizeName(zone));
+		final SecondaryZone current = (zoneRef == null) ? null : zoneRef.get();
+		
+		return (current == null) ? -1 : current.soa.getSerial();
+	}
+	
+	/**
+	 * Queries the primary server for the SOA serial number of a zone.
+	 * @param zoneName The zone.
+	 * @return The serial number of the zone on the primary server.
+	 * @throws IOException Thrown if the query fails or the primary server does not return an SOA record for the zone.
+	 */
+	protected long getPrimarySerial(Name zoneName) throws IOException
+	{
+		final SimpleResolver resolver = new SimpleResolver(primaryServer.getHostName());
+		resolver.setPort(primaryServer.getPort());
+		resolver.setTimeout(SOA_QUERY_TIMEOUT);
+		
+		final Message response = resolver.send(Message.newQuery(Record.newRecord(zoneName, Type.SOA, DClass.IN)));
+		for (Record record : response.getSectionArray(Section.ANSWER))
+			if (record instanceof SOARecord)
+				return ((SOARecord)record).getSerial();
+		
+		throw new IOException("Primary server did not return an SOA record for zone " + zoneName);
+	}
+	
+	/**
+	 * Transfers a zone from the primary server using AXFR.
+	 * @param zoneName The zone.
+	 * @return The records of the zone.
+	 * @throws Exception Thrown if the transfer fails.
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<Record> transferZone(Name zoneName) throws Exception
+	{
+		final ZoneTransferIn transfer = ZoneTransferIn.newAXFR(zoneName, primaryServer.getHostName(), primaryServer.getPort(), null);
+		
+		return transfer.run();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Message get(Message request) throws DNSException
+	{
+		if (request == null)
+			throw new DNSException(DNSError.newError(Rcode.FORMERR));
+		
+		final Header header = request.getHeader();
+		if (header.getFlag(Flags.QR) || header.getRcode() != Rcode.NOERROR)
+			throw new DNSException(DNSError.newError(Rcode.FORMERR));
+		
+		final Record question = request.getQuestion();
+		if (question == null || question.getDClass() != DClass.IN)
+			throw new DNSException(DNSError.newError(Rcode.NOTIMP));
+		
+		if (header.getOpcode() == Opcode.NOTIFY)
+			return processNotify(request);
+		
+		if (header.getOpcode() != Opcode.QUERY)
+			throw new DNSException(DNSError.newError(Rcode.NOTIMP));
+		
+		final int type = question.getType();
+		if (type == Type.AXFR || type == Type.IXFR)
+			throw new DNSException(DNSError.newError(Rcode.REFUSED), "Zone transfers are not served by secondary stores.");
+		
+		final String name = ConfigServiceDNSStore.normalizeName(question.getName().toString());
+		final String zone = findZone(name);
+		if (zone == null)
+			return null;
+		
+		final SecondaryZone current = zones.get(zone).get();
+		if (current == null)
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Zone " + zone + " has not been transferred from the primary server.");
+		
+		final Map<Integer, RRset> typeIndex = current.records.get(name);
+		if (typeIndex == null)
+			return null;
+		
+		final Collection<RRset> sets = (type == Type.ANY) ? typeIndex.values() : 
+			(typeIndex.containsKey(type) ? Collections.singletonList(typeIndex.get(type)) : Collections.<RRset>emptyList());
+		if (sets.isEmpty())
+			return null;
+		
+		final Message response = new Message(header.getID());
+		response.getHeader().setFlag(Flags.QR);
+		if (header.getFlag(Flags.RD))
+			response.getHeader().setFlag(Flags.RD);
+		response.addRecord(question, Section.QUESTION);
+		
+		for (RRset set : sets)
+		{
+			final Iterator<Record> iter = set.rrs();
+			while (iter.hasNext())
+				response.addRecord(iter.next(), Section.ANSWER);
+		}
+		
+		// we are authoritative only
+		response.getHeader().setFlag(Flags.AA);
+		response.addRecord(current.soa, Section.AUTHORITY);
+		
+		return response;
+	}
+	
+	/**
+	 * Acknowledges a NOTIFY message from the primary server and schedules a refresh of the zone.  The request source is not available to
+	 * stores, so NOTIFY messages are not authenticated.  Instead, a NOTIFY for a zone that already has a refresh waiting is only acknowledged,
+	 * and refreshes of a zone run at most once every {@link #MIN_NOTIFY_REFRESH_INTERVAL} milliseconds.
+	 * @param request The NOTIFY message.
+	 * @return The NOTIFY response.
+	 * @throws DNSException Thrown if the NOTIFY message is for a zone that is not transferred by this store.
+	 */
+	protected Message processNotify(Message request) throws DNSException
+	{
+		final Record question = request.getQuestion();
+		final String zone = ConfigServiceDNSStore.normalizeName(question.getName().toString());
+		if (question.getType() != Type.SOA || !zones.containsKey(zone))
+			throw new DNSException(DNSError.newError(Rcode.NOTAUTH), "NOTIFY received for unknown zone " + zone);
+		
+		if (pendingNotifyRefreshes.add(zone))
+		{
+			final Long lastRefresh = lastNotifyRefreshes.get(zone);
+			final long delay = (lastRefresh == null) ? 0 : Math.max(0, lastRefresh + MIN_NOTIFY_REFRESH_INTERVAL - System.currentTimeMillis());
+			
+			refreshExecutor.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// a NOTIFY received during the check may be for a later change, so it schedules another check
+					pendingNotifyRefreshes.remove(zone);
+					lastNotifyRefreshes.put(zone, System.currentTimeMillis());
+					refreshZone(zone);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		
+		final Message response = new Message(request.getHeader().getID());
+		response.getHeader().setOpcode(Opcode.NOTIFY);
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setFlag(Flags.AA);
+		response.addRecord(question, Section.QUESTION);
+		
+		return response;
+	}
+	
+	/*
+	 * Finds the closest configured zone that encloses a name by taking apart the name . by .
+	 */
+	private String findZone(String name)
+	{
+		String zone = name;
+		int index = -1;
+		while (!zones.containsKey(zone))
+		{
+			if ((index = zone.indexOf(".")) <= 0 || index >= (zone.length() - 1))
+				return null;
+			
+			zone = zone.substring(index + 1);
+		}
+		
+		return zone;
+	}
+	
+	/**
+	 * Immutable local copy of a zone.  RRsets are never modified once the copy is built.
+	 * @since 1.3
+	 */
+	protected static class SecondaryZone
+	{
+		final Map<String, Map<Integer, RRset>> records;
+		final SOARecord soa;
+		final int recordCount;
+		
+		SecondaryZone(List<Record> transferRecords) throws IOException
+		{
+			final Map<String, Map<Integer, RRset>> recordIndex = new HashMap<String, Map<Integer, RRset>>();
+			SOARecord zoneSoa = null;
+			int count = 0;
+			
+			for (Record record : transferRecords)
+			{
+				if (record instanceof SOARecord)
+				{
+					// the SOA record starts and ends the transfer
+					if (zoneSoa != null)
+						continue;
+					
+					zoneSoa = (SOARecord)record;
+				}
+				
+				final String name = ConfigServiceDNSStore.normalizeName(record.getName().toString());
+				Map<Integer, RRset> typeIndex = recordIndex.get(name);
+				if (typeIndex == null)
+				{
+					typeIndex = new HashMap<Integer, RRset>();
+					recordIndex.put(name, typeIndex);
+				}
+				
+				RRset set = typeIndex.get(record.getType());
+				if (set == null)
+				{
+					set = new RRset();
+					typeIndex.put(record.getType(), set);
+				}
+				set.addRR(record);
+				
+				++count;
+			}
+			
+			if (zoneSoa == null)
+				throw new IOException("Zone transfer did not return an SOA record.");
+			
+			this.records = Collections.unmodifiableMap(recordIndex);
+			this.soa = zoneSoa;
+			this.recordCount = count;
+		}
+	}
+}
@@ -37,6 +37,7 @@ public class SocketServerSettings
     private static final int DEFAULT_SEND_TIMEOUT = 5000;
     private static final int DEFAULT_RECEIVE_TIMEOUT = 50000;
     private static final int DEFAULT_SOCKET_CLOSE_TIMEOUT = 5000;
+    private static final boolean DEFAULT_NON_BLOCKING_IO = false;
     
 	private int maxOutstandingAccepts;
 	private int maxActiveRequests;
@@ -45,6 +46,7 @@ public class SocketServerSettings
 	private int sendTimeout;
 	private int receiveTimeout;
 	private int socketCloseTimeout;
+	private boolean nonBlockingIO;
 	
 	/**
 	 * Creates a default set of socket parameters.
@@ -58,6 +60,7 @@ public class SocketServerSettings
 		sendTimeout = DEFAULT_SEND_TIMEOUT;
 		receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
 		socketCloseTimeout = DEFAULT_SOCKET_CLOSE_TIMEOUT;
+		nonBlockingIO = DEFAULT_NON_BLOCKING_IO;
 	}
 
 	/**
@@ -203,4 +206,28 @@ public class SocketServerSettings
 		this.socketCloseTimeout = socketCloseTimeout;
 	}	
 	
+	/**
+	 * Indicates if the server uses selector based non-blocking sockets.  When enabled, UDP datagrams are received into pooled direct buffers
+	 * and TCP connections are kept open for multiple pipelined queries.  Requests wait in a queue of up to
+	 * {@link #getMaxOutstandingAccepts()} requests for one of the {@link #getMaxActiveRequests()} processing threads, and idle TCP connections 
+	 * are closed after the receive timeout.  The default value is false.
+	 * @return True if the server uses non-blocking sockets.  False otherwise.
+	 * 
+	 * @since 1.3
+	 */
+	public boolean isNonBlockingIO()
+	{
+		return nonBlockingIO;
+	}
+
+	/**
+	 * Sets if the server uses selector based non-blocking sockets.
+	 * @param nonBlockingIO True if the server uses non-blocking sockets.  False otherwise.
+	 * 
+	 * @since 1.3
+	 */
+	public void setNonBlockingIO(boolean nonBlockingIO)
+	{
+		this.nonBlockingIO = nonBlockingIO;
+	}
 }
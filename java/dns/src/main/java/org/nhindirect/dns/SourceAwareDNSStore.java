@@ -0,0 +1,43 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Umesh Madan     umeshma@microsoft.com
+    Chris Lomonico  chris.lomonico@surescripts.com
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.net.InetAddress;
+
+import org.xbill.DNS.Message;
+
+/**
+ * A {@link DNSStore} whose answer to a request depends on who sent the request and how it was received, such as a store that only answers
+ * zone transfers for known secondary servers over TCP.  Responders pass the source address and transport of each request to stores that 
+ * implement this interface.
+ * 
+ * @since 1.3
+ */
+public interface SourceAwareDNSStore extends DNSStore 
+{
+	/**
+	 * Processes a DNS request received from a known source.
+	 * @param dnsMsg The DNS request message.
+	 * @param source The address the request was received from.  May be null if the source is not known.
+	 * @param streamTransport True if the request was received over a stream transport (TCP).  False if it was received over UDP.
+	 * @return The DNS response message.  Returns null for lookup requests if a matching record cannot be found.
+	 * @throws DNSException Thrown is the request fails due to sever failure such as illegal request parameters or
+	 * a failure accessing the physical record medium.
+	 */
+	public Message get(Message dnsMsg, InetAddress source, boolean streamTransport) throws DNSException;
+}
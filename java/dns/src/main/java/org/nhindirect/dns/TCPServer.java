@@ -26,8 +26,6 @@ import java.net.Socket;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
-import org.xbill.DNS.Section;
 
 /**
  * TCP socket server that handled DNS requests over TCP.
@@ -41,10 +39,6 @@ public class TCPServer extends DNSSocketServer
 	
 	private ServerSocket serverSocket;
 	
-	private volatile long missCount = 0;
-	private volatile long errorCount = 0;
-	private volatile long successCount = 0;	
-	
 	/**
 	 * Creates a TCP socket server.  The server will not start accepting messages until the {@link #start()} method is called.
 	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
@@ -198,9 +192,11 @@ public class TCPServer extends DNSSocketServer
 	private class RequestTask implements Runnable
 	{
 		private Socket requestSocket;
+		private final long startTime;
 		
 		public RequestTask(Socket s)
 		{
+			startTime = System.nanoTime();
 			requestSocket = s;
 		}
 		
@@ -226,7 +222,7 @@ public class TCPServer extends DNSSocketServer
 				{
 					query = responder.toMessage(in);
 					
-					response = responder.processRequest(query);
+					response = responder.processRequest(query, requestSocket.getInetAddress());
 				}
 				catch (DNSException e) 
 				{					
@@ -234,24 +230,17 @@ public class TCPServer extends DNSSocketServer
 						response = responder.processError(query, e.getError());
 				}
 
+				recordResponse(query, response, startTime);
+
 				if (response != null)
 				{
-					if (response.getRcode() == Rcode.NOERROR || response.getRcode() == Rcode.NXDOMAIN)
+					dataOut = new DataOutputStream(requestSocket.getOutputStream());
+					for (byte[] writeBytes : responder.toStreamBytes(response))
 					{
-						++successCount;
-						if (response.getSectionArray(Section.ANSWER).length == 0)
-							++missCount;	
+						dataOut.writeShort(writeBytes.length);
+						dataOut.write(writeBytes);
 					}
-					else
-						++errorCount;	
-						
-					dataOut = new DataOutputStream(requestSocket.getOutputStream());
-					byte[] writeBytes = response.toWire();
-					dataOut.writeShort(writeBytes.length);
-					dataOut.write(writeBytes);
 				}
-				else
-					++errorCount;
 			}
 			catch (IOException e)
 			{
@@ -268,31 +257,4 @@ public class TCPServer extends DNSSocketServer
 		}
 			
 	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getMissedRequestCount() 
-	{
-		return missCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getSuccessfulRequestCount() 
-	{
-		return successCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getErrorRequestCount()
-	{
-		return errorCount;
-	}
 }
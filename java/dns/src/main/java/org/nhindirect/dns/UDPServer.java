@@ -24,8 +24,6 @@ import java.net.Inet4Address;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
-import org.xbill.DNS.Section;
 
 /**
  * UDP socket server that handled DNS requests over UDP.
@@ -36,15 +34,9 @@ public class UDPServer extends DNSSocketServer
 {
 	private static final Log LOGGER = LogFactory.getFactory().getInstance(UDPServer.class);
 	
-	private static final int MAX_WIRE_SIZE = 512;
-	
 	
 	private DatagramSocket serverSock;
 	
-	private volatile long missCount = 0;
-	private volatile long errorCount = 0;
-	private volatile long successCount = 0;	
-	
 	/**
 	 * Creates a UDP server that listens to datagram packets.  The server will not start accepting messages until the {@link #start()} method is called.
 	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
@@ -196,9 +188,11 @@ public class UDPServer extends DNSSocketServer
 	public class RequestTask implements Runnable
 	{
 		private DatagramPacket inPacket;
+		private final long startTime;
 		
 		public RequestTask(DatagramPacket inPacket)
 		{
+			startTime = System.nanoTime();
 			this.inPacket = inPacket;
 		}
 		
@@ -216,7 +210,7 @@ public class UDPServer extends DNSSocketServer
 				{
 					query = responder.toMessage(inPacket.getData());
 					
-					response = responder.processRequest(query);
+					response = responder.processRequest(query, inPacket.getAddress());
 				}
 				catch (DNSException e) 
 				{
@@ -224,18 +218,11 @@ public class UDPServer extends DNSSocketServer
 						response = responder.processError(query, e.getError());
 				}
 
+				recordResponse(query, response, startTime);
+
 				if (response != null)
 				{
-					if (response.getRcode() == Rcode.NOERROR || response.getRcode() == Rcode.NXDOMAIN)
-					{
-						++successCount;
-						if (response.getSectionArray(Section.ANSWER).length == 0)
-							++missCount;	
-					}
-					else
-						++errorCount;					
-					
-					byte[] writeBytes = response.toWire(MAX_WIRE_SIZE);
+					byte[] writeBytes = responder.toDatagramBytes(query, response);
 					outPacket = new DatagramPacket(writeBytes,
 							writeBytes.length,
 							inPacket.getAddress(),
@@ -243,8 +230,6 @@ public class UDPServer extends DNSSocketServer
 					
 					serverSock.send(outPacket);
 				}
-				else
-					++errorCount;				
 			}
 			catch (IOException e)
 			{
@@ -253,31 +238,4 @@ public class UDPServer extends DNSSocketServer
 		}
 			
 	}
-	
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getMissedRequestCount() 
-	{
-		return missCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getSuccessfulRequestCount() 
-	{
-		return successCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getErrorRequestCount()
-	{
-		return errorCount;
-	}
 }
@@ -0,0 +1,767 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.annotation.ConfigServiceURL;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Opcode;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Serial;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+import com.google.inject.Inject;
+
+/**
+ * Implementation of the {@link DNSStore} interface that serves requests from an in memory snapshot of all DNS records and certificates
+ * held by the Direct Project configuration web service.  The snapshot is an immutable index keyed by record name and type that is
+ * loaded when the store is created and replaced atomically on a configurable refresh interval.  Lookups never call the configuration
+ * service, so query latency is independent of the service and the store continues to answer from the last good snapshot if the 
+ * configuration service becomes unavailable.
+ * <p>
+ * The refresh interval is configured in seconds using the -Dorg.nhindirect.dns.ZoneSnapshotRefreshInterval JVM parameter.  An interval of 0 or less
+ * disables the background refresh.  If the initial snapshot cannot be loaded, requests are passed through to the configuration service until 
+ * a refresh succeeds.
+ * <p>
+ * The store can also act as the primary server of the zones defined by its SOA records so secondary servers such as {@link SecondaryZoneDNSStore} 
+ * can serve the zones from a local copy.  Zone transfers (AXFR and IXFR) are only answered over TCP for the comma delimited host addresses in the 
+ * -Dorg.nhindirect.dns.ZoneTransferAllowedAddresses JVM parameter; transfers are refused if the parameter is not set.  IXFR requests are answered 
+ * with the full zone, or with only the SOA record if the requester is up to date.  When a refresh changes the contents of a zone, the SOA serial 
+ * number served for the zone is incremented and a NOTIFY message is sent to each of the comma delimited host[:port] addresses in the 
+ * -Dorg.nhindirect.dns.ZoneTransferNotifyAddresses JVM parameter.
+ * @since 1.3
+ */
+public class ZoneSnapshotDNSStore extends ConfigServiceDNSStore implements SourceAwareDNSStore
+{
+	protected static final String REFRESH_INTERVAL_SYS_PARAM = "org.nhindirect.dns.ZoneSnapshotRefreshInterval";
+	protected static final long DEFAULT_REFRESH_INTERVAL = 300; // 5 minutes
+	
+	protected static final String ZONE_TRANSFER_ALLOWED_ADDRESSES_SYS_PARAM = "org.nhindirect.dns.ZoneTransferAllowedAddresses";
+	protected static final String NOTIFY_ADDRESSES_SYS_PARAM = "org.nhindirect.dns.ZoneTransferNotifyAddresses";
+	protected static final int DEFAULT_DNS_PORT = 53;
+	protected static final int NOTIFY_TIMEOUT = 5; // seconds
+	
+	protected final AtomicReference<ZoneSnapshot> snapshot = new AtomicReference<ZoneSnapshot>();
+	
+	protected volatile Set<InetAddress> zoneTransferAllowedAddresses = getZoneTransferAllowedAddresses();
+	protected final List<InetSocketAddress> notifyAddresses = getNotifyAddresses();
+	
+	protected final ScheduledExecutorService refreshExecutor;
+	
+	/**
+	 * Gets the configured snapshot refresh interval in seconds.  This is configured using the
+	 * -Dorg.nhindirect.dns.ZoneSnapshotRefreshInterval JVM parameter.  If the parameter is not set or is invalid,
+	 * then the default interval of 300 seconds is returned.
+	 * @return The snapshot refresh interval in seconds.
+	 */
+	public static long getRefreshInterval()
+	{
+		final String interval = System.getProperty(REFRESH_INTERVAL_SYS_PARAM);
+		
+		if (interval == null || interval.isEmpty())
+			return DEFAULT_REFRESH_INTERVAL;
+		
+		try
+		{
+			return Long.parseLong(interval);
+		}
+		catch (NumberFormatException e)
+		{
+			LOGGER.warn("Invalid zone snapshot refresh interval " + interval + ".  Using default interval.");
+			return DEFAULT_REFRESH_INTERVAL;
+		}
+	}
+	
+	/**
+	 * Gets the addresses of the secondary servers that are notified when a zone changes.  This is configured using the
+	 * -Dorg.nhindirect.dns.ZoneTransferNotifyAddresses JVM parameter as a comma delimited list of host[:port] entries.  The port defaults to 53.
+	 * @return The addresses of the secondary servers.  Returns an empty list if the parameter is not set.
+	 */
+	public static List<InetSocketAddress> getNotifyAddresses()
+	{
+		final String addresses = System.getProperty(NOTIFY_ADDRESSES_SYS_PARAM);
+		if (addresses == null || addresses.trim().isEmpty())
+			return Collections.emptyList();
+		
+		final List<InetSocketAddress> retVal = new ArrayList<InetSocketAddress>();
+		for (String address : addresses.split(","))
+		{
+			address = address.trim();
+			if (address.isEmpty())
+				continue;
+			
+			final int index = address.lastIndexOf(':');
+			try
+			{
+				if (index > 0)
+					retVal.add(InetSocketAddress.createUnresolved(address.substring(0, index), Integer.parseInt(address.substring(index + 1))));
+				else
+					retVal.add(InetSocketAddress.createUnresolved(address, DEFAULT_DNS_PORT));
+			}
+			catch (NumberFormatException e)
+			{
+				LOGGER.warn("Invalid zone transfer notify address " + address + ".  The address will not be notified.");
+			}
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Gets the addresses of the secondary servers that are allowed to transfer zones.  This is configured using the
+	 * -Dorg.nhindirect.dns.ZoneTransferAllowedAddresses JVM parameter as a comma delimited list of host names or IP addresses.
+	 * @return The addresses allowed to transfer zones.  Returns an empty set if the parameter is not set, in which case all transfers are refused.
+	 */
+	public static Set<InetAddress> getZoneTransferAllowedAddresses()
+	{
+		final String addresses = System.getProperty(ZONE_TRANSFER_ALLOWED_ADDRESSES_SYS_PARAM);
+		if (addresses == null || addresses.trim().isEmpty())
+			return Collections.emptySet();
+		
+		final Set<InetAddress> retVal = new HashSet<InetAddress>();
+		for (String address : addresses.split(","))
+		{
+			address = address.trim();
+			if (address.isEmpty())
+				continue;
+			
+			try
+			{
+				retVal.addAll(Arrays.asList(InetAddress.getAllByName(address)));
+			}
+			catch (UnknownHostException e)
+			{
+				LOGGER.warn("Invalid zone transfer allowed address " + address + ".  Transfers from the address will be refused.");
+			}
+		}
+		
+		return Collections.unmodifiableSet(retVal);
+	}
+	
+	/**
+	 * Creates a store that loads its snapshot from the configuration service and refreshes it using the configured interval.
+	 * @param serviceURL The URL of the configuration service.
+	 */
+	@Inject
+	public ZoneSnapshotDNSStore(@ConfigServiceURL URL serviceURL)
+	{
+		this(serviceURL, getRefreshInterval());
+	}
+	
+	/**
+	 * Creates a store that loads its snapshot from the configuration service and refreshes it using the provided interval.
+	 * @param serviceURL The URL of the configuration service.
+	 * @param refreshInterval The snapshot refresh interval in seconds.  An interval of 0 or less disables the background refresh.
+	 */
+	public ZoneSnapshotDNSStore(URL serviceURL, long refreshInterval)
+	{
+		this(new ConfigurationServiceProxy(serviceURL.toString()), refreshInterval);
+	}
+	
+	/**
+	 * Creates a store that loads its snapshot using an existing configuration service proxy.
+	 * @param proxy The configuration service proxy.
+	 * @param refreshInterval The snapshot refresh interval in seconds.  An interval of 0 or less disables the background refresh.
+	 */
+	protected ZoneSnapshotDNSStore(ConfigurationServiceProxy proxy, long refreshInterval)
+	{
+		super(proxy);
+		
+		refresh();
+		
+		if (refreshInterval > 0)
+		{
+			refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					final Thread thread = new Thread(r, "ZoneSnapshotDNSStore refresh");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			
+			refreshExecutor.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					refresh();
+				}
+			}, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+		}
+		else
+			refreshExecutor = null;
+	}
+	
+	/**
+	 * Loads a new snapshot from the configuration service and swaps it in place of the current snapshot.  If the snapshot cannot be
+	 * loaded, the current snapshot is retained.
+	 * @return True if a new snapshot was loaded.  False otherwise.
+	 */
+	public boolean refresh()
+	{
+		try
+		{
+			final ZoneSnapshot newSnapshot = loadSnapshot();
+			final ZoneSnapshot oldSnapshot = snapshot.getAndSet(newSnapshot);
+			
+			if (LOGGER.isDebugEnabled())
+				LOGGER.debug("Loaded zone snapshot with " + newSnapshot.recordCount + " DNS records and " + newSnapshot.certRecordCount + " CERT records.");
+			
+			if (oldSnapshot != null && !notifyAddresses.isEmpty())
+			{
+				for (Record soa : newSnapshot.soaRecords.values())
+				{
+					final Record oldSoa = oldSnapshot.soaRecords.get(normalizeName(soa.getName().toString()));
+					if (oldSoa == null || ((SOARecord)oldSoa).getSerial() != ((SOARecord)soa).getSerial())
+						sendNotify(soa);
+				}
+			}
+			
+			return true;
+		}
+		catch (DNSException e)
+		{
+			LOGGER.warn("Failed to refresh zone snapshot from config service.  The previous snapshot will be used: " + e.getMessage(), e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Stops the background snapshot refresh.
+	 */
+	public void shutdown()
+	{
+		if (refreshExecutor != null)
+			refreshExecutor.shutdownNow();
+	}
+	
+	/**
+	 * Sets the addresses of the secondary servers that are allowed to transfer zones.
+	 * @param addresses The addresses allowed to transfer zones.  A null or empty collection refuses all transfers.
+	 */
+	public void setZoneTransferAllowedAddresses(Collection<InetAddress> addresses)
+	{
+		this.zoneTransferAllowedAddresses = (addresses == null) ? Collections.<InetAddress>emptySet() :
+			Collections.unmodifiableSet(new HashSet<InetAddress>(addresses));
+	}
+	
+	/**
+	 * Indicates if zone transfers are enabled.  Transfers are enabled when at least one address is allowed to transfer zones.
+	 * @return True if AXFR and IXFR requests are answered for allowed addresses.  False otherwise.
+	 */
+	public boolean isZoneTransferEnabled()
+	{
+		return !zoneTransferAllowedAddresses.isEmpty();
+	}
+	
+	/**
+	 * Gets the time the current snapshot was loaded.
+	 * @return The time in milliseconds that the current snapshot was loaded.  Returns 0 if a snapshot has not been loaded.
+	 */
+	public long getSnapshotTime()
+	{
+		final ZoneSnapshot current = snapshot.get();
+		
+		return (current == null) ? 0 : current.loadTime;
+	}
+	
+	/**
+	 * Loads all DNS records and certificates from the configuration service and builds an immutable snapshot.
+	 * @return The newly built snapshot.
+	 * @throws DNSException Thrown if the records cannot be retrieved from the configuration service.
+	 */
+	protected ZoneSnapshot loadSnapshot() throws DNSException
+	{
+		DnsRecord[] records;
+		Certificate[] certs;
+		
+		try
+		{
+			records = proxy.getDNSByType(Type.ANY);
+			certs = proxy.listCertificates(0, Integer.MAX_VALUE, null);
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for zone snapshot failed: " + e.getMessage(), e);
+		}
+		
+		final Map<String, Map<Integer, RRset>> recordIndex = new HashMap<String, Map<Integer, RRset>>();
+		final Map<String, Record> soaIndex = new HashMap<String, Record>();
+		int recordCount = 0;
+		
+		if (records != null)
+		{
+			for (DnsRecord record : records)
+			{
+				final Record rec;
+				try
+				{
+					rec = Record.newRecord(Name.fromString(record.getName()), record.getType(), 
+							record.getDclass(), record.getTtl(), record.getData());
+				}
+				catch (Exception e)
+				{
+					LOGGER.warn("Failure while parsing generic record data for " + record.getName() + ".  Record will not be served: " + e.getMessage());
+					continue;
+				}
+				
+				final String name = normalizeName(record.getName());
+				Map<Integer, RRset> typeIndex = recordIndex.get(name);
+				if (typeIndex == null)
+				{
+					typeIndex = new HashMap<Integer, RRset>();
+					recordIndex.put(name, typeIndex);
+				}
+				
+				RRset set = typeIndex.get(rec.getType());
+				if (set == null)
+				{
+					set = new RRset();
+					typeIndex.put(rec.getType(), set);
+				}
+				set.addRR(rec);
+				
+				if (rec.getType() == Type.SOA)
+					soaIndex.put(normalizeName(rec.getName().toString()), rec);
+				
+				++recordCount;
+			}
+		}
+		
+		final Map<String, List<Certificate>> ownerCerts = new HashMap<String, List<Certificate>>();
+		final Map<String, Integer> certOwnerPriority = new HashMap<String, Integer>();
+		
+		if (certs != null)
+		{
+			for (Certificate cert : certs)
+			{
+				if (cert.getOwner() == null || cert.getOwner().isEmpty())
+					continue;
+				
+				final String name = getCERTRecordName(cert.getOwner());
+				final int priority = cert.getOwner().indexOf('@');
+				final Integer existingPriority = certOwnerPriority.get(name);
+				if (existingPriority != null && existingPriority.intValue() < priority)
+					continue;
+				
+				List<Certificate> certList = ownerCerts.get(name);
+				if (certList == null || existingPriority.intValue() > priority)
+				{
+					certList = new ArrayList<Certificate>();
+					ownerCerts.put(name, certList);
+					certOwnerPriority.put(name, priority);
+				}
+				certList.add(cert);
+			}
+		}
+		
+		final Map<String, RRset> certIndex = new HashMap<String, RRset>();
+		int certRecordCount = 0;
+		
+		for (Map.Entry<String, List<Certificate>> entry : ownerCerts.entrySet())
+		{
+			// unchanged certificates reuse the RRsets built for the previous snapshot
+			try
+			{
+				final RRset set = getCERTRRset(entry.getKey(), entry.getValue().toArray(new Certificate[entry.getValue().size()]));
+				certIndex.put(entry.getKey(), set);
+				certRecordCount += set.size();
+			}
+			catch (DNSException e)
+			{
+				LOGGER.warn("Failure while parsing CERT record data for " + entry.getKey() + ".  Records will not be served: " + e.getMessage());
+			}
+		}
+		
+		final Map<String, List<Record>> zoneIndex = new HashMap<String, List<Record>>();
+		final Map<String, byte[]> digestIndex = new HashMap<String, byte[]>();
+		indexZones(recordIndex, soaIndex, certIndex, zoneIndex, digestIndex);
+		
+		return new ZoneSnapshot(recordIndex, soaIndex, certIndex, zoneIndex, digestIndex, recordCount, certRecordCount);
+	}
+	
+	/**
+	 * Groups the records of the snapshot by the zone that they belong to and sets the SOA serial number of each zone.  A record belongs to the closest zone 
+	 * that encloses its name.  The serial number of a zone is the configured serial number unless the zone changed since the previous snapshot without 
+	 * the configured serial number being increased, in which case the previously served serial number is incremented.  This ensures secondaries detect
+	 * changes such as new certificates that do not touch the configured SOA record.
+	 * @param recordIndex The records of the snapshot by name and type.  SOA RRsets are replaced if the served serial number differs from the configured serial number.
+	 * @param soaIndex The SOA records by zone name.  SOA records are replaced if the served serial number differs from the configured serial number.
+	 * @param certIndex The CERT records by name.
+	 * @param zoneIndex Populated with the records of each zone excluding the SOA record.
+	 * @param digestIndex Populated with the digest of the contents of each zone.
+	 */
+	protected void indexZones(Map<String, Map<Integer, RRset>> recordIndex, Map<String, Record> soaIndex, Map<String, RRset> certIndex, 
+			Map<String, List<Record>> zoneIndex, Map<String, byte[]> digestIndex)
+	{
+		if (soaIndex.isEmpty())
+			return;
+		
+		for (String zone : soaIndex.keySet())
+			zoneIndex.put(zone, new ArrayList<Record>());
+		
+		for (Map.Entry<String, Map<Integer, RRset>> entry : recordIndex.entrySet())
+		{
+			final String zone = findZone(entry.getKey(), soaIndex);
+			if (zone == null)
+				continue;
+			
+			for (RRset set : entry.getValue().values())
+				if (set.getType() != Type.SOA)
+					addRecords(zoneIndex.get(zone), set);
+		}
+		
+		for (Map.Entry<String, RRset> entry : certIndex.entrySet())
+		{
+			final String zone = findZone(entry.getKey(), soaIndex);
+			if (zone != null)
+				addRecords(zoneIndex.get(zone), entry.getValue());
+		}
+		
+		final ZoneSnapshot previous = snapshot.get();
+		for (Map.Entry<String, List<Record>> entry : zoneIndex.entrySet())
+		{
+			final String zone = entry.getKey();
+			final SOARecord soa = (SOARecord)soaIndex.get(zone);
+			final byte[] digest = digestZone(soa, entry.getValue());
+			digestIndex.put(zone, digest);
+			
+			if (previous == null || !previous.soaRecords.containsKey(zone))
+				continue;
+			
+			final long configuredSerial = soa.getSerial();
+			final long previousSerial = ((SOARecord)previous.soaRecords.get(zone)).getSerial();
+			long serial = configuredSerial;
+			if (Serial.compare(configuredSerial, previousSerial) <= 0)
+				serial = Arrays.equals(digest, previous.zoneDigests.get(zone)) ? previousSerial : Serial.increment(previousSerial);
+			
+			if (serial != configuredSerial)
+			{
+				final SOARecord servedSoa = new SOARecord(soa.getName(), soa.getDClass(), soa.getTTL(), soa.getHost(), soa.getAdmin(), 
+						serial, soa.getRefresh(), soa.getRetry(), soa.getExpire(), soa.getMinimum());
+				final RRset soaSet = new RRset();
+				soaSet.addRR(servedSoa);
+				soaIndex.put(zone, servedSoa);
+				recordIndex.get(zone).put(Type.SOA, soaSet);
+			}
+		}
+	}
+	
+	/*
+	 * Adds all records of an RRset to a list
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addRecords(List<Record> records, RRset set)
+	{
+		final Iterator<Record> iter = set.rrs();
+		while (iter.hasNext())
+			records.add(iter.next());
+	}
+	
+	/*
+	 * Creates an order independent digest of the contents of a zone.  The serial number is not part of the digest.
+	 */
+	private static byte[] digestZone(SOARecord soa, List<Record> records)
+	{
+		final List<String> recordStrings = new ArrayList<String>(records.size() + 1);
+		recordStrings.add(new SOARecord(soa.getName(), soa.getDClass(), soa.getTTL(), soa.getHost(), soa.getAdmin(), 
+				0, soa.getRefresh(), soa.getRetry(), soa.getExpire(), soa.getMinimum()).toString());
+		for (Record record : records)
+			recordStrings.add(record.toString());
+		Collections.sort(recordStrings);
+		
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (String recordString : recordStrings)
+				digest.update(recordString.getBytes("UTF-8"));
+			
+			return digest.digest();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-1 digest algorithm is not available.", e);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("UTF-8 encoding is not available.", e);
+		}
+	}
+	
+	/*
+	 * Finds the closest zone that encloses a name by taking apart the name . by .
+	 */
+	private static String findZone(String name, Map<String, Record> soaIndex)
+	{
+		String zone = normalizeName(name);
+		int index = -1;
+		while (!soaIndex.containsKey(zone))
+		{
+			if ((index = zone.indexOf(".")) <= 0 || index >= (zone.length() - 1))
+				return null;
+			
+			zone = zone.substring(index + 1);
+		}
+		
+		return zone;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * Zone transfer requests are refused as the source of the request is not known.
+	 */
+	@Override
+	public Message get(Message request) throws DNSException
+	{
+		return get(request, null, false);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Message get(Message request, InetAddress source, boolean streamTransport) throws DNSException
+	{
+		final Record question = (request == null) ? null : request.getQuestion();
+		if (question != null && request.getHeader().getOpcode() == Opcode.QUERY && !request.getHeader().getFlag(Flags.QR) &&
+				(question.getType() == Type.AXFR || question.getType() == Type.IXFR))
+			return processZoneTransferRequest(request, source, streamTransport);
+		
+		return super.get(request);
+	}
+	
+	/**
+	 * Answers an AXFR or IXFR request with the contents of a zone from the current snapshot.  The response holds the SOA record, all other
+	 * records of the zone, and the SOA record again.  IXFR requests with a serial number that is not older than the served serial number
+	 * are answered with only the SOA record.  The requester is checked before any part of the zone is read.
+	 * @param request The zone transfer request.
+	 * @param source The address the request was received from.
+	 * @param streamTransport True if the request was received over TCP.
+	 * @return The zone transfer response.
+	 * @throws DNSException Thrown if the request was not received over TCP from an allowed address, the snapshot is not loaded, or the store 
+	 * is not authoritative for the zone.
+	 */
+	protected Message processZoneTransferRequest(Message request, InetAddress source, boolean streamTransport) throws DNSException
+	{
+		final Set<InetAddress> allowedAddresses = zoneTransferAllowedAddresses;
+		if (allowedAddresses.isEmpty())
+			throw new DNSException(DNSError.newError(Rcode.REFUSED), "Zone transfers are not enabled.");
+		
+		// a zone does not fit in a datagram, so do not build one for a UDP request only to have it truncated
+		if (!streamTransport)
+			throw new DNSException(DNSError.newError(Rcode.REFUSED), "Zone transfers are only answered over TCP.");
+		
+		if (source == null || !allowedAddresses.contains(source))
+			throw new DNSException(DNSError.newError(Rcode.REFUSED), "Zone transfers are not allowed for " + source);
+		
+		final ZoneSnapshot current = snapshot.get();
+		if (current == null)
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Zone snapshot has not been loaded.");
+		
+		final Record question = request.getQuestion();
+		final String zone = normalizeName(question.getName().toString());
+		final SOARecord soa = (SOARecord)current.soaRecords.get(zone);
+		if (soa == null)
+			throw new DNSException(DNSError.newError(Rcode.NOTAUTH), "Not authoritative for zone " + zone);
+		
+		final Message response = new Message(request.getHeader().getID());
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setFlag(Flags.AA);
+		response.addRecord(question, Section.QUESTION);
+		response.addRecord(soa, Section.ANSWER);
+		
+		if (question.getType() == Type.IXFR)
+		{
+			for (Record record : request.getSectionArray(Section.AUTHORITY))
+			{
+				if (record instanceof SOARecord && Serial.compare(((SOARecord)record).getSerial(), soa.getSerial()) >= 0)
+				{
+					// the requester is up to date
+					return response;
+				}
+			}
+		}
+		
+		for (Record record : current.zones.get(zone))
+			response.addRecord(record, Section.ANSWER);
+		response.addRecord(soa, Section.ANSWER);
+		
+		return response;
+	}
+	
+	/**
+	 * Sends a NOTIFY message for a zone to all configured secondary servers.  Failures are logged and ignored as secondaries also poll
+	 * for changes on their refresh interval.
+	 * @param soa The SOA record of the zone that changed.
+	 */
+	protected void sendNotify(Record soa)
+	{
+		final Message notify = new Message();
+		notify.getHeader().setOpcode(Opcode.NOTIFY);
+		notify.getHeader().setFlag(Flags.AA);
+		notify.addRecord(Record.newRecord(soa.getName(), Type.SOA, DClass.IN), Section.QUESTION);
+		notify.addRecord(soa, Section.ANSWER);
+		
+		for (InetSocketAddress address : notifyAddresses)
+		{
+			try
+			{
+				final SimpleResolver resolver = new SimpleResolver(address.getHostName());
+				resolver.setPort(address.getPort());
+				resolver.setTimeout(NOTIFY_TIMEOUT);
+				resolver.send(notify);
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn("Failed to send NOTIFY for zone " + soa.getName() + " to " + address + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+	{
+		final ZoneSnapshot current = snapshot.get();
+		if (current == null)
+			return super.processGenericRecordRequest(name, type);
+		
+		final Map<Integer, RRset> typeIndex = current.records.get(normalizeName(name));
+		
+		return (typeIndex == null) ? null : typeIndex.get(type);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
+	{
+		final ZoneSnapshot current = snapshot.get();
+		if (current == null)
+			return super.processGenericANYRecordRequest(name);
+		
+		final Map<Integer, RRset> typeIndex = current.records.get(normalizeName(name));
+		if (typeIndex == null)
+			return null;
+		
+		final Collection<Record> retVal = new ArrayList<Record>();
+		for (RRset set : typeIndex.values())
+		{
+			final Iterator<Record> iter = set.rrs();
+			while (iter.hasNext())
+				retVal.add(iter.next());
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected RRset processCERTRecordRequest(String name) throws DNSException
+	{
+		final ZoneSnapshot current = snapshot.get();
+		if (current == null)
+			return super.processCERTRecordRequest(name);
+		
+		return current.certs.get(normalizeName(name));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Record checkForSoaRecord(String questionName)
+	{
+		final ZoneSnapshot current = snapshot.get();
+		if (current == null)
+			return super.checkForSoaRecord(questionName);
+		
+		if (current.soaRecords.isEmpty())
+			return null;
+		
+		final String zone = findZone(questionName, current.soaRecords);
+		
+		return (zone == null) ? null : current.soaRecords.get(zone);
+	}
+	
+	/**
+	 * Immutable index of all records served by the store.  RRsets are never modified once the snapshot is built.
+	 * @since 1.3
+	 */
+	protected static class ZoneSnapshot
+	{
+		final Map<String, Map<Integer, RRset>> records;
+		final Map<String, Record> soaRecords;
+		final Map<String, RRset> certs;
+		final Map<String, List<Record>> zones;
+		final Map<String, byte[]> zoneDigests;
+		final int recordCount;
+		final int certRecordCount;
+		final long loadTime;
+		
+		ZoneSnapshot(Map<String, Map<Integer, RRset>> records, Map<String, Record> soaRecords, Map<String, RRset> certs,
+				Map<String, List<Record>> zones, Map<String, byte[]> zoneDigests, int recordCount, int certRecordCount)
+		{
+			this.records = Collections.unmodifiableMap(records);
+			this.soaRecords = Collections.unmodifiableMap(soaRecords);
+			this.certs = Collections.unmodifiableMap(certs);
+			this.zones = Collections.unmodifiableMap(zones);
+			this.zoneDigests = Collections.unmodifiableMap(zoneDigests);
+			this.recordCount = recordCount;
+			this.certRecordCount = certRecordCount;
+			this.loadTime = System.currentTimeMillis();
+		}
+	}
+}
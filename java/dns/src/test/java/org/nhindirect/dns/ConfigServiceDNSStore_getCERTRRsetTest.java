@@ -0,0 +1,94 @@
+package org.nhindirect.dns;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.RRset;
+
+public class ConfigServiceDNSStore_getCERTRRsetTest extends TestCase
+{
+	protected Certificate createCertificate(long id, String fileName) throws Exception
+	{
+		final Certificate cert = new Certificate();
+		cert.setId(id);
+		cert.setOwner("gm2552@securehealthemail.com");
+		cert.setData(DNSRecordUtil.loadCertificate(fileName).getEncoded());
+		
+		return cert;
+	}
+	
+	protected CountingConfigServiceDNSStore createStore()
+	{
+		return new CountingConfigServiceDNSStore(mock(ConfigurationServiceProxy.class));
+	}
+	
+	public void testGetCERTRRset_sameCertificates_assertRRsetReused() throws Exception
+	{
+		final CountingConfigServiceDNSStore store = createStore();
+		
+		final RRset set1 = store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		final RRset set2 = store.getCERTRRset("GM2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		
+		assertSame(set1, set2);
+		assertEquals(1, set1.size());
+		assertEquals(1, store.recordsCreated.get());
+	}
+	
+	public void testGetCERTRRset_certificateChanged_assertRRsetRebuilt() throws Exception
+	{
+		final CountingConfigServiceDNSStore store = createStore();
+		
+		final RRset set1 = store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		final RRset set2 = store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "umesh.der")});
+		
+		assertNotSame(set1, set2);
+		assertEquals(2, store.recordsCreated.get());
+	}
+	
+	public void testGetCERTRRset_certificateAdded_assertRRsetRebuilt() throws Exception
+	{
+		final CountingConfigServiceDNSStore store = createStore();
+		
+		store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		final RRset set = store.getCERTRRset("gm2552.securehealthemail.com.", 
+				new Certificate[] {createCertificate(1, "gm2552.der"), createCertificate(2, "umesh.der")});
+		
+		assertEquals(2, set.size());
+		assertEquals(3, store.recordsCreated.get());
+	}
+	
+	public void testGetCERTRRset_flushCache_assertRRsetRebuilt() throws Exception
+	{
+		final CountingConfigServiceDNSStore store = createStore();
+		
+		store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		store.flushCERTRecordCache();
+		store.getCERTRRset("gm2552.securehealthemail.com.", new Certificate[] {createCertificate(1, "gm2552.der")});
+		
+		assertEquals(2, store.recordsCreated.get());
+	}
+	
+	static class CountingConfigServiceDNSStore extends ConfigServiceDNSStore
+	{
+		final AtomicInteger recordsCreated = new AtomicInteger();
+		
+		CountingConfigServiceDNSStore(ConfigurationServiceProxy proxy)
+		{
+			super(proxy);
+		}
+		
+		@Override
+		protected CERTRecord createCERTRecord(String name, Certificate cert) throws DNSException
+		{
+			recordsCreated.incrementAndGet();
+			return super.createCERTRecord(name, cert);
+		}
+	}
+}
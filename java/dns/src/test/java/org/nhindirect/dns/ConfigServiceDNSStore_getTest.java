@@ -0,0 +1,215 @@
+package org.nhindirect.dns;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+
+import junit.framework.TestCase;
+
+import org.mockito.ArgumentCaptor;
+import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class ConfigServiceDNSStore_getTest extends TestCase
+{
+	protected ConfigurationServiceProxy proxy;
+	protected Certificate cert;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		System.clearProperty(ConfigServiceDNSStore.OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM);
+		
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		cert = new Certificate();
+		cert.setOwner("gm2552@securehealthemail.com");
+		cert.setData(xCert.getEncoded());
+		
+		proxy = mock(ConfigurationServiceProxy.class);
+		when(proxy.getDNSByType(Type.SOA)).thenReturn(new DnsRecord[] {
+				DNSRecordUtil.createSOARecord("securehealthemail.com", "ns.securehealthemail.com", "hostmaster.securehealthemail.com")});
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+		when(proxy.getCertificatesForOwner(eq("gm2552@securehealthemail.com"), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+	}
+	
+	@Override
+	public void tearDown()
+	{
+		System.clearProperty(ConfigServiceDNSStore.OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM);
+	}
+	
+	protected Message query(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	public void testGet_addressCERTRecord_assertSingleOwnerLookup() throws Exception
+	{
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		final Message response = store.get(query("gm2552.securehealthemail.com.", Type.CERT));
+		
+		assertNotNull(response);
+		assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+		
+		verify(proxy, times(1)).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+		verify(proxy, times(1)).getCertificatesForOwner(eq("gm2552@securehealthemail.com"), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_unknownCERTRecord_assertNoOwnerLookupAndNegativelyCached() throws Exception
+	{
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNull(store.get(query("unknown.user.securehealthemail.com.", Type.CERT)));
+		assertNull(store.get(query("unknown.user.securehealthemail.com.", Type.CERT)));
+		
+		verify(proxy, never()).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+		verify(proxy, times(1)).listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any());
+		assertEquals(1, store.negativeCache.size());
+	}
+	
+	public void testGet_unknownARecord_assertNegativelyCached() throws Exception
+	{
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNull(store.get(query("unknown.securehealthemail.com.", Type.A)));
+		assertNull(store.get(query("unknown.securehealthemail.com.", Type.A)));
+		
+		verify(proxy, times(1)).getDNSByNameAndType("unknown.securehealthemail.com.", Type.A);
+	}
+	
+	public void testGet_unknownARecordNoSOA_assertNotNegativelyCached() throws Exception
+	{
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNull(store.get(query("unknown.example.com.", Type.A)));
+		assertNull(store.get(query("unknown.example.com.", Type.A)));
+		
+		verify(proxy, times(2)).getDNSByNameAndType("unknown.example.com.", Type.A);
+		assertTrue(store.negativeCache.isEmpty());
+	}
+	
+	public void testGet_ownerIndexDisabled_assertOwnerNamesProbed() throws Exception
+	{
+		System.setProperty(ConfigServiceDNSStore.OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM, "0");
+		
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNotNull(store.get(query("gm2552.securehealthemail.com.", Type.CERT)));
+		
+		verify(proxy, never()).listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any());
+		verify(proxy, times(2)).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_ownerIndexLoadFails_assertOwnerNamesProbed() throws Exception
+	{
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenThrow(new RuntimeException("Config service unavailable"));
+		
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNotNull(store.get(query("gm2552.securehealthemail.com.", Type.CERT)));
+		
+		verify(proxy, times(2)).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_ownerIndexExpired_assertStaleIndexServedAndReloadedInBackground() throws Exception
+	{
+		System.setProperty(ConfigServiceDNSStore.OWNER_INDEX_REFRESH_INTERVAL_SYS_PARAM, "1");
+		
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNull(store.get(query("new.user.securehealthemail.com.", Type.CERT)));
+		
+		// the new owner is added after the index was loaded
+		final Certificate newCert = new Certificate();
+		newCert.setOwner("new.user@securehealthemail.com");
+		newCert.setData(cert.getData());
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert, newCert});
+		when(proxy.getCertificatesForOwner(eq("new.user@securehealthemail.com"), (CertificateGetOptions)any())).thenReturn(new Certificate[] {newCert});
+		
+		Thread.sleep(1100);
+		
+		// the expired index is still used while the reload runs, but the negative answer did not outlive it
+		assertFalse(store.isNegativelyCached("new.user.securehealthemail.com", Type.CERT));
+		store.get(query("new.user.securehealthemail.com.", Type.CERT));
+		
+		Message response = null;
+		for (int i = 0; i < 50 && response == null; ++i)
+		{
+			Thread.sleep(100);
+			response = store.get(query("new.user.securehealthemail.com.", Type.CERT));
+		}
+		
+		assertNotNull(response);
+		verify(proxy, times(2)).listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any());
+	}
+	
+	protected Certificate[] createCertificatePage(long firstId, int count)
+	{
+		final Certificate[] page = new Certificate[count];
+		for (int i = 0; i < count; ++i)
+		{
+			page[i] = new Certificate();
+			page[i].setId(firstId + i);
+			page[i].setOwner("user" + (firstId + i) + "@securehealthemail.com");
+		}
+		return page;
+	}
+	
+	public void testGet_ownerIndex_assertCertificateDataNotRequested() throws Exception
+	{
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNotNull(store.get(query("gm2552.securehealthemail.com.", Type.CERT)));
+		
+		final ArgumentCaptor<CertificateGetOptions> options = ArgumentCaptor.forClass(CertificateGetOptions.class);
+		verify(proxy, times(1)).listCertificates(eq(0L), eq(ConfigServiceDNSStore.OWNER_INDEX_PAGE_SIZE), options.capture());
+		assertFalse(options.getValue().isIncludeData());
+		assertFalse(options.getValue().isIncludePrivateKey());
+	}
+	
+	public void testGet_ownerIndexSpansPages_assertAllPagesLoaded() throws Exception
+	{
+		final int pageSize = ConfigServiceDNSStore.OWNER_INDEX_PAGE_SIZE;
+		cert.setId(pageSize + 1);
+		when(proxy.listCertificates(eq(0L), anyInt(), (CertificateGetOptions)any())).thenReturn(createCertificatePage(1, pageSize));
+		when(proxy.listCertificates(eq((long)pageSize), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+		
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNotNull(store.get(query("gm2552.securehealthemail.com.", Type.CERT)));
+		
+		verify(proxy, times(2)).listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any());
+		verify(proxy, times(1)).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_serviceIgnoresPaging_assertOwnerIndexLoadStops() throws Exception
+	{
+		final int pageSize = ConfigServiceDNSStore.OWNER_INDEX_PAGE_SIZE;
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(createCertificatePage(1, pageSize));
+		
+		final ConfigServiceDNSStore store = new ConfigServiceDNSStore(proxy);
+		
+		assertNull(store.get(query("unknown.user.securehealthemail.com.", Type.CERT)));
+		
+		verify(proxy, times(2)).listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any());
+	}
+}
@@ -0,0 +1,181 @@
+package org.nhindirect.dns;
+
+import java.net.InetAddress;
+import java.security.cert.X509Certificate;
+
+import junit.framework.TestCase;
+
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNSSEC;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSResponder_toDatagramBytesTest extends TestCase
+{
+	protected DNSServerSettings settings;
+	protected X509Certificate cert;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		settings = new DNSServerSettings();
+		settings.setMaxUDPPayloadSize(4096);
+		
+		cert = DNSRecordUtil.loadCertificate("gm2552.der");
+	}
+	
+	protected Record createCERTRecord(String name) throws Exception
+	{
+		return new CERTRecord(Name.fromString(name), DClass.IN, 86400L, CERTRecord.PKIX, 0, DNSSEC.Algorithm.RSASHA1, cert.getEncoded());
+	}
+	
+	protected DNSStore createStore(final Record[] answers, final Record[] additional)
+	{
+		return new DNSStore()
+		{
+			@Override
+			public Message get(Message request) throws DNSException
+			{
+				final Message response = new Message(request.getHeader().getID());
+				response.getHeader().setFlag(Flags.QR);
+				response.getHeader().setFlag(Flags.AA);
+				response.addRecord(request.getQuestion(), Section.QUESTION);
+				for (Record rec : answers)
+					response.addRecord(rec, Section.ANSWER);
+				for (Record rec : additional)
+					response.addRecord(rec, Section.ADDITIONAL);
+				
+				return response;
+			}
+		};
+	}
+	
+	/*
+	 * Creates a responder that does not open a socket.  Truncation and EDNS sizing are handled by DNSResponder, 
+	 * so the transport is not needed to test them.
+	 */
+	protected DNSResponder createResponder(DNSStore store) throws Exception
+	{
+		return new DNSResponder(settings, store)
+		{
+			@Override
+			public void start() {}
+			
+			@Override
+			public void stop() {}
+		};
+	}
+	
+	protected Message query(String name, int type, int payloadSize, int version)
+	{
+		try
+		{
+			final Message retVal = Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+			if (payloadSize > 0)
+				retVal.addRecord(new OPTRecord(payloadSize, 0, version), Section.ADDITIONAL);
+			
+			return retVal;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void testToDatagramBytes_largeCERTNoEDNS_assertTruncated() throws Exception
+	{
+		final DNSResponder responder = createResponder(createStore(new Record[] {createCERTRecord("gm2552.securehealthemail.com.")}, new Record[0]));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.CERT, 0, 0);
+		final byte[] wire = responder.toDatagramBytes(query, responder.processRequest(query));
+		assertTrue(wire.length <= 512);
+		
+		final Message response = new Message(wire);
+		assertEquals(query.getHeader().getID(), response.getHeader().getID());
+		assertTrue(response.getHeader().getFlag(Flags.TC));
+		assertEquals(0, response.getSectionArray(Section.ANSWER).length);
+		assertNull(response.getOPT());
+	}
+	
+	public void testToDatagramBytes_largeCERTWithEDNS_assertSingleResponseWithOPT() throws Exception
+	{
+		final DNSResponder responder = createResponder(createStore(new Record[] {createCERTRecord("gm2552.securehealthemail.com.")}, new Record[0]));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.CERT, 4096, 0);
+		final byte[] wire = responder.toDatagramBytes(query, responder.processRequest(query));
+		assertTrue(wire.length > 512);
+		
+		final Message response = new Message(wire);
+		assertFalse(response.getHeader().getFlag(Flags.TC));
+		assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+		assertNotNull(response.getOPT());
+		assertEquals(4096, response.getOPT().getPayloadSize());
+	}
+	
+	public void testToDatagramBytes_clientPayloadLargerThanServerMax_assertServerMaxUsed() throws Exception
+	{
+		settings.setMaxUDPPayloadSize(600);
+		final DNSResponder responder = createResponder(createStore(new Record[] {createCERTRecord("gm2552.securehealthemail.com."),
+				createCERTRecord("gm2552.securehealthemail.com.")}, new Record[0]));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.CERT, 4096, 0);
+		assertEquals(600, responder.getMaxUDPResponseSize(query));
+		
+		final byte[] wire = responder.toDatagramBytes(query, responder.processRequest(query));
+		assertTrue(wire.length <= 600);
+		
+		final Message response = new Message(wire);
+		assertTrue(response.getHeader().getFlag(Flags.TC));
+		assertNotNull(response.getOPT());
+	}
+	
+	public void testToDatagramBytes_multipleRRsets_assertWholeRRsetsKept() throws Exception
+	{
+		final Record aRecord = new ARecord(Name.fromString("gm2552.securehealthemail.com."), DClass.IN, 3600L, InetAddress.getByName("10.1.1.1"));
+		final DNSResponder responder = createResponder(createStore(new Record[] {aRecord, 
+				createCERTRecord("gm2552.securehealthemail.com."), createCERTRecord("gm2552.securehealthemail.com.")}, new Record[0]));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.ANY, 1024, 0);
+		final Message response = new Message(responder.toDatagramBytes(query, responder.processRequest(query)));
+		
+		assertTrue(response.getHeader().getFlag(Flags.TC));
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals(Type.A, answers[0].getType());
+		assertNotNull(response.getOPT());
+	}
+	
+	public void testToDatagramBytes_largeAdditionalSection_assertDroppedWithoutTC() throws Exception
+	{
+		final Record aRecord = new ARecord(Name.fromString("gm2552.securehealthemail.com."), DClass.IN, 3600L, InetAddress.getByName("10.1.1.1"));
+		final DNSResponder responder = createResponder(createStore(new Record[] {aRecord}, 
+				new Record[] {createCERTRecord("gm2552.securehealthemail.com.")}));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.A, 0, 0);
+		final Message response = new Message(responder.toDatagramBytes(query, responder.processRequest(query)));
+		
+		assertFalse(response.getHeader().getFlag(Flags.TC));
+		assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+		assertEquals(0, response.getSectionArray(Section.ADDITIONAL).length);
+	}
+	
+	public void testProcessRequest_unsupportedEDNSVersion_assertBadVersion() throws Exception
+	{
+		final DNSResponder responder = createResponder(createStore(new Record[0], new Record[0]));
+		
+		final Message query = query("gm2552.securehealthemail.com.", Type.CERT, 4096, 1);
+		final Message response = new Message(responder.toDatagramBytes(query, responder.processRequest(query)));
+		
+		assertEquals(Rcode.BADVERS, response.getRcode());
+		assertEquals(0, response.getOPT().getVersion());
+	}
+}
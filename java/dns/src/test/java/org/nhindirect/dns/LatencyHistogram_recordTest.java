@@ -0,0 +1,103 @@
+package org.nhindirect.dns;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import junit.framework.TestCase;
+
+import org.xbill.DNS.Type;
+
+public class LatencyHistogram_recordTest extends TestCase
+{
+	public void testRecord_emptyHistogram_assertZeroStatistics() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		assertEquals(0, histogram.getCount());
+		assertEquals(0.0, histogram.getMean());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+	
+	public void testRecord_uniformLatencies_assertPercentilesWithinPrecision() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		// 1 to 1000 microseconds
+		for (int i = 1; i <= 1000; ++i)
+			histogram.record(i * 1000L);
+		
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertEquals(1000, histogram.getMax());
+		
+		final long median = histogram.getPercentile(50);
+		assertTrue(median >= 500 && median <= 500 * 1.125);
+		
+		final long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		
+		assertEquals(1, histogram.getPercentile(0));
+	}
+	
+	public void testRecord_bucketBoundaries_assertEachValueInItsBucket() throws Exception
+	{
+		for (long micros = 0; micros < 100000; ++micros)
+		{
+			final int index = LatencyHistogram.getBucketIndex(micros);
+			assertTrue(micros <= LatencyHistogram.getBucketUpperBound(index));
+			if (index > 0)
+				assertTrue(micros > LatencyHistogram.getBucketUpperBound(index - 1));
+		}
+	}
+	
+	public void testRecord_concurrentRecords_assertNoLostUpdates() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for (int j = 0; j < 10000; ++j)
+						histogram.record(j * 1000L);
+				}
+			});
+			threads[i].start();
+		}
+		
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertEquals(80000, histogram.getCount());
+		assertEquals(9999, histogram.getMax());
+		assertEquals(4999.5, histogram.getMean(), 0.001);
+	}
+	
+	public void testToTabularData_histogramsByType_assertRowPerType() throws Exception
+	{
+		final ConcurrentMap<Integer, LatencyHistogram> histograms = new ConcurrentHashMap<Integer, LatencyHistogram>();
+		
+		LatencyHistogram.getHistogram(histograms, Type.A).record(2000);
+		LatencyHistogram.getHistogram(histograms, Type.A).record(4000);
+		LatencyHistogram.getHistogram(histograms, Type.CERT).record(8000);
+		
+		assertSame(LatencyHistogram.getHistogram(histograms, Type.A), histograms.get(Type.A));
+		
+		final TabularData data = LatencyHistogram.toTabularData(histograms);
+		assertEquals(2, data.size());
+		
+		final CompositeData row = data.get(new Object[] {"A"});
+		assertEquals(2L, row.get("Count"));
+		assertEquals(3.0, row.get("Mean"));
+		assertEquals(4L, row.get("Max"));
+		
+		assertEquals(1L, data.get(new Object[] {"CERT"}).get("Count"));
+	}
+}
@@ -0,0 +1,215 @@
+package org.nhindirect.dns;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+public class NIOSocketServer_processRequestTest extends TestCase
+{
+	protected DNSServerSettings settings;
+	protected DNSResponder responder;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNonBlockingIO(true);
+	}
+	
+	@Override
+	public void tearDown() throws Exception
+	{
+		if (responder != null)
+			responder.stop();
+	}
+	
+	protected DNSStore createStore()
+	{
+		return new DNSStore()
+		{
+			@Override
+			public Message get(Message request) throws DNSException
+			{
+				final Record question = request.getQuestion();
+				if (!question.getName().toString().startsWith("known"))
+					return null;
+				
+				final Message response = new Message(request.getHeader().getID());
+				response.getHeader().setFlag(Flags.QR);
+				response.addRecord(question, Section.QUESTION);
+				try
+				{
+					response.addRecord(new ARecord(question.getName(), DClass.IN, 3600L, 
+							java.net.InetAddress.getByName("10.1.1.1")), Section.ANSWER);
+				}
+				catch (Exception e)
+				{
+					throw new DNSException(DNSError.newError(Rcode.SERVFAIL));
+				}
+				return response;
+			}
+		};
+	}
+	
+	protected Message query(String name) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+	}
+	
+	public void testProcessRequest_udpQuery_assertResponse() throws Exception
+	{
+		responder = new DNSResponderUDP(settings, createStore());
+		responder.start();
+		
+		final SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+		resolver.setPort(settings.getPort());
+		
+		final Message response = resolver.send(query("known.example.com."));
+		assertEquals(Rcode.NOERROR, response.getRcode());
+		assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+		
+		final Message missResponse = resolver.send(query("unknown.example.com."));
+		assertEquals(Rcode.NXDOMAIN, missResponse.getRcode());
+	}
+	
+	public void testProcessRequest_pipelinedTCPQueries_assertAllAnsweredOnOneConnection() throws Exception
+	{
+		responder = new DNSResponderTCP(settings, createStore());
+		responder.start();
+		
+		final Socket socket = new Socket("127.0.0.1", settings.getPort());
+		try
+		{
+			final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			final Set<Integer> ids = new HashSet<Integer>();
+			
+			// write all queries before reading any responses
+			for (int i = 0; i < 5; ++i)
+			{
+				final Message query = query((i % 2 == 0) ? "known.example.com." : "unknown.example.com.");
+				ids.add(query.getHeader().getID());
+				
+				final byte[] wire = query.toWire();
+				out.writeShort(wire.length);
+				out.write(wire);
+			}
+			out.flush();
+			
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			for (int i = 0; i < 5; ++i)
+			{
+				final byte[] wire = new byte[in.readUnsignedShort()];
+				in.readFully(wire);
+				
+				final Message response = new Message(wire);
+				assertTrue(ids.remove(response.getHeader().getID()));
+			}
+			assertTrue(ids.isEmpty());
+			
+			// the connection stays open for additional queries
+			final byte[] wire = query("known.example.com.").toWire();
+			out.writeShort(wire.length);
+			out.write(wire);
+			out.flush();
+			
+			final byte[] responseWire = new byte[in.readUnsignedShort()];
+			in.readFully(responseWire);
+			assertEquals(Rcode.NOERROR, new Message(responseWire).getRcode());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+	
+	public void testProcessRequest_pipelinedTCPQueriesOverLimit_assertAllAnswered() throws Exception
+	{
+		settings.setMaxTCPPipelinedRequests(2);
+		
+		responder = new DNSResponderTCP(settings, createStore());
+		responder.start();
+		
+		final Socket socket = new Socket("127.0.0.1", settings.getPort());
+		try
+		{
+			final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			final Set<Integer> ids = new HashSet<Integer>();
+			
+			// queries over the limit wait in the connection's read buffer until earlier queries complete
+			for (int i = 0; i < 20; ++i)
+			{
+				final Message query = query("known.example.com.");
+				ids.add(query.getHeader().getID());
+				
+				final byte[] wire = query.toWire();
+				out.writeShort(wire.length);
+				out.write(wire);
+			}
+			out.flush();
+			
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			while (!ids.isEmpty())
+			{
+				final byte[] wire = new byte[in.readUnsignedShort()];
+				in.readFully(wire);
+				
+				assertTrue(ids.remove(new Message(wire).getHeader().getID()));
+			}
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+	
+	public void testProcessRequest_connectionLimitReached_assertConnectionClosed() throws Exception
+	{
+		settings.setMaxTCPConnections(1);
+		
+		responder = new DNSResponderTCP(settings, createStore());
+		responder.start();
+		
+		final Socket socket = new Socket("127.0.0.1", settings.getPort());
+		final Socket rejectedSocket = new Socket("127.0.0.1", settings.getPort());
+		try
+		{
+			rejectedSocket.setSoTimeout(5000);
+			assertEquals(-1, rejectedSocket.getInputStream().read());
+			
+			// the first connection is still served
+			final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			final byte[] wire = query("known.example.com.").toWire();
+			out.writeShort(wire.length);
+			out.write(wire);
+			out.flush();
+			
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			final byte[] responseWire = new byte[in.readUnsignedShort()];
+			in.readFully(responseWire);
+			assertEquals(Rcode.NOERROR, new Message(responseWire).getRcode());
+		}
+		finally
+		{
+			rejectedSocket.close();
+			socket.close();
+		}
+	}
+}
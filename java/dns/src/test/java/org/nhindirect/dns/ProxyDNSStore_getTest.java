@@ -0,0 +1,157 @@
+package org.nhindirect.dns;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class ProxyDNSStore_getTest extends TestCase
+{
+	protected DNSResponder upstream;
+	protected ProxyDNSStore store;
+	protected final AtomicInteger upstreamRequests = new AtomicInteger();
+	protected volatile long upstreamDelay = 0;
+	protected volatile long recordTTL = 3600L;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		
+		upstream = new DNSResponderUDP(settings, new DNSStore()
+		{
+			@Override
+			public Message get(Message request) throws DNSException
+			{
+				upstreamRequests.incrementAndGet();
+				try
+				{
+					if (upstreamDelay > 0)
+						Thread.sleep(upstreamDelay);
+					
+					final Record question = request.getQuestion();
+					final Message response = new Message(request.getHeader().getID());
+					response.getHeader().setFlag(Flags.QR);
+					response.getHeader().setFlag(Flags.AA);
+					response.addRecord(question, Section.QUESTION);
+					
+					if (question.getType() == Type.A)
+						response.addRecord(new ARecord(question.getName(), DClass.IN, recordTTL, InetAddress.getByName("10.1.1.1")), Section.ANSWER);
+					else
+						// no data for other types
+						response.addRecord(new SOARecord(Name.fromString("example.com."), DClass.IN, 3600L, Name.fromString("ns.example.com."), 
+								Name.fromString("hostmaster.example.com."), 1, 3600L, 600L, 604800L, 300L), Section.AUTHORITY);
+					
+					return response;
+				}
+				catch (Exception e)
+				{
+					throw new DNSException("Failed to build response.");
+				}
+			}
+		});
+		upstream.start();
+		
+		store = new ProxyDNSStore(Arrays.asList("127.0.0.1"), settings.getPort());
+	}
+	
+	@Override
+	public void tearDown() throws Exception
+	{
+		upstream.stop();
+	}
+	
+	protected Message query(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	public void testGet_repeatedQuery_assertAnsweredFromCache() throws Exception
+	{
+		final Message response1 = store.get(query("www.example.com.", Type.A));
+		final Message request2 = query("WWW.example.com.", Type.A);
+		final Message response2 = store.get(request2);
+		
+		assertEquals(1, upstreamRequests.get());
+		assertEquals(request2.getHeader().getID(), response2.getHeader().getID());
+		assertEquals(response1.getSectionArray(Section.ANSWER)[0].rdataToString(), response2.getSectionArray(Section.ANSWER)[0].rdataToString());
+		assertTrue(response2.getSectionArray(Section.ANSWER)[0].getTTL() <= 3600L);
+	}
+	
+	public void testGet_negativeResponseWithSOA_assertCached() throws Exception
+	{
+		store.get(query("www.example.com.", Type.MX));
+		final Message response = store.get(query("www.example.com.", Type.MX));
+		
+		assertEquals(1, upstreamRequests.get());
+		assertEquals(0, response.getSectionArray(Section.ANSWER).length);
+		assertEquals(1, response.getSectionArray(Section.AUTHORITY).length);
+	}
+	
+	public void testGet_zeroTTL_assertNotCached() throws Exception
+	{
+		recordTTL = 0;
+		
+		store.get(query("www.example.com.", Type.A));
+		store.get(query("www.example.com.", Type.A));
+		
+		assertEquals(2, upstreamRequests.get());
+	}
+	
+	public void testGet_cacheDisabled_assertNotCached() throws Exception
+	{
+		store.setMaxCacheSize(0);
+		
+		store.get(query("www.example.com.", Type.A));
+		store.get(query("www.example.com.", Type.A));
+		
+		assertEquals(2, upstreamRequests.get());
+	}
+	
+	public void testGet_concurrentIdenticalQueries_assertSingleUpstreamQuery() throws Exception
+	{
+		upstreamDelay = 500;
+		
+		final AtomicInteger answered = new AtomicInteger();
+		final Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; ++i)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						final Message request = query("partner.example.com.", Type.A);
+						final Message response = store.get(request);
+						if (response != null && response.getHeader().getID() == request.getHeader().getID() && 
+								response.getSectionArray(Section.ANSWER).length == 1)
+							answered.incrementAndGet();
+					}
+					catch (Exception e) {/* no-op */}
+				}
+			});
+			threads[i].start();
+		}
+		
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertEquals(5, answered.get());
+		assertEquals(1, upstreamRequests.get());
+	}
+}
@@ -0,0 +1,241 @@
+package org.nhindirect.dns;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Opcode;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+public class SecondaryZoneDNSStore_getTest extends TestCase
+{
+	protected ConfigurationServiceProxy proxy;
+	protected Certificate cert;
+	protected DNSServerSettings primarySettings;
+	protected DNSServerSettings secondarySettings;
+	protected ZoneSnapshotDNSStore primaryStore;
+	protected DNSResponder primaryUDP;
+	protected DNSResponder primaryTCP;
+	protected DNSResponder secondaryUDP;
+	protected SecondaryZoneDNSStore secondaryStore;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		cert = new Certificate();
+		cert.setOwner("gm2552@example.com");
+		cert.setData(xCert.getEncoded());
+		
+		proxy = mock(ConfigurationServiceProxy.class);
+		when(proxy.getDNSByType(Type.ANY)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("example.com", "10.1.1.1"), 
+				DNSRecordUtil.createSOARecord("example.com", "ns.example.com", "hostmaster.example.com")});
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+		
+		primarySettings = new DNSServerSettings();
+		primarySettings.setBindAddress("127.0.0.1");
+		primarySettings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		
+		secondarySettings = new DNSServerSettings();
+		secondarySettings.setBindAddress("127.0.0.1");
+		secondarySettings.setPort(AvailablePortFinder.getNextAvailable(primarySettings.getPort() + 1));
+		
+		System.setProperty(ZoneSnapshotDNSStore.NOTIFY_ADDRESSES_SYS_PARAM, "127.0.0.1:" + secondarySettings.getPort());
+		try
+		{
+			primaryStore = new ZoneSnapshotDNSStore(proxy, 0);
+		}
+		finally
+		{
+			System.clearProperty(ZoneSnapshotDNSStore.NOTIFY_ADDRESSES_SYS_PARAM);
+		}
+		primaryStore.setZoneTransferAllowedAddresses(Arrays.asList(InetAddress.getByName("127.0.0.1")));
+		
+		primaryUDP = new DNSResponderUDP(primarySettings, primaryStore);
+		primaryUDP.start();
+		primaryTCP = new DNSResponderTCP(primarySettings, primaryStore);
+		primaryTCP.start();
+	}
+	
+	@Override
+	public void tearDown() throws Exception
+	{
+		if (secondaryUDP != null)
+			secondaryUDP.stop();
+		if (secondaryStore != null)
+			secondaryStore.shutdown();
+		
+		primaryUDP.stop();
+		primaryTCP.stop();
+	}
+	
+	protected SecondaryZoneDNSStore createSecondaryStore()
+	{
+		return new SecondaryZoneDNSStore(InetSocketAddress.createUnresolved("127.0.0.1", primarySettings.getPort()), 
+				Arrays.asList("example.com"), 0);
+	}
+	
+	protected Message query(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	public void testGet_transferredZone_assertServedFromLocalCopy() throws Exception
+	{
+		secondaryStore = createSecondaryStore();
+		
+		assertEquals(1, secondaryStore.getSerial("example.com"));
+		
+		Message response = secondaryStore.get(query("EXAMPLE.com.", Type.A));
+		assertNotNull(response);
+		Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals("10.1.1.1", ((ARecord)answers[0]).getAddress().getHostAddress());
+		assertEquals(1, response.getSectionArray(Section.AUTHORITY).length);
+		
+		response = secondaryStore.get(query("gm2552.example.com.", Type.CERT));
+		assertNotNull(response);
+		answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals(CERTRecord.PKIX, ((CERTRecord)answers[0]).getCertType());
+		
+		assertNull(secondaryStore.get(query("unknown.example.com.", Type.A)));
+		assertNull(secondaryStore.get(query("other.com.", Type.A)));
+	}
+	
+	public void testRefresh_primaryUnchanged_assertNoTransfer() throws Exception
+	{
+		secondaryStore = createSecondaryStore();
+		
+		assertFalse(secondaryStore.refresh());
+	}
+	
+	public void testRefresh_primaryUnavailable_assertPreviousCopyUsed() throws Exception
+	{
+		secondaryStore = createSecondaryStore();
+		
+		primaryUDP.stop();
+		primaryTCP.stop();
+		
+		assertFalse(secondaryStore.refresh());
+		assertNotNull(secondaryStore.get(query("example.com.", Type.A)));
+	}
+	
+	public void testGet_notifyFromPrimary_assertZoneRefreshed() throws Exception
+	{
+		secondaryStore = createSecondaryStore();
+		secondaryUDP = new DNSResponderUDP(secondarySettings, secondaryStore);
+		secondaryUDP.start();
+		
+		assertNull(secondaryStore.get(query("new.example.com.", Type.A)));
+		
+		when(proxy.getDNSByType(Type.ANY)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("example.com", "10.1.1.1"), 
+				DNSRecordUtil.createARecord("new.example.com", "10.1.1.2"),
+				DNSRecordUtil.createSOARecord("example.com", "ns.example.com", "hostmaster.example.com")});
+		
+		// the refresh sends a NOTIFY to the secondary
+		assertTrue(primaryStore.refresh());
+		
+		for (int i = 0; i < 50 && secondaryStore.getSerial("example.com") == 1; ++i)
+			Thread.sleep(100);
+		
+		assertEquals(2, secondaryStore.getSerial("example.com"));
+		assertNotNull(secondaryStore.get(query("new.example.com.", Type.A)));
+	}
+	
+	public void testGet_notifyMessage_assertNotifyResponse() throws Exception
+	{
+		secondaryStore = createSecondaryStore();
+		
+		final Message notify = new Message();
+		notify.getHeader().setOpcode(Opcode.NOTIFY);
+		notify.getHeader().setFlag(Flags.AA);
+		notify.addRecord(Record.newRecord(Name.fromString("example.com."), Type.SOA, DClass.IN), Section.QUESTION);
+		
+		final Message response = secondaryStore.get(notify);
+		assertEquals(Opcode.NOTIFY, response.getHeader().getOpcode());
+		assertTrue(response.getHeader().getFlag(Flags.QR));
+		assertEquals(notify.getHeader().getID(), response.getHeader().getID());
+	}
+	
+	public void testGet_notifyFlood_assertRefreshesCoalesced() throws Exception
+	{
+		final AtomicInteger refreshes = new AtomicInteger();
+		secondaryStore = new SecondaryZoneDNSStore(InetSocketAddress.createUnresolved("127.0.0.1", primarySettings.getPort()), 
+				Arrays.asList("example.com"), 0)
+		{
+			@Override
+			public boolean refreshZone(String zone)
+			{
+				refreshes.incrementAndGet();
+				return super.refreshZone(zone);
+			}
+		};
+		refreshes.set(0);
+		
+		final Message notify = new Message();
+		notify.getHeader().setOpcode(Opcode.NOTIFY);
+		notify.getHeader().setFlag(Flags.AA);
+		notify.addRecord(Record.newRecord(Name.fromString("example.com."), Type.SOA, DClass.IN), Section.QUESTION);
+		
+		for (int i = 0; i < 100; ++i)
+			assertNotNull(secondaryStore.get(notify));
+		
+		Thread.sleep(1000);
+		
+		// one check runs right away and the remaining NOTIFY messages are coalesced into one check after the minimum interval
+		assertTrue(refreshes.get() >= 1);
+		assertTrue(refreshes.get() <= 2);
+	}
+	
+	public void testPrimary_IXFROverUDP_assertRefused() throws Exception
+	{
+		final SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+		resolver.setPort(primarySettings.getPort());
+		
+		final Message response = resolver.send(query("example.com.", Type.IXFR));
+		
+		assertEquals(Rcode.REFUSED, response.getRcode());
+		assertEquals(0, response.getSectionArray(Section.ANSWER).length);
+	}
+	
+	public void testPrimary_IXFROverTCPFromAllowedAddress_assertZoneReturned() throws Exception
+	{
+		final SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+		resolver.setPort(primarySettings.getPort());
+		resolver.setTCP(true);
+		
+		final Message response = resolver.send(query("example.com.", Type.IXFR));
+		
+		assertEquals(Rcode.NOERROR, response.getRcode());
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(Type.SOA, answers[0].getType());
+		assertEquals(Type.SOA, answers[answers.length - 1].getType());
+	}
+}
@@ -0,0 +1,131 @@
+package org.nhindirect.dns;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.rmi.RemoteException;
+import java.security.cert.X509Certificate;
+
+import junit.framework.TestCase;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class ZoneSnapshotDNSStore_getTest extends TestCase
+{
+	protected ConfigurationServiceProxy proxy;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner("gm2552@securehealthemail.com");
+		cert.setData(xCert.getEncoded());
+		
+		proxy = mock(ConfigurationServiceProxy.class);
+		when(proxy.getDNSByType(Type.ANY)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("example.com", "10.1.1.1"), 
+				DNSRecordUtil.createSOARecord("example.com", "ns.example.com", "hostmaster.example.com")});
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+	}
+	
+	protected Message query(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	public void testGet_ARecord_assertServedFromSnapshot() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		final Message response = store.get(query("EXAMPLE.com.", Type.A));
+		
+		assertNotNull(response);
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals("10.1.1.1", ((ARecord)answers[0]).getAddress().getHostAddress());
+		assertEquals(1, response.getSectionArray(Section.AUTHORITY).length);
+		
+		verify(proxy, never()).getDNSByNameAndType(anyString(), anyInt());
+	}
+	
+	public void testGet_addressCERTRecord_assertServedFromSnapshot() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		final Message response = store.get(query("gm2552.securehealthemail.com.", Type.CERT));
+		
+		assertNotNull(response);
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals(CERTRecord.PKIX, ((CERTRecord)answers[0]).getCertType());
+		
+		verify(proxy, never()).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_unknownName_assertNullResponse() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		assertNull(store.get(query("unknown.example.com.", Type.A)));
+		assertNull(store.get(query("unknown.example.com.", Type.CERT)));
+		
+		verify(proxy, never()).getDNSByNameAndType(anyString(), anyInt());
+		verify(proxy, never()).getCertificatesForOwner(anyString(), (CertificateGetOptions)any());
+	}
+	
+	public void testGet_refreshFails_assertPreviousSnapshotUsed() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		final long snapshotTime = store.getSnapshotTime();
+		
+		when(proxy.getDNSByType(Type.ANY)).thenThrow(new RemoteException("Config service unavailable"));
+		
+		assertFalse(store.refresh());
+		assertEquals(snapshotTime, store.getSnapshotTime());
+		assertNotNull(store.get(query("example.com.", Type.A)));
+	}
+	
+	public void testGet_refreshWithNewRecords_assertNewSnapshotUsed() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		assertNull(store.get(query("new.example.com.", Type.A)));
+		
+		when(proxy.getDNSByType(Type.ANY)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("new.example.com", "10.1.1.2")});
+		assertTrue(store.refresh());
+		
+		assertNotNull(store.get(query("new.example.com.", Type.A)));
+		assertNull(store.get(query("example.com.", Type.A)));
+	}
+	
+	public void testGet_initialLoadFails_assertPassThroughToConfigService() throws Exception
+	{
+		when(proxy.getDNSByType(Type.ANY)).thenThrow(new RemoteException("Config service unavailable"));
+		when(proxy.getDNSByNameAndType("example.com.", Type.A)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("example.com", "10.1.1.1")});
+		
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		assertEquals(0, store.getSnapshotTime());
+		assertNotNull(store.get(query("example.com.", Type.A)));
+		
+		verify(proxy).getDNSByNameAndType("example.com.", Type.A);
+	}
+}
@@ -0,0 +1,246 @@
+package org.nhindirect.dns;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class ZoneSnapshotDNSStore_zoneTransferTest extends TestCase
+{
+	protected InetAddress secondaryAddress;
+	protected InetAddress otherAddress;
+	
+	protected ConfigurationServiceProxy proxy;
+	protected Certificate cert;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		secondaryAddress = InetAddress.getByAddress(new byte[] {10, 1, 1, 10});
+		otherAddress = InetAddress.getByAddress(new byte[] {10, 1, 1, 20});
+		
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		cert = new Certificate();
+		cert.setOwner("gm2552@example.com");
+		cert.setData(xCert.getEncoded());
+		
+		proxy = mock(ConfigurationServiceProxy.class);
+		when(proxy.getDNSByType(Type.ANY)).thenReturn(new DnsRecord[] {DNSRecordUtil.createARecord("example.com", "10.1.1.1"), 
+				DNSRecordUtil.createARecord("www.example.com", "10.1.1.2"), DNSRecordUtil.createARecord("other.com", "10.1.1.3"),
+				DNSRecordUtil.createSOARecord("example.com", "ns.example.com", "hostmaster.example.com")});
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert});
+	}
+	
+	protected ZoneSnapshotDNSStore createStore()
+	{
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		store.setZoneTransferAllowedAddresses(Arrays.asList(secondaryAddress));
+		
+		return store;
+	}
+	
+	protected Message transfer(ZoneSnapshotDNSStore store, Message request) throws Exception
+	{
+		return store.get(request, secondaryAddress, true);
+	}
+	
+	protected void assertTransferRefused(ZoneSnapshotDNSStore store, Message request, InetAddress source, boolean streamTransport)
+	{
+		boolean exceptionOccured = false;
+		try
+		{
+			store.get(request, source, streamTransport);
+		}
+		catch (DNSException e)
+		{
+			assertEquals(Rcode.REFUSED, ((Integer)e.getError().getError()).intValue());
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+	
+	protected Message query(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	protected long getServedSerial(ZoneSnapshotDNSStore store) throws Exception
+	{
+		return ((SOARecord)store.get(query("example.com.", Type.SOA)).getSectionArray(Section.ANSWER)[0]).getSerial();
+	}
+	
+	public void testGet_AXFR_assertZoneRecordsBetweenSOARecords() throws Exception
+	{
+		final Message response = transfer(createStore(), query("example.com.", Type.AXFR));
+		
+		final Record[] answers = response.getSectionArray(Section.ANSWER);
+		assertEquals(5, answers.length);
+		assertEquals(Type.SOA, answers[0].getType());
+		assertEquals(Type.SOA, answers[answers.length - 1].getType());
+		
+		int aCount = 0;
+		int certCount = 0;
+		for (Record record : answers)
+		{
+			if (record.getType() == Type.A)
+			{
+				assertTrue(record.getName().toString().endsWith("example.com."));
+				++aCount;
+			}
+			else if (record.getType() == Type.CERT)
+				++certCount;
+		}
+		assertEquals(2, aCount);
+		assertEquals(1, certCount);
+	}
+	
+	public void testGet_AXFRDisabled_assertRefused() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = createStore();
+		store.setZoneTransferAllowedAddresses(null);
+		
+		assertFalse(store.isZoneTransferEnabled());
+		assertTransferRefused(store, query("example.com.", Type.AXFR), secondaryAddress, true);
+	}
+	
+	public void testGet_allowedAddressesNotConfigured_assertRefused() throws Exception
+	{
+		System.clearProperty(ZoneSnapshotDNSStore.ZONE_TRANSFER_ALLOWED_ADDRESSES_SYS_PARAM);
+		final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+		
+		assertFalse(store.isZoneTransferEnabled());
+		assertTransferRefused(store, query("example.com.", Type.AXFR), secondaryAddress, true);
+	}
+	
+	public void testGet_allowedAddressesConfigured_assertTransferAnswered() throws Exception
+	{
+		System.setProperty(ZoneSnapshotDNSStore.ZONE_TRANSFER_ALLOWED_ADDRESSES_SYS_PARAM, " 10.1.1.10 , ");
+		try
+		{
+			final ZoneSnapshotDNSStore store = new ZoneSnapshotDNSStore(proxy, 0);
+			
+			assertTrue(store.isZoneTransferEnabled());
+			assertEquals(5, transfer(store, query("example.com.", Type.AXFR)).getSectionArray(Section.ANSWER).length);
+			assertTransferRefused(store, query("example.com.", Type.AXFR), otherAddress, true);
+		}
+		finally
+		{
+			System.clearProperty(ZoneSnapshotDNSStore.ZONE_TRANSFER_ALLOWED_ADDRESSES_SYS_PARAM);
+		}
+	}
+	
+	public void testGet_AXFRFromAddressNotAllowed_assertRefused() throws Exception
+	{
+		assertTransferRefused(createStore(), query("example.com.", Type.AXFR), otherAddress, true);
+	}
+	
+	public void testGet_AXFRUnknownSource_assertRefused() throws Exception
+	{
+		assertTransferRefused(createStore(), query("example.com.", Type.AXFR), null, true);
+		
+		boolean exceptionOccured = false;
+		try
+		{
+			createStore().get(query("example.com.", Type.AXFR));
+		}
+		catch (DNSException e)
+		{
+			assertEquals(Rcode.REFUSED, ((Integer)e.getError().getError()).intValue());
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+	
+	public void testGet_AXFROverUDP_assertRefused() throws Exception
+	{
+		assertTransferRefused(createStore(), query("example.com.", Type.AXFR), secondaryAddress, false);
+	}
+	
+	public void testGet_IXFROverUDP_assertRefused() throws Exception
+	{
+		assertTransferRefused(createStore(), query("example.com.", Type.IXFR), secondaryAddress, false);
+	}
+	
+	public void testGet_AXFRUnknownZone_assertNotAuth() throws Exception
+	{
+		boolean exceptionOccured = false;
+		try
+		{
+			transfer(createStore(), query("other.com.", Type.AXFR));
+		}
+		catch (DNSException e)
+		{
+			assertEquals(Rcode.NOTAUTH, ((Integer)e.getError().getError()).intValue());
+			exceptionOccured = true;
+		}
+		assertTrue(exceptionOccured);
+	}
+	
+	public void testGet_IXFRUpToDate_assertOnlySOARecord() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = createStore();
+		
+		final Message request = query("example.com.", Type.IXFR);
+		request.addRecord(new SOARecord(Name.fromString("example.com."), DClass.IN, 3600L, Name.fromString("ns.example.com."), 
+				Name.fromString("hostmaster.example.com."), getServedSerial(store), 3600L, 600L, 604800L, 3600L), Section.AUTHORITY);
+		
+		final Record[] answers = transfer(store, request).getSectionArray(Section.ANSWER);
+		assertEquals(1, answers.length);
+		assertEquals(Type.SOA, answers[0].getType());
+	}
+	
+	public void testGet_IXFROutOfDate_assertFullZone() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = createStore();
+		
+		final Message request = query("example.com.", Type.IXFR);
+		request.addRecord(new SOARecord(Name.fromString("example.com."), DClass.IN, 3600L, Name.fromString("ns.example.com."), 
+				Name.fromString("hostmaster.example.com."), 0, 3600L, 600L, 604800L, 3600L), Section.AUTHORITY);
+		
+		assertEquals(5, transfer(store, request).getSectionArray(Section.ANSWER).length);
+	}
+	
+	public void testRefresh_zoneChangedWithoutSerialChange_assertSerialIncremented() throws Exception
+	{
+		final ZoneSnapshotDNSStore store = createStore();
+		final long serial = getServedSerial(store);
+		
+		// unchanged zone keeps its serial number
+		assertTrue(store.refresh());
+		assertEquals(serial, getServedSerial(store));
+		
+		// a new certificate changes the zone without touching the configured SOA record
+		final Certificate newCert = new Certificate();
+		newCert.setOwner("other@example.com");
+		newCert.setData(cert.getData());
+		when(proxy.listCertificates(anyLong(), anyInt(), (CertificateGetOptions)any())).thenReturn(new Certificate[] {cert, newCert});
+		
+		assertTrue(store.refresh());
+		assertEquals(serial + 1, getServedSerial(store));
+		
+		final Record[] answers = transfer(store, query("example.com.", Type.AXFR)).getSectionArray(Section.ANSWER);
+		assertEquals(serial + 1, ((SOARecord)answers[0]).getSerial());
+		assertEquals(6, answers.length);
+	}
+}
@@ -0,0 +1,198 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns.benchmark;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.nhind.config.Certificate;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.DNSError;
+import org.nhindirect.dns.DNSException;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+
+/**
+ * Generated set of DNS records and certificates used by the benchmark.  Each domain d[n].bench.direct has an SOA record, A records for the
+ * domain and its mail host, an MX record, an organization certificate, and a certificate for the user@d[n].bench.direct address.
+ * All certificates are signed by one key pair so large data sets can be generated quickly.
+ * @since 1.3
+ */
+public class BenchmarkDataSet
+{
+	protected static final String DOMAIN_SUFFIX = ".bench.direct.";
+	protected static final long TTL = 3600L;
+	
+	protected final int domainCount;
+	protected final List<DnsRecord> records;
+	protected final List<Certificate> certificates;
+	
+	/**
+	 * Generates a data set.
+	 * @param domainCount The number of domains to generate.
+	 * @throws DNSException Thrown if the records or certificates cannot be generated.
+	 */
+	public BenchmarkDataSet(int domainCount) throws DNSException
+	{
+		if (domainCount <= 0)
+			throw new IllegalArgumentException("Domain count must be greater than 0.");
+		
+		this.domainCount = domainCount;
+		
+		final List<DnsRecord> recordList = new ArrayList<DnsRecord>();
+		final List<Certificate> certList = new ArrayList<Certificate>();
+		try
+		{
+			if (Security.getProvider("BC") == null)
+				Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+			
+			final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA", "BC");
+			keyGen.initialize(1024);
+			final KeyPair keyPair = keyGen.generateKeyPair();
+			
+			for (int i = 0; i < domainCount; ++i)
+			{
+				final String domain = getDomain(i);
+				final Name domainName = Name.fromString(domain);
+				final Name mailName = Name.fromString("mail." + domain);
+				
+				recordList.add(toDnsRecord(new SOARecord(domainName, DClass.IN, TTL, Name.fromString("ns." + domain), 
+						Name.fromString("hostmaster." + domain), 1, TTL, 600L, 604800L, TTL)));
+				recordList.add(toDnsRecord(new ARecord(domainName, DClass.IN, TTL, getAddress(i, 1))));
+				recordList.add(toDnsRecord(new ARecord(mailName, DClass.IN, TTL, getAddress(i, 2))));
+				recordList.add(toDnsRecord(new MXRecord(domainName, DClass.IN, TTL, 10, mailName)));
+				
+				final String orgOwner = domain.substring(0, domain.length() - 1);
+				certList.add(toCertificate(orgOwner, generateCertificate(keyPair, i * 2 + 1, orgOwner)));
+				certList.add(toCertificate("user@" + orgOwner, generateCertificate(keyPair, i * 2 + 2, "user@" + orgOwner)));
+			}
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to generate benchmark data set: " + e.getMessage(), e);
+		}
+		
+		this.records = Collections.unmodifiableList(recordList);
+		this.certificates = Collections.unmodifiableList(certList);
+	}
+	
+	/**
+	 * Gets the name of a domain in the data set.
+	 * @param index The index of the domain.
+	 * @return The fully qualified name of the domain.
+	 */
+	public static String getDomain(int index)
+	{
+		return "d" + index + DOMAIN_SUFFIX;
+	}
+	
+	/**
+	 * Gets the number of domains in the data set.
+	 * @return The number of domains in the data set.
+	 */
+	public int getDomainCount()
+	{
+		return domainCount;
+	}
+	
+	/**
+	 * Gets the DNS records of the data set in configuration service format.
+	 * @return The DNS records of the data set.
+	 */
+	public List<DnsRecord> getRecords()
+	{
+		return records;
+	}
+	
+	/**
+	 * Gets the certificates of the data set in configuration service format.
+	 * @return The certificates of the data set.
+	 */
+	public List<Certificate> getCertificates()
+	{
+		return certificates;
+	}
+	
+	/*
+	 * Creates a unique address for a host of a domain
+	 */
+	private static InetAddress getAddress(int index, int host) throws Exception
+	{
+		return InetAddress.getByAddress(new byte[] {10, (byte)(index >> 8), (byte)index, (byte)host});
+	}
+	
+	/*
+	 * Converts a DNS record to the configuration service format
+	 */
+	private static DnsRecord toDnsRecord(Record record)
+	{
+		final DnsRecord retVal = new DnsRecord();
+		retVal.setName(record.getName().toString());
+		retVal.setType(record.getType());
+		retVal.setDclass(record.getDClass());
+		retVal.setTtl(record.getTTL());
+		retVal.setData(record.rdataToWireCanonical());
+		
+		return retVal;
+	}
+	
+	/*
+	 * Converts a certificate to the configuration service format
+	 */
+	private static Certificate toCertificate(String owner, X509Certificate cert) throws Exception
+	{
+		final Certificate retVal = new Certificate();
+		retVal.setId(cert.getSerialNumber().longValue());
+		retVal.setOwner(owner);
+		retVal.setData(cert.getEncoded());
+		
+		return retVal;
+	}
+	
+	/*
+	 * Generates a self signed certificate for an owner
+	 */
+	@SuppressWarnings("deprecation")
+	private static X509Certificate generateCertificate(KeyPair keyPair, long serial, String owner) throws Exception
+	{
+		final X500Principal subject = new X500Principal("CN=" + owner);
+		
+		final X509V3CertificateGenerator certGen = new X509V3CertificateGenerator();
+		certGen.setSerialNumber(BigInteger.valueOf(serial));
+		certGen.setIssuerDN(subject);
+		certGen.setSubjectDN(subject);
+		certGen.setNotBefore(new Date(System.currentTimeMillis() - 86400000L));
+		certGen.setNotAfter(new Date(System.currentTimeMillis() + 365L * 86400000L));
+		certGen.setPublicKey(keyPair.getPublic());
+		certGen.setSignatureAlgorithm("SHA1WithRSAEncryption");
+		
+		return certGen.generate(keyPair.getPrivate(), "BC");
+	}
+}
@@ -0,0 +1,773 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns.benchmark;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nhindirect.dns.ConfigServiceDNSStore;
+import org.nhindirect.dns.DNSException;
+import org.nhindirect.dns.DNSServer;
+import org.nhindirect.dns.DNSServerSettings;
+import org.nhindirect.dns.DNSStore;
+import org.nhindirect.dns.LatencyHistogram;
+import org.nhindirect.dns.ZoneSnapshotDNSStore;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * Command line load generator that measures the throughput and latency of the DNS server.  The benchmark starts a {@link DNSServer} on the loopback
+ * adapter backed by either an {@link InMemoryDNSStore} stub or a config service backed store running against an {@link InMemoryConfigurationServiceProxy}
+ * stand in, drives a weighted mix of A, MX, SOA, CERT, and ANY queries over UDP and/or TCP from a configurable number of concurrent clients, and reports
+ * the queries per second along with the 50th, 99th, and 99.9th percentile latencies.  Use the -help runtime parameter to see usage.
+ * @since 1.3
+ */
+public class DNSBenchmark 
+{
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(DNSBenchmark.class);
+	
+	public static final String STORE_STUB = "STUB";
+	public static final String STORE_CONFIG = "CONFIG";
+	public static final String STORE_SNAPSHOT = "SNAPSHOT";
+	
+	public static final String TRANSPORT_UDP = "UDP";
+	public static final String TRANSPORT_TCP = "TCP";
+	public static final String TRANSPORT_BOTH = "BOTH";
+	
+	public static final String DEFAULT_QUERY_MIX = "A:40,MX:20,SOA:10,CERT:25,ANY:5";
+	
+	private static final int CLIENT_TIMEOUT = 2000;
+	private static final int MAX_UDP_RESPONSE_SIZE = 65535;
+	
+	private String storeType = STORE_STUB;
+	private String transport = TRANSPORT_BOTH;
+	private int domainCount = 1000;
+	private long configLatencyMicros = 0;
+	private int concurrency = 16;
+	private int warmupSeconds = 5;
+	private int durationSeconds = 30;
+	private int missPercent = 0;
+	private boolean nonBlockingIO = false;
+	private int[] queryTypes;
+	private int[] queryWeights;
+	
+	static
+	{
+		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+	}
+	
+	/**
+	 * Creates a benchmark with the default settings.
+	 */
+	public DNSBenchmark()
+	{
+		setQueryMix(DEFAULT_QUERY_MIX);
+	}
+	
+	/**
+	 * Main entry point into the application.
+	 * @param argv Command line arguments.
+	 */
+	public static void main(String[] argv)
+	{
+		final DNSBenchmark benchmark = new DNSBenchmark();
+		
+		try
+		{
+			for (int i = 0; i < argv.length; i++)
+			{
+				final String arg = argv[i];
+				
+				if (arg.equals("-s"))
+					benchmark.setStoreType(getValue(argv, i++, "store type"));
+				else if (arg.equals("-t"))
+					benchmark.setTransport(getValue(argv, i++, "transport"));
+				else if (arg.equals("-n"))
+					benchmark.setDomainCount(Integer.parseInt(getValue(argv, i++, "domain count")));
+				else if (arg.equals("-l"))
+					benchmark.setConfigLatencyMicros(Long.parseLong(getValue(argv, i++, "config service latency")));
+				else if (arg.equals("-c"))
+					benchmark.setConcurrency(Integer.parseInt(getValue(argv, i++, "concurrency")));
+				else if (arg.equals("-w"))
+					benchmark.setWarmupSeconds(Integer.parseInt(getValue(argv, i++, "warm up time")));
+				else if (arg.equals("-d"))
+					benchmark.setDurationSeconds(Integer.parseInt(getValue(argv, i++, "duration")));
+				else if (arg.equals("-q"))
+					benchmark.setQueryMix(getValue(argv, i++, "query mix"));
+				else if (arg.equals("-x"))
+					benchmark.setMissPercent(Integer.parseInt(getValue(argv, i++, "miss percentage")));
+				else if (arg.equals("-nio"))
+					benchmark.setNonBlockingIO(true);
+				else if (arg.equals("-help"))
+				{
+					printUsage();
+					System.exit(-1);
+				}
+				else
+				{
+					System.err.println("Error: Unknown argument " + arg + "\n");
+					printUsage();
+					System.exit(-1);
+				}
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println("Error: " + e.getMessage() + "\n");
+			printUsage();
+			System.exit(-1);
+		}
+		
+		try
+		{
+			for (BenchmarkResult result : benchmark.run())
+				LOGGER.info(result);
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Benchmark failed: " + e.getMessage(), e);
+			System.exit(-1);
+		}
+		
+		System.exit(0);
+	}
+	
+	/*
+	 * Gets the value following the option at the given index
+	 */
+	private static String getValue(String[] argv, int index, String name)
+	{
+		if (index == argv.length - 1 || argv[index + 1].startsWith("-"))
+			throw new IllegalArgumentException("Missing " + name + ".");
+		
+		return argv[index + 1];
+	}
+	
+	/*
+	 * Prints the command usage
+	 */
+	private static void printUsage()
+	{
+		StringBuffer use = new StringBuffer();
+		use.append("Usage:\r\n");
+		use.append("java DNSBenchmark (options)...\r\n\r\n");
+		use.append("options:\r\n");
+		use.append("-s   Store   Store backing the server: STUB, CONFIG, or SNAPSHOT.\r\n");
+		use.append("             Default: " + STORE_STUB + "\r\n\r\n");
+		use.append("-t   Trans   Transport to drive: UDP, TCP, or BOTH.\r\n");
+		use.append("             Default: " + TRANSPORT_BOTH + "\r\n\r\n");
+		use.append("-n   Count   Number of domains in the generated data set.\r\n");
+		use.append("             Default: 1000\r\n\r\n");
+		use.append("-l   Micros  Simulated config service latency per call in microseconds.  Only used with the CONFIG and SNAPSHOT stores.\r\n");
+		use.append("             Default: 0\r\n\r\n");
+		use.append("-c   Count   Number of concurrent clients.\r\n");
+		use.append("             Default: 16\r\n\r\n");
+		use.append("-w   Secs    Warm up time in seconds per transport.  Warm up queries are not measured.\r\n");
+		use.append("             Default: 5\r\n\r\n");
+		use.append("-d   Secs    Measured run time in seconds per transport.\r\n");
+		use.append("             Default: 30\r\n\r\n");
+		use.append("-q   Mix     Weighted query type mix.\r\n");
+		use.append("             Default: " + DEFAULT_QUERY_MIX + "\r\n\r\n");
+		use.append("-x   Percent Percentage of queries for names that do not exist.\r\n");
+		use.append("             Default: 0\r\n\r\n");
+		use.append("-nio         Use the non blocking server transports.\r\n\r\n");
+
+		System.err.println(use);
+	}
+	
+	/**
+	 * Runs the benchmark against a newly started server for each configured transport.
+	 * @return The results of each transport run.
+	 * @throws Exception Thrown if the server cannot be started or the clients cannot be created.
+	 */
+	public List<BenchmarkResult> run() throws Exception
+	{
+		final BenchmarkDataSet dataSet = new BenchmarkDataSet(domainCount);
+		final InMemoryConfigurationServiceProxy proxy = new InMemoryConfigurationServiceProxy(dataSet.getRecords(), 
+				dataSet.getCertificates(), configLatencyMicros);
+		
+		final DNSStore store = createStore(dataSet, proxy);
+		
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setPort(getFreePort());
+		settings.setBindAddress("127.0.0.1");
+		settings.setNonBlockingIO(nonBlockingIO);
+		
+		final DNSServer server = new DNSServer(store, settings);
+		server.start();
+		
+		final List<BenchmarkResult> retVal = new ArrayList<BenchmarkResult>();
+		try
+		{
+			final InetSocketAddress address = new InetSocketAddress("127.0.0.1", settings.getPort());
+			
+			if (!transport.equals(TRANSPORT_TCP))
+				retVal.add(run(TRANSPORT_UDP, address, proxy));
+			
+			if (!transport.equals(TRANSPORT_UDP))
+				retVal.add(run(TRANSPORT_TCP, address, proxy));
+		}
+		finally
+		{
+			server.stop();
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Runs a warm up followed by a measured run over a single transport
+	 */
+	private BenchmarkResult run(String runTransport, InetSocketAddress address, InMemoryConfigurationServiceProxy proxy) throws Exception
+	{
+		if (warmupSeconds > 0)
+			runClients(runTransport, address, warmupSeconds);
+		
+		final long startCalls = proxy.getCallCount();
+		final BenchmarkResult retVal = runClients(runTransport, address, durationSeconds);
+		retVal.configCalls = proxy.getCallCount() - startCalls;
+		
+		return retVal;
+	}
+	
+	/*
+	 * Drives queries from the configured number of clients for the given number of seconds
+	 */
+	private BenchmarkResult runClients(String runTransport, InetSocketAddress address, int seconds) throws Exception
+	{
+		final BenchmarkResult result = new BenchmarkResult(runTransport);
+		final long endTime = System.nanoTime() + seconds * 1000000000L;
+		
+		final Thread[] clients = new Thread[concurrency];
+		for (int i = 0; i < clients.length; ++i)
+		{
+			final QueryClient client = runTransport.equals(TRANSPORT_UDP) ? new UDPQueryClient(address) : new TCPQueryClient(address);
+			clients[i] = new Thread(new ClientTask(client, result, endTime, i), "DNSBenchmark-" + runTransport + "-" + i);
+		}
+		
+		final long startTime = System.nanoTime();
+		for (Thread client : clients)
+			client.start();
+		
+		for (Thread client : clients)
+			client.join();
+		
+		result.elapsedNanos = System.nanoTime() - startTime;
+		
+		return result;
+	}
+	
+	/*
+	 * Creates the store that backs the server
+	 */
+	private DNSStore createStore(BenchmarkDataSet dataSet, InMemoryConfigurationServiceProxy proxy) throws DNSException
+	{
+		if (storeType.equals(STORE_CONFIG))
+			return new ConfigServiceDNSStore(proxy) {};
+		else if (storeType.equals(STORE_SNAPSHOT))
+			return new ZoneSnapshotDNSStore(proxy, 0) {};
+		
+		return new InMemoryDNSStore(dataSet);
+	}
+	
+	/*
+	 * Finds a free port on the loopback adapter
+	 */
+	private static int getFreePort() throws IOException
+	{
+		final ServerSocket socket = new ServerSocket(0);
+		try
+		{
+			return socket.getLocalPort();
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Builds a query for the given type.  Names are picked randomly from the data set and a configured percentage of them are replaced
+	 * with names that do not exist.
+	 * @param random Random number generator owned by the calling client.
+	 * @param type The record type to query.
+	 * @return The query.
+	 * @throws IOException Thrown if the query name cannot be built.
+	 */
+	protected Message createQuery(Random random, int type) throws IOException
+	{
+		final int index = random.nextInt(domainCount);
+		String name = BenchmarkDataSet.getDomain(index);
+		
+		if (type == Type.CERT)
+			name = (random.nextBoolean() ? "user." : "") + name;
+		else if (type == Type.A && random.nextBoolean())
+			name = "mail." + name;
+		
+		if (missPercent > 0 && random.nextInt(100) < missPercent)
+			name = "missing" + random.nextInt(Integer.MAX_VALUE) + "." + name;
+		
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	/*
+	 * Picks a query type using the configured weights
+	 */
+	private int nextQueryType(Random random)
+	{
+		int total = 0;
+		for (int weight : queryWeights)
+			total += weight;
+		
+		int pick = random.nextInt(total);
+		for (int i = 0; i < queryTypes.length; ++i)
+		{
+			pick -= queryWeights[i];
+			if (pick < 0)
+				return queryTypes[i];
+		}
+		
+		return queryTypes[queryTypes.length - 1];
+	}
+	
+	/**
+	 * Sets the store that backs the server: STUB, CONFIG, or SNAPSHOT.
+	 * @param storeType The store type.
+	 */
+	public void setStoreType(String storeType)
+	{
+		final String type = storeType.toUpperCase(Locale.getDefault());
+		if (!type.equals(STORE_STUB) && !type.equals(STORE_CONFIG) && !type.equals(STORE_SNAPSHOT))
+			throw new IllegalArgumentException("Unknown store type " + storeType);
+		
+		this.storeType = type;
+	}
+	
+	/**
+	 * Sets the transport to drive: UDP, TCP, or BOTH.
+	 * @param transport The transport.
+	 */
+	public void setTransport(String transport)
+	{
+		final String type = transport.toUpperCase(Locale.getDefault());
+		if (!type.equals(TRANSPORT_UDP) && !type.equals(TRANSPORT_TCP) && !type.equals(TRANSPORT_BOTH))
+			throw new IllegalArgumentException("Unknown transport " + transport);
+		
+		this.transport = type;
+	}
+	
+	/**
+	 * Sets the number of domains in the generated data set.
+	 * @param domainCount The number of domains.
+	 */
+	public void setDomainCount(int domainCount)
+	{
+		if (domainCount < 1)
+			throw new IllegalArgumentException("Domain count must be at least 1");
+		
+		this.domainCount = domainCount;
+	}
+	
+	/**
+	 * Sets the simulated latency of each config service call.
+	 * @param configLatencyMicros The latency in microseconds.
+	 */
+	public void setConfigLatencyMicros(long configLatencyMicros)
+	{
+		this.configLatencyMicros = Math.max(0, configLatencyMicros);
+	}
+	
+	/**
+	 * Sets the number of concurrent clients.
+	 * @param concurrency The number of concurrent clients.
+	 */
+	public void setConcurrency(int concurrency)
+	{
+		if (concurrency < 1)
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		
+		this.concurrency = concurrency;
+	}
+	
+	/**
+	 * Sets the unmeasured warm up time per transport.
+	 * @param warmupSeconds The warm up time in seconds.
+	 */
+	public void setWarmupSeconds(int warmupSeconds)
+	{
+		this.warmupSeconds = Math.max(0, warmupSeconds);
+	}
+	
+	/**
+	 * Sets the measured run time per transport.
+	 * @param durationSeconds The run time in seconds.
+	 */
+	public void setDurationSeconds(int durationSeconds)
+	{
+		if (durationSeconds < 1)
+			throw new IllegalArgumentException("Duration must be at least 1 second");
+		
+		this.durationSeconds = durationSeconds;
+	}
+	
+	/**
+	 * Sets the percentage of queries for names that do not exist.
+	 * @param missPercent The miss percentage between 0 and 100.
+	 */
+	public void setMissPercent(int missPercent)
+	{
+		if (missPercent < 0 || missPercent > 100)
+			throw new IllegalArgumentException("Miss percentage must be between 0 and 100");
+		
+		this.missPercent = missPercent;
+	}
+	
+	/**
+	 * Indicates if the server uses the non blocking transports.
+	 * @param nonBlockingIO True to use the non blocking transports.
+	 */
+	public void setNonBlockingIO(boolean nonBlockingIO)
+	{
+		this.nonBlockingIO = nonBlockingIO;
+	}
+	
+	/**
+	 * Sets the weighted query mix as a comma delimited list of type:weight pairs such as A:40,MX:20,SOA:10,CERT:25,ANY:5.
+	 * @param mix The query mix.
+	 */
+	public void setQueryMix(String mix)
+	{
+		final String[] entries = mix.split(",");
+		final int[] types = new int[entries.length];
+		final int[] weights = new int[entries.length];
+		
+		int total = 0;
+		for (int i = 0; i < entries.length; ++i)
+		{
+			final String[] pair = entries[i].trim().split(":");
+			types[i] = Type.value(pair[0].trim());
+			if (types[i] < 0)
+				throw new IllegalArgumentException("Unknown query type " + pair[0]);
+			
+			try
+			{
+				weights[i] = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid weight for query type " + pair[0]);
+			}
+			if (weights[i] < 0)
+				throw new IllegalArgumentException("Invalid weight for query type " + pair[0]);
+			
+			total += weights[i];
+		}
+		
+		if (total == 0)
+			throw new IllegalArgumentException("Query mix must have at least one positive weight");
+		
+		queryTypes = types;
+		queryWeights = weights;
+	}
+	
+	/*
+	 * Client thread that issues queries back to back until the end time
+	 */
+	private class ClientTask implements Runnable
+	{
+		private final QueryClient client;
+		private final BenchmarkResult result;
+		private final long endTime;
+		private final Random random;
+		
+		public ClientTask(QueryClient client, BenchmarkResult result, long endTime, int seed)
+		{
+			this.client = client;
+			this.result = result;
+			this.endTime = endTime;
+			this.random = new Random(System.nanoTime() + seed);
+		}
+		
+		public void run()
+		{
+			try
+			{
+				while (System.nanoTime() < endTime)
+				{
+					final int type = nextQueryType(random);
+					try
+					{
+						final Message query = createQuery(random, type);
+						
+						final long startTime = System.nanoTime();
+						final Message response = client.send(query);
+						final long latency = System.nanoTime() - startTime;
+						
+						final int rcode = response.getRcode();
+						if (response.getHeader().getID() != query.getHeader().getID() || (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN))
+							result.errors.incrementAndGet();
+						else
+							result.record(type, latency);
+					}
+					catch (SocketTimeoutException e)
+					{
+						result.timeouts.incrementAndGet();
+					}
+					catch (IOException e)
+					{
+						result.errors.incrementAndGet();
+					}
+				}
+			}
+			finally
+			{
+				client.close();
+			}
+		}
+	}
+	
+	/*
+	 * Sends a single query and waits for the response
+	 */
+	private static interface QueryClient
+	{
+		public Message send(Message query) throws IOException;
+		
+		public void close();
+	}
+	
+	/*
+	 * UDP client that reuses a single connected socket.  Late responses to timed out queries are discarded by ID.
+	 */
+	private static class UDPQueryClient implements QueryClient
+	{
+		private final DatagramSocket socket;
+		private final byte[] buffer = new byte[MAX_UDP_RESPONSE_SIZE];
+		
+		public UDPQueryClient(InetSocketAddress address) throws IOException
+		{
+			socket = new DatagramSocket();
+			socket.setSoTimeout(CLIENT_TIMEOUT);
+			socket.connect(address);
+		}
+		
+		public Message send(Message query) throws IOException
+		{
+			final byte[] out = query.toWire();
+			socket.send(new DatagramPacket(out, out.length));
+			
+			while (true)
+			{
+				final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				
+				final byte[] in = new byte[packet.getLength()];
+				System.arraycopy(buffer, 0, in, 0, in.length);
+				final Message response = new Message(in);
+				if (response.getHeader().getID() == query.getHeader().getID())
+					return response;
+			}
+		}
+		
+		public void close()
+		{
+			socket.close();
+		}
+	}
+	
+	/*
+	 * TCP client that opens a connection per query, matching the blocking server which closes the connection after each response
+	 */
+	private static class TCPQueryClient implements QueryClient
+	{
+		private final InetSocketAddress address;
+		
+		public TCPQueryClient(InetSocketAddress address)
+		{
+			this.address = address;
+		}
+		
+		public Message send(Message query) throws IOException
+		{
+			final Socket socket = new Socket();
+			try
+			{
+				socket.setSoTimeout(CLIENT_TIMEOUT);
+				socket.setTcpNoDelay(true);
+				socket.connect(address, CLIENT_TIMEOUT);
+				
+				final byte[] out = query.toWire();
+				final DataOutputStream outStream = new DataOutputStream(socket.getOutputStream());
+				outStream.writeShort(out.length);
+				outStream.write(out);
+				outStream.flush();
+				
+				final DataInputStream inStream = new DataInputStream(socket.getInputStream());
+				final byte[] in = new byte[inStream.readUnsignedShort()];
+				inStream.readFully(in);
+				
+				return new Message(in);
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		
+		public void close()
+		{
+			/* no-op */
+		}
+	}
+	
+	/**
+	 * Results of a single transport run.
+	 * @since 1.3
+	 */
+	public static class BenchmarkResult
+	{
+		private final String transport;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final ConcurrentMap<Integer, LatencyHistogram> typeLatency = new ConcurrentHashMap<Integer, LatencyHistogram>();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+		private volatile long elapsedNanos;
+		private volatile long configCalls;
+		
+		BenchmarkResult(String transport)
+		{
+			this.transport = transport;
+		}
+		
+		void record(int type, long nanos)
+		{
+			latency.record(nanos);
+			LatencyHistogram.getHistogram(typeLatency, type).record(nanos);
+		}
+		
+		/**
+		 * Gets the transport that was driven.
+		 * @return The transport.
+		 */
+		public String getTransport()
+		{
+			return transport;
+		}
+		
+		/**
+		 * Gets the latency of all successful queries.
+		 * @return The latency of all successful queries.
+		 */
+		public LatencyHistogram getLatency()
+		{
+			return latency;
+		}
+		
+		/**
+		 * Gets the latency of successful queries by query type.
+		 * @return The latency of successful queries keyed by query type.
+		 */
+		public Map<Integer, LatencyHistogram> getTypeLatency()
+		{
+			return typeLatency;
+		}
+		
+		/**
+		 * Gets the number of queries that failed or returned an unexpected response code.
+		 * @return The number of failed queries.
+		 */
+		public long getErrorCount()
+		{
+			return errors.get();
+		}
+		
+		/**
+		 * Gets the number of queries that timed out.
+		 * @return The number of timed out queries.
+		 */
+		public long getTimeoutCount()
+		{
+			return timeouts.get();
+		}
+		
+		/**
+		 * Gets the number of config service calls made during the measured run.
+		 * @return The number of config service calls.
+		 */
+		public long getConfigCallCount()
+		{
+			return configCalls;
+		}
+		
+		/**
+		 * Gets the number of successful queries per second.
+		 * @return The number of successful queries per second.
+		 */
+		public double getQueriesPerSecond()
+		{
+			return elapsedNanos == 0 ? 0 : latency.getCount() * 1000000000D / elapsedNanos;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString()
+		{
+			final StringBuilder builder = new StringBuilder();
+			builder.append(transport).append(" results:\r\n");
+			builder.append(String.format("\tQueries: %d  Errors: %d  Timeouts: %d  Config service calls: %d\r\n", 
+					latency.getCount(), errors.get(), timeouts.get(), configCalls));
+			builder.append(String.format("\tQPS: %.1f\r\n", getQueriesPerSecond()));
+			appendLatency(builder, "ALL", latency);
+			
+			for (Map.Entry<Integer, LatencyHistogram> entry : typeLatency.entrySet())
+				appendLatency(builder, Type.string(entry.getKey()), entry.getValue());
+			
+			return builder.toString();
+		}
+		
+		/*
+		 * Appends a latency line in milliseconds
+		 */
+		private static void appendLatency(StringBuilder builder, String name, LatencyHistogram histogram)
+		{
+			builder.append(String.format("\t%-5s count: %-9d p50: %.3fms  p99: %.3fms  p999: %.3fms  max: %.3fms\r\n", name, 
+					histogram.getCount(), histogram.getPercentile(50) / 1000D, histogram.getPercentile(99) / 1000D,
+					histogram.getPercentile(99.9) / 1000D, histogram.getMax() / 1000D));
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns.benchmark;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.CertificateGetOptions;
+import org.nhind.config.ConfigurationServiceException;
+import org.nhind.config.ConfigurationServiceProxy;
+import org.nhind.config.DnsRecord;
+import org.xbill.DNS.Type;
+
+/**
+ * Stand in for the configuration service that answers the DNS record and certificate calls used by the DNS stores from memory.  An optional
+ * latency is added to each call to simulate the web service round trip, so the benchmark shows how the stores behave when the configuration
+ * service is remote.
+ * @since 1.3
+ */
+public class InMemoryConfigurationServiceProxy extends ConfigurationServiceProxy
+{
+	protected final List<DnsRecord> records;
+	protected final List<Certificate> certificates;
+	protected final Map<String, List<DnsRecord>> recordsByName = new HashMap<String, List<DnsRecord>>();
+	protected final Map<String, List<Certificate>> certificatesByOwner = new HashMap<String, List<Certificate>>();
+	protected final long latencyMicros;
+	protected final AtomicLong callCount = new AtomicLong();
+	
+	/**
+	 * Creates a stand in for the configuration service.
+	 * @param records The DNS records held by the service.
+	 * @param certificates The certificates held by the service.
+	 * @param latencyMicros The latency in microseconds added to each call.
+	 */
+	public InMemoryConfigurationServiceProxy(Collection<DnsRecord> records, Collection<Certificate> certificates, long latencyMicros)
+	{
+		this.records = new ArrayList<DnsRecord>(records);
+		this.certificates = new ArrayList<Certificate>(certificates);
+		this.latencyMicros = latencyMicros;
+		
+		for (DnsRecord record : this.records)
+		{
+			final String name = normalize(record.getName());
+			List<DnsRecord> nameRecords = recordsByName.get(name);
+			if (nameRecords == null)
+			{
+				nameRecords = new ArrayList<DnsRecord>();
+				recordsByName.put(name, nameRecords);
+			}
+			nameRecords.add(record);
+		}
+		
+		for (Certificate cert : this.certificates)
+		{
+			final String owner = cert.getOwner().toLowerCase(Locale.getDefault());
+			List<Certificate> ownerCerts = certificatesByOwner.get(owner);
+			if (ownerCerts == null)
+			{
+				ownerCerts = new ArrayList<Certificate>();
+				certificatesByOwner.put(owner, ownerCerts);
+			}
+			ownerCerts.add(cert);
+		}
+	}
+	
+	/**
+	 * Gets the number of calls made to the service.
+	 * @return The number of calls made to the service.
+	 */
+	public long getCallCount()
+	{
+		return callCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DnsRecord[] getDNSByType(int type) throws RemoteException, ConfigurationServiceException
+	{
+		simulateCall();
+		
+		final List<DnsRecord> retVal = new ArrayList<DnsRecord>();
+		for (DnsRecord record : records)
+			if (type == Type.ANY || record.getType() == type)
+				retVal.add(record);
+		
+		return retVal.toArray(new DnsRecord[retVal.size()]);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DnsRecord[] getDNSByNameAndType(String name, int type) throws RemoteException, ConfigurationServiceException
+	{
+		simulateCall();
+		
+		final List<DnsRecord> nameRecords = recordsByName.get(normalize(name));
+		if (nameRecords == null)
+			return new DnsRecord[0];
+		
+		final List<DnsRecord> retVal = new ArrayList<DnsRecord>();
+		for (DnsRecord record : nameRecords)
+			if (type == Type.ANY || record.getType() == type)
+				retVal.add(record);
+		
+		return retVal.toArray(new DnsRecord[retVal.size()]);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Certificate[] getCertificatesForOwner(String owner, CertificateGetOptions options) throws RemoteException, ConfigurationServiceException
+	{
+		simulateCall();
+		
+		final List<Certificate> ownerCerts = certificatesByOwner.get(owner.toLowerCase(Locale.getDefault()));
+		
+		return (ownerCerts == null) ? new Certificate[0] : ownerCerts.toArray(new Certificate[ownerCerts.size()]);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Certificate[] listCertificates(long lastCertificateId, int maxResutls, CertificateGetOptions options) throws RemoteException, ConfigurationServiceException
+	{
+		simulateCall();
+		
+		return certificates.toArray(new Certificate[certificates.size()]);
+	}
+	
+	/*
+	 * Counts the call and waits for the simulated latency
+	 */
+	private void simulateCall() throws RemoteException
+	{
+		callCount.incrementAndGet();
+		
+		if (latencyMicros <= 0)
+			return;
+		
+		try
+		{
+			TimeUnit.MICROSECONDS.sleep(latencyMicros);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while simulating configuration service latency.", e);
+		}
+	}
+	
+	/*
+	 * Lower cases a name and adds the trailing period
+	 */
+	private static String normalize(String name)
+	{
+		name = name.toLowerCase(Locale.getDefault());
+		
+		return name.endsWith(".") ? name : name + ".";
+	}
+}
@@ -0,0 +1,149 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.nhind.config.Certificate;
+import org.nhind.config.DnsRecord;
+import org.nhindirect.dns.DNSError;
+import org.nhindirect.dns.DNSException;
+import org.nhindirect.dns.DNSStore;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNSSEC;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Stub {@link DNSStore} that answers from a prebuilt in memory index.  Lookups do no parsing or certificate decoding, so benchmarks that use this
+ * store measure the overhead of the socket servers and the {@link org.nhindirect.dns.DNSResponder} rather than the store.
+ * @since 1.3
+ */
+public class InMemoryDNSStore implements DNSStore
+{
+	protected final Map<String, Map<Integer, List<Record>>> records = new HashMap<String, Map<Integer, List<Record>>>();
+	protected final Map<String, Record> soaRecords = new HashMap<String, Record>();
+	
+	/**
+	 * Creates a store from a benchmark data set.
+	 * @param dataSet The data set to serve.
+	 * @throws DNSException Thrown if a record in the data set cannot be parsed.
+	 */
+	public InMemoryDNSStore(BenchmarkDataSet dataSet) throws DNSException
+	{
+		try
+		{
+			for (DnsRecord record : dataSet.getRecords())
+			{
+				final Record rec = Record.newRecord(Name.fromString(record.getName()), record.getType(), 
+						record.getDclass(), record.getTtl(), record.getData());
+				addRecord(rec);
+				
+				if (rec.getType() == Type.SOA)
+					soaRecords.put(rec.getName().toString().toLowerCase(Locale.getDefault()), rec);
+			}
+			
+			for (Certificate cert : dataSet.getCertificates())
+			{
+				final Name name = Name.fromString(cert.getOwner().replace('@', '.') + ".");
+				addRecord(new CERTRecord(name, DClass.IN, BenchmarkDataSet.TTL, CERTRecord.PKIX, 0, DNSSEC.Algorithm.RSASHA1, cert.getData()));
+			}
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to index benchmark data set: " + e.getMessage(), e);
+		}
+	}
+	
+	/*
+	 * Adds a record to the index
+	 */
+	private void addRecord(Record record)
+	{
+		final String name = record.getName().toString().toLowerCase(Locale.getDefault());
+		Map<Integer, List<Record>> typeIndex = records.get(name);
+		if (typeIndex == null)
+		{
+			typeIndex = new HashMap<Integer, List<Record>>();
+			records.put(name, typeIndex);
+		}
+		
+		List<Record> typeRecords = typeIndex.get(record.getType());
+		if (typeRecords == null)
+		{
+			typeRecords = new ArrayList<Record>();
+			typeIndex.put(record.getType(), typeRecords);
+		}
+		typeRecords.add(record);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Message get(Message request) throws DNSException
+	{
+		final Record question = request.getQuestion();
+		if (question == null)
+			throw new DNSException(DNSError.newError(Rcode.FORMERR));
+		
+		final String name = question.getName().toString().toLowerCase(Locale.getDefault());
+		final Map<Integer, List<Record>> typeIndex = records.get(name);
+		if (typeIndex == null)
+			return null;
+		
+		List<Record> answers;
+		if (question.getType() == Type.ANY)
+		{
+			answers = new ArrayList<Record>();
+			for (List<Record> typeRecords : typeIndex.values())
+				answers.addAll(typeRecords);
+		}
+		else
+		{
+			answers = typeIndex.get(question.getType());
+			if (answers == null)
+				answers = Collections.emptyList();
+		}
+		
+		if (answers.isEmpty())
+			return null;
+		
+		final Message response = new Message(request.getHeader().getID());
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setFlag(Flags.AA);
+		response.addRecord(question, Section.QUESTION);
+		for (Record answer : answers)
+			response.addRecord(answer, Section.ANSWER);
+		
+		final Record soa = soaRecords.get(name.substring(name.indexOf('.') + 1));
+		if (soa != null)
+			response.addRecord(soa, Section.AUTHORITY);
+		else if (soaRecords.containsKey(name))
+			response.addRecord(soaRecords.get(name), Section.AUTHORITY);
+		
+		return response;
+	}
+}
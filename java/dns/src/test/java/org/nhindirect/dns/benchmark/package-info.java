@@ -0,0 +1,4 @@
+/**
+ * Load generation and latency benchmark harness for the DNS server.
+ */
+package org.nhindirect.dns.benchmark;
\ No newline at end of file
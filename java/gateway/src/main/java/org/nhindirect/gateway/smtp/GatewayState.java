@@ -27,11 +27,13 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nhindirect.gateway.smtp.config.AgentConfigUpdate;
 import org.nhindirect.gateway.smtp.config.SmtpAgentConfig;
+import org.nhindirect.gateway.smtp.config.VersionedSmtpAgentConfig;
+import org.nhindirect.stagent.AgentSnapshot;
 import org.nhindirect.stagent.MutableAgent;
 import org.nhindirect.stagent.NHINDAgent;
-
-import com.google.inject.Injector;
+import org.nhindirect.stagent.policy.CachingPolicyFilterFactory;
 
 /**
  * Manages the settings state of the gateway provides read/write lock protectors for concurrent operations.
@@ -82,7 +84,10 @@ public class GatewayState
 	  * Locks a services for processing operations.  Semantically is the same as a {@link java.util.concurrent.locks.ReadWriteLock#readLock()}.  Operations using this lock should not attempt to change the state
 	  * of the services they are consuming.   Multiple threads can concurrently obtain the processing lock and execute, however 
 	  * this method will block is another thread holds the update lock.
+	  * @deprecated As of 3.1, agents publish their state as an immutable {@link org.nhindirect.stagent.AgentSnapshot} and messages are processed
+	  * against the snapshot that was current when processing started, so the processing path no longer needs to hold a lock.
 	  */
+	 @Deprecated
 	 public void lockForProcessing()
 	 {
 		 readWriteLock.readLock().lock();
@@ -91,7 +96,9 @@ public class GatewayState
 	 /**
 	  * Unlocks a service from processing operations.  This releases the thread's access to the lock and allows access to the update lock if no
 	  * other threads hold the processing lock.
+	  * @deprecated As of 3.1, see {@link #lockForProcessing()}.
 	  */
+	 @Deprecated
 	 public void unlockFromProcessing()
 	 {
 		 readWriteLock.readLock().unlock();
@@ -258,50 +265,45 @@ public class GatewayState
 			}
 			final MutableAgent runningAgent = (MutableAgent)theAgent;
 			
+			// the first pass after the manager starts always refreshes everything so restarting the manager forces a full refresh
+			boolean fullRefresh = true;
+			
 			while(isRunning())
 			{	
-				NHINDAgent newAgent = null;
+				AgentConfigUpdate update = null;
 				
 				// build a new configuration
 				try
 				{
-					LOGGER.info("Refreshing agent settings from configuration.");
-					final Injector injector = config.getAgentInjector();
-					newAgent = injector.getInstance(NHINDAgent.class);
-					if (!(newAgent instanceof MutableAgent))
+					if (!fullRefresh && config instanceof VersionedSmtpAgentConfig)
 					{
-						LOGGER.warn("The agent configuration does not allow attributes to be retrieved.  Cannot update currently running agent.");
-						return;
+						LOGGER.debug("Checking configuration for changes.");
+						update = ((VersionedSmtpAgentConfig)config).getAgentConfigUpdate();
+					}
+					else
+					{
+						LOGGER.info("Refreshing agent settings from configuration.");
+						update = AgentConfigUpdate.fullUpdate(config.getAgentInjector());
 					}
-				}
-				catch (Throwable t)
-				{
-					LOGGER.warn("Could not get new agent settings.  Configuration may be in an invalid state or not reachable.", t);
-					continue;
-				}
 					
-				final MutableAgent newMutableAgent = (MutableAgent)newAgent;
-				
-				// lock the system to stop new messages from flowing
-				GatewayState.INSTANCE.lockForUpdating();
-				try
-				{
-					// set the attributes of the agent
-					runningAgent.setDomains(newMutableAgent.getDomains());
-					runningAgent.setTrustAnchorResolver(newMutableAgent.getTrustAnchors());
-					runningAgent.setCryptographer(newMutableAgent.getCryptographer());
-					runningAgent.setPrivateCertResolver(newMutableAgent.getPrivateCertResolver());
-					runningAgent.setPublicCertResolvers(newMutableAgent.getPublicCertResolvers());
-					runningAgent.setPolicyFilter(newMutableAgent.getPolicyFilter());
-					runningAgent.setPrivatePolicyResolver(newMutableAgent.getPrivatePolicyResolver());
-					runningAgent.setPublicPolicyResolver(newMutableAgent.getPublicPolicyResolver());
-					runningAgent.setTrustModel(newMutableAgent.getTrustModel());
+					if (update != null)
+					{
+						final NHINDAgent newAgent = update.getInjector().getInstance(NHINDAgent.class);
+						if (!(newAgent instanceof MutableAgent))
+						{
+							LOGGER.warn("The agent configuration does not allow attributes to be retrieved.  Cannot update currently running agent.");
+							return;
+						}
+						
+						LOGGER.info("Applying changed configuration sections " + update.getChangedSections() + " to the running agent.");
+						applyUpdate(runningAgent, (MutableAgent)newAgent, update);
+					}
 					
+					fullRefresh = false;
 				}
-				finally
+				catch (Throwable t)
 				{
-					// release the update lock
-					GatewayState.INSTANCE.unlockFromUpdating();
+					LOGGER.warn("Could not get new agent settings.  Configuration may be in an invalid state or not reachable.", t);
 				}
 				
 				synchronized(this)
@@ -317,6 +319,50 @@ public class GatewayState
 			}
 		 }
 		 
+		 /*
+		  * Applies the changed sections of the new agent to the running agent.  Unchanged attributes are left in place so 
+		  * caches held by them survive the update.  All changes are published to the running agent as a single snapshot; messages
+		  * already in flight finish with the snapshot they started with and new messages are not blocked while the update is applied.
+		  */
+		 protected void applyUpdate(MutableAgent runningAgent, MutableAgent newAgent, AgentConfigUpdate update)
+		 {
+			AgentSnapshot snapshot = runningAgent.getSnapshot().withCryptographer(newAgent.getCryptographer());
+			
+			// set the attributes of the agent
+			if (update.isChanged(AgentConfigUpdate.Section.DOMAINS))
+				snapshot = snapshot.withDomains(newAgent.getDomains());
+			if (update.isChanged(AgentConfigUpdate.Section.TRUST_ANCHORS))
+				snapshot = snapshot.withTrustAnchors(newAgent.getTrustAnchors());
+			
+			if (update.isChanged(AgentConfigUpdate.Section.PRIVATE_CERT_STORE))
+				snapshot = snapshot.withPrivateCertResolver(newAgent.getPrivateCertResolver());
+			if (update.isChanged(AgentConfigUpdate.Section.PUBLIC_CERT_STORE))
+				snapshot = snapshot.withPublicCertResolvers(newAgent.getPublicCertResolvers());
+			
+			// the trust model is built from the trust anchors and the trust policies, and its chain validator resolves intermediate
+			// certificates through the public cert resolvers
+			if (update.isChanged(AgentConfigUpdate.Section.POLICIES) || update.isChanged(AgentConfigUpdate.Section.TRUST_ANCHORS)
+					|| update.isChanged(AgentConfigUpdate.Section.PUBLIC_CERT_STORE))
+				snapshot = snapshot.withTrustModel(newAgent.getTrustModel());
+			
+			if (update.isChanged(AgentConfigUpdate.Section.POLICIES))
+			{
+				snapshot = snapshot.withPolicyFilter(newAgent.getPolicyFilter())
+						.withPrivatePolicyResolver(newAgent.getPrivatePolicyResolver())
+						.withPublicPolicyResolver(newAgent.getPublicPolicyResolver());
+			}
+			
+			runningAgent.setSnapshot(snapshot);
+			
+			if (update.isChanged(AgentConfigUpdate.Section.POLICIES))
+			{
+				// policies changed, so verdicts cached by policy filters shared across reloads are no longer valid
+				CachingPolicyFilterFactory.clear(snapshot.getPolicyFilter());
+				if (snapshot.getTrustModel() != null)
+					CachingPolicyFilterFactory.clear(snapshot.getTrustModel().getPolicyFilter());
+			}
+		 }
+		 
 		 /**
 		  * Sets the running flag of the manager. 
 		  * @param running 
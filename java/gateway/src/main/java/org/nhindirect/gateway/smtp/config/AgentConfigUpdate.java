@@ -0,0 +1,119 @@
+/* 
+Copyright (c) 2010, NHIN Direct Project
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer 
+in the documentation and/or other materials provided with the distribution.  Neither the name of the The NHIN Direct Project (nhindirect.org). 
+nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS 
+BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE 
+GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.gateway.smtp.config;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.google.inject.Injector;
+
+/**
+ * Result of an incremental configuration reload.  Contains an injector that reflects the complete current configuration along with
+ * the sections of the configuration that changed, allowing a running agent to apply only the changed attributes.
+ * @since 3.1
+ */
+public class AgentConfigUpdate 
+{
+	/**
+	 * Sections of the agent configuration that can change independently of each other.
+	 */
+	public static enum Section
+	{
+		/**
+		 * The list of domains managed by the agent and their postmasters.
+		 */
+		DOMAINS,
+		
+		/**
+		 * Trust anchors and trust bundles.
+		 */
+		TRUST_ANCHORS,
+		
+		/**
+		 * Public certificate resolvers.
+		 */
+		PUBLIC_CERT_STORE,
+		
+		/**
+		 * Private certificate resolvers.
+		 */
+		PRIVATE_CERT_STORE,
+		
+		/**
+		 * Certificate policies used by the resolvers and the trust model.
+		 */
+		POLICIES;
+	}
+	
+	protected final Injector injector;
+	protected final Set<Section> changedSections;
+	
+	/**
+	 * Creates an update where all sections are considered changed.
+	 * @param injector Injector reflecting the complete current configuration.
+	 * @return An update where all sections are considered changed.
+	 */
+	public static AgentConfigUpdate fullUpdate(Injector injector)
+	{
+		return new AgentConfigUpdate(injector, EnumSet.allOf(Section.class));
+	}
+	
+	/**
+	 * Constructor
+	 * @param injector Injector reflecting the complete current configuration.
+	 * @param changedSections The sections that changed since the last injector was built.
+	 */
+	public AgentConfigUpdate(Injector injector, Set<Section> changedSections)
+	{
+		if (injector == null || changedSections == null)
+			throw new IllegalArgumentException("Injector and changed sections cannot be null.");
+		
+		this.injector = injector;
+		this.changedSections = Collections.unmodifiableSet(changedSections.isEmpty() ? EnumSet.noneOf(Section.class) : EnumSet.copyOf(changedSections));
+	}
+	
+	/**
+	 * Gets the injector reflecting the complete current configuration.
+	 * @return The injector reflecting the complete current configuration.
+	 */
+	public Injector getInjector()
+	{
+		return injector;
+	}
+	
+	/**
+	 * Gets the sections that changed since the last injector was built.
+	 * @return The sections that changed since the last injector was built.
+	 */
+	public Set<Section> getChangedSections()
+	{
+		return changedSections;
+	}
+	
+	/**
+	 * Indicates if a section changed since the last injector was built.
+	 * @param section The section to check.
+	 * @return True if the section changed.  False otherwise.
+	 */
+	public boolean isChanged(Section section)
+	{
+		return changedSections.contains(section);
+	}
+}
@@ -9,29 +9,37 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.nhind.config.module.DefaultRESTServiceModule;
+import org.nhind.config.rest.AgentConfigurationService;
 import org.nhind.config.rest.AnchorService;
 import org.nhind.config.rest.CertPolicyService;
 import org.nhind.config.rest.CertificateService;
+import org.nhind.config.rest.ConfigVersionService;
 import org.nhind.config.rest.DomainService;
 import org.nhind.config.rest.SettingService;
 import org.nhind.config.rest.TrustBundleService;
 import org.nhindirect.common.rest.ServiceSecurityManager;
+import org.nhindirect.config.model.AgentConfiguration;
 import org.nhindirect.config.model.Anchor;
 import org.nhindirect.config.model.CertPolicy;
 import org.nhindirect.config.model.CertPolicyGroupDomainReltn;
 import org.nhindirect.config.model.CertPolicyGroupUse;
 import org.nhindirect.config.model.CertPolicyUse;
+import org.nhindirect.config.model.ConfigVersion;
 import org.nhindirect.config.model.Domain;
 import org.nhindirect.config.model.Setting;
 import org.nhindirect.config.model.TrustBundle;
@@ -84,17 +92,27 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
 
-public class RESTSmtpAgentConfig extends WSSmtpAgentConfig
+public class RESTSmtpAgentConfig extends WSSmtpAgentConfig implements VersionedSmtpAgentConfig
 {
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(RESTSmtpAgentConfig.class);
+	
 	protected final DomainService domainService;
 	protected final AnchorService anchorService;	
 	protected final CertPolicyService policyService;	
 	protected final SettingService settingsService;
 	protected final TrustBundleService trustBundleService;
 	protected final CertificateService certificateService;
+	protected final ConfigVersionService versionService;
+	protected final AgentConfigurationService agentConfigService;
 	
 	protected Collection<Domain> lookedupRESTServiceDomains;
 	
+	/**
+	 * Version of the configuration that the most recently built sections reflect.  Null if the configuration service
+	 * does not support change detection or no injector has been built yet.
+	 */
+	protected ConfigVersion builtConfigVersion;
+	
 	public RESTSmtpAgentConfig(URL configServiceLocation, Provider<NHINDAgent> agentProvider, Provider<ServiceSecurityManager> securityManager)
 	{
 		super(configServiceLocation, agentProvider);
@@ -107,10 +125,118 @@ public class RESTSmtpAgentConfig extends WSSmtpAgentConfig
 		settingsService = configInjector.getInstance(SettingService.class); 
 		trustBundleService = configInjector.getInstance(TrustBundleService.class); 
 		certificateService = configInjector.getInstance(CertificateService.class); 
+		versionService = configInjector.getInstance(ConfigVersionService.class); 
+		agentConfigService = configInjector.getInstance(AgentConfigurationService.class); 
 		
 		ConfigServiceRESTCertificateStore.initJVMParams();
 	}
 	
+	@Override
+	protected Injector buildAgentInjector()
+	{
+		// get the version before building so changes made while building are picked up by the next update
+		final ConfigVersion version = getConfigVersion();
+		
+		final Injector retVal = super.buildAgentInjector();
+		
+		builtConfigVersion = version;
+		
+		return retVal;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized AgentConfigUpdate getAgentConfigUpdate()
+	{
+		final ConfigVersion version = getConfigVersion();
+		
+		// without change detection, everything has to be rebuilt
+		if (version == null || builtConfigVersion == null)
+			return AgentConfigUpdate.fullUpdate(buildAgentInjector());
+		
+		final boolean settingsChanged = isChanged(builtConfigVersion.getSettingsVersion(), version.getSettingsVersion());
+		final boolean domainsChanged = isChanged(builtConfigVersion.getDomainsVersion(), version.getDomainsVersion());
+		final boolean anchorsChanged = isChanged(builtConfigVersion.getAnchorsVersion(), version.getAnchorsVersion()) ||
+				isChanged(builtConfigVersion.getTrustBundlesVersion(), version.getTrustBundlesVersion());
+		final boolean policiesChanged = isChanged(builtConfigVersion.getCertPoliciesVersion(), version.getCertPoliciesVersion());
+		
+		final Set<AgentConfigUpdate.Section> changedSections = EnumSet.noneOf(AgentConfigUpdate.Section.class);
+		
+		// the anchor store and resolver types are settings, and anchors are looked up per domain
+		if (settingsChanged || domainsChanged || anchorsChanged)
+		{
+			buildDomains();
+			changedSections.add(AgentConfigUpdate.Section.DOMAINS);
+			changedSections.add(AgentConfigUpdate.Section.TRUST_ANCHORS);
+		}
+		
+		if (settingsChanged)
+		{
+			buildPublicCertStore();
+			buildPrivateCertStore();
+			buildMDNSettings();
+			buildMessageSettings(MESSAGE_SETTING_RAW);
+			buildMessageSettings(MESSAGE_SETTING_INCOMING);
+			buildMessageSettings(MESSAGE_SETTING_OUTGOING);
+			buildMessageSettings(MESSAGE_SETTING_BAD);
+			changedSections.add(AgentConfigUpdate.Section.PUBLIC_CERT_STORE);
+			changedSections.add(AgentConfigUpdate.Section.PRIVATE_CERT_STORE);
+		}
+		
+		if (policiesChanged)
+		{
+			buildPolicyResolvers();
+			changedSections.add(AgentConfigUpdate.Section.POLICIES);
+		}
+		
+		builtConfigVersion = version;
+		
+		if (changedSections.isEmpty())
+			return null;
+		
+		return new AgentConfigUpdate(createAgentInjector(), changedSections);
+	}
+	
+	/*
+	 * Gets the current version of the configuration.  Returns null if the configuration service does not support change
+	 * detection or the version could not be retrieved, in which case callers fall back to rebuilding everything.
+	 */
+	protected ConfigVersion getConfigVersion()
+	{
+		try
+		{
+			return versionService.getConfigVersion();
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Could not get configuration version.  All configuration sections will be rebuilt.", e);
+			return null;
+		}
+	}
+	
+	/*
+	 * Gets the trust configuration of all domains in a single call.  Returns null if the configuration service does not
+	 * support the bulk lookup, in which case callers fall back to the individual lookups.
+	 */
+	protected AgentConfiguration getAgentConfiguration()
+	{
+		try
+		{
+			return agentConfigService.getAgentConfiguration();
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Could not get bulk agent configuration from the configuration service.  Falling back to individual lookups.", e);
+			return null;
+		}
+	}
+	
+	protected static boolean isChanged(String builtVersion, String currentVersion)
+	{
+		return (builtVersion == null) ? currentVersion != null : !builtVersion.equals(currentVersion);
+	}
+	
 	@Override
 	protected void buildPolicyResolvers()
 	{
@@ -280,83 +406,114 @@ public class RESTSmtpAgentConfig extends WSSmtpAgentConfig
 		else
 		{
 			// trust bundles are shared objects across domains, so just pull the entire bundle list and associate
-			// the anchors in the bundles to the appropriate domains as we go... this will not always be the most efficient
-			// algorithm, but it most cases it will be when there are several domains configured (in which case this
-			// loading algorithm will be much more efficient)
+			// the anchors in the bundles to the appropriate domains as we go
 			final Map<String, TrustBundle> bundleMap = new HashMap<String, TrustBundle>();
-			try
-			{
-				final Collection<TrustBundle> bundles = trustBundleService.getTrustBundles(true);
-				// put the bundles in a Map by name
-				if (bundles != null)
-					for (TrustBundle bundle : bundles)
-						bundleMap.put(bundle.getBundleName(), bundle);
-			}
-			catch (Exception e)
+			final Map<String, Collection<Anchor>> anchorsByOwner = new HashMap<String, Collection<Anchor>>();
+			final Map<String, Collection<TrustBundleDomainReltn>> reltnsByDomain = new HashMap<String, Collection<TrustBundleDomainReltn>>();
+			
+			final AgentConfiguration agentConfig = getAgentConfiguration();
+			if (agentConfig != null)
 			{
-				throw new SmtpAgentException(SmtpAgentError.InvalidConfigurationFormat,  
-						"WebService error getting trust bundles: " + e.getMessage(), e);
+				// everything came back in a single response
+				for (TrustBundle bundle : agentConfig.getTrustBundles())
+					bundleMap.put(bundle.getBundleName(), bundle);
+				for (Anchor anchor : agentConfig.getAnchors())
+					groupByName(anchorsByOwner, anchor.getOwner(), anchor);
+				for (TrustBundleDomainReltn domainAssoc : agentConfig.getTrustBundleDomainReltns())
+					groupByName(reltnsByDomain, domainAssoc.getDomain().getDomainName(), domainAssoc);
 			}
-			// hit up the web service for each domains anchor
-			for (Domain domain : lookedupRESTServiceDomains)
+			else
 			{
 				try
 				{
-
+					final Collection<TrustBundle> bundles = trustBundleService.getTrustBundles(true);
+					// put the bundles in a Map by name
+					if (bundles != null)
+						for (TrustBundle bundle : bundles)
+							bundleMap.put(bundle.getBundleName(), bundle);
+				}
+				catch (Exception e)
+				{
+					throw new SmtpAgentException(SmtpAgentError.InvalidConfigurationFormat,  
+							"WebService error getting trust bundles: " + e.getMessage(), e);
+				}
 				
-					final Collection<X509Certificate> incomingAnchorsToAdd = new ArrayList<X509Certificate>();
-					final Collection<X509Certificate> outgoingAnchorsToAdd = new ArrayList<X509Certificate>();
-					
-					// get the anchors for the domain
-					final Collection<Anchor> anchors = anchorService.getAnchorsForOwner(domain.getDomainName(), false, false, null);
-					
+				try
+				{
+					final Collection<Anchor> anchors = anchorService.getAnchors();
 					if (anchors != null)
-					{
 						for (Anchor anchor : anchors)
-						{
-							final X509Certificate anchorToAdd = certFromData(anchor.getCertificateData());
-							if (anchor.isIncoming())
-								incomingAnchorsToAdd.add(anchorToAdd);
-							if (anchor.isOutgoing())
-								outgoingAnchorsToAdd.add(anchorToAdd);
-						}
-
+							groupByName(anchorsByOwner, anchor.getOwner(), anchor);
+				}
+				catch (Exception e)
+				{
+					throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings, 
+							"WebService error getting trust anchors: " + e.getMessage(), e);
+				}
+				
+				// older configuration services can only return bundle associations one domain at a time
+				for (Domain domain : lookedupRESTServiceDomains)
+				{
+					try
+					{
+						final Collection<TrustBundleDomainReltn> domainAssocs = trustBundleService.getTrustBundlesByDomain(domain.getDomainName(), false);
+						if (domainAssocs != null)
+							for (TrustBundleDomainReltn domainAssoc : domainAssocs)
+								groupByName(reltnsByDomain, domain.getDomainName(), domainAssoc);
 					}
-					
-					// check to see if there is a bundle associated to this domain
-					final Collection<TrustBundleDomainReltn> domainAssocs = trustBundleService.getTrustBundlesByDomain(domain.getDomainName(), false);
-					if (domainAssocs != null)
+					catch (Exception e)
 					{
-						for (TrustBundleDomainReltn domainAssoc : domainAssocs)
-						{
-							final TrustBundle bundle = bundleMap.get(domainAssoc.getTrustBundle().getBundleName());
-							if (bundle != null && bundle.getTrustBundleAnchors() != null)
-							{
-								for (TrustBundleAnchor anchor : bundle.getTrustBundleAnchors())
-								{
-									final X509Certificate anchorToAdd = certFromData(anchor.getAnchorData());
-									if (domainAssoc.isIncoming())
-										incomingAnchorsToAdd.add(anchorToAdd);
-									if (domainAssoc.isOutgoing())
-										outgoingAnchorsToAdd.add(anchorToAdd);
-								}
-							}
-						}
+						throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings, 
+								"WebService error getting trust bundles for domain " + domain + ":" + e.getMessage(), e);
 					}
-					
-					incomingAnchors.put(domain.getDomainName(), incomingAnchorsToAdd);
-					outgoingAnchors.put(domain.getDomainName(), outgoingAnchorsToAdd);
 				}
-				catch (SmtpAgentException e)
+			}
+			
+			// the same anchor is usually shared by many domains through bundles, so only decode it once
+			final Map<String, X509Certificate> decodedCerts = new HashMap<String, X509Certificate>();
+			for (Domain domain : lookedupRESTServiceDomains)
+			{
+				final String domainKey = domain.getDomainName().toUpperCase(Locale.getDefault());
+				final Collection<X509Certificate> incomingAnchorsToAdd = new ArrayList<X509Certificate>();
+				final Collection<X509Certificate> outgoingAnchorsToAdd = new ArrayList<X509Certificate>();
+				
+				// get the anchors for the domain
+				final Collection<Anchor> anchors = anchorsByOwner.get(domainKey);
+				if (anchors != null)
 				{
-					// rethrow
-					throw e;
+					for (Anchor anchor : anchors)
+					{
+						final X509Certificate anchorToAdd = certFromData(decodedCerts, anchor.getCertificateData());
+						if (anchor.isIncoming())
+							incomingAnchorsToAdd.add(anchorToAdd);
+						if (anchor.isOutgoing())
+							outgoingAnchorsToAdd.add(anchorToAdd);
+					}
 				}
-				catch (Exception e)
+				
+				// check to see if there is a bundle associated to this domain
+				final Collection<TrustBundleDomainReltn> domainAssocs = reltnsByDomain.get(domainKey);
+				if (domainAssocs != null)
 				{
-					throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings, 
-							"WebService error getting trust anchors for domain " + domain + ":" + e.getMessage(), e);
+					for (TrustBundleDomainReltn domainAssoc : domainAssocs)
+					{
+						final TrustBundle bundle = bundleMap.get(domainAssoc.getTrustBundle().getBundleName());
+						if (bundle != null && bundle.getTrustBundleAnchors() != null)
+						{
+							for (TrustBundleAnchor anchor : bundle.getTrustBundleAnchors())
+							{
+								final X509Certificate anchorToAdd = certFromData(decodedCerts, anchor.getAnchorData());
+								if (domainAssoc.isIncoming())
+									incomingAnchorsToAdd.add(anchorToAdd);
+								if (domainAssoc.isOutgoing())
+									outgoingAnchorsToAdd.add(anchorToAdd);
+							}
+						}
+					}
 				}
+				
+				incomingAnchors.put(domain.getDomainName(), incomingAnchorsToAdd);
+				outgoingAnchors.put(domain.getDomainName(), outgoingAnchorsToAdd);
 			}
 		}
 		
@@ -5,6 +5,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -19,7 +21,10 @@ import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nhind.config.Anchor;
 import org.nhind.config.CertPolicy;
 import org.nhind.config.CertPolicyGroupDomainReltn;
@@ -87,6 +92,8 @@ import com.google.inject.Provider;
 
 public class WSSmtpAgentConfig implements SmtpAgentConfig 
 {
+	private static final Log LOGGER = LogFactory.getFactory().getInstance(WSSmtpAgentConfig.class);
+	
 	protected static final String STORE_TYPE_WS = "WS";
 	protected static final String STORE_TYPE_LDAP = "LDAP";
 	protected static final String STORE_TYPE_PUBLIC_LDAP = "PublicLDAP";
@@ -149,6 +156,68 @@ public class WSSmtpAgentConfig implements SmtpAgentConfig
         return cert;
 	}
 	
+	/*
+	 * Decodes certificate data using a cache of certificates already decoded during the current configuration pass.  Entries are keyed by
+	 * the SHA-1 thumbprint of the encoded data so an anchor that is shared by multiple domains or bundles is only parsed once.
+	 */
+	protected X509Certificate certFromData(Map<String, X509Certificate> decodedCerts, byte[] data) throws SmtpAgentException
+	{
+		final String thumbprint;
+		try
+		{
+			thumbprint = new String(Hex.encodeHex(MessageDigest.getInstance("SHA-1").digest(data)));
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// no way to build a cache key... just decode the data
+			return certFromData(data);
+		}
+		
+		X509Certificate cert = decodedCerts.get(thumbprint);
+		if (cert == null)
+		{
+			cert = certFromData(data);
+			decodedCerts.put(thumbprint, cert);
+		}
+		return cert;
+	}
+	
+	/*
+	 * Adds an item to the collection associated with a case insensitive name.
+	 */
+	protected static <T> void groupByName(Map<String, Collection<T>> groups, String name, T item)
+	{
+		if (name == null)
+			return;
+		
+		final String key = name.toUpperCase(Locale.getDefault());
+		Collection<T> group = groups.get(key);
+		if (group == null)
+		{
+			group = new ArrayList<T>();
+			groups.put(key, group);
+		}
+		group.add(item);
+	}
+	
+	/*
+	 * Gets every trust bundle to domain association in one call.  Returns null if the configuration service does not
+	 * support the operation so the caller can fall back to per domain lookups.
+	 */
+	protected TrustBundleDomainReltn[] getTrustBundleDomainReltns()
+	{
+		try
+		{
+			final TrustBundleDomainReltn[] domainAssocs = cfService.getTrustBundleDomainReltns(false);
+			return (domainAssocs == null) ? new TrustBundleDomainReltn[0] : domainAssocs;
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("Could not get all trust bundle domain associations from the configuration service.  Falling back to per domain lookups.", e);
+			return null;
+		}
+	}
+	
 	/**
 	 * Construct and configuration component with the location of the configuration file and an optional provider for creating
 	 * instances of the security and trust anchor.
@@ -215,7 +284,16 @@ public class WSSmtpAgentConfig implements SmtpAgentConfig
 		
 		// build policy resolver modules
 		buildPolicyResolvers();
-		
+
+		return createAgentInjector();
+	}
+
+	/**
+	 * Creates an injector from the most recently built configuration sections.
+	 * @return An injector that can be used to create {@link SmtpAgent} objects.
+	 */
+	protected Injector createAgentInjector()
+	{
 		SmtpAgentSettings settings = new SmtpAgentSettings(domainPostmasters, rawSettings, outgoingSettings,
 				incomingSettings, badSettings, notificationProducer);
 		
@@ -424,65 +502,94 @@ public class WSSmtpAgentConfig implements SmtpAgentConfig
 				throw new SmtpAgentException(SmtpAgentError.InvalidConfigurationFormat,  
 						"WebService error getting trust bundles: " + e.getMessage(), e);
 			}
-			// hit up the web service for each domains anchor
-			for (Domain domain : lookedupWSDomains)
+			// pull all anchors and all bundle associations in one call each instead of two calls per domain, then
+			// group them by domain as we go
+			final Map<String, Collection<Anchor>> anchorsByOwner = new HashMap<String, Collection<Anchor>>();
+			final Map<String, Collection<TrustBundleDomainReltn>> reltnsByDomain = new HashMap<String, Collection<TrustBundleDomainReltn>>();
+			try
 			{
-				try
+				final Anchor[] anchors = cfService.listAnchors(null, Integer.MAX_VALUE, null);
+				if (anchors != null)
+					for (Anchor anchor : anchors)
+						groupByName(anchorsByOwner, anchor.getOwner(), anchor);
+			}
+			catch (Exception e)
+			{
+				throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings,  
+						"WebService error getting trust anchors: " + e.getMessage(), e);
+			}
+
+			final TrustBundleDomainReltn[] allDomainAssocs = getTrustBundleDomainReltns();
+			if (allDomainAssocs != null)
+			{
+				for (TrustBundleDomainReltn domainAssoc : allDomainAssocs)
+					groupByName(reltnsByDomain, domainAssoc.getDomain().getDomainName(), domainAssoc);
+			}
+			else
+			{
+				// older configuration services can only return bundle associations one domain at a time
+				for (Domain domain : lookedupWSDomains)
 				{
+					try
+					{
+						final TrustBundleDomainReltn[] domainAssocs = cfService.getTrustBundlesByDomain(domain.getId(), false);
+						if (domainAssocs != null)
+							for (TrustBundleDomainReltn domainAssoc : domainAssocs)
+								groupByName(reltnsByDomain, domain.getDomainName(), domainAssoc);
+					}
+					catch (Exception e)
+					{
+						throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings,
+								"WebService error getting trust bundles for domain " + domain.getDomainName() + ":" + e.getMessage(), e);
+					}
+				}
+			}
 
+			// the same anchor is usually shared by many domains through bundles, so only decode it once
+			final Map<String, X509Certificate> decodedCerts = new HashMap<String, X509Certificate>();
+			for (Domain domain : lookedupWSDomains)
+			{
+				final String domainKey = domain.getDomainName().toUpperCase(Locale.getDefault());
+				final Collection<X509Certificate> incomingAnchorsToAdd = new ArrayList<X509Certificate>();
+				final Collection<X509Certificate> outgoingAnchorsToAdd = new ArrayList<X509Certificate>();
 				
-					final Collection<X509Certificate> incomingAnchorsToAdd = new ArrayList<X509Certificate>();
-					final Collection<X509Certificate> outgoingAnchorsToAdd = new ArrayList<X509Certificate>();
-					
-					// get the anchors for the domain
-					final Anchor[] anchors = cfService.getAnchorsForOwner(domain.getDomainName(), null);
-					if (anchors != null)
+				// get the anchors for the domain
+				final Collection<Anchor> anchors = anchorsByOwner.get(domainKey);
+				if (anchors != null)
+				{
+					for (Anchor anchor : anchors)
 					{
-						for (Anchor anchor : anchors)
-						{
-							final X509Certificate anchorToAdd = certFromData(anchor.getData());
-							if (anchor.isIncoming())
-								incomingAnchorsToAdd.add(anchorToAdd);
-							if (anchor.isOutgoing())
-								outgoingAnchorsToAdd.add(anchorToAdd);
-						}
-
+						final X509Certificate anchorToAdd = certFromData(decodedCerts, anchor.getData());
+						if (anchor.isIncoming())
+							incomingAnchorsToAdd.add(anchorToAdd);
+						if (anchor.isOutgoing())
+							outgoingAnchorsToAdd.add(anchorToAdd);
 					}
-					
-					// check to see if there is a bundle associated to this domain
-					final TrustBundleDomainReltn[] domainAssocs = cfService.getTrustBundlesByDomain(domain.getId(), false);
-					if (domainAssocs != null)
+				}
+				
+				// check to see if there is a bundle associated to this domain
+				final Collection<TrustBundleDomainReltn> domainAssocs = reltnsByDomain.get(domainKey);
+				if (domainAssocs != null)
+				{
+					for (TrustBundleDomainReltn domainAssoc : domainAssocs)
 					{
-						for (TrustBundleDomainReltn domainAssoc : domainAssocs)
+						final TrustBundle bundle = bundleMap.get(domainAssoc.getTrustBundle().getBundleName());
+						if (bundle != null && bundle.getTrustBundleAnchors() != null)
 						{
-							final TrustBundle bundle = bundleMap.get(domainAssoc.getTrustBundle().getBundleName());
-							if (bundle != null && bundle.getTrustBundleAnchors() != null)
+							for (TrustBundleAnchor anchor : bundle.getTrustBundleAnchors())
 							{
-								for (TrustBundleAnchor anchor : bundle.getTrustBundleAnchors())
-								{
-									final X509Certificate anchorToAdd = certFromData(anchor.getData());
-									if (domainAssoc.isIncoming())
-										incomingAnchorsToAdd.add(anchorToAdd);
-									if (domainAssoc.isOutgoing())
-										outgoingAnchorsToAdd.add(anchorToAdd);
-								}
+								final X509Certificate anchorToAdd = certFromData(decodedCerts, anchor.getData());
+								if (domainAssoc.isIncoming())
+									incomingAnchorsToAdd.add(anchorToAdd);
+								if (domainAssoc.isOutgoing())
+									outgoingAnchorsToAdd.add(anchorToAdd);
 							}
 						}
 					}
-					
-					incomingAnchors.put(domain.getDomainName(), incomingAnchorsToAdd);
-					outgoingAnchors.put(domain.getDomainName(), outgoingAnchorsToAdd);
-				}
-				catch (SmtpAgentException e)
-				{
-					// rethrow
-					throw e;
-				}
-				catch (Exception e)
-				{
-					throw new SmtpAgentException(SmtpAgentError.InvalidTrustAnchorSettings, 
-							"WebService error getting trust anchors for domain " + domain + ":" + e.getMessage(), e);
 				}
+				
+				incomingAnchors.put(domain.getDomainName(), incomingAnchorsToAdd);
+				outgoingAnchors.put(domain.getDomainName(), outgoingAnchorsToAdd);
 			}
 		}
 		
@@ -21,6 +21,7 @@ THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.nhindirect.gateway.smtp.james.mailet;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -45,6 +46,7 @@ import org.nhindirect.common.tx.model.TxDetail;
 import org.nhindirect.common.tx.model.TxDetailType;
 import org.nhindirect.common.tx.module.DefaultTxDetailParserModule;
 import org.nhindirect.common.tx.module.ProviderTxServiceModule;
+import org.nhindirect.common.tx.provider.AsyncTxServiceClientProvider;
 import org.nhindirect.common.tx.provider.NoOpTxServiceClientProvider;
 import org.nhindirect.common.tx.provider.RESTTxServiceClientProvider;
 import org.nhindirect.gateway.GatewayConfiguration;
@@ -311,6 +313,9 @@ public abstract class AbstractNotificationAwareMailet extends GenericMailet
 	 * mailet configuration MessageMonitoringServiceURL parameter or in the agent OptionsParameter named org.nhindirect.gateway.smtp.james.mailet.TxServiceURL, 
 	 * then an instance of the RESTful Tx service will be created.  Otherwise, a NoOp Tx service will be created resulting in
 	 * no messages being tracked and monitoried.
+	 * <p>
+	 * If the MessageMonitoringAsync parameter is set to true, an asynchronous client is created instead that queues Txs and sends them to the
+	 * service in batches.  Txs are spooled to the directory named by the MessageMonitoringSpoolLocation parameter if it is set.
 	 * @return A collection of Guice modules to be used by an injector to create the TxService instance.
 	 */
 	protected Collection<Module> createDefaultTxServiceModules()
@@ -325,7 +330,21 @@ public abstract class AbstractNotificationAwareMailet extends GenericMailet
 				GatewayConfiguration.getConfigurationParam(SecurityAndTrustMailetOptions.MONITORING_SERVICE_URL_PARAM, this, "");
 		
 		if (!monitoringURLParam.isEmpty())
-			modules.add(ProviderTxServiceModule.create(new RESTTxServiceClientProvider(monitoringURLParam)));
+		{
+			final boolean async = Boolean.parseBoolean(
+					GatewayConfiguration.getConfigurationParam(SecurityAndTrustMailetOptions.MONITORING_SERVICE_ASYNC_PARAM, this, "false"));
+			
+			if (async)
+			{
+				final String spoolLocation = 
+						GatewayConfiguration.getConfigurationParam(SecurityAndTrustMailetOptions.MONITORING_SERVICE_SPOOL_LOCATION_PARAM, this, "");
+				
+				modules.add(ProviderTxServiceModule.create(new AsyncTxServiceClientProvider(monitoringURLParam, 
+						spoolLocation.isEmpty() ? null : new File(spoolLocation))));
+			}
+			else
+				modules.add(ProviderTxServiceModule.create(new RESTTxServiceClientProvider(monitoringURLParam)));
+		}
 		else
 		{
 			LOGGER.info("MessageMonitoringServiceURL is null or empty.  Will fall back to the the NoOp message monitor.");
@@ -43,6 +43,7 @@ import org.nhindirect.common.rest.ServiceSecurityManager;
 import org.nhindirect.common.rest.exceptions.ServiceException;
 import org.nhindirect.common.rest.provider.OpenServiceSecurityManagerProvider;
 import org.nhindirect.common.tx.TxUtil;
+import org.nhindirect.common.tx.impl.AsyncTxServiceClient;
 import org.nhindirect.common.tx.model.Tx;
 import org.nhindirect.common.tx.model.TxMessageType;
 import org.nhindirect.gateway.GatewayConfiguration;
@@ -99,6 +100,8 @@ public class NHINDSecurityAndTrustMailet extends AbstractNotificationAwareMailet
 		 */
 		final Map<String, String> JVM_PARAMS = new HashMap<String, String>();
 		JVM_PARAMS.put(SecurityAndTrustMailetOptions.MONITORING_SERVICE_URL_PARAM, "org.nhindirect.gateway.smtp.james.mailet.TxServiceURL");
+		JVM_PARAMS.put(SecurityAndTrustMailetOptions.MONITORING_SERVICE_ASYNC_PARAM, "org.nhindirect.gateway.smtp.james.mailet.TxServiceAsync");
+		JVM_PARAMS.put(SecurityAndTrustMailetOptions.MONITORING_SERVICE_SPOOL_LOCATION_PARAM, "org.nhindirect.gateway.smtp.james.mailet.TxServiceSpoolLocation");
 		JVM_PARAMS.put(SecurityAndTrustMailetOptions.AUTO_DSN_FAILURE_CREATION_PARAM, "org.nhindirect.gateway.smtp.james.mailet.AutoDSNFailueCreation");
 		JVM_PARAMS.put(SecurityAndTrustMailetOptions.SMTP_AGENT_CONFIG_PROVIDER, "org.nhindirect.gateway.smtp.james.mailet.SmptAgentConfigProvider");	
 		JVM_PARAMS.put(SecurityAndTrustMailetOptions.SERVICE_SECURITY_MANAGER_PROVIDER, "org.nhindirect.gateway.smtp.james.mailet.ServiceSecurityManagerProvider");	
@@ -225,141 +228,132 @@ public class NHINDSecurityAndTrustMailet extends AbstractNotificationAwareMailet
 	@Override
 	public void service(Mail mail) throws MessagingException 
 	{ 		
-		GatewayState.getInstance().lockForProcessing();
+		Tx txToMonitor = null;
+		
+		LOGGER.trace("Entering service(Mail mail)");
+		
+		onPreprocessMessage(mail);
+		
+		final MimeMessage msg = mail.getMessage();
+		
+		final NHINDAddressCollection recipients = getMailRecipients(mail);
+		
+		// get the sender
+		final NHINDAddress sender = getMailSender(mail);
+		
+		LOGGER.info("Proccessing incoming message from sender " + sender.toString());
+		MessageProcessResult result = null;
+				
+		final boolean isOutgoing = this.isOutgoing(msg, sender);
+		
+		// if the message is outgoing, then the tracking information must be
+		// gathered now before the message is transformed
+		if (isOutgoing)
+			txToMonitor = getTxToTrack(msg, sender, recipients);
+		
+		// recipients can get modified by the security and trust agent, so make a local copy
+		// before processing
+		final NHINDAddressCollection originalRecipList = NHINDAddressCollection.create(recipients);
+		
 		try
 		{
-		
-			Tx txToMonitor = null;
+			// process the message with the agent stack
+			LOGGER.trace("Calling agent.processMessage");
+			result = agent.processMessage(msg, recipients, sender);
+			LOGGER.trace("Finished calling agent.processMessage");
 			
-			LOGGER.trace("Entering service(Mail mail)");
-			
-			onPreprocessMessage(mail);
-			
-			final MimeMessage msg = mail.getMessage();
-			
-			final NHINDAddressCollection recipients = getMailRecipients(mail);
-			
-			// get the sender
-			final NHINDAddress sender = getMailSender(mail);
-			
-			LOGGER.info("Proccessing incoming message from sender " + sender.toString());
-			MessageProcessResult result = null;
-					
-			final boolean isOutgoing = this.isOutgoing(msg, sender);
-			
-			// if the message is outgoing, then the tracking information must be
-			// gathered now before the message is transformed
-			if (isOutgoing)
-				txToMonitor = getTxToTrack(msg, sender, recipients);
-			
-			// recipients can get modified by the security and trust agent, so make a local copy
-			// before processing
-			final NHINDAddressCollection originalRecipList = NHINDAddressCollection.create(recipients);
-			
-			try
-			{
-				// process the message with the agent stack
-				LOGGER.trace("Calling agent.processMessage");
-				result = agent.processMessage(msg, recipients, sender);
-				LOGGER.trace("Finished calling agent.processMessage");
+			if (result == null)
+			{				
+				LOGGER.error("Failed to process message.  processMessage returned null.");		
 				
-				if (result == null)
-				{				
-					LOGGER.error("Failed to process message.  processMessage returned null.");		
-					
-					onMessageRejected(mail, originalRecipList, sender, isOutgoing, txToMonitor, null);
-					
-					mail.setState(Mail.GHOST);
-					
-					LOGGER.trace("Exiting service(Mail mail)");
-					return;
-				}
-			}	
-			catch (Exception e)
-			{
-				// catch all
-				
-				LOGGER.error("Failed to process message: " + e.getMessage(), e);					
-				
-				onMessageRejected(mail, originalRecipList, sender, isOutgoing, txToMonitor, e);
+				onMessageRejected(mail, originalRecipList, sender, isOutgoing, txToMonitor, null);
 				
 				mail.setState(Mail.GHOST);
+				
 				LOGGER.trace("Exiting service(Mail mail)");
-	
 				return;
 			}
+		}	
+		catch (Exception e)
+		{
+			// catch all
 			
+			LOGGER.error("Failed to process message: " + e.getMessage(), e);					
 			
-			if (result.getProcessedMessage() != null)
-			{
-				mail.setMessage(result.getProcessedMessage().getMessage());
-			}
-			else
-			{
-				/*
-				 * TODO: Handle exception... GHOST the message for now and eat it
-				 */		
-				LOGGER.debug("Processed message is null.  GHOST and eat the message.");
-	
-				onMessageRejected(mail, recipients, sender, null);
-	
-				mail.setState(Mail.GHOST);
-	
-				return;
-			}
+			onMessageRejected(mail, originalRecipList, sender, isOutgoing, txToMonitor, e);
+			
+			mail.setState(Mail.GHOST);
+			LOGGER.trace("Exiting service(Mail mail)");
+
+			return;
+		}
+		
+		
+		if (result.getProcessedMessage() != null)
+		{
+			mail.setMessage(result.getProcessedMessage().getMessage());
+		}
+		else
+		{
+			/*
+			 * TODO: Handle exception... GHOST the message for now and eat it
+			 */		
+			LOGGER.debug("Processed message is null.  GHOST and eat the message.");
+
+			onMessageRejected(mail, recipients, sender, null);
+
+			mail.setState(Mail.GHOST);
+
+			return;
+		}
+		
+		// remove reject recipients from the RCTP headers
+		if (result.getProcessedMessage().getRejectedRecipients() != null && 
+				result.getProcessedMessage().getRejectedRecipients().size() > 0 && mail.getRecipients() != null &&
+				mail.getRecipients().size() > 0)
+		{
 			
-			// remove reject recipients from the RCTP headers
-			if (result.getProcessedMessage().getRejectedRecipients() != null && 
-					result.getProcessedMessage().getRejectedRecipients().size() > 0 && mail.getRecipients() != null &&
-					mail.getRecipients().size() > 0)
+			final Collection<MailAddress> newRCPTList = new ArrayList<MailAddress>();
+			for (MailAddress rctpAdd : (Collection<MailAddress>)mail.getRecipients())
 			{
-				
-				final Collection<MailAddress> newRCPTList = new ArrayList<MailAddress>();
-				for (MailAddress rctpAdd : (Collection<MailAddress>)mail.getRecipients())
+				if (!isRcptRejected(rctpAdd, result.getProcessedMessage().getRejectedRecipients()))
 				{
-					if (!isRcptRejected(rctpAdd, result.getProcessedMessage().getRejectedRecipients()))
-					{
-						newRCPTList.add(rctpAdd);
-					}
+					newRCPTList.add(rctpAdd);
 				}
-				
-				mail.setRecipients(newRCPTList);
 			}
 			
-			/*
-			 * Handle sending MDN messages
-			 */
-			final Collection<NotificationMessage> notifications = result.getNotificationMessages();
-			if (notifications != null && notifications.size() > 0)
+			mail.setRecipients(newRCPTList);
+		}
+		
+		/*
+		 * Handle sending MDN messages
+		 */
+		final Collection<NotificationMessage> notifications = result.getNotificationMessages();
+		if (notifications != null && notifications.size() > 0)
+		{
+			LOGGER.info("MDN messages requested.  Sending MDN \"processed\" messages");
+			// create a message for each notification and put it on James "stack"
+			for (NotificationMessage message : notifications)
 			{
-				LOGGER.info("MDN messages requested.  Sending MDN \"processed\" messages");
-				// create a message for each notification and put it on James "stack"
-				for (NotificationMessage message : notifications)
+				try
 				{
-					try
-					{
-						this.getMailetContext().sendMail(message);
-					}
-					catch (Throwable t)
-					{
-						// don't kill the process if this fails
-						LOGGER.error("Error sending MDN message.", t);
-					}
+					this.getMailetContext().sendMail(message);
+				}
+				catch (Throwable t)
+				{
+					// don't kill the process if this fails
+					LOGGER.error("Error sending MDN message.", t);
 				}
 			}
-			
-			// track message
-			trackMessage(txToMonitor, isOutgoing);
-			
-			onPostprocessMessage(mail, result, isOutgoing, txToMonitor);
-			
-			LOGGER.trace("Exiting service(Mail mail)");
-		}
-		finally
-		{
-			GatewayState.getInstance().unlockFromProcessing();
 		}
-	}
+		
+		// track message
+		trackMessage(txToMonitor, isOutgoing);
+		
+		onPostprocessMessage(mail, result, isOutgoing, txToMonitor);
+		
+		LOGGER.trace("Exiting service(Mail mail)");
+}
 	
 	
 	
@@ -701,7 +695,9 @@ public class NHINDSecurityAndTrustMailet extends AbstractNotificationAwareMailet
 		GatewayState.getInstance().lockForUpdating();
 		try
 		{
-			// place holder for shutdown code
+			// flush or spool any Txs that are still waiting to be sent to the monitoring service
+			if (txService instanceof AsyncTxServiceClient)
+				((AsyncTxServiceClient)txService).shutdown();
 		}
 		finally
 		{
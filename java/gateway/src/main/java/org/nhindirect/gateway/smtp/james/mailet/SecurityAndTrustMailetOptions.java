@@ -47,6 +47,27 @@ public class SecurityAndTrustMailetOptions
      */
     public static final String MONITORING_SERVICE_URL_PARAM = "MessageMonitoringServiceURL";
     
+    /**
+     * Mailet configuration parameter that indicates if messages should be submitted to the message monitoring service asynchronously.  When
+     * set to true, Txs are queued in memory and sent to the monitoring service in batches by a background thread so that SMTP processing does not
+     * wait on the monitoring service.  The default value is false.
+     * <p>
+     * This parameter is configured using the <b>MessageMonitoringAsync</b> element of the NHINDSecurityAndTrustMailet configuration.
+ 	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.gateway.smtp.james.mailet.TxServiceAsync
+ 	 * @since 3.1
+     */
+    public static final String MONITORING_SERVICE_ASYNC_PARAM = "MessageMonitoringAsync";
+    
+    /**
+     * Mailet configuration parameter for the directory where asynchronously submitted Txs are spooled when the monitoring service is
+     * unavailable or the gateway is shut down.  Only applies when MessageMonitoringAsync is true.  If not set, Txs that cannot be queued are dropped.
+     * <p>
+     * This parameter is configured using the <b>MessageMonitoringSpoolLocation</b> element of the NHINDSecurityAndTrustMailet configuration.
+ 	 * <p><b>JVM Parameter/Options Name:</b> org.nhindirect.gateway.smtp.james.mailet.TxServiceSpoolLocation
+ 	 * @since 3.1
+     */
+    public static final String MONITORING_SERVICE_SPOOL_LOCATION_PARAM = "MessageMonitoringSpoolLocation";
+    
     /**
      * Mailet configuration parameter that indicates if the mailet should automatically generate a DSN failure messages for outbound messages
      * that do not succeed security and trust processing.  The options are applied to both rejected messages and messages that have rejected recipients.
@@ -0,0 +1,69 @@
+package org.nhindirect.gateway.smtp;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.nhindirect.gateway.smtp.config.AgentConfigUpdate;
+import org.nhindirect.gateway.smtp.config.SmtpAgentConfig;
+import org.nhindirect.stagent.DefaultNHINDAgent;
+import org.nhindirect.stagent.cert.CertificateResolver;
+import org.nhindirect.stagent.cryptography.SMIMECryptographerImpl;
+import org.nhindirect.stagent.trust.TrustAnchorResolver;
+import org.nhindirect.stagent.trust.TrustModel;
+
+import com.google.inject.Injector;
+
+import junit.framework.TestCase;
+
+public class GatewayState_applyUpdateTest extends TestCase
+{
+	protected DefaultNHINDAgent createAgent(CertificateResolver publicResolver)
+	{
+		return new DefaultNHINDAgent(Arrays.asList("cerner.com"), mock(CertificateResolver.class), Arrays.asList(publicResolver),
+				mock(TrustAnchorResolver.class), new TrustModel(), SMIMECryptographerImpl.Default);
+	}
+
+	protected void applyUpdate(DefaultNHINDAgent runningAgent, DefaultNHINDAgent newAgent, AgentConfigUpdate.Section... changed)
+	{
+		GatewayState.SettingsManager manager = new GatewayState.SettingsManager(mock(SmtpAgent.class), mock(SmtpAgentConfig.class), 1000);
+
+		EnumSet<AgentConfigUpdate.Section> sections = EnumSet.noneOf(AgentConfigUpdate.Section.class);
+		sections.addAll(Arrays.asList(changed));
+
+		manager.applyUpdate(runningAgent, newAgent, new AgentConfigUpdate(mock(Injector.class), sections));
+	}
+
+	public void testApplyUpdate_publicCertStoreChanged_assertTrustModelUsesNewResolvers() throws Exception
+	{
+		CertificateResolver oldResolver = mock(CertificateResolver.class);
+		CertificateResolver newResolver = mock(CertificateResolver.class);
+
+		DefaultNHINDAgent runningAgent = createAgent(oldResolver);
+		DefaultNHINDAgent newAgent = createAgent(newResolver);
+
+		applyUpdate(runningAgent, newAgent, AgentConfigUpdate.Section.PUBLIC_CERT_STORE);
+
+		assertTrue(runningAgent.getPublicCertResolvers().contains(newResolver));
+		assertSame(newAgent.getTrustModel(), runningAgent.getTrustModel());
+		assertTrue(runningAgent.getTrustModel().getCertChainValidator().getCertificateResolver().contains(newResolver));
+		assertFalse(runningAgent.getTrustModel().getCertChainValidator().getCertificateResolver().contains(oldResolver));
+	}
+
+	public void testApplyUpdate_privateCertStoreChanged_assertTrustModelKept() throws Exception
+	{
+		CertificateResolver oldResolver = mock(CertificateResolver.class);
+		CertificateResolver newResolver = mock(CertificateResolver.class);
+
+		DefaultNHINDAgent runningAgent = createAgent(oldResolver);
+		DefaultNHINDAgent newAgent = createAgent(newResolver);
+		TrustModel runningModel = runningAgent.getTrustModel();
+
+		applyUpdate(runningAgent, newAgent, AgentConfigUpdate.Section.PRIVATE_CERT_STORE);
+
+		assertSame(runningModel, runningAgent.getTrustModel());
+		assertTrue(runningAgent.getPublicCertResolvers().contains(oldResolver));
+		assertTrue(runningAgent.getTrustModel().getCertChainValidator().getCertificateResolver().contains(oldResolver));
+	}
+}
@@ -0,0 +1,176 @@
+package org.nhindirect.gateway.smtp.config;
+
+import static org.mockito.Mockito.mock;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nhindirect.common.rest.provider.OpenServiceSecurityManagerProvider;
+import org.nhindirect.config.model.ConfigVersion;
+
+import com.google.inject.Injector;
+
+import junit.framework.TestCase;
+
+public class RESTSmtpAgentConfig_getAgentConfigUpdateTest extends TestCase
+{
+	protected static ConfigVersion createVersion(String domains, String anchors, String bundles, String policies, String settings)
+	{
+		final ConfigVersion version = new ConfigVersion();
+		version.setDomainsVersion(domains);
+		version.setAnchorsVersion(anchors);
+		version.setTrustBundlesVersion(bundles);
+		version.setCertPoliciesVersion(policies);
+		version.setSettingsVersion(settings);
+		
+		return version;
+	}
+	
+	/*
+	 * Records which sections are rebuilt instead of talking to a configuration service
+	 */
+	protected static class RecordingConfig extends RESTSmtpAgentConfig
+	{
+		protected ConfigVersion currentVersion;
+		protected final List<String> builtSections = new ArrayList<String>();
+		
+		public RecordingConfig() throws Exception
+		{
+			super(new URL("http://localhost:8080/config-service"), null, new OpenServiceSecurityManagerProvider());
+		}
+		
+		@Override
+		protected ConfigVersion getConfigVersion()
+		{
+			return currentVersion;
+		}
+		
+		@Override
+		protected void buildDomains()
+		{
+			builtSections.add("domains");
+		}
+		
+		@Override
+		protected void buildPublicCertStore()
+		{
+			builtSections.add("publicCerts");
+		}
+		
+		@Override
+		protected void buildPrivateCertStore()
+		{
+			builtSections.add("privateCerts");
+		}
+		
+		@Override
+		protected void buildMDNSettings()
+		{
+			builtSections.add("mdn");
+		}
+		
+		@Override
+		protected void buildMessageSettings(String type)
+		{
+			builtSections.add("message" + type);
+		}
+		
+		@Override
+		protected void buildPolicyResolvers()
+		{
+			builtSections.add("policies");
+		}
+		
+		@Override
+		protected Injector createAgentInjector()
+		{
+			return mock(Injector.class);
+		}
+	}
+	
+	public void testGetAgentConfigUpdate_noChanges_assertNullAndNothingRebuilt() throws Exception
+	{
+		final RecordingConfig config = new RecordingConfig();
+		config.currentVersion = createVersion("d1", "a1", "b1", "p1", "s1");
+		
+		assertNotNull(config.getAgentInjector());
+		config.builtSections.clear();
+		
+		assertNull(config.getAgentConfigUpdate());
+		assertTrue(config.builtSections.isEmpty());
+	}
+	
+	public void testGetAgentConfigUpdate_policiesChanged_assertOnlyPoliciesRebuilt() throws Exception
+	{
+		final RecordingConfig config = new RecordingConfig();
+		config.currentVersion = createVersion("d1", "a1", "b1", "p1", "s1");
+		config.getAgentInjector();
+		config.builtSections.clear();
+		
+		config.currentVersion = createVersion("d1", "a1", "b1", "p2", "s1");
+		final AgentConfigUpdate update = config.getAgentConfigUpdate();
+		
+		assertNotNull(update);
+		assertNotNull(update.getInjector());
+		assertEquals(1, update.getChangedSections().size());
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.POLICIES));
+		assertEquals(1, config.builtSections.size());
+		assertEquals("policies", config.builtSections.get(0));
+		
+		// the change has been applied, so the next poll finds nothing new
+		assertNull(config.getAgentConfigUpdate());
+	}
+	
+	public void testGetAgentConfigUpdate_trustBundleChanged_assertDomainsAndAnchorsRebuilt() throws Exception
+	{
+		final RecordingConfig config = new RecordingConfig();
+		config.currentVersion = createVersion("d1", "a1", "b1", "p1", "s1");
+		config.getAgentInjector();
+		config.builtSections.clear();
+		
+		config.currentVersion = createVersion("d1", "a1", "b2", "p1", "s1");
+		final AgentConfigUpdate update = config.getAgentConfigUpdate();
+		
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.DOMAINS));
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.TRUST_ANCHORS));
+		assertFalse(update.isChanged(AgentConfigUpdate.Section.PUBLIC_CERT_STORE));
+		assertFalse(update.isChanged(AgentConfigUpdate.Section.POLICIES));
+		assertEquals(1, config.builtSections.size());
+		assertEquals("domains", config.builtSections.get(0));
+	}
+	
+	public void testGetAgentConfigUpdate_settingsChanged_assertSettingsDependentSectionsRebuilt() throws Exception
+	{
+		final RecordingConfig config = new RecordingConfig();
+		config.currentVersion = createVersion("d1", "a1", "b1", "p1", "s1");
+		config.getAgentInjector();
+		config.builtSections.clear();
+		
+		config.currentVersion = createVersion("d1", "a1", "b1", "p1", "s2");
+		final AgentConfigUpdate update = config.getAgentConfigUpdate();
+		
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.DOMAINS));
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.PUBLIC_CERT_STORE));
+		assertTrue(update.isChanged(AgentConfigUpdate.Section.PRIVATE_CERT_STORE));
+		assertFalse(update.isChanged(AgentConfigUpdate.Section.POLICIES));
+		assertTrue(config.builtSections.contains("publicCerts"));
+		assertTrue(config.builtSections.contains("privateCerts"));
+		assertFalse(config.builtSections.contains("policies"));
+	}
+	
+	public void testGetAgentConfigUpdate_versionNotSupported_assertFullUpdate() throws Exception
+	{
+		final RecordingConfig config = new RecordingConfig();
+		config.currentVersion = null;
+		config.getAgentInjector();
+		config.builtSections.clear();
+		
+		final AgentConfigUpdate update = config.getAgentConfigUpdate();
+		
+		assertNotNull(update);
+		assertEquals(AgentConfigUpdate.Section.values().length, update.getChangedSections().size());
+		assertTrue(config.builtSections.contains("domains"));
+		assertTrue(config.builtSections.contains("policies"));
+	}
+}
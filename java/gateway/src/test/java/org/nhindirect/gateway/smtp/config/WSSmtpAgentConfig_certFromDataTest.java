@@ -0,0 +1,60 @@
+package org.nhindirect.gateway.smtp.config;
+
+import java.io.File;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class WSSmtpAgentConfig_certFromDataTest extends TestCase
+{
+	private static final String CONFIG_URL = "http://test/configservice";
+
+	public void testCertFromData_sameDataDecodedTwice_assertDecodedOnce() throws Exception
+	{
+		final WSSmtpAgentConfig config = new WSSmtpAgentConfig(new URL(CONFIG_URL), null);
+		final byte[] data = FileUtils.readFileToByteArray(new File("./src/test/resources/certs/cacert.der"));
+
+		final Map<String, X509Certificate> decodedCerts = new HashMap<String, X509Certificate>();
+		final X509Certificate first = config.certFromData(decodedCerts, data);
+		final X509Certificate second = config.certFromData(decodedCerts, Arrays.copyOf(data, data.length));
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals(1, decodedCerts.size());
+	}
+
+	public void testCertFromData_differentData_assertDecodedSeparately() throws Exception
+	{
+		final WSSmtpAgentConfig config = new WSSmtpAgentConfig(new URL(CONFIG_URL), null);
+
+		final Map<String, X509Certificate> decodedCerts = new HashMap<String, X509Certificate>();
+		final X509Certificate first = config.certFromData(decodedCerts,
+				FileUtils.readFileToByteArray(new File("./src/test/resources/certs/cacert.der")));
+		final X509Certificate second = config.certFromData(decodedCerts,
+				FileUtils.readFileToByteArray(new File("./src/test/resources/certs/bob.der")));
+
+		assertFalse(first.equals(second));
+		assertEquals(2, decodedCerts.size());
+	}
+
+	public void testGroupByName_mixedCaseNames_assertGroupedCaseInsensitive() throws Exception
+	{
+		final Map<String, Collection<String>> groups = new HashMap<String, Collection<String>>();
+
+		WSSmtpAgentConfig.groupByName(groups, "test.com", "anchor1");
+		WSSmtpAgentConfig.groupByName(groups, "TEST.com", "anchor2");
+		WSSmtpAgentConfig.groupByName(groups, "other.com", "anchor3");
+		WSSmtpAgentConfig.groupByName(groups, null, "anchor4");
+
+		assertEquals(2, groups.size());
+		assertEquals(2, groups.get("TEST.COM").size());
+		assertEquals(1, groups.get("OTHER.COM").size());
+	}
+}
@@ -0,0 +1,17 @@
+package org.nhindirect.gateway.smtp.config;
+
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class WSSmtpAgentConfig_getTrustBundleDomainReltnsTest extends TestCase
+{
+	private static final String CONFIG_URL = "http://test/configservice";
+
+	public void testGetTrustBundleDomainReltns_operationNotAvailable_assertNullForFallback() throws Exception
+	{
+		final WSSmtpAgentConfig config = new WSSmtpAgentConfig(new URL(CONFIG_URL), null);
+
+		assertNull(config.getTrustBundleDomainReltns());
+	}
+}
@@ -12,6 +12,7 @@ import junit.framework.TestCase;
 import org.apache.mailet.MailetConfig;
 import org.nhindirect.common.tx.module.DefaultTxDetailParserModule;
 import org.nhindirect.common.tx.module.ProviderTxServiceModule;
+import org.nhindirect.common.tx.provider.AsyncTxServiceClientProvider;
 import org.nhindirect.common.tx.provider.NoOpTxServiceClientProvider;
 import org.nhindirect.common.tx.provider.RESTTxServiceClientProvider;
 import org.nhindirect.gateway.testutils.BaseTestPlan;
@@ -31,6 +32,8 @@ public class NHINDSecurityAndTrustMailet_createDefaultTxServiceModulesTest exten
 			
 			params.put("ConfigURL", "file://" + configfile);
 			params.put("MessageMonitoringServiceURL", getMessageMonitoringServiceURL());
+			if (getMessageMonitoringAsync() != null)
+				params.put("MessageMonitoringAsync", getMessageMonitoringAsync());
 			
 			return new MockMailetConfig(params, "NHINDSecurityAndTrustMailet");	
 		}
@@ -57,6 +60,11 @@ public class NHINDSecurityAndTrustMailet_createDefaultTxServiceModulesTest exten
 			return "";
 		}
 		
+		protected String getMessageMonitoringAsync()
+		{
+			return null;
+		}
+		
 		protected void doAssertions(Collection<Module> modules) throws Exception
 		{
 		}			
@@ -144,4 +152,38 @@ public class NHINDSecurityAndTrustMailet_createDefaultTxServiceModulesTest exten
 			}				
 		}.perform();
 	}
+	
+	public void testCreateDefaultServiceModules_serviceURLAvailable_asyncEnabled_assertAsyncTxService() throws Exception 
+	{
+		new TestPlan() 
+		{
+			@Override
+			protected String getMessageMonitoringServiceURL()
+			{
+				return "http://localhost";
+			}
+			
+			@Override
+			protected String getMessageMonitoringAsync()
+			{
+				return "true";
+			}
+			
+			@Override
+			protected void doAssertions(Collection<Module> modules) throws Exception
+			{
+				assertNotNull(modules);
+				assertEquals(2, modules.size());		
+				
+				Iterator<Module> iter = modules.iterator();
+				assertTrue(iter.next() instanceof DefaultTxDetailParserModule);
+				Module serviceModule = iter.next();
+				assertTrue(serviceModule instanceof ProviderTxServiceModule);
+
+				Field field = ProviderTxServiceModule.class.getDeclaredField("txServiceProv");
+				field.setAccessible(true);
+				assertTrue(field.get(serviceModule) instanceof AsyncTxServiceClientProvider);
+			}				
+		}.perform();
+	}
 }